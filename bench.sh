@@ -0,0 +1,5 @@
+#!/bin/bash
+# Usage: [JAVA_OPTS=...] ./bench.sh <BenchmarkClass> [args...]
+mkdir -p target/bench
+javac -cp "lib/*:." -d target/bench src/main/java/*.java bench/java/*.java
+java $JAVA_OPTS -cp "target/bench:lib/*" "${1:-StatementCacheBenchmark}" "${@:2}"
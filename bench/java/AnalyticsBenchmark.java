@@ -0,0 +1,71 @@
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Benchmark comparing AnalyticsEngine queries with answering the same question from SQL
+ * Seeds a year of appointments and prescriptions, times the startup rebuild at several
+ * parallelism levels, then scores a doctor-day count and the top 10 medicines both from
+ * the aggregates and from the tables.
+ *
+ * Usage: ./bench.sh AnalyticsBenchmark [rows] [iterationMillis]
+ */
+public class AnalyticsBenchmark {
+    private static final int DOCTORS = 100;
+    private static final int PATIENTS = 2_000;
+    private static final int MEDICINES = 200;
+    private static final LocalDate START = LocalDate.of(2024, 1, 1);
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        long iterationMillis = args.length > 1 ? Long.parseLong(args[1]) : 1_000;
+        System.out.println("=== Analytics Benchmark (" + rows + " appointments and prescriptions) ===\n");
+        Path database = Bench.tempDatabase("analytics");
+        DatabaseManager dbManager = new DatabaseManager(StorageConfig.file(database).readers(4).tuned().build());
+        try {
+            List<Appointment> appointments = new ArrayList<>(rows);
+            List<Prescription> prescriptions = new ArrayList<>(rows);
+            for (int i = 0; i < rows; i++) {
+                appointments.add(new Appointment("patient" + (i % PATIENTS), "Dr. " + (i % DOCTORS),
+                    START.plusDays(i / DOCTORS % 365).toString(), i / DOCTORS / 365 % 16));
+                prescriptions.add(new Prescription("patient" + (i % PATIENTS), medicine(i), 1 + i % 5));
+            }
+            dbManager.addAppointments(appointments, 5_000);
+            dbManager.insertPrescriptions(prescriptions);
+
+            for (int parallelism : new int[] {1, 2, 4}) {
+                Bench.run("AnalyticsEngine.rebuild (parallelism " + parallelism + ")", 1, 3,
+                    i -> AnalyticsEngine.rebuild(dbManager, parallelism));
+            }
+            AnalyticsEngine analytics = AnalyticsEngine.rebuild(dbManager, 4);
+            System.out.println();
+
+            Bench.score("doctor-day count (aggregate)", "analytics", 1, 1, 3, iterationMillis,
+                i -> analytics.getAppointmentCount("Dr. " + (i % DOCTORS), START.plusDays(i % 365)));
+            Bench.score("doctor-day count (SQL)", "analytics", 1, 1, 3, iterationMillis,
+                i -> dbManager.getAppointmentsForDoctor("Dr. " + (i % DOCTORS), START.plusDays(i % 365),
+                    START.plusDays(i % 365)).size());
+            Bench.score("top 10 medicines (aggregate)", "analytics", 1, 1, 3, iterationMillis,
+                i -> analytics.getTopMedicines(10));
+            Bench.score("top 10 medicines (scan)", "analytics", 1, 1, 3, iterationMillis, i -> {
+                Map<String, Long> units = new HashMap<>();
+                dbManager.streamPrescriptions(p -> units.merge(p.getMedicine(), (long) p.getQuantity(), Long::sum));
+                units.entrySet().stream()
+                    .sorted(Map.Entry.<String, Long>comparingByValue().reversed()).limit(10).toList();
+            });
+            Bench.score("recordPrescription", "analytics", 1, 1, 3, iterationMillis,
+                i -> analytics.recordPrescription("patient" + (i % PATIENTS), medicine(i), 1, START));
+        } finally {
+            dbManager.closeConnection();
+            Bench.deleteDatabase(database);
+        }
+    }
+
+    private static String medicine(int i) {
+        // Skewed towards the higher numbers so the ranking has a clear head
+        return "Medicine " + (int) Math.sqrt(i % (MEDICINES * MEDICINES));
+    }
+}
@@ -0,0 +1,148 @@
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Stream;
+
+/**
+ * Benchmark of hot-query latency before and after archiving
+ * Seeds five years of appointments and prescriptions up to a month ahead of today, times
+ * the everyday queries (whole-table reads, a patient's first page, a doctor's next 30
+ * days), archives everything older than 12 months into monthly partitions and times the
+ * same queries again. Then times the queries that reach into the archive: a doctor's last
+ * three years and getAllAppointments(true).
+ *
+ * Usage: ./bench.sh ArchiveBenchmark [appointmentsPerDay]
+ */
+public class ArchiveBenchmark {
+    private static final int PATIENTS = 20_000;
+    private static final int DOCTORS = 100;
+    private static final int YEARS = 5;
+    private static final int HORIZON_MONTHS = 12;
+    private static final LocalDate TODAY = LocalDate.now(ZoneOffset.UTC);
+
+    public static void main(String[] args) throws Exception {
+        int perDay = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        Path directory = Files.createTempDirectory("archive");
+        Path database = directory.resolve("live.db");
+        DatabaseManager dbManager = new DatabaseManager(StorageConfig.file(database).readers(2).tuned().build());
+        try {
+            long rows = seed(dbManager, perDay);
+            System.out.println("=== Archive Benchmark (" + YEARS + " years, " + rows
+                + " appointments and prescriptions) ===\n");
+            hotQueries(dbManager, "before archiving");
+
+            long start = System.nanoTime();
+            long moved = dbManager.archiveBefore(YearMonth.from(TODAY).minusMonths(HORIZON_MONTHS));
+            System.out.printf("archiveBefore(%s): %d rows into %d monthly partitions in %.1f s%n%n",
+                YearMonth.from(TODAY).minusMonths(HORIZON_MONTHS), moved, dbManager.getArchivedMonths().size(),
+                (System.nanoTime() - start) / 1e9);
+
+            hotQueries(dbManager, "after archiving");
+            System.out.println("--- reaching into the archive ---");
+            time("getAppointmentsForDoctor, last 3 years", 20, i -> dbManager.getAppointmentsForDoctor(doctor(),
+                TODAY.minusYears(3), TODAY).size());
+            time("getAllAppointments(includeArchived)", 3, i -> dbManager.getAllAppointments(true).size());
+            time("getAppointmentsForPatient(includeArchived), 20", 200, i -> dbManager.getAppointmentsForPatient(
+                patient(), 0, 20, true).size());
+        } finally {
+            dbManager.closeConnection();
+            try (Stream<Path> files = Files.walk(directory)) {
+                for (Path path : files.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.deleteIfExists(path);
+                }
+            }
+        }
+    }
+
+    private static void hotQueries(DatabaseManager dbManager, String label) throws Exception {
+        System.out.println("--- " + label + " ---");
+        time("getAllAppointments", 5, i -> dbManager.getAllAppointments().size());
+        time("getAllPrescriptions", 5, i -> dbManager.getAllPrescriptions().size());
+        time("getAppointmentsForPatient, first 20", 2_000,
+            i -> dbManager.getAppointmentsForPatient(patient(), 0, 20).size());
+        time("getPrescriptionsForPatient, first 20", 2_000,
+            i -> dbManager.getPrescriptionsForPatient(patient(), 0, 20).size());
+        time("getAppointmentsForDoctor, next 30 days", 2_000,
+            i -> dbManager.getAppointmentsForDoctor(doctor(), TODAY, TODAY.plusDays(30)).size());
+        System.out.println();
+    }
+
+    /**
+     * Query returning the number of rows it read
+     */
+    @FunctionalInterface
+    private interface Query {
+        int run(int iteration) throws Exception;
+    }
+
+    private static void time(String name, int iterations, Query query) throws Exception {
+        // The first tenth of the calls only warms up
+        for (int i = 0; i < Math.max(1, iterations / 10); i++) {
+            query.run(i);
+        }
+        Histogram nanos = new Histogram();
+        long rows = 0;
+        for (int i = 0; i < iterations; i++) {
+            long start = System.nanoTime();
+            rows += query.run(i);
+            nanos.record(System.nanoTime() - start);
+        }
+        System.out.printf("%-48s %9d rows/call  ms: %s%n", name, rows / iterations, nanos.summary(1e6));
+    }
+
+    private static String patient() {
+        return "patient" + ThreadLocalRandom.current().nextInt(PATIENTS);
+    }
+
+    private static String doctor() {
+        return "Dr. Doctor" + ThreadLocalRandom.current().nextInt(DOCTORS);
+    }
+
+    /**
+     * perDay appointments and half as many prescriptions on every day from five years ago
+     * to a month ahead; prescriptions are written directly so they can carry past dates
+     */
+    private static long seed(DatabaseManager dbManager, int perDay) throws Exception {
+        LocalDate first = TODAY.minusYears(YEARS);
+        LocalDate last = TODAY.plusDays(30);
+        long rows = 0;
+        int n = 0;
+        List<Appointment> appointments = new ArrayList<>();
+        Connection connection = dbManager.getConnection();
+        try (PreparedStatement ps = connection.prepareStatement(
+                "INSERT INTO prescriptions (patient_username, medicine, quantity, prescription_date) VALUES (?, ?, ?, ?)")) {
+            for (LocalDate day = first; !day.isAfter(last); day = day.plusDays(1)) {
+                for (int i = 0; i < perDay; i++, n++) {
+                    appointments.add(new Appointment("patient" + (n % PATIENTS), "Dr. Doctor" + (i % DOCTORS),
+                        day.toString(), i / DOCTORS));
+                }
+                connection.setAutoCommit(false);
+                for (int i = 0; i < perDay / 2; i++, n++) {
+                    ps.setString(1, "patient" + (n % PATIENTS));
+                    ps.setString(2, "Medicine " + (n % 500));
+                    ps.setInt(3, 1 + n % 5);
+                    ps.setString(4, day + " 09:00:00");
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+                connection.commit();
+                connection.setAutoCommit(true);
+                rows += perDay + perDay / 2;
+                if (appointments.size() >= 10_000) {
+                    dbManager.addAppointments(appointments, 10_000);
+                    appointments.clear();
+                }
+            }
+        }
+        dbManager.addAppointments(appointments, 10_000);
+        return rows;
+    }
+}
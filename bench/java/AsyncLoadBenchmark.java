@@ -0,0 +1,116 @@
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Closed-loop load generator for AsyncHealthcareSystem
+ * N simulated clients each keep one request in flight (80% reads, 20% writes) and
+ * issue the next as soon as the previous completes. Reports throughput and latency
+ * percentiles as the number of clients grows.
+ * Usage: ./bench.sh AsyncLoadBenchmark [requestsPerLevel]
+ */
+public class AsyncLoadBenchmark {
+    private static final int PATIENTS = 1_000;
+    private static final int[] CONCURRENCY = {1, 8, 64, 256, 1024};
+
+    public static void main(String[] args) throws Exception {
+        int requests = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        Path database = Bench.tempDatabase("async-load");
+        Path journal = Files.createTempDirectory("async-load-journal");
+        HealthcareSystem system = new HealthcareSystem(new DatabaseManager(Bench.url(database), 4), journal);
+        AsyncHealthcareSystem async = new AsyncHealthcareSystem(system);
+        try {
+            seed(system);
+            System.out.println("=== Async Load Benchmark (" + requests + " requests per level, virtual threads: "
+                + async.isUsingVirtualThreads() + ") ===\n");
+            System.out.printf("%8s %12s %10s %10s %10s %10s %8s%n",
+                "clients", "ops/s", "p50 ms", "p99 ms", "p99.9 ms", "max ms", "errors");
+            run(async, 64, requests / 4, false); // warmup
+            for (int clients : CONCURRENCY) {
+                run(async, clients, requests, true);
+            }
+        } finally {
+            async.close();
+            system.shutdown();
+            Bench.deleteDatabase(database);
+            try (Stream<Path> files = Files.walk(journal)) {
+                for (Path path : files.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.deleteIfExists(path);
+                }
+            }
+        }
+    }
+
+    private static void seed(HealthcareSystem system) {
+        List<MedicalRecord> records = new ArrayList<>();
+        for (int i = 0; i < PATIENTS * 5; i++) {
+            records.add(new MedicalRecord("patient" + (i % PATIENTS), "Diagnosis " + i, "Treatment " + i));
+        }
+        system.addMedicalRecords(records);
+    }
+
+    private static void run(AsyncHealthcareSystem async, int clients, int requests, boolean report)
+            throws Exception {
+        long[] latencies = new long[requests];
+        AtomicInteger issued = new AtomicInteger();
+        AtomicInteger errors = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(clients);
+        long start = System.nanoTime();
+        for (int c = 0; c < clients; c++) {
+            next(async, latencies, issued, errors, done);
+        }
+        done.await();
+        long elapsed = System.nanoTime() - start;
+        if (!report) {
+            return;
+        }
+
+        Arrays.sort(latencies);
+        System.out.printf("%8d %12.0f %10.3f %10.3f %10.3f %10.3f %8d%n",
+            clients, requests * 1e9 / elapsed,
+            percentile(latencies, 0.50), percentile(latencies, 0.99), percentile(latencies, 0.999),
+            latencies[latencies.length - 1] / 1e6, errors.get());
+    }
+
+    private static void next(AsyncHealthcareSystem async, long[] latencies, AtomicInteger issued,
+                             AtomicInteger errors, CountDownLatch done) {
+        int index = issued.getAndIncrement();
+        if (index >= latencies.length) {
+            done.countDown();
+            return;
+        }
+        long start = System.nanoTime();
+        request(async, index).whenComplete((result, failure) -> {
+            latencies[index] = System.nanoTime() - start;
+            if (failure != null) {
+                errors.incrementAndGet();
+            }
+            next(async, latencies, issued, errors, done);
+        });
+    }
+
+    private static CompletableFuture<?> request(AsyncHealthcareSystem async, int index) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String patient = "patient" + random.nextInt(PATIENTS);
+        int kind = random.nextInt(10);
+        if (kind < 2) {
+            return async.addMedicalRecord(patient, "Checkup " + index, "None");
+        } else if (kind < 5) {
+            return async.getPatientView(patient);
+        }
+        return async.getMedicalRecordsForPatient(patient, 0, 20);
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        int index = (int) Math.min(sorted.length - 1, Math.ceil(p * sorted.length) - 1);
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+}
@@ -0,0 +1,229 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Minimal benchmark harness shared by the benchmarks in bench/java
+ * Runs warmup iterations, then timed iterations, and reports the average cost per operation
+ */
+public final class Bench {
+    /**
+     * Benchmarked operation
+     */
+    @FunctionalInterface
+    public interface Op {
+        void run(int iteration) throws Exception;
+    }
+    
+    private Bench() {}
+    
+    public static Result run(String name, int warmup, int iterations, Op op) throws Exception {
+        for (int i = 0; i < warmup; i++) {
+            op.run(i);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            op.run(warmup + i);
+        }
+        Result result = new Result(name, iterations, System.nanoTime() - start);
+        System.out.println(result);
+        return result;
+    }
+    
+    /**
+     * Runs the operation from several threads at once and reports aggregate throughput.
+     * The op receives a per-thread iteration number.
+     */
+    public static Result runConcurrent(String name, int threads, int opsPerThread, Op op) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (int t = 0; t < threads; t++) {
+                int offset = t * opsPerThread;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < opsPerThread; i++) {
+                        op.run(offset + i);
+                    }
+                    return null;
+                }));
+            }
+            long begin = System.nanoTime();
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            Result result = new Result(name + " [" + threads + " threads]",
+                (long) threads * opsPerThread, System.nanoTime() - begin);
+            System.out.println(result);
+            return result;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+    
+    /**
+     * Time-based measurement in the style of JMH's throughput mode: warmup iterations are
+     * discarded, then each measured iteration counts the operations all threads complete
+     * in iterationMillis. An iteration always waits for every thread's in-flight
+     * operation, so even operations slower than one iteration are counted.
+     */
+    public static Score score(String name, String param, int threads, int warmupIterations,
+                              int iterations, long iterationMillis, Op op) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        AtomicInteger sequence = new AtomicInteger();
+        try {
+            for (int i = 0; i < warmupIterations; i++) {
+                iterate(executor, threads, iterationMillis, sequence, op);
+            }
+            double[] opsPerSecond = new double[iterations];
+            for (int i = 0; i < iterations; i++) {
+                opsPerSecond[i] = iterate(executor, threads, iterationMillis, sequence, op);
+            }
+            Score score = new Score(name, param, threads, opsPerSecond);
+            System.out.println(score);
+            return score;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+    
+    private static double iterate(ExecutorService executor, int threads, long iterationMillis,
+                                  AtomicInteger sequence, Op op) throws Exception {
+        AtomicBoolean running = new AtomicBoolean(true);
+        LongAdder operations = new LongAdder();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                do {
+                    op.run(sequence.getAndIncrement());
+                    operations.increment();
+                } while (running.get());
+                return null;
+            }));
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        Thread.sleep(iterationMillis);
+        running.set(false);
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        return operations.sum() * 1e9 / (System.nanoTime() - begin);
+    }
+    
+    /**
+     * Fresh, empty SQLite file for one benchmark run
+     */
+    public static Path tempDatabase(String prefix) throws IOException {
+        return Files.createTempFile(prefix, ".db");
+    }
+    
+    public static String url(Path database) {
+        return "jdbc:sqlite:" + database;
+    }
+    
+    public static void deleteDatabase(Path database) throws IOException {
+        Files.deleteIfExists(database);
+        Files.deleteIfExists(Path.of(database + "-wal"));
+        Files.deleteIfExists(Path.of(database + "-shm"));
+    }
+    
+    /**
+     * Throughput of one time-based benchmark: mean ops/s over the measured iterations,
+     * with a 99.9% confidence half-width as the error
+     */
+    public static final class Score {
+        private final String name;
+        private final String param;
+        private final int threads;
+        private final double mean;
+        private final double error;
+        
+        Score(String name, String param, int threads, double[] opsPerSecond) {
+            this.name = name;
+            this.param = param;
+            this.threads = threads;
+            double sum = 0;
+            for (double value : opsPerSecond) {
+                sum += value;
+            }
+            this.mean = sum / opsPerSecond.length;
+            double squares = 0;
+            for (double value : opsPerSecond) {
+                squares += (value - mean) * (value - mean);
+            }
+            double stddev = opsPerSecond.length > 1 ? Math.sqrt(squares / (opsPerSecond.length - 1)) : 0;
+            this.error = 3.29 * stddev / Math.sqrt(opsPerSecond.length);
+        }
+        
+        Score(String name, String param, int threads, double mean, double error) {
+            this.name = name;
+            this.param = param;
+            this.threads = threads;
+            this.mean = mean;
+            this.error = error;
+        }
+        
+        public String getName() { return name; }
+        public String getParam() { return param; }
+        public int getThreads() { return threads; }
+        public double getMean() { return mean; }
+        public double getError() { return error; }
+        
+        /** Identifies the same benchmark across runs */
+        public String getKey() {
+            return name + "|" + param + "|" + threads;
+        }
+        
+        @Override
+        public String toString() {
+            return String.format("%-40s %-13s %3d threads %14.1f +- %10.1f ops/s %14.3f us/op",
+                name, param, threads, mean, error, threads * 1e6 / mean);
+        }
+    }
+    
+    /**
+     * Outcome of one benchmark
+     */
+    public static final class Result {
+        private final String name;
+        private final long operations;
+        private final long elapsedNanos;
+        
+        Result(String name, long operations, long elapsedNanos) {
+            this.name = name;
+            this.operations = operations;
+            this.elapsedNanos = elapsedNanos;
+        }
+        
+        public String getName() { return name; }
+        public long getOperations() { return operations; }
+        public long getElapsedNanos() { return elapsedNanos; }
+        
+        public double getNanosPerOp() {
+            return (double) elapsedNanos / operations;
+        }
+        
+        public double getOpsPerSecond() {
+            return operations * 1e9 / elapsedNanos;
+        }
+        
+        @Override
+        public String toString() {
+            return String.format("%-64s %12.1f ns/op %12.0f ops/s", name, getNanosPerOp(), getOpsPerSecond());
+        }
+    }
+}
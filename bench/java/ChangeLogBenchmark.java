@@ -0,0 +1,195 @@
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+
+/**
+ * Change log benchmark
+ * Measures raw append throughput, what logging adds to a committed write, how far a
+ * consumer tailing the log falls behind writers running flat out, and what it costs to
+ * find new appointments by tailing compared with polling getAllAppointments and diffing.
+ *
+ * Usage: ./bench.sh ChangeLogBenchmark [events]
+ */
+public class ChangeLogBenchmark {
+    private static final int WRITER_THREADS = 8;
+
+    public static void main(String[] args) throws Exception {
+        int events = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        System.out.println("=== Change Log Benchmark (" + Runtime.getRuntime().availableProcessors() + " CPUs) ===\n");
+        appendThroughput(events);
+        System.out.println();
+        writeOverhead();
+        System.out.println();
+        consumerLag();
+        System.out.println();
+        tailVersusPolling();
+    }
+
+    private static void appendThroughput(int events) throws Exception {
+        // The first run only warms up
+        for (int threads : new int[] {1, 1, 4}) {
+            Path directory = Files.createTempDirectory("change-log");
+            try (ChangeLog log = new ChangeLog(directory, 16 << 20, 4)) {
+                Bench.Result result = Bench.runConcurrent("append", threads, events / threads,
+                    i -> log.append(ChangeEvent.Type.MEDICAL_RECORD, i, "patient" + (i % 10_000),
+                        "Diagnosis " + i, "Treatment", ChangeEvent.NO_DAY, 0));
+                System.out.printf("  %.1f MB appended in %d segments%n", log.getAppendedBytes() / 1e6,
+                    log.getSegmentCount() + log.getDeletedSegmentCount());
+
+                ChangeLog.Reader reader = log.tail(0);
+                long[] checksum = new long[1];
+                long start = System.nanoTime();
+                while (reader.read(event -> checksum[0] += event.getRowId(), 1_024) > 0) {
+                    // drain
+                }
+                long read = log.getEndOffset() - log.getStartOffset();
+                System.out.printf("  tail read: %d events in %.1f ms (%.0f events/s)%n", read,
+                    (System.nanoTime() - start) / 1e6, read * 1e9 / (System.nanoTime() - start));
+            } finally {
+                delete(directory);
+            }
+        }
+    }
+
+    private static void writeOverhead() throws Exception {
+        // The first run only warms up
+        for (boolean logged : new boolean[] {true, false, true}) {
+            for (boolean groupCommit : new boolean[] {false, true}) {
+                Path database = Bench.tempDatabase("change-log");
+                Path directory = Files.createTempDirectory("change-log");
+                DatabaseManager dbManager = new DatabaseManager(StorageConfig.file(database).readers(1).build());
+                try {
+                    if (groupCommit) {
+                        dbManager.enableGroupCommit(GroupCommitWriter.DEFAULT_FLUSH_WINDOW_MICROS,
+                            GroupCommitWriter.DEFAULT_MAX_BATCH_SIZE);
+                    }
+                    if (logged) {
+                        dbManager.enableChangeLog(directory);
+                    }
+                    Bench.runConcurrent("addMedicalRecord, " + (logged ? "change log" : "no change log")
+                            + (groupCommit ? ", group commit" : ""), WRITER_THREADS, groupCommit ? 1_000 : 200,
+                        i -> dbManager.addMedicalRecord("patient" + (i % 1_000), "Diagnosis " + i, "Treatment"));
+                } finally {
+                    dbManager.closeConnection();
+                    Bench.deleteDatabase(database);
+                    delete(directory);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writers add medical records through group commit while one consumer tails the log;
+     * the diagnosis carries the nanoTime the write started, so the consumer sees the
+     * delay from the write call to its own read
+     */
+    private static void consumerLag() throws Exception {
+        Path database = Bench.tempDatabase("change-log");
+        Path directory = Files.createTempDirectory("change-log");
+        DatabaseManager dbManager = new DatabaseManager(StorageConfig.file(database).readers(1).build());
+        try {
+            dbManager.enableGroupCommit(GroupCommitWriter.DEFAULT_FLUSH_WINDOW_MICROS,
+                GroupCommitWriter.DEFAULT_MAX_BATCH_SIZE);
+            ChangeLog log = dbManager.enableChangeLog(directory);
+            ChangeLog.Reader reader = log.tail(log.getEndOffset());
+            Histogram delayNanos = new Histogram();
+            Histogram lagEvents = new Histogram();
+            AtomicBoolean running = new AtomicBoolean(true);
+            long[] consumed = new long[1];
+            Thread consumer = new Thread(() -> {
+                while (running.get() || reader.getLag() > 0) {
+                    long lag = reader.getLag();
+                    if (lag == 0) {
+                        // Polls every 100 us instead of spinning, leaving the CPU to the writers
+                        LockSupport.parkNanos(100_000);
+                        continue;
+                    }
+                    lagEvents.record(lag);
+                    reader.read(event -> {
+                        delayNanos.record(System.nanoTime() - Long.parseLong(event.getText()));
+                        consumed[0]++;
+                    }, 256);
+                }
+            }, "change-log-consumer");
+            consumer.start();
+            Bench.runConcurrent("addMedicalRecord with a tailing consumer", WRITER_THREADS, 1_000,
+                i -> dbManager.addMedicalRecord("patient" + (i % 1_000), Long.toString(System.nanoTime()), "Treatment"));
+            running.set(false);
+            consumer.join();
+            System.out.println("  consumed " + consumed[0] + " events");
+            System.out.println("  delay from write call to consumer ms: " + delayNanos.summary(1e6));
+            System.out.println("  backlog found per read (events): " + lagEvents.summary(1));
+        } finally {
+            dbManager.closeConnection();
+            Bench.deleteDatabase(database);
+            delete(directory);
+        }
+    }
+
+    /**
+     * Finding 100 new appointments among 50,000: one poll-and-diff against one tail read
+     */
+    private static void tailVersusPolling() throws Exception {
+        Path database = Bench.tempDatabase("change-log");
+        Path directory = Files.createTempDirectory("change-log");
+        DatabaseManager dbManager = new DatabaseManager(StorageConfig.file(database).readers(1).build());
+        try {
+            List<Appointment> existing = new ArrayList<>();
+            for (int i = 0; i < 50_000; i++) {
+                existing.add(new Appointment("patient" + i, "Dr. " + (i % 50), "2030-01-01", i / 50));
+            }
+            dbManager.addAppointments(existing);
+            ChangeLog log = dbManager.enableChangeLog(directory);
+            Set<Long> seen = new HashSet<>();
+            for (Appointment appointment : dbManager.getAllAppointments()) {
+                seen.add(appointment.getId());
+            }
+            ChangeLog.Reader reader = log.tail(log.getEndOffset());
+            int round = 0;
+            for (int i = 0; i < 20; i++) {
+                List<Appointment> fresh = new ArrayList<>();
+                for (int j = 0; j < 100; j++) {
+                    fresh.add(new Appointment("patient" + j, "Dr. New", "2031-01-01", round++));
+                }
+                dbManager.addAppointments(fresh);
+                List<Appointment> tailed = new ArrayList<>();
+                long start = System.nanoTime();
+                reader.read(event -> tailed.add(event.toAppointment()), 1_000);
+                long tailNanos = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                List<Appointment> polled = new ArrayList<>();
+                for (Appointment appointment : dbManager.getAllAppointments()) {
+                    if (seen.add(appointment.getId())) {
+                        polled.add(appointment);
+                    }
+                }
+                long pollNanos = System.nanoTime() - start;
+                if (i == 19) {
+                    System.out.printf("poll + diff: %d new of %d rows in %.2f ms%n", polled.size(), seen.size(),
+                        pollNanos / 1e6);
+                    System.out.printf("tail:        %d new in %.3f ms%n", tailed.size(), tailNanos / 1e6);
+                }
+            }
+        } finally {
+            dbManager.closeConnection();
+            Bench.deleteDatabase(database);
+            delete(directory);
+        }
+    }
+
+    private static void delete(Path directory) throws Exception {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path path : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,92 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Benchmark of heap usage while exporting a large medical_records table
+ * Compares the streaming exporter with materializing the table through getAllMedicalRecords.
+ * Usage: JAVA_OPTS=-Xmx256m ./bench.sh ExportMemoryBenchmark [rows]   (default 1,000,000 rows)
+ */
+public class ExportMemoryBenchmark {
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        System.out.println("=== Export Memory Benchmark (" + rows + " rows) ===\n");
+        
+        Path database = Bench.tempDatabase("export-memory");
+        Path output = Files.createTempFile("export-memory", ".ndjson");
+        DatabaseManager dbManager = new DatabaseManager(Bench.url(database), 2);
+        try {
+            seed(dbManager, rows);
+            
+            for (RecordExporter.Format format : RecordExporter.Format.values()) {
+                HeapSampler sampler = HeapSampler.begin();
+                long start = System.nanoTime();
+                long written = new RecordExporter(dbManager, 5_000).exportMedicalRecords(output, format);
+                long elapsed = System.nanoTime() - start;
+                System.out.printf("streaming %-6s %,d rows in %,d ms, %,d MB written, peak heap %,d MB%n",
+                    format, written, elapsed / 1_000_000, Files.size(output) >> 20, sampler.finish() >> 20);
+            }
+            
+            HeapSampler sampler = HeapSampler.begin();
+            long start = System.nanoTime();
+            int loaded = dbManager.getAllMedicalRecords().size();
+            long elapsed = System.nanoTime() - start;
+            System.out.printf("getAllMedicalRecords %,d rows in %,d ms, peak heap %,d MB%n",
+                loaded, elapsed / 1_000_000, sampler.finish() >> 20);
+        } finally {
+            dbManager.closeConnection();
+            Files.deleteIfExists(output);
+            Bench.deleteDatabase(database);
+        }
+    }
+    
+    private static void seed(DatabaseManager dbManager, int rows) throws Exception {
+        int chunk = 10_000;
+        for (int from = 0; from < rows; from += chunk) {
+            List<MedicalRecord> records = new ArrayList<>(chunk);
+            for (int i = from; i < Math.min(rows, from + chunk); i++) {
+                records.add(new MedicalRecord("patient" + (i % 5_000), "Diagnosis " + (i % 300),
+                    "Treatment plan number " + i));
+            }
+            dbManager.addMedicalRecords(records, chunk);
+        }
+    }
+    
+    /**
+     * Samples used heap on a background thread and reports the peak
+     */
+    private static final class HeapSampler extends Thread {
+        private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        private volatile boolean running = true;
+        private volatile long peak;
+        
+        static HeapSampler begin() {
+            System.gc();
+            HeapSampler sampler = new HeapSampler();
+            sampler.setDaemon(true);
+            sampler.start();
+            return sampler;
+        }
+        
+        @Override
+        public void run() {
+            while (running) {
+                peak = Math.max(peak, memory.getHeapMemoryUsage().getUsed());
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+        
+        long finish() throws InterruptedException {
+            running = false;
+            join();
+            return peak;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+import java.nio.file.Path;
+
+/**
+ * Bursty single-row insert benchmark
+ * Compares one transaction per addMedicalRecord call with group commit at several
+ * flush windows, and prints the writes-per-commit and commit latency histograms.
+ */
+public class GroupCommitBenchmark {
+    private static final int OPS_PER_THREAD = 500;
+
+    public static void main(String[] args) throws Exception {
+        System.out.println("=== Group Commit Benchmark ===\n");
+        for (int threads : new int[] {1, 8, 32, 128}) {
+            run(threads, -1);
+            run(threads, 0);
+            run(threads, 1_000);
+            run(threads, 5_000);
+            System.out.println();
+        }
+    }
+
+    /**
+     * @param flushWindowMicros -1 for one transaction per write
+     */
+    private static void run(int threads, long flushWindowMicros) throws Exception {
+        Path database = Bench.tempDatabase("group-commit");
+        DatabaseManager dbManager = new DatabaseManager(Bench.url(database), 2);
+        try {
+            if (flushWindowMicros >= 0) {
+                dbManager.enableGroupCommit(flushWindowMicros, GroupCommitWriter.DEFAULT_MAX_BATCH_SIZE);
+            }
+            String label = flushWindowMicros < 0 ? "commit per write"
+                : "group commit (window " + flushWindowMicros + " us)";
+            Bench.runConcurrent(label, threads, OPS_PER_THREAD,
+                i -> dbManager.addMedicalRecord("patient" + (i % 1_000), "Diagnosis " + i, "Treatment"));
+            GroupCommitWriter writer = dbManager.getGroupCommitWriter();
+            if (writer != null) {
+                System.out.println("  writes per commit: " + writer.getWritesPerCommit());
+                System.out.println("  commit latency ms: " + writer.getCommitLatencyNanos().summary(1e6));
+            }
+        } finally {
+            dbManager.closeConnection();
+            Bench.deleteDatabase(database);
+        }
+    }
+}
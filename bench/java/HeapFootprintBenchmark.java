@@ -0,0 +1,111 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Benchmark measuring the retained heap of a full table load
+ * Compares three shapes of the same appointments and prescriptions:
+ * - per-row Strings, as the loaders returned before names were pooled (rebuilt here by
+ *   copying every String into its own array, as a fresh ResultSet.getString gives)
+ * - getAll* objects sharing pooled name and date Strings
+ * - load* compact records holding NamePool ids and epoch days
+ * Retained heap is the used heap after a full GC with the loaded list still reachable.
+ *
+ * Usage: ./bench.sh HeapFootprintBenchmark [rows]
+ */
+public class HeapFootprintBenchmark {
+    private static final int PATIENTS = 20_000;
+    private static final int DOCTORS = 200;
+    private static final int MEDICINES = 500;
+    private static final LocalDate START = LocalDate.of(2024, 1, 1);
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        System.out.println("=== Heap Footprint Benchmark (" + rows + " appointments and prescriptions) ===\n");
+        Path database = Bench.tempDatabase("heap");
+        DatabaseManager dbManager = new DatabaseManager(StorageConfig.file(database).readers(1).tuned().build());
+        try {
+            seed(dbManager, rows);
+            System.out.printf("%-40s %12s %14s %10s%n", "shape", "retained MB", "bytes per row", "load ms");
+            measure("appointments, per-row Strings", rows, () -> {
+                List<Appointment> copies = new ArrayList<>();
+                for (Appointment a : dbManager.getAllAppointments()) {
+                    copies.add(new Appointment(a.getId(), copy(a.getPatientUsername()),
+                        copy(a.getDoctorName()), copy(a.getDate()), a.getSlot()));
+                }
+                return copies;
+            });
+            measure("appointments, pooled Strings", rows, dbManager::getAllAppointments);
+            measure("appointments, compact records", rows, dbManager::loadAppointments);
+            measure("prescriptions, per-row Strings", rows, () -> {
+                List<Prescription> copies = new ArrayList<>();
+                for (Prescription p : dbManager.getAllPrescriptions()) {
+                    copies.add(new Prescription(p.getId(), copy(p.getPatientUsername()),
+                        copy(p.getMedicine()), p.getQuantity()));
+                }
+                return copies;
+            });
+            measure("prescriptions, pooled Strings", rows, dbManager::getAllPrescriptions);
+            measure("prescriptions, compact records", rows, dbManager::loadPrescriptions);
+        } finally {
+            dbManager.closeConnection();
+            Bench.deleteDatabase(database);
+        }
+    }
+
+    private static void seed(DatabaseManager dbManager, int rows) throws Exception {
+        List<Appointment> appointments = new ArrayList<>();
+        List<Prescription> prescriptions = new ArrayList<>();
+        for (int i = 0; i < rows; i++) {
+            appointments.add(new Appointment("patient" + (i % PATIENTS), "Dr. Doctor" + (i % DOCTORS),
+                START.plusDays(i / DOCTORS % 730).toString(), i / DOCTORS / 730 % 16));
+            prescriptions.add(new Prescription("patient" + (i % PATIENTS), "Medicine " + (i % MEDICINES), 1 + i % 5));
+            if (appointments.size() == 10_000) {
+                dbManager.addAppointments(appointments, 10_000);
+                dbManager.insertPrescriptions(prescriptions);
+                appointments.clear();
+                prescriptions.clear();
+            }
+        }
+        dbManager.addAppointments(appointments, 10_000);
+        dbManager.insertPrescriptions(prescriptions);
+    }
+
+    private static String copy(String value) {
+        // new String(String) would share the original's array
+        return new String(value.toCharArray());
+    }
+
+    @FunctionalInterface
+    private interface Load {
+        List<?> load() throws Exception;
+    }
+
+    private static void measure(String name, int rows, Load load) throws Exception {
+        // Warm the pools and the JIT so only the retained rows are counted
+        load.load();
+        long before = usedAfterGc();
+        long start = System.nanoTime();
+        List<?> loaded = load.load();
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        long retained = usedAfterGc() - before;
+        System.out.printf("%-40s %12.1f %14.1f %10d%n", name, retained / 1e6, (double) retained / rows, millis);
+        if (loaded.size() != rows) {
+            throw new IllegalStateException("Loaded " + loaded.size() + " rows, expected " + rows);
+        }
+    }
+
+    private static long usedAfterGc() throws InterruptedException {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(50);
+            used = Math.min(used, memory.getHeapMemoryUsage().getUsed());
+        }
+        return used;
+    }
+}
@@ -0,0 +1,253 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Benchmark suite for the DatabaseManager and HealthcareSystem hot paths
+ * Hot paths (login, bookAppointment, addPrescription, getMedicineInventory, getPatientView)
+ * run on a seeded temp database at each thread count; full-table scans run at each row
+ * count. Scores can be saved as a baseline and later runs compared against it.
+ *
+ * Usage: ./bench.sh HotPathBenchmark [options], or mvn -f bench/pom.xml exec:exec
+ *   --rows=10000,100000,1000000   row counts for the scan benchmarks
+ *   --threads=1,8                 thread counts
+ *   --warmup=2 --iterations=3 --iteration-ms=1000
+ *   --only=REGEX                  run matching benchmarks only
+ *   --out=FILE                    write scores (baseline format)
+ *   --baseline=FILE               compare against a baseline
+ *   --threshold=0.15              relative drop treated as a regression
+ *   --fail-on-regression          exit with status 1 on any regression
+ */
+public class HotPathBenchmark {
+    private static final String[] MEDICINES = {"Paracetamol", "Aspirin", "Ibuprofen", "Amoxicillin"};
+    private static final int PATIENTS = 1_000;
+    private static final int DOCTORS = 50;
+    private static final int HOT_PATH_ROWS = 10_000;
+
+    private final Map<String, String> options;
+    private final int[] rows;
+    private final int[] threads;
+    private final int warmup;
+    private final int iterations;
+    private final long iterationMillis;
+    private final String only;
+    private final List<Bench.Score> scores = new ArrayList<>();
+
+    private HotPathBenchmark(Map<String, String> options) {
+        this.options = options;
+        this.rows = ints(options.getOrDefault("rows", "10000,100000,1000000"));
+        this.threads = ints(options.getOrDefault("threads", "1,8"));
+        this.warmup = Integer.parseInt(options.getOrDefault("warmup", "2"));
+        this.iterations = Integer.parseInt(options.getOrDefault("iterations", "3"));
+        this.iterationMillis = Long.parseLong(options.getOrDefault("iteration-ms", "1000"));
+        this.only = options.get("only");
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (String arg : args) {
+            String option = arg.startsWith("--") ? arg.substring(2) : arg;
+            int eq = option.indexOf('=');
+            options.put(eq < 0 ? option : option.substring(0, eq), eq < 0 ? "true" : option.substring(eq + 1));
+        }
+        HotPathBenchmark suite = new HotPathBenchmark(options);
+        System.out.println("=== Hot Path Benchmark ===");
+        System.out.println("java " + System.getProperty("java.version") + ", "
+            + Runtime.getRuntime().availableProcessors() + " cpus, password iterations "
+            + System.getProperty(PasswordHasher.ITERATIONS_PROPERTY, String.valueOf(PasswordHasher.DEFAULT_ITERATIONS))
+            + "\n");
+        suite.runHotPaths();
+        for (int count : suite.rows) {
+            suite.runScans(count);
+        }
+        System.exit(suite.report() ? 0 : 1);
+    }
+
+    private void runHotPaths() throws Exception {
+        Path database = Bench.tempDatabase("hot-path");
+        Path journal = Files.createTempDirectory("hot-path-journal");
+        DatabaseManager dbManager = new DatabaseManager(Bench.url(database), 4);
+        seed(dbManager, HOT_PATH_ROWS);
+        HealthcareSystem system = new HealthcareSystem(dbManager, journal);
+        try {
+            for (String medicine : MEDICINES) {
+                system.addMedicine(medicine, Integer.MAX_VALUE / 2);
+            }
+            LocalDate today = LocalDate.now();
+            String param = "rows=" + HOT_PATH_ROWS;
+            for (int t : threads) {
+                score("login (cached)", param, t, i -> system.login("admin", "admin123"));
+                score("validateUser (password hash)", param, t, i -> dbManager.validateUser("admin", "admin123"));
+                score("bookAppointment", param, t, i -> system.bookNextAvailable(
+                    "patient" + (i % PATIENTS), "Dr. " + (i % DOCTORS), today));
+                score("addPrescription", param, t, i -> system.addPrescription(
+                    "patient" + (i % PATIENTS), MEDICINES[i % MEDICINES.length], 1));
+                score("getMedicineInventory", param, t, i -> system.getMedicineInventory());
+                score("getMedicineInventory (sqlite)", param, t, i -> dbManager.getMedicineInventory());
+                score("getPatientView", param, t, i -> system.getPatientView("patient" + (i % PATIENTS)));
+            }
+        } finally {
+            system.shutdown();
+            Bench.deleteDatabase(database);
+            deleteDirectory(journal);
+        }
+    }
+
+    private void runScans(int count) throws Exception {
+        if (!anyMatches("getAppointments", "getMedicalRecords", "streamMedicalRecords")) {
+            return;
+        }
+        Path database = Bench.tempDatabase("scan");
+        DatabaseManager dbManager = new DatabaseManager(Bench.url(database), 4);
+        try {
+            seed(dbManager, count);
+            String param = "rows=" + count;
+            // Materialized lists of a million rows per thread would measure the heap, not the scan
+            score("getAppointments", param, 1, i -> dbManager.getAllAppointments());
+            score("getMedicalRecords", param, 1, i -> dbManager.getAllMedicalRecords());
+            for (int t : threads) {
+                score("streamMedicalRecords", param, t, i -> dbManager.streamMedicalRecords(record -> { }));
+            }
+        } finally {
+            dbManager.closeConnection();
+            Bench.deleteDatabase(database);
+        }
+    }
+
+    private static void seed(DatabaseManager dbManager, int count) throws Exception {
+        long start = System.nanoTime();
+        int chunk = 50_000;
+        LocalDate first = LocalDate.of(2020, 1, 1);
+        for (int offset = 0; offset < count; offset += chunk) {
+            int end = Math.min(count, offset + chunk);
+            List<Appointment> appointments = new ArrayList<>(end - offset);
+            List<MedicalRecord> records = new ArrayList<>(end - offset);
+            List<Prescription> prescriptions = new ArrayList<>(end - offset);
+            for (int i = offset; i < end; i++) {
+                String patient = "patient" + (i % PATIENTS);
+                appointments.add(new Appointment(patient, "Dr. " + (i % DOCTORS),
+                    first.plusDays(i / DOCTORS / 16).toString(), (i / DOCTORS) % 16));
+                records.add(new MedicalRecord(patient, "Diagnosis " + i, "Treatment " + i));
+                prescriptions.add(new Prescription(patient, MEDICINES[i % MEDICINES.length], 1 + i % 30));
+            }
+            dbManager.addAppointments(appointments, 5_000);
+            dbManager.addMedicalRecords(records, 5_000);
+            dbManager.insertPrescriptions(prescriptions);
+        }
+        System.out.printf("seeded %d rows per table in %.1f s%n", count, (System.nanoTime() - start) / 1e9);
+    }
+
+    private void score(String name, String param, int threadCount, Bench.Op op) throws Exception {
+        if (only != null && !name.matches(only)) {
+            return;
+        }
+        scores.add(Bench.score(name, param, threadCount, warmup, iterations, iterationMillis, op));
+    }
+
+    private boolean anyMatches(String... names) {
+        if (only == null) {
+            return true;
+        }
+        for (String name : names) {
+            if (name.matches(only)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Writes the scores and compares them with the baseline; false if anything regressed
+     */
+    private boolean report() throws IOException {
+        String out = options.get("out");
+        if (out != null) {
+            writeScores(Path.of(out));
+            System.out.println("\nscores written to " + out);
+        }
+        String baselineFile = options.get("baseline");
+        if (baselineFile == null) {
+            return true;
+        }
+        double threshold = Double.parseDouble(options.getOrDefault("threshold", "0.15"));
+        Map<String, Bench.Score> baseline = readScores(Path.of(baselineFile));
+        int regressions = 0;
+        System.out.println("\n=== Compared with " + baselineFile + " (threshold " + (int) (threshold * 100) + "%) ===");
+        for (Bench.Score score : scores) {
+            Bench.Score base = baseline.get(score.getKey());
+            if (base == null) {
+                System.out.printf("%-60s %s%n", score.getKey(), "new");
+                continue;
+            }
+            double change = score.getMean() / base.getMean() - 1;
+            // Only flag drops larger than the threshold that the error bars do not explain
+            boolean outsideError = score.getMean() + score.getError() < base.getMean() - base.getError();
+            String verdict = change < -threshold && outsideError ? "REGRESSION"
+                : change > threshold ? "improved" : "ok";
+            if (verdict.equals("REGRESSION")) {
+                regressions++;
+            }
+            System.out.printf(Locale.ROOT, "%-60s %14.1f -> %14.1f ops/s %+7.1f%%  %s%n",
+                score.getKey(), base.getMean(), score.getMean(), change * 100, verdict);
+        }
+        System.out.println(regressions == 0 ? "no regressions" : regressions + " regression(s)");
+        return regressions == 0 || !options.containsKey("fail-on-regression");
+    }
+
+    private void writeScores(Path file) throws IOException {
+        List<String> lines = new ArrayList<>();
+        lines.add("# benchmark\tparam\tthreads\tops_per_second\terror");
+        lines.add("# java " + System.getProperty("java.version") + ", "
+            + Runtime.getRuntime().availableProcessors() + " cpus, "
+            + iterations + " x " + iterationMillis + " ms iterations");
+        for (Bench.Score score : scores) {
+            lines.add(String.format(Locale.ROOT, "%s\t%s\t%d\t%.1f\t%.1f",
+                score.getName(), score.getParam(), score.getThreads(), score.getMean(), score.getError()));
+        }
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Files.write(file, lines, StandardCharsets.UTF_8);
+    }
+
+    private static Map<String, Bench.Score> readScores(Path file) throws IOException {
+        Map<String, Bench.Score> scores = new LinkedHashMap<>();
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            if (line.isBlank() || line.startsWith("#")) {
+                continue;
+            }
+            String[] fields = line.split("\t");
+            Bench.Score score = new Bench.Score(fields[0], fields[1], Integer.parseInt(fields[2]),
+                Double.parseDouble(fields[3]), Double.parseDouble(fields[4]));
+            scores.put(score.getKey(), score);
+        }
+        return scores;
+    }
+
+    private static int[] ints(String csv) {
+        String[] parts = csv.split(",");
+        int[] values = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            values[i] = Integer.parseInt(parts[i].trim());
+        }
+        return values;
+    }
+
+    private static void deleteDirectory(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path path : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,162 @@
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * Local load test of HealthcareHttpServer
+ * Closed-loop clients on java.net.http.HttpClient send a mix of 60% patient appointment
+ * lookups, 20% bookings, 10% medical records and 10% inventory reads. First with the
+ * default admission limits at a growing number of clients, then against tight limits
+ * with many more clients than the server admits, to show load being shed as 503s while
+ * admitted requests keep a bounded latency. Prints client-side throughput and latency
+ * and the server's per-endpoint stats. The clients share one admin token, taken from
+ * /login before the clock starts.
+ *
+ * Usage: ./bench.sh HttpApiBenchmark [secondsPerLevel]
+ */
+public class HttpApiBenchmark {
+    private static final int PATIENTS = 1_000;
+    private static final int DOCTORS = 20;
+
+    public static void main(String[] args) throws Exception {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        System.out.println("=== HTTP API Benchmark (" + Runtime.getRuntime().availableProcessors() + " CPUs, "
+            + (VirtualThreads.isAvailable() ? "virtual threads" : "platform threads") + ") ===\n");
+        run("default limits", HealthcareHttpServer.DEFAULT_MAX_CONCURRENT_READS,
+            HealthcareHttpServer.DEFAULT_MAX_CONCURRENT_WRITES, HealthcareHttpServer.DEFAULT_QUEUE_CAPACITY,
+            HealthcareHttpServer.DEFAULT_QUEUE_TIMEOUT_MILLIS, new int[] {1, 8, 32, 128}, seconds);
+        run("tight limits (4 reads, 2 writes, 8 waiting, 20 ms)", 4, 2, 8, 20, new int[] {32, 128}, seconds);
+    }
+
+    private static void run(String label, int maxReads, int maxWrites, int queueCapacity, long queueTimeoutMillis,
+                            int[] clientLevels, int seconds) throws Exception {
+        Path database = Bench.tempDatabase("http-api");
+        Path journalDir = Files.createTempDirectory("http-api-journal");
+        HealthcareSystem system = new HealthcareSystem(
+            new DatabaseManager(StorageConfig.file(database).readers(4).build()), journalDir);
+        HealthcareHttpServer server = new HealthcareHttpServer(system, new InetSocketAddress("127.0.0.1", 0),
+            maxReads, maxWrites, queueCapacity, queueTimeoutMillis);
+        server.start();
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(5)).build();
+        String base = "http://127.0.0.1:" + server.getPort();
+        try {
+            system.addMedicine("Aspirin", 1_000_000);
+            for (int i = 0; i < PATIENTS; i++) {
+                system.addMedicalRecord("patient" + i, "Checkup", "None");
+            }
+            HttpResponse<String> login = client.send(post(base + "/login", null,
+                "{\"username\":\"admin\",\"password\":\"admin123\"}"), HttpResponse.BodyHandlers.ofString());
+            String token = HealthcareHttpServer.parseJsonObject(login.body()).get("token");
+            System.out.println("--- " + label + " ---");
+            for (int clients : clientLevels) {
+                drive(client, base, token, clients, seconds);
+            }
+            System.out.println();
+            System.out.print(server.dumpStats());
+            System.out.println();
+        } finally {
+            server.close();
+            system.shutdown();
+            Bench.deleteDatabase(database);
+            try (Stream<Path> files = Files.walk(journalDir)) {
+                for (Path path : files.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.deleteIfExists(path);
+                }
+            }
+        }
+    }
+
+    private static void drive(HttpClient client, String base, String token, int clients, int seconds)
+            throws Exception {
+        Histogram okNanos = new Histogram();
+        Histogram shedNanos = new Histogram();
+        LongAdder failed = new LongAdder();
+        AtomicBoolean running = new AtomicBoolean(true);
+        ExecutorService executor = Executors.newFixedThreadPool(clients);
+        List<Future<?>> futures = new ArrayList<>();
+        long begin = System.nanoTime();
+        for (int c = 0; c < clients; c++) {
+            futures.add(executor.submit(() -> {
+                while (running.get()) {
+                    HttpRequest request = next(base, token);
+                    long start = System.nanoTime();
+                    int status;
+                    try {
+                        status = client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+                    } catch (java.io.IOException e) {
+                        status = -1;
+                    }
+                    long elapsed = System.nanoTime() - start;
+                    if (status == 503) {
+                        shedNanos.record(elapsed);
+                    } else if (status >= 200 && status < 300 || status == 409) {
+                        // 409: a booking that lost its slot is still an answered request
+                        okNanos.record(elapsed);
+                    } else {
+                        failed.increment();
+                    }
+                }
+                return null;
+            }));
+        }
+        Thread.sleep(seconds * 1_000L);
+        running.set(false);
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        double elapsedSeconds = (System.nanoTime() - begin) / 1e9;
+        System.out.printf("%4d clients: %8.0f ok/s, %8.0f shed/s, %d failed%n", clients,
+            okNanos.getCount() / elapsedSeconds, shedNanos.getCount() / elapsedSeconds, failed.sum());
+        System.out.println("      ok latency ms:   " + okNanos.summary(1e6));
+        if (shedNanos.getCount() > 0) {
+            System.out.println("      503 latency ms:  " + shedNanos.summary(1e6));
+        }
+    }
+
+    private static HttpRequest next(String base, String token) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String patient = "patient" + random.nextInt(PATIENTS);
+        int pick = random.nextInt(10);
+        if (pick < 6) {
+            return get(base + "/appointments?patient=" + patient + "&limit=20", token);
+        }
+        if (pick < 8) {
+            String body = "{\"patient\":\"" + patient + "\",\"doctor\":\"Dr. " + random.nextInt(DOCTORS)
+                + "\",\"date\":\"2030-01-" + (10 + random.nextInt(20)) + "\"}";
+            return post(base + "/appointments", token, body);
+        }
+        if (pick < 9) {
+            return post(base + "/records", token, "{\"patient\":\"" + patient + "\",\"diagnosis\":\"Flu\",\"treatment\":\"Rest\"}");
+        }
+        return get(base + "/inventory", token);
+    }
+
+    private static HttpRequest get(String uri, String token) {
+        return HttpRequest.newBuilder(URI.create(uri)).header("Authorization", "Bearer " + token).build();
+    }
+
+    private static HttpRequest post(String uri, String token, String body) {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(uri)).header("Content-Type", "application/json");
+        if (token != null) {
+            request.header("Authorization", "Bearer " + token);
+        }
+        return request.POST(HttpRequest.BodyPublishers.ofString(body)).build();
+    }
+}
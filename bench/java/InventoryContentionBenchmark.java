@@ -0,0 +1,71 @@
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Multi-threaded dispensing benchmark
+ * Compares the per-row transaction path (DatabaseManager.addPrescription: INSERT plus
+ * UPDATE medicine_inventory in one transaction) with the in-memory InventoryEngine,
+ * both on its own and followed by the prescription insert.
+ */
+public class InventoryContentionBenchmark {
+    private static final int OPS_PER_THREAD = 2_000;
+    private static final String[] MEDICINES = {"Paracetamol", "Aspirin", "Ibuprofen", "Amoxicillin"};
+    
+    public static void main(String[] args) throws Exception {
+        System.out.println("=== Inventory Contention Benchmark ===\n");
+        for (int threads : new int[] {1, 4, 16}) {
+            runTransactionPath(threads);
+            runEngine(threads, false, false);
+            runEngine(threads, true, false);
+            runEngine(threads, true, true);
+            System.out.println();
+        }
+    }
+    
+    private static void runTransactionPath(int threads) throws Exception {
+        Path database = Bench.tempDatabase("inventory-txn");
+        DatabaseManager dbManager = new DatabaseManager(Bench.url(database), 2);
+        try {
+            for (String medicine : MEDICINES) {
+                dbManager.addMedicine(medicine, Integer.MAX_VALUE);
+            }
+            Bench.runConcurrent("per-row transaction (addPrescription)", threads, OPS_PER_THREAD,
+                i -> dbManager.addPrescription("patient" + i, MEDICINES[i % MEDICINES.length], 1));
+        } finally {
+            dbManager.closeConnection();
+            Bench.deleteDatabase(database);
+        }
+    }
+    
+    private static void runEngine(int threads, boolean syncJournal, boolean insertRows) throws Exception {
+        Path database = Bench.tempDatabase("inventory-engine");
+        Path journal = Files.createTempDirectory("inventory-journal");
+        DatabaseManager dbManager = new DatabaseManager(Bench.url(database), 2);
+        InventoryEngine engine = new InventoryEngine(dbManager, journal,
+            InventoryEngine.DEFAULT_FLUSH_INTERVAL_MILLIS, syncJournal);
+        try {
+            for (String medicine : MEDICINES) {
+                engine.setStock(medicine, Integer.MAX_VALUE);
+            }
+            String label = "engine" + (syncJournal ? " + fsync journal" : "")
+                + (insertRows ? " + insertPrescription" : "");
+            Bench.runConcurrent(label, threads, OPS_PER_THREAD, i -> {
+                String medicine = MEDICINES[i % MEDICINES.length];
+                if (engine.tryDispense(medicine, 1) && insertRows) {
+                    dbManager.insertPrescription("patient" + i, medicine, 1);
+                }
+            });
+            engine.close();
+            System.out.println("  flushes=" + engine.getFlushCount() + ", batched updates=" + engine.getFlushedUpdateCount());
+        } finally {
+            dbManager.closeConnection();
+            Bench.deleteDatabase(database);
+            try (var files = Files.list(journal)) {
+                for (Path file : files.toList()) {
+                    Files.deleteIfExists(file);
+                }
+            }
+            Files.deleteIfExists(journal);
+        }
+    }
+}
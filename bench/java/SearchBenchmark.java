@@ -0,0 +1,89 @@
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Benchmark comparing the FTS5 medical record search with a linear scan
+ * The scan streams every record and matches the words in Java, which is what a
+ * search without the index has to do. Both sides return the first page of 20 hits.
+ *
+ * Usage: ./bench.sh SearchBenchmark [rows] [iterationMillis]
+ */
+public class SearchBenchmark {
+    private static final int PATIENTS = 10_000;
+    private static final int PAGE = 20;
+    private static final String[] CONDITIONS = {
+        "Influenza", "Migraine", "Hypertension", "Type 2 diabetes", "Asthma", "Bronchitis",
+        "Sprained ankle", "Tension headache", "Allergic rhinitis", "Gastritis", "Otitis media",
+        "Conjunctivitis", "Lower back pain", "Anxiety", "Insomnia", "Eczema", "Pneumonia",
+        "Urinary tract infection", "Sinusitis", "Tonsillitis"
+    };
+    private static final String[] TREATMENTS = {
+        "Rest and fluids", "Ibuprofen as needed", "ACE inhibitor", "Metformin", "Inhaler",
+        "Antibiotics for seven days", "Ice and compression", "Physiotherapy", "Antihistamines",
+        "Proton pump inhibitor", "Ear drops", "Eye drops", "Cognitive behavioural therapy",
+        "Sleep hygiene", "Emollient cream"
+    };
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        long iterationMillis = args.length > 1 ? Long.parseLong(args[1]) : 1_000;
+        System.out.println("=== Search Benchmark (" + rows + " medical records) ===\n");
+        Path database = Bench.tempDatabase("search");
+        DatabaseManager dbManager = new DatabaseManager(StorageConfig.file(database).readers(4).tuned().build());
+        try {
+            long start = System.nanoTime();
+            List<MedicalRecord> chunk = new ArrayList<>();
+            for (int i = 0; i < rows; i++) {
+                // One record in a thousand mentions a rare finding
+                String diagnosis = CONDITIONS[i % CONDITIONS.length] + (i % 1_000 == 0 ? " with papilledema" : "");
+                chunk.add(new MedicalRecord("patient" + (i % PATIENTS), diagnosis,
+                    TREATMENTS[i / CONDITIONS.length % TREATMENTS.length] + ", review in " + (i % 12 + 1) + " weeks"));
+                if (chunk.size() == 10_000) {
+                    dbManager.addMedicalRecords(chunk, 10_000);
+                    chunk.clear();
+                }
+            }
+            dbManager.addMedicalRecords(chunk, 10_000);
+            System.out.printf("seeded (with the full-text index) in %.1f s%n%n", (System.nanoTime() - start) / 1e9);
+
+            String[][] queries = {
+                {"rare word", "papilledema", null},
+                {"common words", "tension headache", null},
+                {"prefix", "hyperten*", null},
+                {"one patient", "migraine", "patient42"},
+            };
+            for (String[] query : queries) {
+                Bench.score("search: " + query[0] + " (FTS5)", "search", 1, 1, 3, iterationMillis,
+                    i -> dbManager.searchMedicalRecords(query[1], query[2], 0, PAGE));
+                Bench.score("search: " + query[0] + " (scan)", "search", 1, 1, 3, iterationMillis,
+                    i -> scan(dbManager, query[1], query[2]));
+            }
+        } finally {
+            dbManager.closeConnection();
+            Bench.deleteDatabase(database);
+        }
+    }
+
+    /**
+     * Substring match on every word, keeping the first page of hits like the indexed search
+     */
+    private static List<MedicalRecord> scan(DatabaseManager dbManager, String query, String patient) throws Exception {
+        String[] words = query.toLowerCase(Locale.ROOT).replace("*", "").split(" ");
+        List<MedicalRecord> hits = new ArrayList<>();
+        dbManager.streamMedicalRecords(record -> {
+            if (hits.size() >= PAGE || patient != null && !patient.equals(record.getPatientUsername())) {
+                return;
+            }
+            String text = (record.getDiagnosis() + " " + record.getTreatment()).toLowerCase(Locale.ROOT);
+            for (String word : words) {
+                if (!text.contains(word)) {
+                    return;
+                }
+            }
+            hits.add(record);
+        });
+        return hits;
+    }
+}
@@ -0,0 +1,46 @@
+import java.nio.file.Path;
+
+/**
+ * Write throughput against the number of shards
+ * Concurrent threads add single medical records for 10,000 patients, so the writes
+ * spread evenly over the shards; each shard commits on its own writer. Runs with one
+ * transaction per write and with group commit on every shard.
+ *
+ * Usage: ./bench.sh ShardingBenchmark [opsPerThread]
+ */
+public class ShardingBenchmark {
+    private static final int PATIENTS = 10_000;
+
+    public static void main(String[] args) throws Exception {
+        int opsPerThread = args.length > 0 ? Integer.parseInt(args[0]) : 300;
+        System.out.println("=== Sharding Benchmark (" + Runtime.getRuntime().availableProcessors() + " CPUs) ===\n");
+        for (boolean groupCommit : new boolean[] {false, true}) {
+            for (int threads : new int[] {4, 16, 64}) {
+                for (int shards : new int[] {1, 2, 4}) {
+                    run(shards, threads, opsPerThread, groupCommit);
+                }
+                System.out.println();
+            }
+        }
+    }
+
+    private static void run(int shards, int threads, int opsPerThread, boolean groupCommit) throws Exception {
+        Path database = Bench.tempDatabase("sharding");
+        DatabaseManager dbManager = new DatabaseManager(StorageConfig.file(database).shards(shards).readers(1).build());
+        try {
+            if (groupCommit) {
+                dbManager.enableGroupCommit(GroupCommitWriter.DEFAULT_FLUSH_WINDOW_MICROS,
+                    GroupCommitWriter.DEFAULT_MAX_BATCH_SIZE);
+            }
+            String label = shards + (shards == 1 ? " shard, " : " shards, ")
+                + (groupCommit ? "group commit" : "commit per write");
+            Bench.runConcurrent(label, threads, opsPerThread,
+                i -> dbManager.addMedicalRecord("patient" + (i % PATIENTS), "Diagnosis " + i, "Treatment"));
+        } finally {
+            dbManager.closeConnection();
+            for (int i = 0; i < shards; i++) {
+                Bench.deleteDatabase(StorageConfig.shardPath(database, i));
+            }
+        }
+    }
+}
@@ -0,0 +1,164 @@
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Benchmark measuring snapshots and the time until a fresh node serves requests
+ * Seeds two years of appointments around today plus medical records, prescriptions and
+ * users, then:
+ * - takes a VACUUM INTO snapshot while a writer keeps inserting, reporting how many
+ *   writes completed meanwhile and the slowest of them
+ * - writes the snapshot plus hot state image with HealthcareSystem.snapshot
+ * - starts a HealthcareSystem on the copy by scanning every table, and from the image,
+ *   reporting the time until the constructor returns (first booking possible) and until
+ *   the background loads are done
+ *
+ * Usage: ./bench.sh StartupBenchmark [rows] [starts]
+ */
+public class StartupBenchmark {
+    private static final int PATIENTS = 20_000;
+    private static final int DOCTORS = 200;
+    private static final int MEDICINES = 500;
+    private static final LocalDate TODAY = LocalDate.now(ZoneOffset.UTC);
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 500_000;
+        int starts = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        System.out.println("=== Startup Benchmark (" + rows + " appointments, records and prescriptions) ===\n");
+        Path directory = Files.createTempDirectory("startup");
+        Path snapshot = directory.resolve("snapshot");
+        Path database = directory.resolve("live.db");
+        DatabaseManager dbManager = new DatabaseManager(StorageConfig.file(database).readers(4).tuned().build());
+        HealthcareSystem system = null;
+        try {
+            seed(dbManager, rows);
+            snapshotUnderLoad(dbManager, directory.resolve("online.db"));
+
+            system = new HealthcareSystem(dbManager, directory.resolve("journal"));
+            long start = System.nanoTime();
+            if (!system.snapshot(snapshot)) {
+                throw new IllegalStateException("Snapshot failed");
+            }
+            System.out.printf("%-44s %10d ms  (database %.1f MB, image %.1f MB)%n%n",
+                "HealthcareSystem.snapshot (copy + image)", (System.nanoTime() - start) / 1_000_000,
+                Files.size(snapshot.resolve(StorageConfig.DEFAULT_PATH)) / 1e6,
+                Files.size(snapshot.resolve(HotStateImage.FILE_NAME)) / 1e6);
+
+            System.out.printf("%-44s %12s %12s%n", "startup", "serving ms", "warm ms");
+            for (int i = 0; i < starts; i++) {
+                start(snapshot, directory.resolve("journal-full-" + i), false);
+                start(snapshot, directory.resolve("journal-image-" + i), true);
+            }
+        } finally {
+            if (system != null) {
+                system.shutdown();
+            } else {
+                dbManager.closeConnection();
+            }
+            try (Stream<Path> files = Files.walk(directory)) {
+                for (Path path : files.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.deleteIfExists(path);
+                }
+            }
+        }
+    }
+
+    private static void seed(DatabaseManager dbManager, int rows) throws Exception {
+        // One shared hash: hashing every password would dominate the seeding
+        String hash = new PasswordHasher(1_000).hash("secret");
+        try (PreparedStatement ps = dbManager.getConnection().prepareStatement(
+                "INSERT INTO users (username, password, role) VALUES (?, ?, 'PATIENT')")) {
+            dbManager.getConnection().setAutoCommit(false);
+            for (int i = 0; i < PATIENTS; i++) {
+                ps.setString(1, "patient" + i);
+                ps.setString(2, hash);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+            dbManager.getConnection().commit();
+            dbManager.getConnection().setAutoCommit(true);
+        }
+        for (int m = 0; m < MEDICINES; m++) {
+            dbManager.addMedicine("Medicine " + m, 1_000_000);
+        }
+        LocalDate first = TODAY.minusDays(365);
+        List<Appointment> appointments = new ArrayList<>();
+        List<MedicalRecord> records = new ArrayList<>();
+        List<Prescription> prescriptions = new ArrayList<>();
+        for (int i = 0; i < rows; i++) {
+            appointments.add(new Appointment("patient" + (i % PATIENTS), "Dr. Doctor" + (i % DOCTORS),
+                first.plusDays(i / DOCTORS % 730).toString(), i / DOCTORS / 730 % 16));
+            records.add(new MedicalRecord("patient" + (i % PATIENTS), "Diagnosis " + (i % 50), "Treatment " + (i % 40)));
+            prescriptions.add(new Prescription("patient" + (i % PATIENTS), "Medicine " + (i % MEDICINES), 1 + i % 5));
+            if (appointments.size() == 10_000 || i == rows - 1) {
+                dbManager.addAppointments(appointments, 10_000);
+                dbManager.addMedicalRecords(records, 10_000);
+                dbManager.insertPrescriptions(prescriptions);
+                appointments.clear();
+                records.clear();
+                prescriptions.clear();
+            }
+        }
+    }
+
+    private static void snapshotUnderLoad(DatabaseManager dbManager, Path target) throws Exception {
+        AtomicBoolean writing = new AtomicBoolean(true);
+        AtomicLong writes = new AtomicLong();
+        AtomicLong slowestNanos = new AtomicLong();
+        Thread writer = new Thread(() -> {
+            try {
+                while (writing.get()) {
+                    long start = System.nanoTime();
+                    dbManager.addMedicalRecord("patient1", "Cold", "Tea");
+                    slowestNanos.accumulateAndGet(System.nanoTime() - start, Math::max);
+                    writes.incrementAndGet();
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        });
+        writer.start();
+        Thread.sleep(200);
+        slowestNanos.set(0);
+        long before = writes.get();
+        long start = System.nanoTime();
+        long size = dbManager.snapshot(target);
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        long during = writes.get() - before;
+        long slowest = slowestNanos.get();
+        writing.set(false);
+        writer.join();
+        System.out.printf("%-44s %10d ms  (%.1f MB)%n", "DatabaseManager.snapshot (VACUUM INTO)", millis, size / 1e6);
+        System.out.printf("%-44s %10d     (slowest %.1f ms)%n", "  inserts committed during the snapshot",
+            during, slowest / 1e6);
+    }
+
+    private static void start(Path snapshot, Path journalDir, boolean fromImage) throws Exception {
+        long start = System.nanoTime();
+        DatabaseManager dbManager = new DatabaseManager(
+            StorageConfig.file(snapshot.resolve(StorageConfig.DEFAULT_PATH)).readers(4).tuned().build());
+        HealthcareSystem system = fromImage
+            ? new HealthcareSystem(dbManager, journalDir, HotStateImage.read(snapshot.resolve(HotStateImage.FILE_NAME)))
+            : new HealthcareSystem(dbManager, journalDir);
+        try {
+            if (system.bookNextAvailable("patient1", "Dr. Doctor1", TODAY) == null) {
+                throw new IllegalStateException("Booking failed");
+            }
+            long serving = System.nanoTime() - start;
+            system.getWarmup().join();
+            long warm = System.nanoTime() - start;
+            System.out.printf("%-44s %12.1f %12.1f%n", fromImage ? "from hot state image" : "scanning the database",
+                serving / 1e6, warm / 1e6);
+        } finally {
+            system.shutdown();
+        }
+    }
+}
@@ -0,0 +1,33 @@
+import java.nio.file.Path;
+
+/**
+ * Benchmark comparing per-call statement preparation with the per-connection statement cache
+ * Covers addAppointment (writer path) and getUserRole (reader path). The reader path is the
+ * user lookup validateUser does, without the password hash, which would dwarf the statement
+ * preparation being measured.
+ */
+public class StatementCacheBenchmark {
+    private static final int WARMUP = 2_000;
+    private static final int ITERATIONS = 20_000;
+    
+    public static void main(String[] args) throws Exception {
+        System.out.println("=== Statement Cache Benchmark ===\n");
+        run("uncached", 0);
+        run("cached", ConnectionPool.DEFAULT_STATEMENT_CACHE_SIZE);
+    }
+    
+    private static void run(String label, int statementCacheSize) throws Exception {
+        Path database = Bench.tempDatabase("statement-cache");
+        DatabaseManager dbManager = new DatabaseManager(Bench.url(database), 2, statementCacheSize);
+        try {
+            Bench.run("getUserRole (" + label + ")", WARMUP, ITERATIONS,
+                i -> dbManager.getUserRole("admin"));
+            Bench.run("addAppointment (" + label + ")", WARMUP, ITERATIONS,
+                i -> dbManager.addAppointment(new Appointment("patient" + (i % 100), "Dr. Bench", "2024-03-20")));
+            System.out.println("  " + dbManager.getPoolStats() + "\n");
+        } finally {
+            dbManager.closeConnection();
+            Bench.deleteDatabase(database);
+        }
+    }
+}
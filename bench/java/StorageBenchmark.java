@@ -0,0 +1,84 @@
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Benchmark comparing SQLite's default settings with the tuned StorageConfig preset
+ * Each configuration (default file, tuned file, shared in-memory) gets the same
+ * scan workloads on a seeded medical_records table, then the same write workloads
+ * (single-row commits, bulk chunks).
+ *
+ * Usage: ./bench.sh StorageBenchmark [rows] [iterationMillis]
+ */
+public class StorageBenchmark {
+    private static final int PATIENTS = 1_000;
+    private static final int BULK_ROWS = 500;
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        long iterationMillis = args.length > 1 ? Long.parseLong(args[1]) : 1_000;
+        System.out.println("=== Storage Benchmark (" + rows + " rows) ===\n");
+        List<Bench.Score> scores = new ArrayList<>();
+        Path database = Bench.tempDatabase("storage-default");
+        try {
+            scores.addAll(run("default", StorageConfig.file(database).readers(4).build(), rows, iterationMillis));
+        } finally {
+            Bench.deleteDatabase(database);
+        }
+        database = Bench.tempDatabase("storage-tuned");
+        try {
+            scores.addAll(run("tuned", StorageConfig.file(database).readers(4).tuned().build(), rows, iterationMillis));
+        } finally {
+            Bench.deleteDatabase(database);
+        }
+        scores.addAll(run("in-memory", StorageConfig.inMemory().tuned().build(), rows, iterationMillis));
+
+        System.out.println("=== Summary (ops/s) ===");
+        System.out.printf("%-36s %14s %14s %14s%n", "workload", "default", "tuned", "in-memory");
+        int perConfig = scores.size() / 3;
+        for (int i = 0; i < perConfig; i++) {
+            Bench.Score base = scores.get(i);
+            System.out.printf("%-36s %14.1f %14.1f %14.1f%n", base.getName() + " x" + base.getThreads(),
+                base.getMean(), scores.get(perConfig + i).getMean(), scores.get(2 * perConfig + i).getMean());
+        }
+    }
+
+    private static List<Bench.Score> run(String label, StorageConfig config, int rows, long iterationMillis)
+            throws Exception {
+        System.out.println("--- " + label + ": " + config);
+        DatabaseManager dbManager = new DatabaseManager(config);
+        List<Bench.Score> scores = new ArrayList<>();
+        try {
+            long start = System.nanoTime();
+            List<MedicalRecord> seed = new ArrayList<>(rows);
+            for (int i = 0; i < rows; i++) {
+                seed.add(new MedicalRecord("patient" + (i % PATIENTS), "Diagnosis " + i, "Treatment " + i));
+            }
+            dbManager.addMedicalRecords(seed, 5_000);
+            System.out.printf("seeded in %.1f s%n", (System.nanoTime() - start) / 1e9);
+
+            String param = label;
+            // Scans first: the write workloads grow the table by however fast each config writes
+            for (int threads : new int[] {1, 4}) {
+                scores.add(Bench.score("getMedicalRecordsForPatient", param, threads, 1, 3, iterationMillis,
+                    i -> dbManager.getMedicalRecordsForPatient("patient" + (i % PATIENTS), 0, 50)));
+                scores.add(Bench.score("streamMedicalRecords (full scan)", param, threads, 1, 3, iterationMillis,
+                    i -> dbManager.streamMedicalRecords(record -> { })));
+            }
+            for (int threads : new int[] {1, 8}) {
+                scores.add(Bench.score("addMedicalRecord", param, threads, 1, 3, iterationMillis,
+                    i -> dbManager.addMedicalRecord("patient" + (i % PATIENTS), "Diagnosis", "Treatment")));
+            }
+            List<MedicalRecord> bulk = new ArrayList<>(BULK_ROWS);
+            for (int i = 0; i < BULK_ROWS; i++) {
+                bulk.add(new MedicalRecord("patient" + (i % PATIENTS), "Diagnosis", "Treatment"));
+            }
+            scores.add(Bench.score("addMedicalRecords (" + BULK_ROWS + " rows)", param, 1, 1, 3, iterationMillis,
+                i -> dbManager.addMedicalRecords(bulk)));
+            System.out.println();
+        } finally {
+            dbManager.closeConnection();
+        }
+        return scores;
+    }
+}
@@ -0,0 +1,351 @@
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Analytics Engine class keeping live counts for the operations dashboards
+ * Appointments per doctor per day, per-patient activity and medicine usage are kept as
+ * incremental aggregates in LongLongHashMaps keyed by NamePool ids, so queries
+ * cost O(1), or O(k) for k days or k medicines, instead of a table scan. HealthcareSystem
+ * feeds it every successful write. At startup the aggregates are rebuilt by scanning id
+ * ranges of the three tables in parallel, plus the archived appointments and
+ * prescriptions, and merging the partial results.
+ */
+public class AnalyticsEngine {
+    private final NamePool doctors = new NamePool();
+    private final NamePool patients = new NamePool();
+    private final NamePool medicines = new NamePool();
+    private final Aggregates totals = new Aggregates();
+
+    // Medicines ordered by units prescribed, most first; rankOf[id] is the position in ranking
+    private int[] ranking = new int[16];
+    private int[] rankOf = new int[0];
+    private int ranked;
+
+    /**
+     * Builds the aggregates from the database, scanning each table in up to
+     * parallelism id ranges at once
+     */
+    public static AnalyticsEngine rebuild(DatabaseManager dbManager, int parallelism) throws SQLException {
+        AnalyticsEngine engine = new AnalyticsEngine();
+        engine.load(dbManager, parallelism, dbManager.getMaxId("appointments"),
+            dbManager.getMaxId("medical_records"), dbManager.getMaxId("prescriptions"));
+        return engine;
+    }
+
+    /**
+     * Adds the rows up to the given ids and every archived row to the aggregates. Updates
+     * may be recorded while this runs, as long as they are for rows written after the ids
+     * were taken; nothing may be archived meanwhile.
+     */
+    public void load(DatabaseManager dbManager, int parallelism, long maxAppointmentId,
+                     long maxMedicalRecordId, long maxPrescriptionId) throws SQLException {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, parallelism), runnable -> {
+            Thread thread = new Thread(runnable, "analytics-rebuild");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<Aggregates>> parts = new ArrayList<>();
+            for (long[] range : ranges(maxAppointmentId, parallelism)) {
+                parts.add(executor.submit(() -> {
+                    Aggregates part = new Aggregates();
+                    dbManager.streamAppointments(range[0], range[1], appointment -> addAppointment(part, appointment));
+                    return part;
+                }));
+            }
+            // Archived months are outside the id ranges' tables
+            parts.add(executor.submit(() -> {
+                Aggregates part = new Aggregates();
+                dbManager.streamArchivedAppointments(appointment -> addAppointment(part, appointment));
+                return part;
+            }));
+            parts.add(executor.submit(() -> {
+                Aggregates part = new Aggregates();
+                dbManager.streamArchivedPrescriptionUsage(usage -> addPrescription(part, usage));
+                return part;
+            }));
+            for (long[] range : ranges(maxMedicalRecordId, parallelism)) {
+                parts.add(executor.submit(() -> {
+                    Aggregates part = new Aggregates();
+                    dbManager.streamMedicalRecords(range[0], range[1], record ->
+                        part.medicalRecord(patients.id(record.getPatientUsername())));
+                    return part;
+                }));
+            }
+            for (long[] range : ranges(maxPrescriptionId, parallelism)) {
+                parts.add(executor.submit(() -> {
+                    Aggregates part = new Aggregates();
+                    dbManager.streamPrescriptionUsage(range[0], range[1], usage -> addPrescription(part, usage));
+                    return part;
+                }));
+            }
+            for (Future<Aggregates> part : parts) {
+                Aggregates aggregates = part.get();
+                synchronized (this) {
+                    totals.addAll(aggregates);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while rebuilding the analytics", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof SQLException) {
+                throw (SQLException) e.getCause();
+            }
+            throw new SQLException("Could not rebuild the analytics", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        synchronized (this) {
+            rankMedicines();
+        }
+    }
+
+    private void addAppointment(Aggregates part, Appointment appointment) {
+        if (appointment.getDoctorName() != null && appointment.getDate() != null) {
+            part.appointment(patients.id(appointment.getPatientUsername()), doctors.id(appointment.getDoctorName()),
+                LocalDate.parse(appointment.getDate()).toEpochDay());
+        }
+    }
+
+    private void addPrescription(Aggregates part, DatabaseManager.PrescriptionUsage usage) {
+        if (usage.getMedicine() != null) {
+            part.prescription(patients.id(usage.getPatientUsername()), medicines.id(usage.getMedicine()),
+                usage.getQuantity(), usage.getEpochDay());
+        }
+    }
+
+    /**
+     * Splits ids 1..maxId into at most parts contiguous ranges
+     */
+    static List<long[]> ranges(long maxId, int parts) {
+        List<long[]> ranges = new ArrayList<>();
+        long step = Math.max(1, (maxId + parts - 1) / Math.max(1, parts));
+        for (long from = 1; from <= maxId; from += step) {
+            ranges.add(new long[] {from, Math.min(maxId, from + step - 1)});
+        }
+        return ranges;
+    }
+
+    // Updates
+
+    public synchronized void recordAppointment(String patientUsername, String doctorName, LocalDate day) {
+        totals.appointment(patients.id(patientUsername), doctors.id(doctorName), day.toEpochDay());
+    }
+
+    public synchronized void recordMedicalRecord(String patientUsername) {
+        totals.medicalRecord(patients.id(patientUsername));
+    }
+
+    public synchronized void recordPrescription(String patientUsername, String medicine, int quantity, LocalDate day) {
+        int id = medicines.id(medicine);
+        totals.prescription(patients.id(patientUsername), id, quantity, day.toEpochDay());
+        promote(id);
+    }
+
+    // Queries
+
+    public synchronized long getAppointmentCount(String doctorName, LocalDate day) {
+        int id = doctors.find(doctorName);
+        return id == NamePool.NONE ? 0 : totals.doctorDays.get(key(id, day.toEpochDay()));
+    }
+
+    /**
+     * Appointments per day from one date to another (inclusive); index 0 is the first day
+     */
+    public synchronized long[] getAppointmentCounts(String doctorName, LocalDate from, LocalDate to) {
+        long first = from.toEpochDay();
+        long[] counts = new long[(int) Math.max(0, to.toEpochDay() - first + 1)];
+        int id = doctors.find(doctorName);
+        if (id != NamePool.NONE) {
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = totals.doctorDays.get(key(id, first + i));
+            }
+        }
+        return counts;
+    }
+
+    public synchronized long getAppointmentCount(String doctorName) {
+        return count(totals.doctorAppointments, doctors.find(doctorName));
+    }
+
+    public synchronized long getPatientAppointmentCount(String patientUsername) {
+        return count(totals.patientAppointments, patients.find(patientUsername));
+    }
+
+    public synchronized long getPatientMedicalRecordCount(String patientUsername) {
+        return count(totals.patientRecords, patients.find(patientUsername));
+    }
+
+    public synchronized long getPatientPrescriptionCount(String patientUsername) {
+        return count(totals.patientPrescriptions, patients.find(patientUsername));
+    }
+
+    /**
+     * The k medicines with the most units prescribed, most first
+     */
+    public synchronized List<MedicineUsage> getTopMedicines(int k) {
+        List<MedicineUsage> top = new ArrayList<>();
+        for (int i = 0; i < Math.min(k, ranked); i++) {
+            int id = ranking[i];
+            top.add(new MedicineUsage(medicines.name(id), totals.medicinePrescriptions.get(id),
+                totals.medicineUnits.get(id)));
+        }
+        return top;
+    }
+
+    public synchronized long getUnitsPrescribed(String medicine) {
+        return count(totals.medicineUnits, medicines.find(medicine));
+    }
+
+    public synchronized long getUnitsPrescribed(String medicine, LocalDate day) {
+        int id = medicines.find(medicine);
+        return id == NamePool.NONE ? 0 : totals.medicineDays.get(key(id, day.toEpochDay()));
+    }
+
+    /**
+     * Average units prescribed per day over the given number of days ending on (and including) the last day
+     */
+    public synchronized double getBurnRate(String medicine, LocalDate lastDay, int days) {
+        int id = medicines.find(medicine);
+        if (id == NamePool.NONE || days <= 0) {
+            return 0;
+        }
+        long last = lastDay.toEpochDay();
+        long units = 0;
+        for (long day = last - days + 1; day <= last; day++) {
+            units += totals.medicineDays.get(key(id, day));
+        }
+        return (double) units / days;
+    }
+
+    // Medicine ranking
+    // Totals only grow, so a medicine moves up past the ones it overtook: O(1) amortized
+    // per prescription and O(k) for the top k
+
+    private void promote(int id) {
+        if (id >= rankOf.length || rankOf[id] < 0) {
+            ensureRanked(id);
+        }
+        long units = totals.medicineUnits.get(id);
+        int position = rankOf[id];
+        while (position > 0 && totals.medicineUnits.get(ranking[position - 1]) < units) {
+            int other = ranking[position - 1];
+            ranking[position] = other;
+            rankOf[other] = position;
+            position--;
+        }
+        ranking[position] = id;
+        rankOf[id] = position;
+    }
+
+    private void ensureRanked(int id) {
+        if (id >= rankOf.length) {
+            int length = rankOf.length;
+            rankOf = Arrays.copyOf(rankOf, Math.max(id + 1, length * 2));
+            Arrays.fill(rankOf, length, rankOf.length, -1);
+        }
+        if (ranked == ranking.length) {
+            ranking = Arrays.copyOf(ranking, ranking.length * 2);
+        }
+        ranking[ranked] = id;
+        rankOf[id] = ranked;
+        ranked++;
+    }
+
+    private void rankMedicines() {
+        // Ranks from scratch: a load may have added to medicines that were already ranked
+        ranked = 0;
+        Arrays.fill(rankOf, -1);
+        List<Integer> ids = new ArrayList<>();
+        totals.medicineUnits.forEach((id, units) -> ids.add((int) id));
+        ids.sort((a, b) -> Long.compare(totals.medicineUnits.get(b), totals.medicineUnits.get(a)));
+        for (int id : ids) {
+            ensureRanked(id);
+        }
+    }
+
+    private static long count(LongLongHashMap counts, int id) {
+        // NONE is also the id of null names, so it is not looked up for unknown ones
+        return id == NamePool.NONE ? 0 : counts.get(id);
+    }
+
+    private static long key(int id, long epochDay) {
+        return ((long) id << 32) | (epochDay & 0xffffffffL);
+    }
+
+    /**
+     * Counters of one pass: the live totals, or one partition of a rebuild
+     */
+    static final class Aggregates {
+        final LongLongHashMap doctorDays = new LongLongHashMap();
+        final LongLongHashMap doctorAppointments = new LongLongHashMap();
+        final LongLongHashMap patientAppointments = new LongLongHashMap();
+        final LongLongHashMap patientRecords = new LongLongHashMap();
+        final LongLongHashMap patientPrescriptions = new LongLongHashMap();
+        final LongLongHashMap medicineUnits = new LongLongHashMap();
+        final LongLongHashMap medicinePrescriptions = new LongLongHashMap();
+        final LongLongHashMap medicineDays = new LongLongHashMap();
+
+        void appointment(int patient, int doctor, long epochDay) {
+            doctorDays.add(key(doctor, epochDay), 1);
+            doctorAppointments.add(doctor, 1);
+            patientAppointments.add(patient, 1);
+        }
+
+        void medicalRecord(int patient) {
+            patientRecords.add(patient, 1);
+        }
+
+        void prescription(int patient, int medicine, int quantity, long epochDay) {
+            patientPrescriptions.add(patient, 1);
+            medicineUnits.add(medicine, quantity);
+            medicinePrescriptions.add(medicine, 1);
+            if (epochDay != DatabaseManager.PrescriptionUsage.NO_DAY) {
+                medicineDays.add(key(medicine, epochDay), quantity);
+            }
+        }
+
+        void addAll(Aggregates other) {
+            doctorDays.addAll(other.doctorDays);
+            doctorAppointments.addAll(other.doctorAppointments);
+            patientAppointments.addAll(other.patientAppointments);
+            patientRecords.addAll(other.patientRecords);
+            patientPrescriptions.addAll(other.patientPrescriptions);
+            medicineUnits.addAll(other.medicineUnits);
+            medicinePrescriptions.addAll(other.medicinePrescriptions);
+            medicineDays.addAll(other.medicineDays);
+        }
+    }
+
+    /**
+     * Prescription totals of one medicine
+     */
+    public static final class MedicineUsage {
+        private final String medicine;
+        private final long prescriptions;
+        private final long units;
+
+        MedicineUsage(String medicine, long prescriptions, long units) {
+            this.medicine = medicine;
+            this.prescriptions = prescriptions;
+            this.units = units;
+        }
+
+        public String getMedicine() { return medicine; }
+        public long getPrescriptions() { return prescriptions; }
+        public long getUnits() { return units; }
+
+        @Override
+        public String toString() {
+            return medicine + ": " + units + " units in " + prescriptions + " prescriptions";
+        }
+    }
+}
@@ -2,18 +2,40 @@
  * Appointment class following Single Responsibility Principle
  */
 public class Appointment {
-    private String patientUsername;
-    private String doctorName;
-    private String date;
+    /** Slot value for appointments booked before slots existed */
+    public static final int NO_SLOT = -1;
+    
+    private final long id;
+    private final String patientUsername;
+    private final String doctorName;
+    private final String date;
+    private final int slot;
     
     public Appointment(String patientUsername, String doctorName, String date) {
+        this(0, patientUsername, doctorName, date, NO_SLOT);
+    }
+    
+    public Appointment(String patientUsername, String doctorName, String date, int slot) {
+        this(0, patientUsername, doctorName, date, slot);
+    }
+    
+    public Appointment(long id, String patientUsername, String doctorName, String date) {
+        this(id, patientUsername, doctorName, date, NO_SLOT);
+    }
+    
+    public Appointment(long id, String patientUsername, String doctorName, String date, int slot) {
+        this.id = id;
         this.patientUsername = patientUsername;
         this.doctorName = doctorName;
         this.date = date;
+        this.slot = slot;
     }
     
     // Getters
+    public long getId() { return id; }
     public String getPatientUsername() { return patientUsername; }
     public String getDoctorName() { return doctorName; }
     public String getDate() { return date; }
+    public int getSlot() { return slot; }
+    public boolean hasSlot() { return slot != NO_SLOT; }
 } 
\ No newline at end of file
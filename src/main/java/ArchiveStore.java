@@ -0,0 +1,271 @@
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
+import java.util.Collections;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+import org.sqlite.SQLiteConfig;
+
+/**
+ * Archive Store class for the monthly partitions of one database's old appointments and prescriptions
+ * Each month is a SQLite file of its own, named yyyy-MM.db, in a directory next to the
+ * database (healthcare.db archives into healthcare-archive/). A partition has the columns
+ * of the hot tables and keeps their ids. Rows are moved on the database's writer, which
+ * attaches the partition and copies and deletes the month in one transaction; partitions
+ * are read through short-lived read-only connections, so any number of months can be read
+ * without running into SQLite's limit on attached databases.
+ */
+final class ArchiveStore {
+    private static final int BUSY_TIMEOUT_MILLIS = 5_000;
+    private static final String APPOINTMENT_COLUMNS = "id, patient_username, doctor_name, appointment_date, slot";
+    private static final String PRESCRIPTION_COLUMNS = "id, patient_username, medicine, quantity, prescription_date";
+    private static final String[] SCHEMA = {
+        """
+        CREATE TABLE IF NOT EXISTS archive.appointments (
+            id INTEGER PRIMARY KEY,
+            patient_username TEXT,
+            doctor_name TEXT,
+            appointment_date INTEGER,
+            slot INTEGER
+        )
+        """,
+        """
+        CREATE TABLE IF NOT EXISTS archive.prescriptions (
+            id INTEGER PRIMARY KEY,
+            patient_username TEXT,
+            medicine TEXT,
+            quantity INTEGER,
+            prescription_date TEXT
+        )
+        """,
+        "CREATE INDEX IF NOT EXISTS archive.idx_appointments_patient ON appointments (patient_username)",
+        "CREATE INDEX IF NOT EXISTS archive.idx_appointments_doctor_date ON appointments (doctor_name, appointment_date)",
+        "CREATE INDEX IF NOT EXISTS archive.idx_prescriptions_patient ON prescriptions (patient_username)",
+    };
+
+    /**
+     * Work run against one partition through a read-only connection
+     */
+    @FunctionalInterface
+    interface PartitionWork<T> {
+        T run(Connection connection) throws SQLException;
+    }
+
+    private final Path directory;
+    private final NavigableSet<YearMonth> months = new ConcurrentSkipListSet<>();
+
+    ArchiveStore(Path directory) throws IOException {
+        this.directory = directory;
+        if (Files.isDirectory(directory)) {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*.db")) {
+                for (Path file : files) {
+                    String name = file.getFileName().toString();
+                    try {
+                        months.add(YearMonth.parse(name.substring(0, name.length() - 3)));
+                    } catch (DateTimeParseException e) {
+                        // Not a partition
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Archive directory of a database file: healthcare.db archives into healthcare-archive
+     */
+    static Path directoryOf(Path database) {
+        String name = database.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return database.resolveSibling((dot > 0 ? name.substring(0, dot) : name) + "-archive");
+    }
+
+    Path getDirectory() {
+        return directory;
+    }
+
+    Path partition(YearMonth month) {
+        return directory.resolve(month + ".db");
+    }
+
+    /**
+     * Months that have a partition, oldest first
+     */
+    NavigableSet<YearMonth> getMonths() {
+        return Collections.unmodifiableNavigableSet(months);
+    }
+
+    /**
+     * Archived months from first to last inclusive; null bounds are open
+     */
+    NavigableSet<YearMonth> getMonths(YearMonth first, YearMonth last) {
+        if (first != null && last != null && first.isAfter(last)) {
+            return Collections.emptyNavigableSet();
+        }
+        NavigableSet<YearMonth> range = months;
+        if (first != null) {
+            range = range.tailSet(first, true);
+        }
+        if (last != null) {
+            range = range.headSet(last, true);
+        }
+        return Collections.unmodifiableNavigableSet(range);
+    }
+
+    /**
+     * Oldest month that still has appointments or prescriptions in the hot tables of the
+     * connection's database, or null when both are empty
+     */
+    static YearMonth oldestHotMonth(Connection connection) throws SQLException {
+        YearMonth oldest = null;
+        try (Statement stmt = connection.createStatement()) {
+            try (ResultSet rs = stmt.executeQuery("SELECT MIN(appointment_date) FROM appointments")) {
+                long epochDay = rs.next() ? rs.getLong(1) : 0;
+                if (!rs.wasNull()) {
+                    oldest = YearMonth.from(LocalDate.ofEpochDay(epochDay));
+                }
+            }
+            try (ResultSet rs = stmt.executeQuery("SELECT MIN(prescription_date) FROM prescriptions")) {
+                String date = rs.next() ? rs.getString(1) : null;
+                YearMonth month = null;
+                try {
+                    month = date != null && date.length() >= 7 ? YearMonth.parse(date.substring(0, 7)) : null;
+                } catch (DateTimeParseException e) {
+                    // Not a date SQLite wrote; such rows are never archived
+                }
+                if (month != null && (oldest == null || month.isBefore(oldest))) {
+                    oldest = month;
+                }
+            }
+        }
+        return oldest;
+    }
+
+    /**
+     * Moves the month's appointments and prescriptions from the connection's hot tables
+     * into the month's partition and returns the number of rows moved. The connection must
+     * be the database's writer, outside a transaction.
+     *
+     * The copy and the delete commit together, but SQLite only makes a transaction over
+     * several files atomic in rollback journal mode: with the database in WAL mode a crash
+     * can leave a month's rows in both places. Copies ignore ids the partition already has,
+     * so running the move again finishes it, and readers drop the duplicates meanwhile.
+     */
+    long move(Connection connection, YearMonth month) throws SQLException {
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new SQLException("Cannot create the archive directory " + directory, e);
+        }
+        try (PreparedStatement attach = connection.prepareStatement("ATTACH DATABASE ? AS archive")) {
+            attach.setString(1, partition(month).toString());
+            attach.execute();
+        }
+        long moved = 0;
+        try (Statement stmt = connection.createStatement()) {
+            connection.setAutoCommit(false);
+            try {
+                for (String ddl : SCHEMA) {
+                    stmt.execute(ddl);
+                }
+                long firstDay = month.atDay(1).toEpochDay();
+                long nextDay = month.plusMonths(1).atDay(1).toEpochDay();
+                moved += copyAndDelete(connection, "appointments", APPOINTMENT_COLUMNS,
+                    "appointment_date >= ? AND appointment_date < ?", firstDay, nextDay);
+                // prescription_date is CURRENT_TIMESTAMP text, which sorts as it reads
+                moved += copyAndDelete(connection, "prescriptions", PRESCRIPTION_COLUMNS,
+                    "prescription_date >= ? AND prescription_date < ?",
+                    month.atDay(1).toString(), month.plusMonths(1).atDay(1).toString());
+                connection.commit();
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+                stmt.execute("DETACH DATABASE archive");
+            }
+        }
+        months.add(month);
+        return moved;
+    }
+
+    /**
+     * Moves the rows matching condition from another partition of the month, open on
+     * connection, into this store's partition of the month and returns the number moved.
+     * Used by ShardRebalancer: both files are put in rollback journal mode, so the move
+     * commits on both or on neither. Rows keep their ids, which are unique across shards.
+     */
+    long adopt(Connection connection, YearMonth month, String condition) throws SQLException {
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new SQLException("Cannot create the archive directory " + directory, e);
+        }
+        try (PreparedStatement attach = connection.prepareStatement("ATTACH DATABASE ? AS archive")) {
+            attach.setString(1, partition(month).toString());
+            attach.execute();
+        }
+        long moved = 0;
+        try (Statement stmt = connection.createStatement()) {
+            try {
+                stmt.execute("PRAGMA main.journal_mode = DELETE");
+                stmt.execute("PRAGMA archive.journal_mode = DELETE");
+                connection.setAutoCommit(false);
+                for (String ddl : SCHEMA) {
+                    stmt.execute(ddl);
+                }
+                for (String[] table : new String[][] {{"appointments", APPOINTMENT_COLUMNS},
+                                                      {"prescriptions", PRESCRIPTION_COLUMNS}}) {
+                    stmt.executeUpdate("INSERT OR IGNORE INTO archive." + table[0] + " (" + table[1] + ") SELECT "
+                        + table[1] + " FROM main." + table[0] + " WHERE " + condition);
+                    moved += stmt.executeUpdate("DELETE FROM main." + table[0] + " WHERE " + condition);
+                }
+                connection.commit();
+            } catch (SQLException | RuntimeException e) {
+                if (!connection.getAutoCommit()) {
+                    connection.rollback();
+                }
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+                stmt.execute("DETACH DATABASE archive");
+            }
+        }
+        months.add(month);
+        return moved;
+    }
+
+    private static int copyAndDelete(Connection connection, String table, String columns, String where,
+                                     Object from, Object to) throws SQLException {
+        try (PreparedStatement copy = connection.prepareStatement("INSERT OR IGNORE INTO archive." + table
+                 + " (" + columns + ") SELECT " + columns + " FROM main." + table + " WHERE " + where);
+             PreparedStatement delete = connection.prepareStatement("DELETE FROM main." + table + " WHERE " + where)) {
+            copy.setObject(1, from);
+            copy.setObject(2, to);
+            copy.executeUpdate();
+            delete.setObject(1, from);
+            delete.setObject(2, to);
+            return delete.executeUpdate();
+        }
+    }
+
+    /**
+     * Runs work on a read-only connection to the month's partition
+     */
+    <T> T read(YearMonth month, PartitionWork<T> work) throws SQLException {
+        SQLiteConfig config = new SQLiteConfig();
+        config.setReadOnly(true);
+        config.setBusyTimeout(BUSY_TIMEOUT_MILLIS);
+        try (Connection connection = config.createConnection("jdbc:sqlite:" + partition(month))) {
+            return work.run(connection);
+        }
+    }
+}
@@ -0,0 +1,243 @@
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Async facade over HealthcareSystem returning CompletableFutures
+ * Follows the database's concurrency model: writes go through one bounded queue
+ * drained by a single writer thread (SQLite has a single writer anyway), while reads
+ * fan out on virtual threads, or a fixed pool sized to the readers on Java 17.
+ * Futures fail with a HealthcareException whose code says what went wrong.
+ */
+public class AsyncHealthcareSystem implements AutoCloseable {
+    public static final int DEFAULT_WRITE_QUEUE_CAPACITY = 10_000;
+
+    /**
+     * A unit of work run on one of the executors
+     */
+    @FunctionalInterface
+    private interface Task<T> {
+        T call() throws HealthcareException, SQLException;
+    }
+
+    private final HealthcareSystem system;
+    private final DatabaseManager dbManager;
+    private final ThreadPoolExecutor writer;
+    private final ExecutorService readers;
+    private volatile boolean closed;
+
+    public AsyncHealthcareSystem(HealthcareSystem system) {
+        this(system, DEFAULT_WRITE_QUEUE_CAPACITY);
+    }
+
+    public AsyncHealthcareSystem(HealthcareSystem system, int writeQueueCapacity) {
+        this.system = system;
+        this.dbManager = system.getDatabaseManager();
+        this.writer = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<>(writeQueueCapacity), runnable -> {
+                Thread thread = new Thread(runnable, "healthcare-writer");
+                thread.setDaemon(true);
+                return thread;
+            });
+        // Without virtual threads, more platform threads than reader connections only queue
+        int readerThreads = dbManager.getPoolStats().getTotalConnections() - 1;
+        this.readers = VirtualThreads.newPerTaskExecutor("healthcare-reader-", Math.max(1, readerThreads));
+    }
+
+    // Authentication
+    public CompletableFuture<Boolean> login(String username, String password) {
+        return system.loginAsync(username, password).handle((valid, failure) -> {
+            if (failure == null) {
+                return valid;
+            }
+            Throwable cause = failure instanceof CompletionException ? failure.getCause() : failure;
+            if (cause instanceof HealthcareException) {
+                throw new CompletionException(cause);
+            }
+            throw new CompletionException(cause instanceof SQLException
+                ? HealthcareException.from((SQLException) cause)
+                : new HealthcareException(HealthcareException.ErrorCode.INTERNAL_ERROR, cause.getMessage(), cause));
+        });
+    }
+
+    // Writes, serialized on the writer queue
+    /**
+     * The password is hashed on the password-hasher pool first; only the insert waits
+     * for the writer, so bookings queued meanwhile do not wait for the hash
+     */
+    public CompletableFuture<Void> registerPatient(String username, String password) {
+        if (closed) {
+            return CompletableFuture.failedFuture(shutDown());
+        }
+        CompletableFuture<String> hashed;
+        try {
+            hashed = system.hashPasswordAsync(password);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(new HealthcareException(
+                HealthcareException.ErrorCode.OVERLOADED, "Password hashing queue is full", e));
+        }
+        return hashed.handle((passwordHash, failure) -> {
+            if (failure != null) {
+                Throwable cause = failure instanceof CompletionException ? failure.getCause() : failure;
+                throw new CompletionException(new HealthcareException(
+                    HealthcareException.ErrorCode.INTERNAL_ERROR, cause.getMessage(), cause));
+            }
+            return passwordHash;
+        }).thenCompose(passwordHash -> write(() -> {
+            system.registerHashed(username, passwordHash);
+            return null;
+        }));
+    }
+
+    /**
+     * Books the earliest free slot of the day; fails with SLOT_UNAVAILABLE if the day is full
+     */
+    public CompletableFuture<Appointment> bookAppointment(String patientUsername, String doctorName, LocalDate date) {
+        return write(() -> system.book(patientUsername, doctorName, date));
+    }
+
+    public CompletableFuture<Appointment> bookAppointment(String patientUsername, String doctorName,
+                                                          LocalDate date, int slot) {
+        return write(() -> system.book(patientUsername, doctorName, date, slot));
+    }
+
+    public CompletableFuture<Appointment> bookNextAvailable(String patientUsername, String doctorName, LocalDate from) {
+        return write(() -> system.bookNext(patientUsername, doctorName, from));
+    }
+
+    public CompletableFuture<Void> addMedicalRecord(String patientUsername, String diagnosis, String treatment) {
+        return write(() -> {
+            system.record(patientUsername, diagnosis, treatment);
+            return null;
+        });
+    }
+
+    /**
+     * Fails with INSUFFICIENT_STOCK if the medicine is unknown or short
+     */
+    public CompletableFuture<Void> addPrescription(String patientUsername, String medicine, int quantity) {
+        return write(() -> {
+            system.prescribe(patientUsername, medicine, quantity);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Void> addMedicine(String medicine, int quantity) {
+        return write(() -> {
+            system.stock(medicine, quantity);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Void> restockMedicine(String medicine, int quantity) {
+        return write(() -> {
+            system.restock(medicine, quantity);
+            return null;
+        });
+    }
+
+    // Reads, fanned out
+    public CompletableFuture<PatientView> getPatientView(String patientUsername) {
+        return read(() -> system.getPatientViewCache().get(patientUsername));
+    }
+
+    public CompletableFuture<List<Appointment>> getAppointmentsForPatient(String patientUsername, long afterId, int limit) {
+        return read(() -> dbManager.getAppointmentsForPatient(patientUsername, afterId, limit));
+    }
+
+    public CompletableFuture<List<Appointment>> getAppointmentsForDoctor(String doctorName, LocalDate from, LocalDate to) {
+        return read(() -> dbManager.getAppointmentsForDoctor(doctorName, from, to));
+    }
+
+    public CompletableFuture<List<MedicalRecord>> getMedicalRecordsForPatient(String patientUsername, long afterId, int limit) {
+        return read(() -> dbManager.getMedicalRecordsForPatient(patientUsername, afterId, limit));
+    }
+
+    public CompletableFuture<List<Prescription>> getPrescriptionsForPatient(String patientUsername, long afterId, int limit) {
+        return read(() -> dbManager.getPrescriptionsForPatient(patientUsername, afterId, limit));
+    }
+
+    // In-memory lookups complete immediately
+    public CompletableFuture<ScheduleEngine.Slot> findNextFreeSlot(String doctorName, LocalDate from) {
+        return CompletableFuture.completedFuture(system.findNextFreeSlot(doctorName, from));
+    }
+
+    public CompletableFuture<Map<String, Integer>> getMedicineInventory() {
+        return CompletableFuture.completedFuture(system.getMedicineInventory());
+    }
+
+    /** Writes waiting for the writer thread */
+    public int getPendingWrites() {
+        return writer.getQueue().size();
+    }
+
+    public boolean isUsingVirtualThreads() {
+        return VirtualThreads.isAvailable();
+    }
+
+    private <T> CompletableFuture<T> write(Task<T> task) {
+        return submit(writer, task);
+    }
+
+    private <T> CompletableFuture<T> read(Task<T> task) {
+        return submit(readers, task);
+    }
+
+    private <T> CompletableFuture<T> submit(ExecutorService executor, Task<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        if (closed) {
+            future.completeExceptionally(shutDown());
+            return future;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    future.complete(task.call());
+                } catch (HealthcareException e) {
+                    future.completeExceptionally(e);
+                } catch (SQLException e) {
+                    future.completeExceptionally(HealthcareException.from(e));
+                } catch (IllegalArgumentException e) {
+                    future.completeExceptionally(new HealthcareException(
+                        HealthcareException.ErrorCode.INVALID_ARGUMENT, e.getMessage(), e));
+                } catch (RuntimeException e) {
+                    future.completeExceptionally(new HealthcareException(
+                        HealthcareException.ErrorCode.INTERNAL_ERROR, e.getMessage(), e));
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(closed ? shutDown() : new HealthcareException(
+                HealthcareException.ErrorCode.OVERLOADED, "Write queue is full", e));
+        }
+        return future;
+    }
+
+    private static HealthcareException shutDown() {
+        return new HealthcareException(HealthcareException.ErrorCode.SHUT_DOWN, "Healthcare system is shut down");
+    }
+
+    /**
+     * Stops accepting work and waits for queued writes to finish; the wrapped
+     * HealthcareSystem stays open
+     */
+    @Override
+    public void close() {
+        closed = true;
+        writer.shutdown();
+        readers.shutdown();
+        try {
+            writer.awaitTermination(30, TimeUnit.SECONDS);
+            readers.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,153 @@
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Authentication Cache class remembering recently verified credentials
+ * Bounded LRU with a time-to-live. Entries keep an HMAC of the password under a
+ * per-process random key, never the password itself, so a repeat login costs one
+ * fast HMAC instead of a database lookup and a slow password hash.
+ */
+public class AuthCache {
+    public static final int DEFAULT_MAX_ENTRIES = 10_000;
+    public static final long DEFAULT_TTL_MILLIS = 5 * 60 * 1000;
+    
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final LinkedHashMap<String, Entry> entries;
+    private final SecretKeySpec key;
+    private final ThreadLocal<Mac> macs;
+    
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    
+    public AuthCache() {
+        this(DEFAULT_MAX_ENTRIES, DEFAULT_TTL_MILLIS);
+    }
+    
+    public AuthCache(int maxEntries, long ttlMillis) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("maxEntries must be at least 1");
+        }
+        this.maxEntries = maxEntries;
+        this.ttlNanos = ttlMillis * 1_000_000;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() <= AuthCache.this.maxEntries) {
+                    return false;
+                }
+                evictions.increment();
+                return true;
+            }
+        };
+        byte[] secret = new byte[32];
+        new SecureRandom().nextBytes(secret);
+        this.key = new SecretKeySpec(secret, "HmacSHA256");
+        this.macs = ThreadLocal.withInitial(() -> {
+            try {
+                Mac mac = Mac.getInstance("HmacSHA256");
+                mac.init(key);
+                return mac;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("HmacSHA256 is not available", e);
+            }
+        });
+    }
+    
+    /**
+     * True only if these exact credentials were verified within the TTL
+     */
+    public boolean verify(String username, String password) {
+        if (username == null || password == null) {
+            return false;
+        }
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(username);
+            if (entry != null && System.nanoTime() - entry.verifiedAt > ttlNanos) {
+                entries.remove(username);
+                expirations.increment();
+                entry = null;
+            }
+        }
+        if (entry != null && MessageDigest.isEqual(entry.digest, digest(username, password))) {
+            hits.increment();
+            return true;
+        }
+        misses.increment();
+        return false;
+    }
+    
+    public void put(String username, String password) {
+        Entry entry = new Entry(digest(username, password), System.nanoTime());
+        synchronized (entries) {
+            entries.put(username, entry);
+        }
+    }
+    
+    public void invalidate(String username) {
+        synchronized (entries) {
+            entries.remove(username);
+        }
+    }
+    
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+    
+    /**
+     * Drops expired entries; called opportunistically, lookups also expire lazily
+     */
+    public void purgeExpired() {
+        long now = System.nanoTime();
+        synchronized (entries) {
+            Iterator<Entry> it = entries.values().iterator();
+            while (it.hasNext()) {
+                if (now - it.next().verifiedAt > ttlNanos) {
+                    it.remove();
+                    expirations.increment();
+                }
+            }
+        }
+    }
+    
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+    
+    public long getHits() { return hits.sum(); }
+    public long getMisses() { return misses.sum(); }
+    public long getEvictions() { return evictions.sum(); }
+    public long getExpirations() { return expirations.sum(); }
+    
+    private byte[] digest(String username, String password) {
+        Mac mac = macs.get();
+        mac.update(username.getBytes(StandardCharsets.UTF_8));
+        mac.update((byte) 0);
+        return mac.doFinal(password.getBytes(StandardCharsets.UTF_8));
+    }
+    
+    private static final class Entry {
+        private final byte[] digest;
+        private final long verifiedAt;
+        
+        Entry(byte[] digest, long verifiedAt) {
+            this.digest = digest;
+            this.verifiedAt = verifiedAt;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Batch Result class holding the per-row outcome of a bulk insert
+ * Rows of a chunk whose transaction was rolled back are marked as failed.
+ */
+public class BatchResult {
+    private final int[] updateCounts;
+    private final List<SQLException> errors;
+    
+    BatchResult(int[] updateCounts, List<SQLException> errors) {
+        this.updateCounts = updateCounts;
+        this.errors = Collections.unmodifiableList(new ArrayList<>(errors));
+    }
+    
+    /**
+     * Result where every row failed for the same reason
+     */
+    static BatchResult failed(int rows, SQLException error) {
+        int[] counts = new int[rows];
+        Arrays.fill(counts, Statement.EXECUTE_FAILED);
+        return new BatchResult(counts, List.of(error));
+    }
+    
+    public int size() {
+        return updateCounts.length;
+    }
+    
+    public boolean isSuccess(int row) {
+        return updateCounts[row] != Statement.EXECUTE_FAILED;
+    }
+    
+    /**
+     * JDBC update count for the row, or Statement.EXECUTE_FAILED
+     */
+    public int getUpdateCount(int row) {
+        return updateCounts[row];
+    }
+    
+    public int getSuccessCount() {
+        int count = 0;
+        for (int i = 0; i < updateCounts.length; i++) {
+            if (isSuccess(i)) {
+                count++;
+            }
+        }
+        return count;
+    }
+    
+    public int getFailureCount() {
+        return updateCounts.length - getSuccessCount();
+    }
+    
+    public boolean isAllSuccessful() {
+        return getFailureCount() == 0;
+    }
+    
+    /**
+     * One error per failed chunk, in chunk order
+     */
+    public List<SQLException> getErrors() {
+        return errors;
+    }
+}
@@ -0,0 +1,158 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+
+/**
+ * Change Event class giving a view of one record of the ChangeLog
+ * The view reads straight from the log's mapped segment, so handing events to a
+ * consumer copies nothing; strings are only decoded when a getter asks for them.
+ * A view is reused by its reader and is only valid inside the visit it was passed to.
+ *
+ * Fields by type:
+ * APPOINTMENT     key = patient, text = doctor, day = appointment date, slot
+ * MEDICAL_RECORD  key = patient, text = diagnosis, detail = treatment
+ * PRESCRIPTION    key = patient, text = medicine, quantity
+ * USER            key = username, text = role (never the password hash)
+ * STOCK           key = medicine, quantity = stock level after the change
+ */
+public final class ChangeEvent {
+    /**
+     * What was written
+     */
+    public enum Type {
+        APPOINTMENT,
+        MEDICAL_RECORD,
+        PRESCRIPTION,
+        USER,
+        STOCK;
+
+        private static final Type[] VALUES = values();
+
+        static Type of(int ordinal) {
+            return VALUES[ordinal];
+        }
+    }
+
+    // Record layout: length (of everything after it), CRC32 of everything after the
+    // CRC, offset, timestamp, type, row id, day, slot or quantity, then the key, text
+    // and detail strings as a length (-1 for null) and UTF-8 bytes
+    static final int LENGTH = 0;
+    static final int CRC = 4;
+    static final int OFFSET = 8;
+    static final int TIMESTAMP = 16;
+    static final int TYPE = 24;
+    static final int ROW_ID = 25;
+    static final int DAY = 33;
+    static final int QUANTITY = 41;
+    static final int STRINGS = 45;
+    static final long NO_DAY = Long.MIN_VALUE;
+
+    private ByteBuffer buffer;
+    private int start;
+
+    ChangeEvent() {
+    }
+
+    ChangeEvent wrap(ByteBuffer buffer, int start) {
+        this.buffer = buffer;
+        this.start = start;
+        return this;
+    }
+
+    /**
+     * Position of the event in the log; consumers resume from getOffset() + 1
+     */
+    public long getOffset() {
+        return buffer.getLong(start + OFFSET);
+    }
+
+    /**
+     * When the change was appended, after its transaction committed
+     */
+    public long getTimestampMillis() {
+        return buffer.getLong(start + TIMESTAMP);
+    }
+
+    public Type getType() {
+        return Type.of(buffer.get(start + TYPE));
+    }
+
+    /**
+     * Id of the inserted appointment, medical record or prescription; 0 for users and stock
+     */
+    public long getRowId() {
+        return buffer.getLong(start + ROW_ID);
+    }
+
+    public String getKey() {
+        return string(0);
+    }
+
+    public String getText() {
+        return string(1);
+    }
+
+    public String getDetail() {
+        return string(2);
+    }
+
+    /**
+     * Appointment date, or null
+     */
+    public LocalDate getDay() {
+        long day = buffer.getLong(start + DAY);
+        return day == NO_DAY ? null : LocalDate.ofEpochDay(day);
+    }
+
+    public int getSlot() {
+        return buffer.getInt(start + QUANTITY);
+    }
+
+    public int getQuantity() {
+        return buffer.getInt(start + QUANTITY);
+    }
+
+    /**
+     * Bytes of the whole record in the log format; a read-only view, not a copy
+     */
+    public ByteBuffer getPayload() {
+        return buffer.slice(start, getSize()).asReadOnlyBuffer();
+    }
+
+    public int getSize() {
+        return 4 + buffer.getInt(start + LENGTH);
+    }
+
+    public Appointment toAppointment() {
+        LocalDate day = getDay();
+        return new Appointment(getRowId(), getKey(), getText(), day == null ? null : day.toString(), getSlot());
+    }
+
+    public MedicalRecord toMedicalRecord() {
+        return new MedicalRecord(getRowId(), getKey(), getText(), getDetail());
+    }
+
+    public Prescription toPrescription() {
+        return new Prescription(getRowId(), getKey(), getText(), getQuantity());
+    }
+
+    private String string(int index) {
+        int position = start + STRINGS;
+        for (int i = 0; i < index; i++) {
+            position += 4 + Math.max(0, buffer.getInt(position));
+        }
+        int length = buffer.getInt(position);
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(position + 4, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public String toString() {
+        return "#" + getOffset() + " " + getType() + " " + getKey()
+            + (getRowId() != 0 ? " (id " + getRowId() + ")" : "");
+    }
+}
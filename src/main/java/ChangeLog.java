@@ -0,0 +1,509 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+
+/**
+ * Change Log class recording every committed write as a compact binary event
+ * Events go to fixed-size segment files that are memory-mapped, so an append is a copy
+ * into the page cache and readers tail the same pages without copying. Each event has
+ * an offset, its sequence number in the log; a Reader starts from any retained offset.
+ * When a segment fills up it is sealed and a new one started. In the background, sealed
+ * segments are compacted (stock events superseded by a later level of the same medicine
+ * are dropped, and the file is cut to its data; offsets never change) and the oldest
+ * are deleted once more than retainedSegments are sealed.
+ * Appends are not forced to disk: the events of a crashed process survive in the page
+ * cache, those of a power loss may not. On open, a torn tail of the last segment is cut off.
+ */
+public class ChangeLog implements AutoCloseable {
+    public static final int DEFAULT_SEGMENT_BYTES = 64 << 20;
+    public static final int DEFAULT_RETAINED_SEGMENTS = 16;
+    private static final String SEGMENT_PREFIX = "changes-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final int retainedSegments;
+    // By base offset; readers look segments up without locking
+    private final ConcurrentSkipListMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+    private final ExecutorService maintenance;
+    // Serializes retention and compaction; appends never wait for them
+    private final Object maintenanceLock = new Object();
+    private Segment active;
+    // Offset the next event gets; every event below it is fully written
+    private volatile long endOffset;
+    private volatile boolean closed;
+
+    private final LongAdder appended = new LongAdder();
+    private final LongAdder appendedBytes = new LongAdder();
+    private final LongAdder failedAppends = new LongAdder();
+    private final LongAdder compactedEvents = new LongAdder();
+    private final LongAdder deletedSegments = new LongAdder();
+
+    public ChangeLog(Path directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_BYTES, DEFAULT_RETAINED_SEGMENTS);
+    }
+
+    /**
+     * @param segmentBytes     size of one segment file, and so the largest event
+     * @param retainedSegments sealed segments kept besides the one being written
+     */
+    public ChangeLog(Path directory, int segmentBytes, int retainedSegments) throws IOException {
+        if (segmentBytes < 1_024) {
+            throw new IllegalArgumentException("segmentBytes must be at least 1024");
+        }
+        if (retainedSegments < 1) {
+            throw new IllegalArgumentException("retainedSegments must be at least 1");
+        }
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.retainedSegments = retainedSegments;
+        Files.createDirectories(directory);
+        recover();
+        maintenance = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "change-log-maintenance");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private void recover() throws IOException {
+        TreeMap<Long, Path> files = listSegments();
+        if (files.isEmpty()) {
+            active = openSegment(0);
+            segments.put(0L, active);
+            endOffset = 0;
+            return;
+        }
+        long lastBase = files.lastKey();
+        for (Map.Entry<Long, Path> entry : files.headMap(lastBase).entrySet()) {
+            try (FileChannel channel = FileChannel.open(entry.getValue(), StandardOpenOption.READ)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                segments.put(entry.getKey(), new Segment(entry.getKey(), entry.getValue(), buffer, true));
+            }
+        }
+        // The last segment ends at its first record that is incomplete or out of sequence
+        Path last = files.get(lastBase);
+        int end = 0;
+        long next = lastBase;
+        try (FileChannel channel = FileChannel.open(last, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            while (isValid(buffer, end, next)) {
+                next++;
+                end += 4 + buffer.getInt(end);
+            }
+            if (end < channel.size()) {
+                // Zeros from here on: the tail is cut off and the file grows back when mapped
+                channel.truncate(end);
+            }
+        }
+        active = openSegment(lastBase, last);
+        active.size = end;
+        segments.put(lastBase, active);
+        endOffset = next;
+    }
+
+    private static boolean isValid(ByteBuffer buffer, int position, long expectedOffset) {
+        if (position + ChangeEvent.STRINGS > buffer.limit()) {
+            return false;
+        }
+        int length = buffer.getInt(position + ChangeEvent.LENGTH);
+        if (length < ChangeEvent.STRINGS - 4 || position + 4 + length > buffer.limit()
+                || buffer.getLong(position + ChangeEvent.OFFSET) != expectedOffset) {
+            return false;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.slice(position + ChangeEvent.OFFSET, length - 4));
+        return (int) crc.getValue() == buffer.getInt(position + ChangeEvent.CRC);
+    }
+
+    /**
+     * Appends one event and returns its offset
+     */
+    public synchronized long append(ChangeEvent.Type type, long rowId, String key, String text, String detail,
+                                    long day, int quantity) throws IOException {
+        if (closed) {
+            throw new IllegalStateException("Change log is closed");
+        }
+        byte[] keyBytes = utf8(key);
+        byte[] textBytes = utf8(text);
+        byte[] detailBytes = utf8(detail);
+        int size = ChangeEvent.STRINGS + 12 + length(keyBytes) + length(textBytes) + length(detailBytes);
+        if (size > segmentBytes) {
+            failedAppends.increment();
+            throw new IllegalArgumentException("Event of " + size + " bytes does not fit a segment");
+        }
+        if (active.size + size > active.buffer.capacity()) {
+            try {
+                roll();
+            } catch (IOException e) {
+                failedAppends.increment();
+                throw e;
+            }
+        }
+        ByteBuffer buffer = active.buffer;
+        int start = active.size;
+        long offset = endOffset;
+        buffer.putLong(start + ChangeEvent.OFFSET, offset);
+        buffer.putLong(start + ChangeEvent.TIMESTAMP, System.currentTimeMillis());
+        buffer.put(start + ChangeEvent.TYPE, (byte) type.ordinal());
+        buffer.putLong(start + ChangeEvent.ROW_ID, rowId);
+        buffer.putLong(start + ChangeEvent.DAY, day);
+        buffer.putInt(start + ChangeEvent.QUANTITY, quantity);
+        int position = start + ChangeEvent.STRINGS;
+        position = putString(buffer, position, keyBytes);
+        position = putString(buffer, position, textBytes);
+        putString(buffer, position, detailBytes);
+        CRC32 crc = new CRC32();
+        crc.update(buffer.slice(start + ChangeEvent.OFFSET, size - ChangeEvent.OFFSET));
+        buffer.putInt(start + ChangeEvent.CRC, (int) crc.getValue());
+        buffer.putInt(start + ChangeEvent.LENGTH, size - 4);
+        active.size = start + size;
+        // Publishes the event to readers
+        endOffset = offset + 1;
+        appended.increment();
+        appendedBytes.add(size);
+        return offset;
+    }
+
+    private static byte[] utf8(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int length(byte[] bytes) {
+        return bytes == null ? 0 : bytes.length;
+    }
+
+    private static int putString(ByteBuffer buffer, int position, byte[] bytes) {
+        if (bytes == null) {
+            buffer.putInt(position, -1);
+            return position + 4;
+        }
+        buffer.putInt(position, bytes.length);
+        buffer.put(position + 4, bytes);
+        return position + 4 + bytes.length;
+    }
+
+    /**
+     * Seals the active segment and starts the next one; caller holds the monitor
+     */
+    private void roll() throws IOException {
+        Segment next = openSegment(endOffset);
+        active.sealed = true;
+        segments.put(next.baseOffset, next);
+        active = next;
+        if (!closed) {
+            maintenance.execute(() -> {
+                try {
+                    maintain();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            });
+        }
+    }
+
+    /**
+     * Applies retention, then compacts the sealed segments; runs on the maintenance
+     * thread after each roll and may be called directly
+     */
+    public void maintain() throws IOException {
+        synchronized (maintenanceLock) {
+            deleteExpiredSegments();
+            compact();
+        }
+    }
+
+    private void deleteExpiredSegments() throws IOException {
+        // Readers still on a deleted segment keep their mapping until they move on
+        while (segments.size() - 1 > retainedSegments) {
+            Segment oldest = segments.firstEntry().getValue();
+            segments.remove(oldest.baseOffset);
+            Files.deleteIfExists(oldest.file);
+            deletedSegments.increment();
+        }
+    }
+
+    /**
+     * Rewrites every sealed segment that still holds superseded stock events or unused
+     * space; the rewritten file replaces the old one atomically
+     */
+    private void compact() throws IOException {
+        // Latest stock event per medicine across the whole log; the active segment is
+        // read only up to the events published when the pass started
+        long end = endOffset;
+        Map<String, Long> latestStock = new HashMap<>();
+        ChangeEvent event = new ChangeEvent();
+        for (Segment segment : segments.values()) {
+            long expected = segment.baseOffset;
+            for (int position = 0; segment.sealed || expected < end; position += event.getSize(), expected++) {
+                if (!segment.hasRecord(position)) {
+                    break;
+                }
+                event.wrap(segment.buffer, position);
+                if (event.getType() == ChangeEvent.Type.STOCK) {
+                    latestStock.put(event.getKey(), event.getOffset());
+                }
+            }
+        }
+        for (Segment segment : segments.values()) {
+            if (!segment.sealed) {
+                continue;
+            }
+            int kept = 0;
+            int dropped = 0;
+            for (int position = 0; segment.hasRecord(position); position += event.getSize()) {
+                event.wrap(segment.buffer, position);
+                if (isSuperseded(event, latestStock)) {
+                    dropped++;
+                } else {
+                    kept += event.getSize();
+                }
+            }
+            if (dropped == 0 && segment.buffer.capacity() == kept) {
+                continue;
+            }
+            ByteBuffer compacted = ByteBuffer.allocate(kept);
+            for (int position = 0; segment.hasRecord(position); position += event.getSize()) {
+                event.wrap(segment.buffer, position);
+                if (!isSuperseded(event, latestStock)) {
+                    compacted.put(event.getPayload());
+                }
+            }
+            compacted.flip();
+            Path temp = segment.file.resolveSibling(segment.file.getFileName() + ".compacting");
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                while (compacted.hasRemaining()) {
+                    channel.write(compacted);
+                }
+                channel.force(true);
+            }
+            Files.move(temp, segment.file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            try (FileChannel channel = FileChannel.open(segment.file, StandardOpenOption.READ)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                segments.replace(segment.baseOffset, segment, new Segment(segment.baseOffset, segment.file, buffer, true));
+            }
+            compactedEvents.add(dropped);
+        }
+    }
+
+    private static boolean isSuperseded(ChangeEvent event, Map<String, Long> latestStock) {
+        if (event.getType() != ChangeEvent.Type.STOCK) {
+            return false;
+        }
+        Long latest = latestStock.get(event.getKey());
+        return latest != null && event.getOffset() < latest;
+    }
+
+    /**
+     * A reader positioned at offset, or at the oldest retained event if offset is older
+     */
+    public Reader tail(long offset) {
+        return new Reader(offset);
+    }
+
+    /**
+     * Offset of the oldest retained event
+     */
+    public long getStartOffset() {
+        return segments.firstKey();
+    }
+
+    /**
+     * Offset the next appended event will get
+     */
+    public long getEndOffset() {
+        return endOffset;
+    }
+
+    public Path getDirectory() { return directory; }
+    public int getSegmentCount() { return segments.size(); }
+    public long getAppendedCount() { return appended.sum(); }
+    public long getAppendedBytes() { return appendedBytes.sum(); }
+    public long getFailedAppendCount() { return failedAppends.sum(); }
+    /** Superseded stock events dropped by compaction */
+    public long getCompactedCount() { return compactedEvents.sum(); }
+    public long getDeletedSegmentCount() { return deletedSegments.sum(); }
+
+    private TreeMap<Long, Path> listSegments() throws IOException {
+        TreeMap<Long, Path> files = new TreeMap<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory,
+                SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : stream) {
+                String name = file.getFileName().toString();
+                String number = name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length());
+                try {
+                    files.put(Long.parseLong(number), file);
+                } catch (NumberFormatException e) {
+                    // not one of ours
+                }
+            }
+        }
+        return files;
+    }
+
+    private Segment openSegment(long baseOffset) throws IOException {
+        return openSegment(baseOffset, directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, baseOffset,
+            SEGMENT_SUFFIX)));
+    }
+
+    private Segment openSegment(long baseOffset, Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            // Mapping past the end grows the file; the unwritten part stays sparse
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                Math.max(segmentBytes, channel.size()));
+            return new Segment(baseOffset, file, buffer, false);
+        }
+    }
+
+    /**
+     * Forces the active segment to disk
+     */
+    public synchronized void flush() {
+        ((MappedByteBuffer) active.buffer).force();
+    }
+
+    /**
+     * Waits for running maintenance and forces the active segment to disk
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        maintenance.shutdown();
+        try {
+            maintenance.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+
+    /**
+     * One segment file: sealed segments never change except by being replaced whole
+     */
+    private static final class Segment {
+        private final long baseOffset;
+        private final Path file;
+        private final ByteBuffer buffer;
+        private volatile boolean sealed;
+        // Bytes written to the active segment; only used by the appender
+        private int size;
+
+        Segment(long baseOffset, Path file, ByteBuffer buffer, boolean sealed) {
+            this.baseOffset = baseOffset;
+            this.file = file;
+            this.buffer = buffer;
+            this.sealed = sealed;
+        }
+
+        /**
+         * True if a complete record starts at position; unwritten space reads as zero
+         */
+        boolean hasRecord(int position) {
+            return position + 4 <= buffer.limit() && buffer.getInt(position) > 0;
+        }
+    }
+
+    /**
+     * Tails the log from an offset; one reader belongs to one consumer thread
+     */
+    public final class Reader {
+        private final ChangeEvent event = new ChangeEvent();
+        private Segment segment;
+        private int position;
+        private long next;
+
+        private Reader(long offset) {
+            next = offset;
+        }
+
+        /**
+         * Hands up to max of the events from the current offset to the visitor and
+         * returns how many there were; 0 when the reader has caught up
+         */
+        public int read(EventVisitor visitor, int max) {
+            int read = 0;
+            while (read < max && next < endOffset) {
+                if (segment == null || !segment.hasRecord(position)) {
+                    if (!advance()) {
+                        break;
+                    }
+                    continue;
+                }
+                event.wrap(segment.buffer, position);
+                position += event.getSize();
+                long offset = event.getOffset();
+                if (offset < next) {
+                    continue;
+                }
+                next = offset + 1;
+                visitor.visit(event);
+                read++;
+            }
+            return read;
+        }
+
+        /**
+         * Moves to the segment holding next, or the one after the current segment
+         */
+        private boolean advance() {
+            Map.Entry<Long, Segment> entry = segment == null ? segments.floorEntry(next)
+                : segments.higherEntry(segment.baseOffset);
+            if (entry == null) {
+                // Older than the oldest retained segment
+                entry = segments.firstEntry();
+            }
+            if (segment != null && entry.getValue().baseOffset <= segment.baseOffset) {
+                return false;
+            }
+            segment = entry.getValue();
+            position = 0;
+            next = Math.max(next, segment.baseOffset);
+            return true;
+        }
+
+        /**
+         * Offset of the next event this reader returns
+         */
+        public long getPosition() {
+            return next;
+        }
+
+        /**
+         * Events appended but not yet read
+         */
+        public long getLag() {
+            return Math.max(0, endOffset - next);
+        }
+    }
+
+    /**
+     * Receives events; the event is a view that is only valid during the call
+     */
+    @FunctionalInterface
+    public interface EventVisitor {
+        void visit(ChangeEvent event);
+    }
+}
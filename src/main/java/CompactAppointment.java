@@ -0,0 +1,24 @@
+import java.time.LocalDate;
+
+/**
+ * Compact Appointment record for bulk loads
+ * Patient and doctor are ids in the loading DatabaseManager's NamePool and the date is
+ * an epoch day, so a row is one small object with no Strings of its own.
+ */
+public record CompactAppointment(long id, int patient, int doctor, int epochDay, int slot) {
+    /** epochDay of rows without a (valid) date */
+    public static final int NO_DATE = Integer.MIN_VALUE;
+
+    public LocalDate date() {
+        return epochDay == NO_DATE ? null : LocalDate.ofEpochDay(epochDay);
+    }
+
+    public boolean hasSlot() {
+        return slot != Appointment.NO_SLOT;
+    }
+
+    public Appointment toAppointment(NamePool names) {
+        return new Appointment(id, names.name(patient), names.name(doctor),
+            epochDay == NO_DATE ? null : date().toString(), slot);
+    }
+}
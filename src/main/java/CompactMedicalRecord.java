@@ -0,0 +1,11 @@
+/**
+ * Compact Medical Record record for bulk loads
+ * The patient is an id in the loading DatabaseManager's NamePool. Diagnosis and
+ * treatment are free text and stay as Strings.
+ */
+public record CompactMedicalRecord(long id, int patient, String diagnosis, String treatment) {
+
+    public MedicalRecord toMedicalRecord(NamePool names) {
+        return new MedicalRecord(id, names.name(patient), diagnosis, treatment);
+    }
+}
@@ -0,0 +1,10 @@
+/**
+ * Compact Prescription record for bulk loads
+ * Patient and medicine are ids in the loading DatabaseManager's NamePool.
+ */
+public record CompactPrescription(long id, int patient, int medicine, int quantity) {
+
+    public Prescription toPrescription(NamePool names) {
+        return new Prescription(id, names.name(patient), names.name(medicine), quantity);
+    }
+}
@@ -0,0 +1,376 @@
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import org.sqlite.SQLiteConfig;
+
+/**
+ * Connection Pool class for the SQLite database
+ * Holds one serialized writer connection and N read-only reader connections.
+ * The database runs in WAL mode so readers never block the writer (and vice versa).
+ * Work that fails with SQLITE_BUSY (another process holds the lock) is retried, and
+ * the retries and rollbacks are counted in the pool's Metrics.
+ * An in-memory database has no readers: reads go through the writer connection.
+ */
+public class ConnectionPool {
+    /**
+     * Unit of work executed against a leased connection
+     */
+    @FunctionalInterface
+    public interface SqlWork<T> {
+        T execute(PooledConnection connection) throws SQLException;
+    }
+
+    public static final int DEFAULT_STATEMENT_CACHE_SIZE = 64;
+    static final long DEFAULT_ACQUIRE_TIMEOUT_MILLIS = 30_000;
+    // SQLite waits up to the busy timeout per attempt; the pool retries on top of that
+    // so lock waits show up in the metrics (about 5 s in total, as before)
+    private static final int BUSY_TIMEOUT_MILLIS = 250;
+    private static final int MAX_BUSY_RETRIES = 20;
+    private static final int SQLITE_BUSY = 5;
+    private static final int SQLITE_LOCKED = 6;
+
+    private final PooledConnection writer;
+    private final ReentrantLock writerLock = new ReentrantLock(true);
+    private final BlockingQueue<PooledConnection> readers;
+    private final List<PooledConnection> allReaders = new ArrayList<>();
+    private final long acquireTimeoutMillis;
+    private final Metrics metrics;
+    private final boolean readsThroughWriter;
+    private volatile boolean closed;
+
+    // Metrics
+    private final long createdAtNanos = System.nanoTime();
+    private final LongAdder readAcquisitions = new LongAdder();
+    private final LongAdder writeAcquisitions = new LongAdder();
+    private final LongAdder readWaitNanos = new LongAdder();
+    private final LongAdder writeWaitNanos = new LongAdder();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final LongAdder busyNanos = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final AtomicInteger readersInUse = new AtomicInteger();
+    private final AtomicInteger writersInUse = new AtomicInteger();
+
+    public ConnectionPool(String url, int readerCount) throws SQLException {
+        this(url, readerCount, DEFAULT_STATEMENT_CACHE_SIZE, DEFAULT_ACQUIRE_TIMEOUT_MILLIS);
+    }
+
+    public ConnectionPool(String url, int readerCount, int statementCacheSize) throws SQLException {
+        this(url, readerCount, statementCacheSize, DEFAULT_ACQUIRE_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * @param statementCacheSize prepared statements cached per connection, 0 disables caching
+     */
+    public ConnectionPool(String url, int readerCount, int statementCacheSize,
+                          long acquireTimeoutMillis) throws SQLException {
+        this(url, readerCount, statementCacheSize, acquireTimeoutMillis, new Metrics());
+    }
+
+    public ConnectionPool(String url, int readerCount, int statementCacheSize,
+                          long acquireTimeoutMillis, Metrics metrics) throws SQLException {
+        this(StorageConfig.url(url).readers(readerCount).statementCacheSize(statementCacheSize)
+            .acquireTimeoutMillis(acquireTimeoutMillis).build(), metrics);
+    }
+
+    public ConnectionPool(StorageConfig config, Metrics metrics) throws SQLException {
+        this.acquireTimeoutMillis = config.getAcquireTimeoutMillis();
+        this.metrics = metrics;
+        // Each connection to :memory: is its own database, and shared-cache readers
+        // would take table locks, so in-memory databases are served by the writer alone
+        this.readsThroughWriter = config.isInMemory();
+        int readerCount = readsThroughWriter ? 0 : config.getReaders();
+        int statementCacheSize = config.getStatementCacheSize();
+        this.readers = new ArrayBlockingQueue<>(Math.max(1, readerCount));
+
+        SQLiteConfig writerConfig = config.toSQLiteConfig(false);
+        writerConfig.setBusyTimeout(BUSY_TIMEOUT_MILLIS);
+        writer = new PooledConnection(writerConfig.createConnection(config.getUrl()), statementCacheSize);
+
+        try {
+            SQLiteConfig readerConfig = config.toSQLiteConfig(true);
+            readerConfig.setBusyTimeout(BUSY_TIMEOUT_MILLIS);
+            for (int i = 0; i < readerCount; i++) {
+                PooledConnection reader =
+                    new PooledConnection(readerConfig.createConnection(config.getUrl()), statementCacheSize);
+                allReaders.add(reader);
+                readers.add(reader);
+            }
+        } catch (SQLException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Runs work on one of the read-only connections (on the writer for in-memory databases)
+     */
+    public <T> T read(SqlWork<T> work) throws SQLException {
+        if (readsThroughWriter) {
+            return write(work);
+        }
+        ensureOpen();
+        long start = System.nanoTime();
+        PooledConnection connection;
+        try {
+            connection = readers.poll(acquireTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a reader connection", e);
+        }
+        if (connection == null) {
+            timeouts.increment();
+            throw new SQLException("Timed out waiting for a reader connection");
+        }
+        long acquired = System.nanoTime();
+        recordWait(readWaitNanos, readAcquisitions, acquired - start);
+        readersInUse.incrementAndGet();
+        try {
+            return executeWithRetry(work, connection);
+        } finally {
+            connection.release();
+            readersInUse.decrementAndGet();
+            busyNanos.add(System.nanoTime() - acquired);
+            readers.offer(connection);
+        }
+    }
+
+    /**
+     * Runs work on the single writer connection; writers are serialized
+     */
+    public <T> T write(SqlWork<T> work) throws SQLException {
+        ensureOpen();
+        long start = System.nanoTime();
+        boolean locked;
+        try {
+            locked = writerLock.tryLock(acquireTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for the writer connection", e);
+        }
+        if (!locked) {
+            timeouts.increment();
+            throw new SQLException("Timed out waiting for the writer connection");
+        }
+        long acquired = System.nanoTime();
+        recordWait(writeWaitNanos, writeAcquisitions, acquired - start);
+        writersInUse.incrementAndGet();
+        try {
+            return executeWithRetry(work, writer);
+        } finally {
+            writer.release();
+            writersInUse.decrementAndGet();
+            busyNanos.add(System.nanoTime() - acquired);
+            writerLock.unlock();
+        }
+    }
+
+    /**
+     * Runs work on the writer connection inside a single transaction
+     */
+    public <T> T transaction(SqlWork<T> work) throws SQLException {
+        return write(pooled -> {
+            Connection connection = pooled.getConnection();
+            connection.setAutoCommit(false);
+            try {
+                T result = work.execute(pooled);
+                connection.commit();
+                return result;
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                metrics.recordRollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        });
+    }
+
+    /**
+     * Runs the work, running it again while it fails on a lock held elsewhere.
+     * A failed attempt has already been rolled back on this connection, so running it
+     * again is safe as long as the work writes through this connection only; writes it
+     * commits through another pool are not undone and would be repeated.
+     */
+    private <T> T executeWithRetry(SqlWork<T> work, PooledConnection connection) throws SQLException {
+        for (int attempt = 1; ; attempt++) {
+            long start = System.nanoTime();
+            try {
+                return work.execute(connection);
+            } catch (SQLException e) {
+                if (attempt > MAX_BUSY_RETRIES || !isBusy(e)) {
+                    throw e;
+                }
+                metrics.recordBusyRetry(System.nanoTime() - start);
+            }
+        }
+    }
+
+    static boolean isBusy(SQLException e) {
+        int primary = e.getErrorCode() & 0xff;
+        return primary == SQLITE_BUSY || primary == SQLITE_LOCKED;
+    }
+
+    private void recordWait(LongAdder waitTotal, LongAdder acquisitions, long waited) {
+        waitTotal.add(waited);
+        acquisitions.increment();
+        maxWaitNanos.accumulateAndGet(waited, Math::max);
+    }
+
+    private void ensureOpen() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+    }
+
+    /**
+     * The writer connection, for single-threaded maintenance only
+     */
+    public Connection getWriterConnection() {
+        return writer.getConnection();
+    }
+
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    public int getReaderCount() {
+        return allReaders.size();
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    public Stats getStats() {
+        long elapsed = Math.max(1, System.nanoTime() - createdAtNanos);
+        int total = allReaders.size() + 1;
+        long cacheHits = 0;
+        long cacheMisses = 0;
+        long cacheEvictions = 0;
+        List<PooledConnection> connections = new ArrayList<>(allReaders);
+        connections.add(writer);
+        for (PooledConnection connection : connections) {
+            StatementCache cache = connection.getStatementCache();
+            if (cache != null) {
+                cacheHits += cache.getHits();
+                cacheMisses += cache.getMisses();
+                cacheEvictions += cache.getEvictions();
+            }
+        }
+        return new Stats(
+            readAcquisitions.sum(),
+            writeAcquisitions.sum(),
+            readWaitNanos.sum(),
+            writeWaitNanos.sum(),
+            maxWaitNanos.get(),
+            timeouts.sum(),
+            readersInUse.get(),
+            writersInUse.get(),
+            total,
+            (double) busyNanos.sum() / ((double) elapsed * total),
+            cacheHits,
+            cacheMisses,
+            cacheEvictions);
+    }
+
+    public void close() {
+        closed = true;
+        for (PooledConnection reader : allReaders) {
+            reader.close();
+        }
+        if (writer != null) {
+            writer.close();
+        }
+    }
+
+    /**
+     * Point-in-time snapshot of pool wait times and utilization
+     */
+    public static final class Stats {
+        private final long readAcquisitions;
+        private final long writeAcquisitions;
+        private final long readWaitNanos;
+        private final long writeWaitNanos;
+        private final long maxWaitNanos;
+        private final long timeouts;
+        private final int readersInUse;
+        private final int writersInUse;
+        private final int totalConnections;
+        private final double utilization;
+        private final long statementCacheHits;
+        private final long statementCacheMisses;
+        private final long statementCacheEvictions;
+
+        Stats(long readAcquisitions, long writeAcquisitions, long readWaitNanos, long writeWaitNanos,
+              long maxWaitNanos, long timeouts, int readersInUse, int writersInUse,
+              int totalConnections, double utilization, long statementCacheHits,
+              long statementCacheMisses, long statementCacheEvictions) {
+            this.readAcquisitions = readAcquisitions;
+            this.writeAcquisitions = writeAcquisitions;
+            this.readWaitNanos = readWaitNanos;
+            this.writeWaitNanos = writeWaitNanos;
+            this.maxWaitNanos = maxWaitNanos;
+            this.timeouts = timeouts;
+            this.readersInUse = readersInUse;
+            this.writersInUse = writersInUse;
+            this.totalConnections = totalConnections;
+            this.utilization = utilization;
+            this.statementCacheHits = statementCacheHits;
+            this.statementCacheMisses = statementCacheMisses;
+            this.statementCacheEvictions = statementCacheEvictions;
+        }
+
+        public long getReadAcquisitions() { return readAcquisitions; }
+        public long getWriteAcquisitions() { return writeAcquisitions; }
+        public long getTimeouts() { return timeouts; }
+        public int getReadersInUse() { return readersInUse; }
+        public int getWritersInUse() { return writersInUse; }
+        public int getTotalConnections() { return totalConnections; }
+        public long getMaxWaitNanos() { return maxWaitNanos; }
+
+        public double getAverageReadWaitMillis() {
+            return readAcquisitions == 0 ? 0 : readWaitNanos / 1e6 / readAcquisitions;
+        }
+
+        public double getAverageWriteWaitMillis() {
+            return writeAcquisitions == 0 ? 0 : writeWaitNanos / 1e6 / writeAcquisitions;
+        }
+
+        /** Connections currently leased out of the total */
+        public double getCurrentUtilization() {
+            return (double) (readersInUse + writersInUse) / totalConnections;
+        }
+
+        /** Share of connection-time spent leased since the pool was created */
+        public double getUtilization() { return utilization; }
+
+        public long getStatementCacheHits() { return statementCacheHits; }
+        public long getStatementCacheMisses() { return statementCacheMisses; }
+        public long getStatementCacheEvictions() { return statementCacheEvictions; }
+
+        public double getStatementCacheHitRatio() {
+            long lookups = statementCacheHits + statementCacheMisses;
+            return lookups == 0 ? 0 : (double) statementCacheHits / lookups;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(
+                "reads=%d (avg wait %.3f ms), writes=%d (avg wait %.3f ms), max wait %.3f ms, "
+                    + "timeouts=%d, in use=%d/%d, utilization=%.1f%%, "
+                    + "statement cache hits=%d misses=%d evictions=%d",
+                readAcquisitions, getAverageReadWaitMillis(),
+                writeAcquisitions, getAverageWriteWaitMillis(),
+                maxWaitNanos / 1e6, timeouts,
+                readersInUse + writersInUse, totalConnections, utilization * 100,
+                statementCacheHits, statementCacheMisses, statementCacheEvictions);
+        }
+    }
+}
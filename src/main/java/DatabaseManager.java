@@ -1,244 +1,2387 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.sql.*;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+import javax.management.JMException;
 
 /**
  * Database Manager class following Singleton pattern
  * Handles all database operations
+ * Reads go through a pool of read-only connections, writes through a single serialized writer
+ * Every public operation is timed into Metrics, exposed over JMX and as a text dump
+ * Where the database lives and how SQLite is tuned is described by a StorageConfig
+ * Patient-scoped rows can be sharded by patient_username over several databases, each
+ * with its own writer; queries across patients fan out to every shard and are merged
+ * Old appointments and prescriptions of a database file can be archived into monthly
+ * partitions that the includeArchived reads still reach
  */
 public class DatabaseManager {
     private static DatabaseManager instance;
-    private Connection connection;
-    private static final String DB_URL = "jdbc:sqlite:healthcare.db";
+    private static StorageConfig instanceConfig;
+    /** Shard k hands out appointment, medical record and prescription ids from k << SHARD_ID_BITS */
+    static final int SHARD_ID_BITS = 40;
+    // The home shard (shard 0) also holds the medicine inventory, its checkpoint and the shard map
+    private ConnectionPool pool;
+    private ConnectionPool[] shards;
+    // Runs one task per shard for fan-out queries and batches; null with a single shard
+    private ExecutorService fanOut;
+    // One per shard for a database file; null for in-memory and raw URL databases
+    private ArchiveStore[] archives;
+    private final StorageConfig storageConfig;
+    public static final int DEFAULT_BATCH_CHUNK_SIZE = 500;
+    public static final int DEFAULT_FETCH_SIZE = 1_000;
+    private volatile int batchChunkSize = DEFAULT_BATCH_CHUNK_SIZE;
+    private volatile PasswordHasher passwordHasher = new PasswordHasher();
+    // Verified against when the username does not exist, so both cases take as long
+    private volatile String unknownUserHash;
+    // One per shard while group commit is enabled
+    private volatile GroupCommitWriter[] groupCommits;
+    private final Metrics metrics = new Metrics();
+    // Loaded rows share one String per distinct name and date instead of one per row
+    private final NamePool names = new NamePool();
+    private final NamePool dates = new NamePool();
+    private final InventoryEvents inventoryEvents = new InventoryEvents();
+    private volatile ChangeLog changeLog;
+    // Held across a stock write and its STOCK event while the change log is enabled
+    private final Object stockOrder = new Object();
     
     private DatabaseManager() {
+        this(instanceConfig != null ? instanceConfig : StorageConfig.fromSystemProperties());
         try {
-            connection = DriverManager.getConnection(DB_URL);
-            initializeTables();
-        } catch (SQLException e) {
+            metrics.register(Metrics.OBJECT_NAME);
+        } catch (JMException e) {
             e.printStackTrace();
         }
     }
     
-    public static DatabaseManager getInstance() {
+    DatabaseManager(String url, int readers) {
+        this(url, readers, ConnectionPool.DEFAULT_STATEMENT_CACHE_SIZE);
+    }
+    
+    DatabaseManager(String url, int readers, int statementCacheSize) {
+        this(StorageConfig.url(url).readers(readers).statementCacheSize(statementCacheSize).build());
+    }
+    
+    DatabaseManager(StorageConfig storageConfig) {
+        this.storageConfig = storageConfig;
+        try {
+            shards = new ConnectionPool[storageConfig.getShards()];
+            for (int i = 0; i < shards.length; i++) {
+                shards[i] = new ConnectionPool(storageConfig.forShard(i), metrics);
+            }
+            pool = shards[0];
+            if (storageConfig.getPath() != null) {
+                archives = new ArchiveStore[shards.length];
+                for (int i = 0; i < shards.length; i++) {
+                    Path shardFile = StorageConfig.shardPath(storageConfig.getPath(), i);
+                    archives[i] = new ArchiveStore(ArchiveStore.directoryOf(shardFile));
+                }
+            }
+            if (shards.length > 1) {
+                fanOut = VirtualThreads.newPerTaskExecutor("shard-fan-out-", shards.length);
+            }
+            for (int i = 0; i < shards.length; i++) {
+                int index = i;
+                shards[i].write(connection -> {
+                    initializeShard(connection.getConnection(), index);
+                    return null;
+                });
+            }
+            checkShardCount();
+            shard("admin").write(connection -> {
+                insertAdmin(connection);
+                return null;
+            });
+        } catch (SQLException | IOException e) {
+            e.printStackTrace();
+        }
+    }
+    
+    // Group commit
+    // Off by default. When enabled, single-row inserts from concurrent callers share
+    // transactions; each caller still returns only after its row has committed.
+    
+    public synchronized void enableGroupCommit(long flushWindowMicros, int maxBatchSize) {
+        disableGroupCommit();
+        GroupCommitWriter[] writers = new GroupCommitWriter[shards.length];
+        for (int i = 0; i < shards.length; i++) {
+            writers[i] = new GroupCommitWriter(shards[i], flushWindowMicros, maxBatchSize,
+                GroupCommitWriter.DEFAULT_QUEUE_CAPACITY);
+        }
+        groupCommits = writers;
+    }
+    
+    /**
+     * Commits any queued writes and goes back to one transaction per write
+     */
+    public synchronized void disableGroupCommit() {
+        GroupCommitWriter[] writers = groupCommits;
+        groupCommits = null;
+        if (writers != null) {
+            for (GroupCommitWriter writer : writers) {
+                writer.close();
+            }
+        }
+    }
+    
+    /**
+     * Group commit writer of the home shard, or null when group commit is disabled
+     */
+    public GroupCommitWriter getGroupCommitWriter() {
+        return getGroupCommitWriter(0);
+    }
+    
+    public GroupCommitWriter getGroupCommitWriter(int shard) {
+        GroupCommitWriter[] writers = groupCommits;
+        return writers == null ? null : writers[shard];
+    }
+    
+    // Change log
+    // Off by default. When enabled, every committed write is appended to a ChangeLog that
+    // consumers tail instead of polling and diffing whole tables. Events are appended after
+    // their commit, so a crash in between can lose an event but never invents one. Events
+    // of concurrent writes may be logged in a different order than they committed, except
+    // STOCK events, which follow the order of the stock levels they carry.
+    
+    public ChangeLog enableChangeLog(Path directory) throws IOException {
+        return enableChangeLog(directory, ChangeLog.DEFAULT_SEGMENT_BYTES, ChangeLog.DEFAULT_RETAINED_SEGMENTS);
+    }
+    
+    public synchronized ChangeLog enableChangeLog(Path directory, int segmentBytes, int retainedSegments)
+            throws IOException {
+        disableChangeLog();
+        changeLog = new ChangeLog(directory, segmentBytes, retainedSegments);
+        return changeLog;
+    }
+    
+    /**
+     * Stops logging and closes the log; it can be opened again later from the same directory
+     */
+    public synchronized void disableChangeLog() {
+        ChangeLog log = changeLog;
+        changeLog = null;
+        if (log != null) {
+            log.close();
+        }
+    }
+    
+    /**
+     * The change log, or null when it is disabled
+     */
+    public ChangeLog getChangeLog() {
+        return changeLog;
+    }
+    
+    /**
+     * Appends one event of a committed write; a failing append is reported but does not
+     * fail the write, which has already committed
+     */
+    private void emit(ChangeEvent.Type type, long rowId, String key, String text, String detail, long day,
+                      int quantity) {
+        ChangeLog log = changeLog;
+        if (log == null) {
+            return;
+        }
+        try {
+            log.append(type, rowId, key, text, detail, day, quantity);
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+    
+    private void emitAppointment(Appointment appointment, long id) {
+        emit(ChangeEvent.Type.APPOINTMENT, id, appointment.getPatientUsername(), appointment.getDoctorName(), null,
+            LocalDate.parse(appointment.getDate()).toEpochDay(), appointment.getSlot());
+    }
+    
+    private void emitMedicalRecord(String patientUsername, String diagnosis, String treatment, long id) {
+        emit(ChangeEvent.Type.MEDICAL_RECORD, id, patientUsername, diagnosis, treatment, ChangeEvent.NO_DAY, 0);
+    }
+    
+    private void emitPrescription(String patientUsername, String medicine, int quantity, long id) {
+        emit(ChangeEvent.Type.PRESCRIPTION, id, patientUsername, medicine, null, ChangeEvent.NO_DAY, quantity);
+    }
+    
+    private void emitStock(String medicine, int level) {
+        emit(ChangeEvent.Type.STOCK, 0, medicine, null, null, ChangeEvent.NO_DAY, level);
+    }
+    
+    /**
+     * Id of the row the connection inserted last; read only while the change log is enabled
+     */
+    private long lastInsertId(PooledConnection connection) throws SQLException {
+        if (changeLog == null) {
+            return 0;
+        }
+        try (ResultSet rs = connection.prepare("SELECT last_insert_rowid()").executeQuery()) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+    
+    /**
+     * A write that changes stock levels, followed by its STOCK events
+     */
+    @FunctionalInterface
+    private interface StockWrite<T> {
+        T run() throws SQLException;
+    }
+    
+    /**
+     * Runs a stock write; with the change log enabled stock writes run one at a time,
+     * so their STOCK events are appended in the order the levels committed
+     */
+    private <T> T inStockOrder(StockWrite<T> write) throws SQLException {
+        if (changeLog == null) {
+            return write.run();
+        }
+        synchronized (stockOrder) {
+            return write.run();
+        }
+    }
+    
+    // Instrumented access to the pool
+    // Each helper times the call under its operation; reads returning a collection or map
+    // count its size as rows read, writes returning an update count count it as rows written.
+    
+    private <T> T read(Metrics.Operation operation, ConnectionPool.SqlWork<T> work) throws SQLException {
+        return read(pool, operation, work);
+    }
+    
+    private <T> T read(ConnectionPool shard, Metrics.Operation operation, ConnectionPool.SqlWork<T> work)
+            throws SQLException {
+        long start = metrics.start();
+        try {
+            T result = shard.read(work);
+            if (result instanceof Collection) {
+                metrics.addRowsRead(((Collection<?>) result).size());
+            } else if (result instanceof Map) {
+                metrics.addRowsRead(((Map<?, ?>) result).size());
+            }
+            metrics.record(operation, start);
+            return result;
+        } catch (SQLException | RuntimeException e) {
+            metrics.record(operation, start, e);
+            throw e;
+        }
+    }
+    
+    /**
+     * Single-row insert; goes through group commit when it is enabled
+     */
+    private <T> T write(ConnectionPool shard, Metrics.Operation operation, ConnectionPool.SqlWork<T> work)
+            throws SQLException {
+        return timedWrite(shard, operation, work, true, false);
+    }
+    
+    /**
+     * Grouped writes already run atomically inside their own savepoint
+     */
+    private <T> T transaction(ConnectionPool shard, Metrics.Operation operation, ConnectionPool.SqlWork<T> work)
+            throws SQLException {
+        return timedWrite(shard, operation, work, true, true);
+    }
+    
+    private <T> T timedWrite(Metrics.Operation operation, ConnectionPool.SqlWork<T> work,
+                             boolean groupable, boolean transactional) throws SQLException {
+        return timedWrite(pool, operation, work, groupable, transactional);
+    }
+    
+    private <T> T timedWrite(ConnectionPool shard, Metrics.Operation operation, ConnectionPool.SqlWork<T> work,
+                             boolean groupable, boolean transactional) throws SQLException {
+        long start = metrics.start();
+        try {
+            GroupCommitWriter writer = groupable ? getGroupCommitWriter(indexOf(shard)) : null;
+            T result = writer != null ? writer.execute(work)
+                : transactional ? shard.transaction(work) : shard.write(work);
+            if (result instanceof Integer) {
+                metrics.addRowsWritten((Integer) result);
+            }
+            metrics.record(operation, start);
+            return result;
+        } catch (SQLException | RuntimeException e) {
+            metrics.record(operation, start, e);
+            throw e;
+        }
+    }
+    
+    // Sharding
+    // Users, appointments, medical records and prescriptions live on the shard of their
+    // patient_username, so everything about one patient is read from and written to one
+    // database. Queries across patients run on every shard in parallel and are merged.
+    
+    /**
+     * Shard of a username: a jump consistent hash, so going from n to n + 1 shards moves
+     * only about 1 / (n + 1) of the patients. Also registered as shard_of() in SQL by
+     * ShardRebalancer, so the two always agree.
+     */
+    static int shardOf(String username, int shardCount) {
+        if (username == null || shardCount == 1) {
+            return 0;
+        }
+        // Spread String.hashCode over 64 bits (MurmurHash3 finalizer)
+        long key = username.hashCode();
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        // Lamping and Veach, "A Fast, Minimal Memory, Consistent Hash Algorithm"
+        long bucket = -1;
+        long next = 0;
+        while (next < shardCount) {
+            bucket = next;
+            key = key * 2862933555777941757L + 1;
+            next = (long) ((bucket + 1) * ((double) (1L << 31) / (double) ((key >>> 33) + 1)));
+        }
+        return (int) bucket;
+    }
+    
+    private ConnectionPool shard(String patientUsername) {
+        return shards[shardOf(patientUsername, shards.length)];
+    }
+    
+    private int indexOf(ConnectionPool shard) {
+        for (int i = 0; i < shards.length; i++) {
+            if (shards[i] == shard) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Not a shard of this database");
+    }
+    
+    public int getShardCount() {
+        return shards.length;
+    }
+    
+    /**
+     * Shard holding the patient's rows
+     */
+    public int getShard(String patientUsername) {
+        return shardOf(patientUsername, shards.length);
+    }
+    
+    /**
+     * Work run against one shard's pool
+     */
+    @FunctionalInterface
+    private interface ShardWork<T> {
+        T run(ConnectionPool shard) throws SQLException;
+    }
+    
+    /**
+     * Runs work on every shard at once and returns the results in shard order
+     */
+    private <T> List<T> onEveryShard(ShardWork<T> work) throws SQLException {
+        List<T> results = new ArrayList<>(shards.length);
+        if (shards.length == 1) {
+            results.add(work.run(pool));
+            return results;
+        }
+        List<Future<T>> futures = new ArrayList<>(shards.length);
+        for (ConnectionPool shard : shards) {
+            futures.add(fanOut.submit(() -> work.run(shard)));
+        }
+        try {
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for the shards", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof SQLException) {
+                throw (SQLException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new SQLException("Shard query failed", e.getCause());
+        } finally {
+            for (Future<T> future : futures) {
+                future.cancel(true);
+            }
+        }
+        return results;
+    }
+    
+    /**
+     * Rows of every shard concatenated in shard order. Shard k's ids start at k << 40,
+     * so rows read in id order on each shard stay in id order overall.
+     */
+    private <T> List<T> readAll(Metrics.Operation operation, ConnectionPool.SqlWork<List<T>> work)
+            throws SQLException {
+        return readEveryShard(operation, shard -> shard.read(work));
+    }
+    
+    private <T> List<T> readEveryShard(Metrics.Operation operation, ShardWork<List<T>> work) throws SQLException {
+        long start = metrics.start();
+        try {
+            List<T> rows = new ArrayList<>();
+            for (List<T> part : onEveryShard(work)) {
+                rows.addAll(part);
+            }
+            metrics.addRowsRead(rows.size());
+            metrics.record(operation, start);
+            return rows;
+        } catch (SQLException | RuntimeException e) {
+            metrics.record(operation, start, e);
+            throw e;
+        }
+    }
+    
+    private <T> List<T> readShard(ConnectionPool shard, Metrics.Operation operation, ShardWork<List<T>> work)
+            throws SQLException {
+        long start = metrics.start();
+        try {
+            List<T> rows = work.run(shard);
+            metrics.addRowsRead(rows.size());
+            metrics.record(operation, start);
+            return rows;
+        } catch (SQLException | RuntimeException e) {
+            metrics.record(operation, start, e);
+            throw e;
+        }
+    }
+    
+    /**
+     * Sets the storage used by getInstance(); must be called before the first getInstance()
+     */
+    public static synchronized void configure(StorageConfig config) {
+        if (instance != null) {
+            throw new IllegalStateException("DatabaseManager is already open on " + instance.storageConfig.getUrl());
+        }
+        instanceConfig = config;
+    }
+    
+    public static synchronized DatabaseManager getInstance() {
         if (instance == null) {
             instance = new DatabaseManager();
         }
         return instance;
     }
     
-    private void initializeTables() throws SQLException {
-        String[] createTableQueries = {
-            // Users table
-            """
-            CREATE TABLE IF NOT EXISTS users (
-                username TEXT PRIMARY KEY,
-                password TEXT NOT NULL,
-                role TEXT NOT NULL
-            )
-            """,
-            // Appointments table
-            """
-            CREATE TABLE IF NOT EXISTS appointments (
-                id INTEGER PRIMARY KEY AUTOINCREMENT,
-                patient_username TEXT,
-                doctor_name TEXT,
-                appointment_date TEXT,
-                FOREIGN KEY (patient_username) REFERENCES users(username)
-            )
-            """,
-            // Medical Records table
-            """
-            CREATE TABLE IF NOT EXISTS medical_records (
-                id INTEGER PRIMARY KEY AUTOINCREMENT,
-                patient_username TEXT,
-                diagnosis TEXT,
-                treatment TEXT,
-                record_date TEXT DEFAULT CURRENT_TIMESTAMP,
-                FOREIGN KEY (patient_username) REFERENCES users(username)
-            )
-            """,
-            // Prescriptions table
-            """
-            CREATE TABLE IF NOT EXISTS prescriptions (
-                id INTEGER PRIMARY KEY AUTOINCREMENT,
-                patient_username TEXT,
-                medicine TEXT,
-                quantity INTEGER,
-                prescription_date TEXT DEFAULT CURRENT_TIMESTAMP,
-                FOREIGN KEY (patient_username) REFERENCES users(username)
-            )
-            """,
-            // Medicine Inventory table
-            """
-            CREATE TABLE IF NOT EXISTS medicine_inventory (
-                medicine_name TEXT PRIMARY KEY,
-                quantity INTEGER DEFAULT 0
-            )
-            """
-        };
-        
-        Statement stmt = connection.createStatement();
-        for (String query : createTableQueries) {
-            stmt.execute(query);
+    /**
+     * Brings one shard's schema up to date and starts its id ranges at index << SHARD_ID_BITS;
+     * also used by ShardRebalancer on the shards it creates
+     */
+    static void initializeShard(Connection connection, int index) throws SQLException {
+        schemaMigrations().migrate(connection);
+        if (index == 0) {
+            return;
+        }
+        long firstId = (long) index << SHARD_ID_BITS;
+        try (PreparedStatement insert = connection.prepareStatement(
+                "INSERT INTO sqlite_sequence (name, seq) SELECT ?1, ?2 "
+                    + "WHERE NOT EXISTS (SELECT 1 FROM sqlite_sequence WHERE name = ?1)");
+             PreparedStatement raise = connection.prepareStatement(
+                "UPDATE sqlite_sequence SET seq = ?2 WHERE name = ?1 AND seq < ?2")) {
+            for (String table : new String[] {"appointments", "medical_records", "prescriptions"}) {
+                for (PreparedStatement ps : new PreparedStatement[] {insert, raise}) {
+                    ps.setString(1, table);
+                    ps.setLong(2, firstId);
+                    ps.executeUpdate();
+                }
+            }
+        }
+    }
+    
+    /**
+     * Records the shard count of a new database on the home shard, or checks that an
+     * existing one is opened with the count it was created with
+     */
+    private void checkShardCount() throws SQLException {
+        int recorded = pool.write(connection -> {
+            PreparedStatement insert = connection.prepare(
+                "INSERT OR IGNORE INTO shard_map (id, shard_count) VALUES (1, ?)");
+            insert.setInt(1, shards.length);
+            insert.executeUpdate();
+            try (ResultSet rs = connection.prepare("SELECT shard_count FROM shard_map WHERE id = 1").executeQuery()) {
+                rs.next();
+                return rs.getInt(1);
+            }
+        });
+        if (recorded != shards.length) {
+            closeConnection();
+            throw new IllegalStateException(storageConfig.getUrl() + " has " + recorded + " shards, not "
+                + shards.length + "; open it with shards(" + recorded + ") or run ShardRebalancer");
+        }
+    }
+    
+    private void insertAdmin(PooledConnection connection) throws SQLException {
+        // Insert default admin if not exists (checked first so startup does not pay for a hash)
+        try (PreparedStatement check = connection.getConnection().prepareStatement(
+                "SELECT 1 FROM users WHERE username = ?")) {
+            check.setString(1, "admin");
+            try (ResultSet rs = check.executeQuery()) {
+                if (rs.next()) {
+                    return;
+                }
+            }
+        }
+        try (PreparedStatement ps = connection.getConnection().prepareStatement(
+                "INSERT OR IGNORE INTO users (username, password, role) VALUES (?, ?, ?)")) {
+            ps.setString(1, "admin");
+            ps.setString(2, passwordHasher.hash("admin123"));
+            ps.setString(3, "ADMIN");
+            ps.executeUpdate();
+        }
+    }
+    
+    /**
+     * Ordered schema history; append new migrations at the end, never edit applied ones
+     */
+    static SchemaMigrator schemaMigrations() {
+        return new SchemaMigrator()
+            .add(1, "Create base tables",
+                // Users table
+                """
+                CREATE TABLE IF NOT EXISTS users (
+                    username TEXT PRIMARY KEY,
+                    password TEXT NOT NULL,
+                    role TEXT NOT NULL
+                )
+                """,
+                // Appointments table
+                """
+                CREATE TABLE IF NOT EXISTS appointments (
+                    id INTEGER PRIMARY KEY AUTOINCREMENT,
+                    patient_username TEXT,
+                    doctor_name TEXT,
+                    appointment_date TEXT,
+                    FOREIGN KEY (patient_username) REFERENCES users(username)
+                )
+                """,
+                // Medical Records table
+                """
+                CREATE TABLE IF NOT EXISTS medical_records (
+                    id INTEGER PRIMARY KEY AUTOINCREMENT,
+                    patient_username TEXT,
+                    diagnosis TEXT,
+                    treatment TEXT,
+                    record_date TEXT DEFAULT CURRENT_TIMESTAMP,
+                    FOREIGN KEY (patient_username) REFERENCES users(username)
+                )
+                """,
+                // Prescriptions table
+                """
+                CREATE TABLE IF NOT EXISTS prescriptions (
+                    id INTEGER PRIMARY KEY AUTOINCREMENT,
+                    patient_username TEXT,
+                    medicine TEXT,
+                    quantity INTEGER,
+                    prescription_date TEXT DEFAULT CURRENT_TIMESTAMP,
+                    FOREIGN KEY (patient_username) REFERENCES users(username)
+                )
+                """,
+                // Medicine Inventory table
+                """
+                CREATE TABLE IF NOT EXISTS medicine_inventory (
+                    medicine_name TEXT PRIMARY KEY,
+                    quantity INTEGER DEFAULT 0
+                )
+                """)
+            // SQLite cannot change a column type in place, so the tables are rebuilt.
+            // Dates that do not parse become NULL.
+            .add(2, "Store appointment_date as epoch days",
+                """
+                CREATE TABLE appointments_new (
+                    id INTEGER PRIMARY KEY AUTOINCREMENT,
+                    patient_username TEXT,
+                    doctor_name TEXT,
+                    appointment_date INTEGER,
+                    FOREIGN KEY (patient_username) REFERENCES users(username)
+                )
+                """,
+                """
+                INSERT INTO appointments_new (id, patient_username, doctor_name, appointment_date)
+                SELECT id, patient_username, doctor_name,
+                       CAST(julianday(date(appointment_date)) - 2440587.5 AS INTEGER)
+                FROM appointments
+                """,
+                "DROP TABLE appointments",
+                "ALTER TABLE appointments_new RENAME TO appointments")
+            .add(3, "Store record_date as epoch seconds",
+                """
+                CREATE TABLE medical_records_new (
+                    id INTEGER PRIMARY KEY AUTOINCREMENT,
+                    patient_username TEXT,
+                    diagnosis TEXT,
+                    treatment TEXT,
+                    record_date INTEGER DEFAULT (CAST(strftime('%s', 'now') AS INTEGER)),
+                    FOREIGN KEY (patient_username) REFERENCES users(username)
+                )
+                """,
+                """
+                INSERT INTO medical_records_new (id, patient_username, diagnosis, treatment, record_date)
+                SELECT id, patient_username, diagnosis, treatment, CAST(strftime('%s', record_date) AS INTEGER)
+                FROM medical_records
+                """,
+                "DROP TABLE medical_records",
+                "ALTER TABLE medical_records_new RENAME TO medical_records")
+            .add(4, "Index per-patient and per-doctor lookups",
+                "CREATE INDEX IF NOT EXISTS idx_appointments_patient ON appointments (patient_username)",
+                "CREATE INDEX IF NOT EXISTS idx_appointments_doctor_date ON appointments (doctor_name, appointment_date)",
+                "CREATE INDEX IF NOT EXISTS idx_appointments_date ON appointments (appointment_date)",
+                "CREATE INDEX IF NOT EXISTS idx_medical_records_patient ON medical_records (patient_username)",
+                "CREATE INDEX IF NOT EXISTS idx_prescriptions_patient ON prescriptions (patient_username)")
+            .add(5, "Replace plaintext passwords with salted hashes", connection -> {
+                PasswordHasher hasher = new PasswordHasher();
+                Map<String, String> plaintext = new HashMap<>();
+                try (Statement stmt = connection.createStatement();
+                     ResultSet rs = stmt.executeQuery("SELECT username, password FROM users")) {
+                    while (rs.next()) {
+                        if (!PasswordHasher.isHash(rs.getString("password"))) {
+                            plaintext.put(rs.getString("username"), rs.getString("password"));
+                        }
+                    }
+                }
+                try (PreparedStatement ps = connection.prepareStatement(
+                        "UPDATE users SET password = ? WHERE username = ?")) {
+                    for (Map.Entry<String, String> user : plaintext.entrySet()) {
+                        ps.setString(1, hasher.hash(user.getValue()));
+                        ps.setString(2, user.getKey());
+                        ps.executeUpdate();
+                    }
+                }
+            })
+            .add(6, "Track the inventory write-behind checkpoint",
+                """
+                CREATE TABLE IF NOT EXISTS inventory_checkpoint (
+                    id INTEGER PRIMARY KEY CHECK (id = 1),
+                    segment INTEGER NOT NULL
+                )
+                """,
+                "INSERT OR IGNORE INTO inventory_checkpoint (id, segment) VALUES (1, 0)")
+            .add(7, "Give appointments a slot within the doctor's day",
+                "ALTER TABLE appointments ADD COLUMN slot INTEGER",
+                // Legacy rows keep a NULL slot, which the unique index does not compare
+                "CREATE UNIQUE INDEX IF NOT EXISTS idx_appointments_doctor_slot "
+                    + "ON appointments (doctor_name, appointment_date, slot)")
+            // External-content FTS5 index: the text lives only in medical_records and the
+            // triggers keep the index in step with every insert, update and delete
+            .add(8, "Full-text index over medical record diagnoses and treatments",
+                """
+                CREATE VIRTUAL TABLE IF NOT EXISTS medical_records_fts USING fts5(
+                    diagnosis,
+                    treatment,
+                    content = 'medical_records',
+                    content_rowid = 'id',
+                    tokenize = 'porter unicode61'
+                )
+                """,
+                """
+                CREATE TRIGGER IF NOT EXISTS medical_records_fts_insert AFTER INSERT ON medical_records BEGIN
+                    INSERT INTO medical_records_fts (rowid, diagnosis, treatment)
+                    VALUES (new.id, new.diagnosis, new.treatment);
+                END
+                """,
+                """
+                CREATE TRIGGER IF NOT EXISTS medical_records_fts_delete AFTER DELETE ON medical_records BEGIN
+                    INSERT INTO medical_records_fts (medical_records_fts, rowid, diagnosis, treatment)
+                    VALUES ('delete', old.id, old.diagnosis, old.treatment);
+                END
+                """,
+                """
+                CREATE TRIGGER IF NOT EXISTS medical_records_fts_update AFTER UPDATE ON medical_records BEGIN
+                    INSERT INTO medical_records_fts (medical_records_fts, rowid, diagnosis, treatment)
+                    VALUES ('delete', old.id, old.diagnosis, old.treatment);
+                    INSERT INTO medical_records_fts (rowid, diagnosis, treatment)
+                    VALUES (new.id, new.diagnosis, new.treatment);
+                END
+                """,
+                // Indexes the rows written before this migration
+                "INSERT INTO medical_records_fts (medical_records_fts) VALUES ('rebuild')")
+            // Only the home shard's row counts; a database that already has users predates
+            // sharding and so has one shard
+            .add(9, "Record the shard count",
+                """
+                CREATE TABLE IF NOT EXISTS shard_map (
+                    id INTEGER PRIMARY KEY CHECK (id = 1),
+                    shard_count INTEGER NOT NULL
+                )
+                """,
+                "INSERT OR IGNORE INTO shard_map (id, shard_count) SELECT 1, 1 WHERE EXISTS (SELECT 1 FROM users)")
+            // Lets archiving find the oldest prescriptions and a month's range without a scan
+            .add(10, "Index prescription dates",
+                "CREATE INDEX IF NOT EXISTS idx_prescriptions_date ON prescriptions (prescription_date)");
+    }
+    
+    /**
+     * Appointment dates are stored as epoch days; the domain model keeps ISO-8601 strings
+     */
+    static long toEpochDay(String date) throws SQLException {
+        try {
+            return LocalDate.parse(date).toEpochDay();
+        } catch (DateTimeParseException | NullPointerException e) {
+            throw new SQLException("Invalid appointment date (expected yyyy-MM-dd): " + date, e);
         }
-        
-        // Insert default admin if not exists
-        PreparedStatement ps = connection.prepareStatement(
-            "INSERT OR IGNORE INTO users (username, password, role) VALUES (?, ?, ?)");
-        ps.setString(1, "admin");
-        ps.setString(2, "admin123");
-        ps.setString(3, "ADMIN");
-        ps.executeUpdate();
+    }
+    
+    private String fromEpochDay(ResultSet rs, String column) throws SQLException {
+        long epochDay = rs.getLong(column);
+        return rs.wasNull() ? null : dates.intern(LocalDate.ofEpochDay(epochDay).toString());
     }
     
     // Database operations for Users
+    // Statements come from the per-connection cache and are owned by the pool;
+    // only result sets are closed here
     public void addUser(User user) throws SQLException {
-        PreparedStatement ps = connection.prepareStatement(
-            "INSERT INTO users (username, password, role) VALUES (?, ?, ?)");
-        ps.setString(1, user.getUsername());
-        ps.setString(2, user.getPassword());
-        ps.setString(3, user.getRole());
-        ps.executeUpdate();
+        // Hash before taking the writer so the slow hash never blocks other writes
+        addUser(user, hashPassword(user.getPassword()));
+    }
+    
+    /**
+     * Inserts a user whose password was hashed with hashPassword; the user's own password
+     * is not used
+     */
+    public void addUser(User user, String passwordHash) throws SQLException {
+        timedWrite(shard(user.getUsername()), Metrics.Operation.ADD_USER, connection -> {
+            PreparedStatement ps = connection.prepare(
+                "INSERT INTO users (username, password, role) VALUES (?, ?, ?)");
+            ps.setString(1, user.getUsername());
+            ps.setString(2, passwordHash);
+            ps.setString(3, user.getRole());
+            return ps.executeUpdate();
+        }, false, false);
+        emit(ChangeEvent.Type.USER, 0, user.getUsername(), user.getRole(), null, ChangeEvent.NO_DAY, 0);
     }
     
+    /**
+     * Looks the user up by username only and verifies the password hash
+     * after the reader connection has been returned to the pool. An unknown username
+     * is verified against a dummy hash, so timing does not tell which usernames exist.
+     */
     public boolean validateUser(String username, String password) throws SQLException {
-        PreparedStatement ps = connection.prepareStatement(
-            "SELECT * FROM users WHERE username = ? AND password = ?");
-        ps.setString(1, username);
-        ps.setString(2, password);
-        return ps.executeQuery().next();
+        long start = metrics.start();
+        try {
+            String passwordHash = getPasswordHash(username);
+            boolean matches = passwordHasher.verify(password, passwordHash != null ? passwordHash : unknownUserHash());
+            boolean valid = passwordHash != null && matches;
+            metrics.record(Metrics.Operation.VALIDATE_USER, start);
+            return valid;
+        } catch (SQLException | RuntimeException e) {
+            metrics.record(Metrics.Operation.VALIDATE_USER, start, e);
+            throw e;
+        }
+    }
+    
+    /**
+     * Salted hash of a password in the stored format; slow on purpose, so callers that
+     * serialize writes hash before they queue the insert
+     */
+    public String hashPassword(String password) {
+        return passwordHasher.hash(password);
+    }
+    
+    /**
+     * For tests that need a hash of a different cost
+     */
+    void setPasswordHasher(PasswordHasher passwordHasher) {
+        this.passwordHasher = passwordHasher;
+        this.unknownUserHash = null;
+    }
+    
+    private String unknownUserHash() {
+        String hash = unknownUserHash;
+        if (hash == null) {
+            // Two threads racing here both compute a valid dummy; either may be kept
+            hash = passwordHasher.hash(UUID.randomUUID().toString());
+            unknownUserHash = hash;
+        }
+        return hash;
+    }
+    
+    /**
+     * Verifies a password against a hash the caller already has, e.g. from a hot state image
+     */
+    public boolean verifyPassword(String password, String passwordHash) {
+        long start = metrics.start();
+        boolean valid = passwordHasher.verify(password, passwordHash);
+        metrics.record(Metrics.Operation.VALIDATE_USER, start);
+        return valid;
+    }
+    
+    /**
+     * Role of the user (ADMIN or PATIENT), or null if there is no such user
+     */
+    public String getUserRole(String username) throws SQLException {
+        return read(shard(username), Metrics.Operation.VALIDATE_USER, connection -> {
+            PreparedStatement ps = connection.prepare("SELECT role FROM users WHERE username = ?");
+            ps.setString(1, username);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) {
+                    return null;
+                }
+                metrics.addRowsRead(1);
+                return rs.getString(1);
+            }
+        });
+    }
+    
+    private String getPasswordHash(String username) throws SQLException {
+        return shard(username).read(connection -> {
+            PreparedStatement ps = connection.prepare("SELECT password FROM users WHERE username = ?");
+            ps.setString(1, username);
+            // Result sets must be closed so the reader releases its WAL snapshot
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next()) {
+                    return null;
+                }
+                metrics.addRowsRead(1);
+                return rs.getString(1);
+            }
+        });
     }
     
     // Database operations for Appointments
     public void addAppointment(Appointment appointment) throws SQLException {
-        PreparedStatement ps = connection.prepareStatement(
-            "INSERT INTO appointments (patient_username, doctor_name, appointment_date) VALUES (?, ?, ?)");
+        long[] id = new long[1];
+        write(shard(appointment.getPatientUsername()), Metrics.Operation.ADD_APPOINTMENT, connection -> {
+            PreparedStatement ps = connection.prepare(
+                "INSERT INTO appointments (patient_username, doctor_name, appointment_date, slot) VALUES (?, ?, ?, ?)");
+            bindAppointment(ps, appointment);
+            int rows = ps.executeUpdate();
+            id[0] = lastInsertId(connection);
+            return rows;
+        });
+        emitAppointment(appointment, id[0]);
+    }
+    
+    public List<Appointment> getAllAppointments() throws SQLException {
+        return readAll(Metrics.Operation.GET_ALL_APPOINTMENTS, connection -> {
+            List<Appointment> appointments = new ArrayList<>();
+            try (ResultSet rs = connection.prepare("SELECT * FROM appointments").executeQuery()) {
+                while (rs.next()) {
+                    appointments.add(mapAppointment(rs));
+                }
+            }
+            return appointments;
+        });
+    }
+    
+    /**
+     * Every appointment, archived months first when includeArchived
+     */
+    public List<Appointment> getAllAppointments(boolean includeArchived) throws SQLException {
+        if (!includeArchived) {
+            return getAllAppointments();
+        }
+        return readEveryShard(Metrics.Operation.GET_ALL_APPOINTMENTS, shard -> readWithArchive(shard, null, null,
+            "SELECT * FROM appointments", ps -> { }, this::mapAppointment, Appointment::getId));
+    }
+    
+    /**
+     * One page of a patient's appointments in id order.
+     * Pass 0 as afterId for the first page, then the id of the last appointment returned.
+     */
+    public List<Appointment> getAppointmentsForPatient(String patientUsername, long afterId, int limit) throws SQLException {
+        return read(shard(patientUsername), Metrics.Operation.GET_APPOINTMENTS_FOR_PATIENT, connection -> {
+            PreparedStatement ps = connection.prepare(
+                "SELECT * FROM appointments WHERE patient_username = ? AND id > ? ORDER BY id LIMIT ?");
+            ps.setString(1, patientUsername);
+            ps.setLong(2, afterId);
+            ps.setInt(3, limit);
+            List<Appointment> appointments = new ArrayList<>();
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    appointments.add(mapAppointment(rs));
+                }
+            }
+            return appointments;
+        });
+    }
+    
+    /**
+     * Appointments of a patient, archived ones included, in id order from afterId on
+     */
+    public List<Appointment> getAppointmentsForPatient(String patientUsername, long afterId, int limit,
+                                                       boolean includeArchived) throws SQLException {
+        if (!includeArchived) {
+            return getAppointmentsForPatient(patientUsername, afterId, limit);
+        }
+        return readShard(shard(patientUsername), Metrics.Operation.GET_APPOINTMENTS_FOR_PATIENT,
+            shard -> firstById(readWithArchive(shard, null, null,
+                "SELECT * FROM appointments WHERE patient_username = ? AND id > ? ORDER BY id LIMIT ?", ps -> {
+                    ps.setString(1, patientUsername);
+                    ps.setLong(2, afterId);
+                    ps.setInt(3, limit);
+                }, this::mapAppointment, Appointment::getId), Appointment::getId, limit));
+    }
+    
+    /**
+     * A doctor's appointments between two dates (inclusive), in date order. Archived
+     * months the range overlaps are read as well; a range of hot months never opens them.
+     */
+    public List<Appointment> getAppointmentsForDoctor(String doctorName, LocalDate from, LocalDate to) throws SQLException {
+        String sql = "SELECT * FROM appointments WHERE doctor_name = ? AND appointment_date BETWEEN ? AND ? "
+            + "ORDER BY appointment_date, id";
+        StatementBinder binder = ps -> {
+            ps.setString(1, doctorName);
+            ps.setLong(2, from.toEpochDay());
+            ps.setLong(3, to.toEpochDay());
+        };
+        YearMonth first = YearMonth.from(from);
+        YearMonth last = YearMonth.from(to);
+        boolean archived = hasArchived(first, last);
+        List<Appointment> byDate = archived
+            ? readEveryShard(Metrics.Operation.GET_APPOINTMENTS_FOR_DOCTOR, shard -> readWithArchive(shard, first, last,
+                sql, binder, this::mapAppointment, Appointment::getId))
+            : readAll(Metrics.Operation.GET_APPOINTMENTS_FOR_DOCTOR, connection -> {
+                PreparedStatement ps = connection.prepare(sql);
+                binder.bind(ps);
+                return mapRows(ps, this::mapAppointment);
+            });
+        if (shards.length > 1 || archived) {
+            // A doctor sees patients of every shard; each shard's part, and each archived month, is already sorted
+            byDate.sort(Comparator.comparing(Appointment::getDate).thenComparingLong(Appointment::getId));
+        }
+        return byDate;
+    }
+    
+    private static void bindAppointment(PreparedStatement ps, Appointment appointment) throws SQLException {
         ps.setString(1, appointment.getPatientUsername());
         ps.setString(2, appointment.getDoctorName());
-        ps.setString(3, appointment.getDate());
-        ps.executeUpdate();
+        ps.setLong(3, toEpochDay(appointment.getDate()));
+        if (appointment.hasSlot()) {
+            ps.setInt(4, appointment.getSlot());
+        } else {
+            ps.setNull(4, Types.INTEGER);
+        }
     }
     
-    public List<Appointment> getAllAppointments() throws SQLException {
-        List<Appointment> appointments = new ArrayList<>();
-        Statement stmt = connection.createStatement();
-        ResultSet rs = stmt.executeQuery("SELECT * FROM appointments");
-        
-        while (rs.next()) {
-            appointments.add(new Appointment(
-                rs.getString("patient_username"),
-                rs.getString("doctor_name"),
-                rs.getString("appointment_date")
-            ));
+    private Appointment mapAppointment(ResultSet rs) throws SQLException {
+        int slot = rs.getInt("slot");
+        if (rs.wasNull()) {
+            slot = Appointment.NO_SLOT;
+        }
+        return new Appointment(
+            rs.getLong("id"),
+            names.intern(rs.getString("patient_username")),
+            names.intern(rs.getString("doctor_name")),
+            fromEpochDay(rs, "appointment_date"),
+            slot
+        );
+    }
+    
+    private CompactAppointment mapCompactAppointment(ResultSet rs) throws SQLException {
+        return mapCompactAppointment(rs, names);
+    }
+    
+    private static CompactAppointment mapCompactAppointment(ResultSet rs, NamePool names) throws SQLException {
+        int epochDay = rs.getInt("appointment_date");
+        if (rs.wasNull()) {
+            epochDay = CompactAppointment.NO_DATE;
+        }
+        int slot = rs.getInt("slot");
+        if (rs.wasNull()) {
+            slot = Appointment.NO_SLOT;
         }
-        return appointments;
+        return new CompactAppointment(rs.getLong("id"), names.id(rs.getString("patient_username")),
+            names.id(rs.getString("doctor_name")), epochDay, slot);
     }
     
     // Database operations for Medical Records
     public void addMedicalRecord(String patientUsername, String diagnosis, String treatment) throws SQLException {
-        PreparedStatement ps = connection.prepareStatement(
-            "INSERT INTO medical_records (patient_username, diagnosis, treatment) VALUES (?, ?, ?)");
-        ps.setString(1, patientUsername);
-        ps.setString(2, diagnosis);
-        ps.setString(3, treatment);
-        ps.executeUpdate();
+        long[] id = new long[1];
+        write(shard(patientUsername), Metrics.Operation.ADD_MEDICAL_RECORD, connection -> {
+            PreparedStatement ps = connection.prepare(
+                "INSERT INTO medical_records (patient_username, diagnosis, treatment) VALUES (?, ?, ?)");
+            ps.setString(1, patientUsername);
+            ps.setString(2, diagnosis);
+            ps.setString(3, treatment);
+            int rows = ps.executeUpdate();
+            id[0] = lastInsertId(connection);
+            return rows;
+        });
+        emitMedicalRecord(patientUsername, diagnosis, treatment, id[0]);
     }
     
     public List<MedicalRecord> getAllMedicalRecords() throws SQLException {
-        List<MedicalRecord> records = new ArrayList<>();
-        Statement stmt = connection.createStatement();
-        ResultSet rs = stmt.executeQuery("SELECT * FROM medical_records");
-        
-        while (rs.next()) {
-            records.add(new MedicalRecord(
-                rs.getString("patient_username"),
-                rs.getString("diagnosis"),
-                rs.getString("treatment")
-            ));
+        return readAll(Metrics.Operation.GET_ALL_MEDICAL_RECORDS, connection -> {
+            List<MedicalRecord> records = new ArrayList<>();
+            try (ResultSet rs = connection.prepare("SELECT * FROM medical_records").executeQuery()) {
+                while (rs.next()) {
+                    records.add(mapMedicalRecord(rs));
+                }
+            }
+            return records;
+        });
+    }
+    
+    /**
+     * One page of a patient's medical records in id order (keyset pagination on id)
+     */
+    public List<MedicalRecord> getMedicalRecordsForPatient(String patientUsername, long afterId, int limit) throws SQLException {
+        return read(shard(patientUsername), Metrics.Operation.GET_MEDICAL_RECORDS_FOR_PATIENT, connection -> {
+            PreparedStatement ps = connection.prepare(
+                "SELECT * FROM medical_records WHERE patient_username = ? AND id > ? ORDER BY id LIMIT ?");
+            ps.setString(1, patientUsername);
+            ps.setLong(2, afterId);
+            ps.setInt(3, limit);
+            List<MedicalRecord> records = new ArrayList<>();
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    records.add(mapMedicalRecord(rs));
+                }
+            }
+            return records;
+        });
+    }
+    
+    /**
+     * Full-text search over diagnoses and treatments, best matches first (bm25, with
+     * diagnosis terms weighted twice as high as treatment terms). Every word must match;
+     * a word ending in * matches as a prefix, e.g. "head* fever". Other punctuation is
+     * ignored rather than parsed as FTS5 syntax. patientUsername may be null to search
+     * all patients; pages are taken with offset and limit. Across shards each shard
+     * ranks its own matches, with its own term statistics, and the best are merged.
+     */
+    public List<MedicalRecord> searchMedicalRecords(String query, String patientUsername, int offset, int limit)
+            throws SQLException {
+        String match = toMatchQuery(query);
+        if (match == null) {
+            return new ArrayList<>();
+        }
+        if (patientUsername == null && shards.length > 1) {
+            return searchEveryShard(match, offset, limit);
         }
-        return records;
+        return read(shard(patientUsername), Metrics.Operation.SEARCH_MEDICAL_RECORDS, connection -> {
+            // For one patient it is cheaper to walk their records through the patient index
+            // and probe the full-text index by rowid than to filter every match of the query
+            PreparedStatement ps = connection.prepare(patientUsername == null
+                ? "SELECT m.id, m.patient_username, m.diagnosis, m.treatment "
+                    + "FROM medical_records_fts JOIN medical_records m ON m.id = medical_records_fts.rowid "
+                    + "WHERE medical_records_fts MATCH ?1 "
+                    + "ORDER BY bm25(medical_records_fts, 2.0, 1.0), m.id LIMIT ?3 OFFSET ?4"
+                : "SELECT m.id, m.patient_username, m.diagnosis, m.treatment "
+                    + "FROM medical_records m CROSS JOIN medical_records_fts ON medical_records_fts.rowid = m.id "
+                    + "WHERE m.patient_username = ?2 AND medical_records_fts MATCH ?1 "
+                    + "ORDER BY bm25(medical_records_fts, 2.0, 1.0), m.id LIMIT ?3 OFFSET ?4");
+            ps.setString(1, match);
+            if (patientUsername != null) {
+                ps.setString(2, patientUsername);
+            }
+            ps.setInt(3, limit);
+            ps.setInt(4, offset);
+            List<MedicalRecord> records = new ArrayList<>();
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    records.add(mapMedicalRecord(rs));
+                }
+            }
+            return records;
+        });
+    }
+    
+    /**
+     * Takes the first offset + limit matches of every shard and merges them by rank
+     */
+    private List<MedicalRecord> searchEveryShard(String match, int offset, int limit) throws SQLException {
+        int top = (int) Math.min(Integer.MAX_VALUE, (long) offset + limit);
+        List<RankedRecord> ranked = readAll(Metrics.Operation.SEARCH_MEDICAL_RECORDS, connection -> {
+            PreparedStatement ps = connection.prepare(
+                "SELECT m.id, m.patient_username, m.diagnosis, m.treatment, "
+                    + "bm25(medical_records_fts, 2.0, 1.0) AS rank "
+                    + "FROM medical_records_fts JOIN medical_records m ON m.id = medical_records_fts.rowid "
+                    + "WHERE medical_records_fts MATCH ? ORDER BY rank, m.id LIMIT ?");
+            ps.setString(1, match);
+            ps.setInt(2, top);
+            List<RankedRecord> records = new ArrayList<>();
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    records.add(new RankedRecord(mapMedicalRecord(rs), rs.getDouble("rank")));
+                }
+            }
+            return records;
+        });
+        ranked.sort(Comparator.comparingDouble(RankedRecord::rank)
+            .thenComparingLong(candidate -> candidate.record().getId()));
+        List<MedicalRecord> page = new ArrayList<>();
+        for (int i = offset; i < Math.min(ranked.size(), top); i++) {
+            page.add(ranked.get(i).record());
+        }
+        return page;
+    }
+    
+    private record RankedRecord(MedicalRecord record, double rank) {
+    }
+    
+    /**
+     * Turns free text into an FTS5 query of quoted terms, or null when there is no term
+     */
+    static String toMatchQuery(String text) {
+        if (text == null) {
+            return null;
+        }
+        StringBuilder match = new StringBuilder();
+        for (String word : text.split("[^\\p{L}\\p{N}*]+")) {
+            boolean prefix = word.endsWith("*");
+            String term = word.replace("*", "");
+            if (term.isEmpty()) {
+                continue;
+            }
+            if (match.length() > 0) {
+                match.append(' ');
+            }
+            match.append('"').append(term).append('"');
+            if (prefix) {
+                match.append('*');
+            }
+        }
+        return match.length() == 0 ? null : match.toString();
+    }
+    
+    private MedicalRecord mapMedicalRecord(ResultSet rs) throws SQLException {
+        return new MedicalRecord(
+            rs.getLong("id"),
+            names.intern(rs.getString("patient_username")),
+            rs.getString("diagnosis"),
+            rs.getString("treatment")
+        );
     }
     
     // Database operations for Prescriptions
+    /**
+     * Inserts the prescription and takes the quantity off the stock. Both happen in one
+     * transaction when the patient lives on the home shard; otherwise the row is committed
+     * on the patient's shard first and the stock is updated after it, not atomically.
+     */
     public void addPrescription(String patientUsername, String medicine, int quantity) throws SQLException {
-        connection.setAutoCommit(false);
-        try {
-            // Add prescription
-            PreparedStatement ps = connection.prepareStatement(
+        // Stock level after the decrement, or null if the medicine is not stocked
+        Integer[] level = new Integer[1];
+        long[] id = new long[1];
+        ConnectionPool patientShard = shard(patientUsername);
+        if (patientShard != pool) {
+            // Committed before the stock transaction, never inside it: a transaction that hits
+            // a lock is run again, and would insert the row on the other shard twice
+            write(patientShard, Metrics.Operation.ADD_PRESCRIPTION, connection -> {
+                int inserted = insertPrescriptionRow(connection, patientUsername, medicine, quantity);
+                id[0] = lastInsertId(connection);
+                return inserted;
+            });
+        }
+        inStockOrder(() -> {
+            // The writer is held for the whole transaction, so no other caller can
+            // commit or roll back on this connection in the meantime
+            transaction(pool, Metrics.Operation.ADD_PRESCRIPTION, connection -> {
+                int rows = 0;
+                if (patientShard == pool) {
+                    rows += insertPrescriptionRow(connection, patientUsername, medicine, quantity);
+                    id[0] = lastInsertId(connection);
+                }
+                
+                // Update inventory
+                PreparedStatement ps = connection.prepare(
+                    "UPDATE medicine_inventory SET quantity = quantity - ? WHERE medicine_name = ?");
+                ps.setInt(1, quantity);
+                ps.setString(2, medicine);
+                rows += ps.executeUpdate();
+                level[0] = stockLevel(connection, medicine);
+                return rows;
+            });
+            emitPrescription(patientUsername, medicine, quantity, id[0]);
+            if (level[0] != null) {
+                emitStock(medicine, level[0]);
+            }
+            return null;
+        });
+        // Raised once committed; this path does not check stock, so it can go negative
+        if (level[0] != null) {
+            inventoryEvents.onChange(medicine, (long) level[0] + quantity, level[0]);
+        }
+    }
+    
+    private static int insertPrescriptionRow(PooledConnection connection, String patientUsername, String medicine,
+                                             int quantity) throws SQLException {
+        PreparedStatement ps = connection.prepare(
+            "INSERT INTO prescriptions (patient_username, medicine, quantity) VALUES (?, ?, ?)");
+        ps.setString(1, patientUsername);
+        ps.setString(2, medicine);
+        ps.setInt(3, quantity);
+        return ps.executeUpdate();
+    }
+    
+    private static Integer stockLevel(PooledConnection connection, String medicine) throws SQLException {
+        PreparedStatement ps = connection.prepare("SELECT quantity FROM medicine_inventory WHERE medicine_name = ?");
+        ps.setString(1, medicine);
+        try (ResultSet rs = ps.executeQuery()) {
+            return rs.next() ? rs.getInt(1) : null;
+        }
+    }
+    
+    /**
+     * Inserts the prescription row only; used when stock is managed by InventoryEngine
+     */
+    public void insertPrescription(String patientUsername, String medicine, int quantity) throws SQLException {
+        long[] id = new long[1];
+        write(shard(patientUsername), Metrics.Operation.INSERT_PRESCRIPTION, connection -> {
+            PreparedStatement ps = connection.prepare(
                 "INSERT INTO prescriptions (patient_username, medicine, quantity) VALUES (?, ?, ?)");
             ps.setString(1, patientUsername);
             ps.setString(2, medicine);
             ps.setInt(3, quantity);
-            ps.executeUpdate();
-            
-            // Update inventory
-            ps = connection.prepareStatement(
-                "UPDATE medicine_inventory SET quantity = quantity - ? WHERE medicine_name = ?");
-            ps.setInt(1, quantity);
-            ps.setString(2, medicine);
-            ps.executeUpdate();
-            
-            connection.commit();
-        } catch (SQLException e) {
-            connection.rollback();
+            int rows = ps.executeUpdate();
+            id[0] = lastInsertId(connection);
+            return rows;
+        });
+        emitPrescription(patientUsername, medicine, quantity, id[0]);
+    }
+    
+    public List<Prescription> getAllPrescriptions() throws SQLException {
+        return readAll(Metrics.Operation.GET_ALL_PRESCRIPTIONS, connection -> {
+            List<Prescription> prescriptions = new ArrayList<>();
+            try (ResultSet rs = connection.prepare("SELECT * FROM prescriptions").executeQuery()) {
+                while (rs.next()) {
+                    prescriptions.add(mapPrescription(rs));
+                }
+            }
+            return prescriptions;
+        });
+    }
+    
+    /**
+     * Every prescription, archived months first when includeArchived
+     */
+    public List<Prescription> getAllPrescriptions(boolean includeArchived) throws SQLException {
+        if (!includeArchived) {
+            return getAllPrescriptions();
+        }
+        return readEveryShard(Metrics.Operation.GET_ALL_PRESCRIPTIONS, shard -> readWithArchive(shard, null, null,
+            "SELECT * FROM prescriptions", ps -> { }, this::mapPrescription, Prescription::getId));
+    }
+    
+    /**
+     * One page of a patient's prescriptions in id order (keyset pagination on id)
+     */
+    public List<Prescription> getPrescriptionsForPatient(String patientUsername, long afterId, int limit) throws SQLException {
+        return read(shard(patientUsername), Metrics.Operation.GET_PRESCRIPTIONS_FOR_PATIENT, connection -> {
+            PreparedStatement ps = connection.prepare(
+                "SELECT * FROM prescriptions WHERE patient_username = ? AND id > ? ORDER BY id LIMIT ?");
+            ps.setString(1, patientUsername);
+            ps.setLong(2, afterId);
+            ps.setInt(3, limit);
+            List<Prescription> prescriptions = new ArrayList<>();
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    prescriptions.add(mapPrescription(rs));
+                }
+            }
+            return prescriptions;
+        });
+    }
+    
+    /**
+     * Prescriptions of a patient, archived ones included, in id order from afterId on
+     */
+    public List<Prescription> getPrescriptionsForPatient(String patientUsername, long afterId, int limit,
+                                                         boolean includeArchived) throws SQLException {
+        if (!includeArchived) {
+            return getPrescriptionsForPatient(patientUsername, afterId, limit);
+        }
+        return readShard(shard(patientUsername), Metrics.Operation.GET_PRESCRIPTIONS_FOR_PATIENT,
+            shard -> firstById(readWithArchive(shard, null, null,
+                "SELECT * FROM prescriptions WHERE patient_username = ? AND id > ? ORDER BY id LIMIT ?", ps -> {
+                    ps.setString(1, patientUsername);
+                    ps.setLong(2, afterId);
+                    ps.setInt(3, limit);
+                }, this::mapPrescription, Prescription::getId), Prescription::getId, limit));
+    }
+    
+    private Prescription mapPrescription(ResultSet rs) throws SQLException {
+        return new Prescription(
+            rs.getLong("id"),
+            names.intern(rs.getString("patient_username")),
+            names.intern(rs.getString("medicine")),
+            rs.getInt("quantity")
+        );
+    }
+    
+    /**
+     * Everything shown on a patient's dashboard, read from one snapshot through the
+     * per-patient indexes
+     */
+    public PatientView getPatientView(String patientUsername) throws SQLException {
+        return read(shard(patientUsername), Metrics.Operation.GET_PATIENT_VIEW, connection -> {
+            Connection raw = connection.getConnection();
+            // A read transaction keeps the three queries on the same WAL snapshot
+            raw.setAutoCommit(false);
+            try {
+                PatientView view = new PatientView(patientUsername,
+                    queryForPatient(connection, "SELECT * FROM appointments WHERE patient_username = ? ORDER BY id",
+                        patientUsername, this::mapAppointment),
+                    queryForPatient(connection, "SELECT * FROM medical_records WHERE patient_username = ? ORDER BY id",
+                        patientUsername, this::mapMedicalRecord),
+                    queryForPatient(connection, "SELECT * FROM prescriptions WHERE patient_username = ? ORDER BY id",
+                        patientUsername, this::mapPrescription));
+                metrics.addRowsRead(view.getAppointments().size() + view.getMedicalRecords().size()
+                    + view.getPrescriptions().size());
+                raw.commit();
+                return view;
+            } catch (SQLException | RuntimeException e) {
+                raw.rollback();
+                throw e;
+            } finally {
+                raw.setAutoCommit(true);
+            }
+        });
+    }
+    
+    private static <T> List<T> queryForPatient(PooledConnection connection, String sql, String patientUsername,
+                                               RowMapper<T> mapper) throws SQLException {
+        PreparedStatement ps = connection.prepare(sql);
+        ps.setString(1, patientUsername);
+        List<T> rows = new ArrayList<>();
+        try (ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                rows.add(mapper.map(rs));
+            }
+        }
+        return rows;
+    }
+    
+    // Streaming cursors
+    // Rows are handed to the visitor as they are read, so memory stays flat however
+    // large the table is. The reader connection is held until the walk finishes.
+    // Shards are walked one after another, which keeps the rows in id order.
+    
+    /**
+     * Receives the rows of a streaming cursor one at a time
+     */
+    @FunctionalInterface
+    public interface RowVisitor<T> {
+        void visit(T row) throws IOException;
+    }
+    
+    public long streamAppointments(RowVisitor<Appointment> visitor) throws SQLException, IOException {
+        return stream(Metrics.Operation.STREAM_APPOINTMENTS, "SELECT * FROM appointments ORDER BY id", DEFAULT_FETCH_SIZE,
+            this::mapAppointment, visitor);
+    }
+    
+    public long streamMedicalRecords(RowVisitor<MedicalRecord> visitor) throws SQLException, IOException {
+        return streamMedicalRecords(DEFAULT_FETCH_SIZE, visitor);
+    }
+    
+    public long streamMedicalRecords(int fetchSize, RowVisitor<MedicalRecord> visitor) throws SQLException, IOException {
+        return stream(Metrics.Operation.STREAM_MEDICAL_RECORDS, "SELECT * FROM medical_records ORDER BY id", fetchSize,
+            this::mapMedicalRecord, visitor);
+    }
+    
+    public long streamPrescriptions(RowVisitor<Prescription> visitor) throws SQLException, IOException {
+        return streamPrescriptions(DEFAULT_FETCH_SIZE, visitor);
+    }
+    
+    public long streamPrescriptions(int fetchSize, RowVisitor<Prescription> visitor) throws SQLException, IOException {
+        return stream(Metrics.Operation.STREAM_PRESCRIPTIONS, "SELECT * FROM prescriptions ORDER BY id", fetchSize,
+            this::mapPrescription, visitor);
+    }
+    
+    /**
+     * One page of all appointments in id order; pass 0 as afterId for the first page, then
+     * the id of the last appointment returned. Unlike a stream, no reader is held between pages.
+     */
+    public List<Appointment> getAppointments(long afterId, int limit) throws SQLException {
+        return page(Metrics.Operation.STREAM_APPOINTMENTS, "appointments", afterId, limit, this::mapAppointment,
+            Appointment::getId);
+    }
+    
+    /**
+     * One page of all medical records in id order (keyset pagination on id)
+     */
+    public List<MedicalRecord> getMedicalRecords(long afterId, int limit) throws SQLException {
+        return page(Metrics.Operation.STREAM_MEDICAL_RECORDS, "medical_records", afterId, limit,
+            this::mapMedicalRecord, MedicalRecord::getId);
+    }
+    
+    /**
+     * One page of all prescriptions in id order (keyset pagination on id)
+     */
+    public List<Prescription> getPrescriptions(long afterId, int limit) throws SQLException {
+        return page(Metrics.Operation.STREAM_PRESCRIPTIONS, "prescriptions", afterId, limit,
+            this::mapPrescription, Prescription::getId);
+    }
+    
+    private <T> List<T> page(Metrics.Operation operation, String table, long afterId, int limit, RowMapper<T> mapper,
+                             ToLongFunction<T> idOf) throws SQLException {
+        String sql = "SELECT * FROM " + table + " WHERE id > ? ORDER BY id LIMIT ?";
+        List<T> rows = readAll(operation, connection -> {
+            PreparedStatement ps = connection.prepare(sql);
+            ps.setLong(1, afterId);
+            ps.setInt(2, limit);
+            List<T> part = new ArrayList<>();
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    part.add(mapper.map(rs));
+                }
+            }
+            return part;
+        });
+        // Every shard may have contributed a full page
+        rows.sort(Comparator.comparingLong(idOf));
+        return rows.size() > limit ? new ArrayList<>(rows.subList(0, limit)) : rows;
+    }
+    
+    /**
+     * Maps the current row of a result set
+     */
+    @FunctionalInterface
+    private interface RowMapper<T> {
+        T map(ResultSet rs) throws SQLException;
+    }
+    
+    // Compact bulk loads
+    // Whole tables as compact records: names are ids in getNamePool() and appointment
+    // dates epoch days, so a loaded row holds no Strings besides free text
+    
+    public List<CompactAppointment> loadAppointments() throws SQLException {
+        return load(Metrics.Operation.LOAD_APPOINTMENTS, "SELECT * FROM appointments ORDER BY id",
+            this::mapCompactAppointment);
+    }
+    
+    public List<CompactMedicalRecord> loadMedicalRecords() throws SQLException {
+        return load(Metrics.Operation.LOAD_MEDICAL_RECORDS, "SELECT * FROM medical_records ORDER BY id",
+            rs -> new CompactMedicalRecord(rs.getLong("id"), names.id(rs.getString("patient_username")),
+                rs.getString("diagnosis"), rs.getString("treatment")));
+    }
+    
+    public List<CompactPrescription> loadPrescriptions() throws SQLException {
+        return load(Metrics.Operation.LOAD_PRESCRIPTIONS, "SELECT * FROM prescriptions ORDER BY id",
+            rs -> new CompactPrescription(rs.getLong("id"), names.id(rs.getString("patient_username")),
+                names.id(rs.getString("medicine")), rs.getInt("quantity")));
+    }
+    
+    private <T> List<T> load(Metrics.Operation operation, String sql, RowMapper<T> mapper) throws SQLException {
+        return readAll(operation, connection -> {
+            PreparedStatement ps = connection.prepare(sql);
+            ps.setFetchSize(DEFAULT_FETCH_SIZE);
+            List<T> rows = new ArrayList<>();
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    rows.add(mapper.map(rs));
+                }
+            }
+            return rows;
+        });
+    }
+    
+    /**
+     * Names referenced by compact records; also the source of the String instances
+     * shared by loaded Appointment, MedicalRecord and Prescription objects
+     */
+    public NamePool getNamePool() {
+        return names;
+    }
+    
+    // Id-range cursors
+    // A table split into id ranges can be walked by several readers in parallel
+    
+    /**
+     * Largest id in appointments, medical_records or prescriptions; 0 if the table is empty
+     */
+    public long getMaxId(String table) throws SQLException {
+        String sql = switch (table) {
+            case "appointments", "medical_records", "prescriptions" -> "SELECT MAX(id) FROM " + table;
+            default -> throw new IllegalArgumentException("Unknown table: " + table);
+        };
+        List<Long> maxIds = readAll(Metrics.Operation.GET_MAX_ID, connection -> {
+            try (ResultSet rs = connection.prepare(sql).executeQuery()) {
+                return List.of(rs.next() ? rs.getLong(1) : 0L);
+            }
+        });
+        return maxIds.stream().mapToLong(Long::longValue).max().orElse(0L);
+    }
+    
+    /**
+     * Appointments with fromId <= id <= toId, in id order
+     */
+    public long streamAppointments(long fromId, long toId, RowVisitor<Appointment> visitor)
+            throws SQLException, IOException {
+        return stream(Metrics.Operation.STREAM_APPOINTMENTS,
+            "SELECT * FROM appointments WHERE id BETWEEN ? AND ? ORDER BY id", DEFAULT_FETCH_SIZE,
+            this::mapAppointment, visitor, fromId, toId);
+    }
+    
+    public long streamMedicalRecords(long fromId, long toId, RowVisitor<MedicalRecord> visitor)
+            throws SQLException, IOException {
+        return stream(Metrics.Operation.STREAM_MEDICAL_RECORDS,
+            "SELECT * FROM medical_records WHERE id BETWEEN ? AND ? ORDER BY id", DEFAULT_FETCH_SIZE,
+            this::mapMedicalRecord, visitor, fromId, toId);
+    }
+    
+    /**
+     * Prescriptions with fromId <= id <= toId together with the day they were written
+     */
+    public long streamPrescriptionUsage(long fromId, long toId, RowVisitor<PrescriptionUsage> visitor)
+            throws SQLException, IOException {
+        return stream(Metrics.Operation.STREAM_PRESCRIPTION_USAGE,
+            "SELECT patient_username, medicine, quantity, "
+                + "CAST(julianday(prescription_date) - 2440587.5 AS INTEGER) AS day "
+                + "FROM prescriptions WHERE id BETWEEN ? AND ? ORDER BY id", DEFAULT_FETCH_SIZE,
+            DatabaseManager::mapPrescriptionUsage, visitor, fromId, toId);
+    }
+    
+    private static PrescriptionUsage mapPrescriptionUsage(ResultSet rs) throws SQLException {
+        long day = rs.getLong("day");
+        if (rs.wasNull()) {
+            day = PrescriptionUsage.NO_DAY;
+        }
+        return new PrescriptionUsage(rs.getString("patient_username"), rs.getString("medicine"),
+            rs.getInt("quantity"), day);
+    }
+    
+    /**
+     * A prescription row reduced to what usage statistics need
+     */
+    public static final class PrescriptionUsage {
+        public static final long NO_DAY = Long.MIN_VALUE;
+        
+        private final String patientUsername;
+        private final String medicine;
+        private final int quantity;
+        private final long epochDay;
+        
+        PrescriptionUsage(String patientUsername, String medicine, int quantity, long epochDay) {
+            this.patientUsername = patientUsername;
+            this.medicine = medicine;
+            this.quantity = quantity;
+            this.epochDay = epochDay;
+        }
+        
+        public String getPatientUsername() { return patientUsername; }
+        public String getMedicine() { return medicine; }
+        public int getQuantity() { return quantity; }
+        /** Day the prescription was written (UTC), or NO_DAY if it has no date */
+        public long getEpochDay() { return epochDay; }
+    }
+    
+    private <T> long stream(Metrics.Operation operation, String sql, int fetchSize, RowMapper<T> mapper,
+                            RowVisitor<T> visitor, long... parameters) throws SQLException, IOException {
+        long start = metrics.start();
+        try {
+            long visited = 0;
+            for (ConnectionPool shard : shards) {
+                visited += shard.read(connection -> {
+                    PreparedStatement ps = connection.prepare(sql);
+                    for (int i = 0; i < parameters.length; i++) {
+                        ps.setLong(i + 1, parameters[i]);
+                    }
+                    ps.setFetchSize(fetchSize);
+                    long rows = 0;
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            visitor.visit(mapper.map(rs));
+                            rows++;
+                        }
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    } finally {
+                        metrics.addRowsRead(rows);
+                    }
+                    return rows;
+                });
+            }
+            metrics.record(operation, start);
+            return visited;
+        } catch (UncheckedIOException e) {
+            metrics.record(operation, start, e.getCause());
+            throw e.getCause();
+        } catch (SQLException | RuntimeException e) {
+            metrics.record(operation, start, e);
             throw e;
+        }
+    }
+    
+    // Bulk ingestion
+    // Rows are sent with addBatch/executeBatch, one transaction per chunk. A failing
+    // chunk is rolled back and its rows are reported as failed; later chunks still run.
+    // With several shards the rows are split by patient and the shards load in parallel.
+    
+    /**
+     * Binds one row of a bulk insert to the statement
+     */
+    @FunctionalInterface
+    private interface RowBinder<T> {
+        void bind(PreparedStatement ps, T row) throws SQLException;
+    }
+    
+    /**
+     * Extra work done inside a chunk's transaction after its rows are inserted
+     */
+    @FunctionalInterface
+    private interface ChunkHook<T> {
+        void afterInsert(PooledConnection connection, List<T> chunk) throws SQLException;
+    }
+    
+    /**
+     * Change event of one committed row of a bulk insert, given the id the row got
+     */
+    @FunctionalInterface
+    private interface RowEvent<T> {
+        void emit(T row, long id);
+    }
+    
+    public BatchResult addAppointments(Collection<Appointment> appointments) throws SQLException {
+        return addAppointments(appointments, batchChunkSize);
+    }
+    
+    public BatchResult addAppointments(Collection<Appointment> appointments, int chunkSize) throws SQLException {
+        return executeChunked(Metrics.Operation.ADD_APPOINTMENTS, appointments, chunkSize,
+            "INSERT INTO appointments (patient_username, doctor_name, appointment_date, slot) VALUES (?, ?, ?, ?)",
+            DatabaseManager::bindAppointment,
+            null, Appointment::getPatientUsername, this::emitAppointment);
+    }
+    
+    public BatchResult addMedicalRecords(Collection<MedicalRecord> records) throws SQLException {
+        return addMedicalRecords(records, batchChunkSize);
+    }
+    
+    public BatchResult addMedicalRecords(Collection<MedicalRecord> records, int chunkSize) throws SQLException {
+        return executeChunked(Metrics.Operation.ADD_MEDICAL_RECORDS, records, chunkSize,
+            "INSERT INTO medical_records (patient_username, diagnosis, treatment) VALUES (?, ?, ?)",
+            (ps, record) -> {
+                ps.setString(1, record.getPatientUsername());
+                ps.setString(2, record.getDiagnosis());
+                ps.setString(3, record.getTreatment());
+            },
+            null, MedicalRecord::getPatientUsername,
+            (record, id) -> emitMedicalRecord(record.getPatientUsername(), record.getDiagnosis(),
+                record.getTreatment(), id));
+    }
+    
+    public BatchResult addPrescriptions(Collection<Prescription> prescriptions) throws SQLException {
+        return addPrescriptions(prescriptions, batchChunkSize);
+    }
+    
+    /**
+     * Inserts the prescriptions and takes them off the stock. On a single database each
+     * chunk's stock update commits with its rows; across shards the stock lives on the
+     * home shard and is updated once for all rows that were inserted, after them. Once
+     * committed, each medicine raises one inventory event from its level before the batch
+     * to its level after it.
+     */
+    public BatchResult addPrescriptions(Collection<Prescription> prescriptions, int chunkSize) throws SQLException {
+        // Stock before and after the batch by medicine; medicines that are not stocked have none
+        Map<String, int[]> levels = new LinkedHashMap<>();
+        BatchResult batch = inStockOrder(() -> {
+            // Levels of each chunk's decrement, by the chunk's first row; kept only if the chunk commits
+            Map<Prescription, Map<String, int[]>> chunkLevels = new IdentityHashMap<>();
+            BatchResult result = executeChunked(Metrics.Operation.ADD_PRESCRIPTIONS, prescriptions, chunkSize,
+                "INSERT INTO prescriptions (patient_username, medicine, quantity) VALUES (?, ?, ?)",
+                DatabaseManager::bindPrescription,
+                shards.length == 1 ? (connection, chunk) -> chunkLevels.put(chunk.get(0),
+                    decrementStock(connection, chunk)) : null,
+                Prescription::getPatientUsername, this::emitPrescription);
+            List<Prescription> inserted = new ArrayList<>();
+            int row = 0;
+            for (Prescription prescription : prescriptions) {
+                if (result.isSuccess(row++)) {
+                    inserted.add(prescription);
+                    Map<String, int[]> chunk = chunkLevels.get(prescription);
+                    if (chunk != null) {
+                        chunk.forEach((medicine, level) -> levels.merge(medicine, level,
+                            (first, next) -> new int[] {first[0], next[1]}));
+                    }
+                }
+            }
+            if (shards.length > 1 && !inserted.isEmpty()) {
+                levels.putAll(transaction(pool, Metrics.Operation.ADD_PRESCRIPTIONS,
+                    connection -> decrementStock(connection, inserted)));
+            }
+            // Stock writes are serialized while logging, so these are the levels just committed
+            levels.forEach((medicine, level) -> emitStock(medicine, level[1]));
+            return result;
+        });
+        // Raised once committed; this path does not check stock, so it can go negative
+        levels.forEach((medicine, level) -> inventoryEvents.onChange(medicine, level[0], level[1]));
+        return batch;
+    }
+    
+    private static void bindPrescription(PreparedStatement ps, Prescription prescription) throws SQLException {
+        ps.setString(1, prescription.getPatientUsername());
+        ps.setString(2, prescription.getMedicine());
+        ps.setInt(3, prescription.getQuantity());
+    }
+    
+    private void emitPrescription(Prescription prescription, long id) {
+        emitPrescription(prescription.getPatientUsername(), prescription.getMedicine(), prescription.getQuantity(), id);
+    }
+    
+    /**
+     * Takes the prescriptions off the stock and returns each stocked medicine's level before
+     * and after
+     */
+    private static Map<String, int[]> decrementStock(PooledConnection connection, List<Prescription> prescriptions)
+            throws SQLException {
+        // One inventory update per medicine per chunk instead of one per row
+        Map<String, Integer> decrements = new LinkedHashMap<>();
+        for (Prescription prescription : prescriptions) {
+            decrements.merge(prescription.getMedicine(), prescription.getQuantity(), Integer::sum);
+        }
+        PreparedStatement ps = connection.prepare(
+            "UPDATE medicine_inventory SET quantity = quantity - ? WHERE medicine_name = ?");
+        try {
+            for (Map.Entry<String, Integer> entry : decrements.entrySet()) {
+                ps.setInt(1, entry.getValue());
+                ps.setString(2, entry.getKey());
+                ps.addBatch();
+            }
+            ps.executeBatch();
         } finally {
-            connection.setAutoCommit(true);
+            ps.clearBatch();
         }
+        Map<String, int[]> levels = new LinkedHashMap<>();
+        for (Map.Entry<String, Integer> entry : decrements.entrySet()) {
+            Integer after = stockLevel(connection, entry.getKey());
+            if (after != null) {
+                levels.put(entry.getKey(), new int[] {after + entry.getValue(), after});
+            }
+        }
+        return levels;
     }
     
-    public List<Prescription> getAllPrescriptions() throws SQLException {
-        List<Prescription> prescriptions = new ArrayList<>();
-        Statement stmt = connection.createStatement();
-        ResultSet rs = stmt.executeQuery("SELECT * FROM prescriptions");
-        
-        while (rs.next()) {
-            prescriptions.add(new Prescription(
-                rs.getString("patient_username"),
-                rs.getString("medicine"),
-                rs.getInt("quantity")
-            ));
+    /**
+     * Bulk insert of prescription rows without touching inventory (see InventoryEngine)
+     */
+    public BatchResult insertPrescriptions(Collection<Prescription> prescriptions) throws SQLException {
+        return executeChunked(Metrics.Operation.INSERT_PRESCRIPTIONS, prescriptions, batchChunkSize,
+            "INSERT INTO prescriptions (patient_username, medicine, quantity) VALUES (?, ?, ?)",
+            DatabaseManager::bindPrescription,
+            null, Prescription::getPatientUsername, this::emitPrescription);
+    }
+    
+    private <T> BatchResult executeChunked(Metrics.Operation operation, Collection<T> rows, int chunkSize,
+                                           String sql, RowBinder<T> binder, ChunkHook<T> hook,
+                                           Function<T, String> patientOf, RowEvent<T> event) throws SQLException {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunkSize must be at least 1");
         }
-        return prescriptions;
+        long start = metrics.start();
+        List<T> all = new ArrayList<>(rows);
+        int[] counts;
+        List<SQLException> errors = new ArrayList<>();
+        if (shards.length == 1) {
+            counts = new int[all.size()];
+            errors.addAll(insertChunks(pool, all, chunkSize, sql, binder, hook, event, counts));
+        } else {
+            // Split the rows by shard, remembering where each came from
+            List<List<T>> rowsOf = new ArrayList<>();
+            List<List<Integer>> positionsOf = new ArrayList<>();
+            for (int i = 0; i < shards.length; i++) {
+                rowsOf.add(new ArrayList<>());
+                positionsOf.add(new ArrayList<>());
+            }
+            for (int i = 0; i < all.size(); i++) {
+                int shard = shardOf(patientOf.apply(all.get(i)), shards.length);
+                rowsOf.get(shard).add(all.get(i));
+                positionsOf.get(shard).add(i);
+            }
+            int[][] shardCounts = new int[shards.length][];
+            List<List<SQLException>> shardErrors = onEveryShard(shard -> {
+                int index = indexOf(shard);
+                shardCounts[index] = new int[rowsOf.get(index).size()];
+                return insertChunks(shard, rowsOf.get(index), chunkSize, sql, binder, hook, event,
+                    shardCounts[index]);
+            });
+            counts = new int[all.size()];
+            for (int shard = 0; shard < shards.length; shard++) {
+                List<Integer> positions = positionsOf.get(shard);
+                for (int i = 0; i < positions.size(); i++) {
+                    counts[positions.get(i)] = shardCounts[shard][i];
+                }
+                errors.addAll(shardErrors.get(shard));
+            }
+        }
+        metrics.record(operation, start, errors.isEmpty() ? null : errors.get(errors.size() - 1));
+        return new BatchResult(counts, errors);
+    }
+    
+    /**
+     * Inserts rows on one shard chunk by chunk, filling in counts; returns one error per failed chunk
+     */
+    private <T> List<SQLException> insertChunks(ConnectionPool shard, List<T> all, int chunkSize, String sql,
+                                                RowBinder<T> binder, ChunkHook<T> hook, RowEvent<T> event,
+                                                int[] counts) {
+        List<SQLException> errors = new ArrayList<>();
+        for (int from = 0; from < all.size(); from += chunkSize) {
+            int to = Math.min(from + chunkSize, all.size());
+            List<T> chunk = all.subList(from, to);
+            // A chunk's rows get consecutive ids, the last of them last_insert_rowid()
+            long[] lastId = new long[1];
+            try {
+                int[] chunkCounts = shard.transaction(connection -> {
+                    PreparedStatement ps = connection.prepare(sql);
+                    try {
+                        for (T row : chunk) {
+                            binder.bind(ps, row);
+                            ps.addBatch();
+                        }
+                        int[] result = ps.executeBatch();
+                        lastId[0] = lastInsertId(connection);
+                        if (hook != null) {
+                            hook.afterInsert(connection, chunk);
+                        }
+                        return result;
+                    } finally {
+                        // The statement is cached, so a failed batch must not linger on it
+                        ps.clearBatch();
+                    }
+                });
+                System.arraycopy(chunkCounts, 0, counts, from, chunkCounts.length);
+                metrics.addRowsWritten(chunk.size());
+                if (lastId[0] != 0) {
+                    for (int i = 0; i < chunk.size(); i++) {
+                        event.emit(chunk.get(i), lastId[0] - (chunk.size() - 1 - i));
+                    }
+                }
+            } catch (SQLException e) {
+                Arrays.fill(counts, from, to, Statement.EXECUTE_FAILED);
+                errors.add(e);
+            }
+        }
+        return errors;
+    }
+    
+    public int getBatchChunkSize() {
+        return batchChunkSize;
+    }
+    
+    public void setBatchChunkSize(int batchChunkSize) {
+        if (batchChunkSize < 1) {
+            throw new IllegalArgumentException("batchChunkSize must be at least 1");
+        }
+        this.batchChunkSize = batchChunkSize;
     }
     
     // Database operations for Medicine Inventory
+    /**
+     * Sets the absolute stock level, replacing what was there; use restockMedicine to add.
+     * Raises no inventory event: InventoryEngine.setStock, which calls it, does.
+     */
     public void addMedicine(String medicine, int quantity) throws SQLException {
-        PreparedStatement ps = connection.prepareStatement(
-            "INSERT OR REPLACE INTO medicine_inventory (medicine_name, quantity) VALUES (?, ?)");
-        ps.setString(1, medicine);
-        ps.setInt(2, quantity);
-        ps.executeUpdate();
+        inStockOrder(() -> {
+            timedWrite(Metrics.Operation.ADD_MEDICINE, connection -> {
+                PreparedStatement ps = connection.prepare(
+                    "INSERT OR REPLACE INTO medicine_inventory (medicine_name, quantity) VALUES (?, ?)");
+                ps.setString(1, medicine);
+                ps.setInt(2, quantity);
+                return ps.executeUpdate();
+            }, false, false);
+            emitStock(medicine, quantity);
+            return null;
+        });
+    }
+    
+    /**
+     * Adds units to the stock (registering the medicine if it is new) and returns the new level
+     */
+    public int restockMedicine(String medicine, int quantity) throws SQLException {
+        if (quantity <= 0) {
+            throw new IllegalArgumentException("quantity must be positive");
+        }
+        Integer[] level = new Integer[1];
+        inStockOrder(() -> {
+            timedWrite(Metrics.Operation.RESTOCK_MEDICINE, connection -> {
+                PreparedStatement ps = connection.prepare(
+                    "INSERT INTO medicine_inventory (medicine_name, quantity) VALUES (?, ?) "
+                        + "ON CONFLICT (medicine_name) DO UPDATE SET quantity = quantity + excluded.quantity");
+                ps.setString(1, medicine);
+                ps.setInt(2, quantity);
+                int rows = ps.executeUpdate();
+                level[0] = stockLevel(connection, medicine);
+                return rows;
+            }, false, true);
+            emitStock(medicine, level[0]);
+            return null;
+        });
+        inventoryEvents.onChange(medicine, (long) level[0] - quantity, level[0]);
+        return level[0];
+    }
+    
+    /**
+     * Low-stock events of every write that changes stock, whether it goes through
+     * addPrescription, restockMedicine or an InventoryEngine on this database
+     */
+    public InventoryEvents getInventoryEvents() {
+        return inventoryEvents;
+    }
+    
+    // Write-behind support for InventoryEngine
+    public long getInventoryCheckpoint() throws SQLException {
+        return read(Metrics.Operation.GET_INVENTORY_CHECKPOINT, connection -> {
+            try (ResultSet rs = connection.prepare(
+                    "SELECT segment FROM inventory_checkpoint WHERE id = 1").executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0L;
+            }
+        });
+    }
+    
+    /**
+     * Applies coalesced stock changes and advances the journal checkpoint in one transaction
+     */
+    public void applyInventoryDeltas(Map<String, Integer> deltas, long checkpointSegment) throws SQLException {
+        // Levels after the deltas, read only while the change log is enabled
+        Map<String, Integer> levels = new LinkedHashMap<>();
+        inStockOrder(() -> {
+            timedWrite(Metrics.Operation.APPLY_INVENTORY_DELTAS, connection -> {
+                levels.clear();
+                int rows = 0;
+                if (!deltas.isEmpty()) {
+                    PreparedStatement ps = connection.prepare(
+                        "UPDATE medicine_inventory SET quantity = quantity + ? WHERE medicine_name = ?");
+                    try {
+                        for (Map.Entry<String, Integer> delta : deltas.entrySet()) {
+                            ps.setInt(1, delta.getValue());
+                            ps.setString(2, delta.getKey());
+                            ps.addBatch();
+                        }
+                        for (int count : ps.executeBatch()) {
+                            rows += Math.max(0, count);
+                        }
+                    } finally {
+                        ps.clearBatch();
+                    }
+                    if (changeLog != null) {
+                        for (String medicine : deltas.keySet()) {
+                            Integer level = stockLevel(connection, medicine);
+                            if (level != null) {
+                                levels.put(medicine, level);
+                            }
+                        }
+                    }
+                }
+                PreparedStatement checkpoint = connection.prepare(
+                    "UPDATE inventory_checkpoint SET segment = ? WHERE id = 1");
+                checkpoint.setLong(1, checkpointSegment);
+                return rows + checkpoint.executeUpdate();
+            }, false, true);
+            levels.forEach(this::emitStock);
+            return null;
+        });
     }
     
     public Map<String, Integer> getMedicineInventory() throws SQLException {
-        Map<String, Integer> inventory = new HashMap<>();
-        Statement stmt = connection.createStatement();
-        ResultSet rs = stmt.executeQuery("SELECT * FROM medicine_inventory");
-        
-        while (rs.next()) {
-            inventory.put(
-                rs.getString("medicine_name"),
-                rs.getInt("quantity")
-            );
+        return read(Metrics.Operation.GET_MEDICINE_INVENTORY, connection -> {
+            Map<String, Integer> inventory = new HashMap<>();
+            try (ResultSet rs = connection.prepare("SELECT * FROM medicine_inventory").executeQuery()) {
+                while (rs.next()) {
+                    inventory.put(
+                        rs.getString("medicine_name"),
+                        rs.getInt("quantity")
+                    );
+                }
+            }
+            return inventory;
+        });
+    }
+    
+    // Archive
+    // Appointments and prescriptions of whole months before a horizon are moved out of the
+    // hot tables into one partition file per month (see ArchiveStore), so scans of the hot
+    // tables only touch recent and upcoming rows. getAppointmentsForDoctor reaches into the
+    // months its range overlaps and the includeArchived reads into every month; everything
+    // else (patient views, streams, loads, snapshots, the change log) sees the hot tables.
+    
+    /**
+     * Archives the months before the storage config's archive horizon; see archiveBefore
+     */
+    public long archive() throws SQLException {
+        return archiveBefore(YearMonth.now(ZoneOffset.UTC).minusMonths(storageConfig.getArchiveHorizonMonths()));
+    }
+    
+    /**
+     * Moves every appointment and prescription dated before firstHotMonth into its month's
+     * partition and returns the number of rows moved. Each month moves in a transaction of
+     * its own on its shard's writer, so writes wait for one month at a time, and a run that
+     * fails part way can simply be started again. Only a database file can be archived.
+     */
+    public long archiveBefore(YearMonth firstHotMonth) throws SQLException {
+        if (archives == null) {
+            throw new IllegalStateException("Only a database file can be archived, not " + storageConfig.getUrl());
+        }
+        long start = metrics.start();
+        try {
+            long moved = 0;
+            for (long rows : onEveryShard(shard -> archiveShard(shard, firstHotMonth))) {
+                moved += rows;
+            }
+            metrics.addRowsWritten(moved);
+            metrics.record(Metrics.Operation.ARCHIVE, start);
+            return moved;
+        } catch (SQLException | RuntimeException e) {
+            metrics.record(Metrics.Operation.ARCHIVE, start, e);
+            throw e;
+        }
+    }
+    
+    private long archiveShard(ConnectionPool shard, YearMonth firstHotMonth) throws SQLException {
+        ArchiveStore archive = archives[indexOf(shard)];
+        long moved = 0;
+        while (true) {
+            long rows = shard.write(pooled -> {
+                Connection connection = pooled.getConnection();
+                YearMonth month = ArchiveStore.oldestHotMonth(connection);
+                return month == null || !month.isBefore(firstHotMonth) ? 0L : archive.move(connection, month);
+            });
+            if (rows == 0) {
+                return moved;
+            }
+            moved += rows;
+        }
+    }
+    
+    /**
+     * Months archived on any shard, oldest first
+     */
+    public List<YearMonth> getArchivedMonths() {
+        Set<YearMonth> months = new TreeSet<>();
+        if (archives != null) {
+            for (ArchiveStore archive : archives) {
+                months.addAll(archive.getMonths());
+            }
+        }
+        return new ArrayList<>(months);
+    }
+    
+    /**
+     * Every archived appointment, month by month on each shard. Rows an interrupted move
+     * left in the hot table as well are skipped, so the id ranges of the hot table and this
+     * visit each appointment once, provided nothing is archived in the meantime.
+     */
+    public long streamArchivedAppointments(RowVisitor<Appointment> visitor) throws SQLException, IOException {
+        return streamArchive(Metrics.Operation.STREAM_APPOINTMENTS, "appointments", "appointment_date",
+            month -> month.atDay(1).toEpochDay(), "SELECT * FROM appointments ORDER BY id",
+            this::mapAppointment, visitor);
+    }
+    
+    /**
+     * Every archived prescription with the day it was written; see streamArchivedAppointments
+     */
+    public long streamArchivedPrescriptionUsage(RowVisitor<PrescriptionUsage> visitor)
+            throws SQLException, IOException {
+        // prescription_date is CURRENT_TIMESTAMP text, which sorts as it reads
+        return streamArchive(Metrics.Operation.STREAM_PRESCRIPTION_USAGE, "prescriptions", "prescription_date",
+            month -> month.atDay(1).toString(), "SELECT id, patient_username, medicine, quantity, "
+                + "CAST(julianday(prescription_date) - 2440587.5 AS INTEGER) AS day FROM prescriptions ORDER BY id",
+            DatabaseManager::mapPrescriptionUsage, visitor);
+    }
+    
+    /**
+     * Runs sql on every archived month of every shard, leaving out the ids the shard's hot
+     * table still has in that month
+     */
+    private <T> long streamArchive(Metrics.Operation operation, String table, String dateColumn,
+                                   Function<YearMonth, Object> firstOf, String sql, RowMapper<T> mapper,
+                                   RowVisitor<T> visitor) throws SQLException, IOException {
+        if (archives == null) {
+            return 0;
+        }
+        long start = metrics.start();
+        try {
+            long visited = 0;
+            for (ConnectionPool shard : shards) {
+                ArchiveStore archive = archives[indexOf(shard)];
+                for (YearMonth month : archive.getMonths()) {
+                    // Indexed on the date, and nearly always empty
+                    Set<Long> hot = shard.read(connection -> {
+                        PreparedStatement ps = connection.prepare("SELECT id FROM " + table
+                            + " WHERE " + dateColumn + " >= ? AND " + dateColumn + " < ?");
+                        ps.setObject(1, firstOf.apply(month));
+                        ps.setObject(2, firstOf.apply(month.plusMonths(1)));
+                        Set<Long> ids = new HashSet<>();
+                        try (ResultSet rs = ps.executeQuery()) {
+                            while (rs.next()) {
+                                ids.add(rs.getLong(1));
+                            }
+                        }
+                        return ids;
+                    });
+                    visited += archive.read(month, connection -> {
+                        long rows = 0;
+                        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+                            ps.setFetchSize(DEFAULT_FETCH_SIZE);
+                            try (ResultSet rs = ps.executeQuery()) {
+                                while (rs.next()) {
+                                    if (!hot.contains(rs.getLong("id"))) {
+                                        visitor.visit(mapper.map(rs));
+                                        rows++;
+                                    }
+                                }
+                            }
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        } finally {
+                            metrics.addRowsRead(rows);
+                        }
+                        return rows;
+                    });
+                }
+            }
+            metrics.record(operation, start);
+            return visited;
+        } catch (UncheckedIOException e) {
+            metrics.record(operation, start, e.getCause());
+            throw e.getCause();
+        } catch (SQLException | RuntimeException e) {
+            metrics.record(operation, start, e);
+            throw e;
+        }
+    }
+    
+    private boolean hasArchived(YearMonth first, YearMonth last) {
+        if (archives == null) {
+            return false;
+        }
+        for (ArchiveStore archive : archives) {
+            if (!archive.getMonths(first, last).isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Binds the parameters of a query
+     */
+    @FunctionalInterface
+    private interface StatementBinder {
+        void bind(PreparedStatement ps) throws SQLException;
+    }
+    
+    /**
+     * Runs the query on the shard's hot tables and then on its archived months from first
+     * to last (null bounds are open), and returns the archived rows, oldest month first,
+     * followed by the hot ones. Hot rows are read first, so a month archived in between
+     * is seen twice rather than missed; a row found twice is returned once.
+     */
+    private <T> List<T> readWithArchive(ConnectionPool shard, YearMonth first, YearMonth last, String sql,
+                                        StatementBinder binder, RowMapper<T> mapper, ToLongFunction<T> id)
+            throws SQLException {
+        List<T> hot = shard.read(connection -> {
+            PreparedStatement ps = connection.prepare(sql);
+            binder.bind(ps);
+            return mapRows(ps, mapper);
+        });
+        ArchiveStore archive = archives == null ? null : archives[indexOf(shard)];
+        if (archive == null || archive.getMonths(first, last).isEmpty()) {
+            return hot;
+        }
+        List<T> rows = new ArrayList<>();
+        for (YearMonth month : archive.getMonths(first, last)) {
+            rows.addAll(archive.read(month, connection -> {
+                try (PreparedStatement ps = connection.prepareStatement(sql)) {
+                    binder.bind(ps);
+                    return mapRows(ps, mapper);
+                }
+            }));
+        }
+        Set<Long> seen = new HashSet<>();
+        rows.removeIf(row -> !seen.add(id.applyAsLong(row)));
+        for (T row : hot) {
+            if (seen.add(id.applyAsLong(row))) {
+                rows.add(row);
+            }
+        }
+        return rows;
+    }
+    
+    private static <T> List<T> mapRows(PreparedStatement ps, RowMapper<T> mapper) throws SQLException {
+        List<T> rows = new ArrayList<>();
+        try (ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                rows.add(mapper.map(rs));
+            }
+        }
+        return rows;
+    }
+    
+    /**
+     * The limit rows with the lowest ids, for keyset pages merged from several months
+     */
+    private static <T> List<T> firstById(List<T> rows, ToLongFunction<T> id, int limit) {
+        rows.sort(Comparator.comparingLong(id));
+        return rows.size() <= limit ? rows : new ArrayList<>(rows.subList(0, limit));
+    }
+    
+    // Snapshots
+    // Both run on a reader connection: in WAL mode a read transaction never blocks
+    // the writer, so bookings and dispenses carry on while a snapshot is taken
+    
+    /**
+     * Writes a compacted, consistent copy of the database to target with VACUUM INTO and
+     * returns its size. The copy is built next to target and moved into place, so target
+     * is either the previous snapshot or the complete new one. A sharded database is
+     * copied shard by shard, to StorageConfig.shardPath(target, i); each copy is
+     * consistent on its own, not with the others.
+     */
+    public long snapshot(Path target) throws SQLException, IOException {
+        long size = 0;
+        for (int i = 0; i < shards.length; i++) {
+            size += snapshot(shards[i], StorageConfig.shardPath(target.toAbsolutePath(), i));
+        }
+        return size;
+    }
+    
+    private long snapshot(ConnectionPool shard, Path file) throws SQLException, IOException {
+        Files.createDirectories(file.getParent());
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.deleteIfExists(temp);
+        try {
+            read(shard, Metrics.Operation.SNAPSHOT, connection -> {
+                try (PreparedStatement ps = connection.getConnection().prepareStatement("VACUUM INTO ?")) {
+                    ps.setString(1, temp.toString());
+                    ps.execute();
+                }
+                return null;
+            });
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
         }
-        return inventory;
+        return Files.size(file);
     }
     
+    /**
+     * Medicine stock, users and the appointments on or after from, read in one transaction;
+     * the appointments take their slots as ScheduleEngine.load() would give them.
+     * Only for a single database: shards cannot be read in one transaction.
+     */
+    public HotStateImage readHotState(LocalDate from) throws SQLException {
+        if (shards.length > 1) {
+            throw new IllegalStateException("A hot state image needs a single database, not " + shards.length + " shards");
+        }
+        return read(Metrics.Operation.READ_HOT_STATE, pooled -> {
+            Connection connection = pooled.getConnection();
+            connection.setAutoCommit(false);
+            try {
+                long maxAppointmentId;
+                try (ResultSet rs = pooled.prepare("SELECT MAX(id) FROM appointments").executeQuery()) {
+                    maxAppointmentId = rs.next() ? rs.getLong(1) : 0;
+                }
+                Map<String, Integer> inventory = new LinkedHashMap<>();
+                try (ResultSet rs = pooled.prepare("SELECT medicine_name, quantity FROM medicine_inventory").executeQuery()) {
+                    while (rs.next()) {
+                        inventory.put(rs.getString(1), rs.getInt(2));
+                    }
+                }
+                Map<String, String> passwordHashes = new HashMap<>();
+                Map<String, String> roles = new HashMap<>();
+                try (ResultSet rs = pooled.prepare("SELECT username, password, role FROM users").executeQuery()) {
+                    while (rs.next()) {
+                        passwordHashes.put(rs.getString(1), rs.getString(2));
+                        roles.put(rs.getString(1), rs.getString(3));
+                    }
+                }
+                NamePool imageNames = new NamePool();
+                List<CompactAppointment> appointments = new ArrayList<>();
+                ScheduleEngine schedule = new ScheduleEngine();
+                PreparedStatement ps = pooled.prepare(
+                    "SELECT * FROM appointments WHERE appointment_date >= ? AND id <= ? ORDER BY id");
+                ps.setLong(1, from.toEpochDay());
+                ps.setLong(2, maxAppointmentId);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        CompactAppointment appointment = mapCompactAppointment(rs, imageNames);
+                        appointments.add(appointment);
+                        schedule.place(imageNames.name(appointment.doctor()), appointment.date(), appointment.slot());
+                    }
+                }
+                metrics.addRowsRead(inventory.size() + passwordHashes.size() + appointments.size());
+                return new HotStateImage(System.currentTimeMillis(), from.toEpochDay(), maxAppointmentId,
+                    imageNames, inventory, passwordHashes, roles, schedule, appointments);
+            } finally {
+                // Ends the read transaction
+                connection.setAutoCommit(true);
+            }
+        });
+    }
+    
+    /**
+     * Pool wait time, utilization and statement cache metrics
+     */
+    public ConnectionPool.Stats getPoolStats() {
+        return pool.getStats();
+    }
+    
+    public ConnectionPool.Stats getPoolStats(int shard) {
+        return shards[shard].getStats();
+    }
+    
+    /**
+     * The storage settings this manager was opened with
+     */
+    public StorageConfig getStorageConfig() {
+        return storageConfig;
+    }
+    
+    /**
+     * Per-operation latency histograms and row, rollback and busy-retry counters
+     */
+    public Metrics getMetrics() {
+        return metrics;
+    }
+    
+    /**
+     * The serialized writer connection, for single-threaded maintenance only
+     */
     public Connection getConnection() {
-        return connection;
+        return pool.getWriterConnection();
+    }
+    
+    /**
+     * The writer connection of one shard, for single-threaded maintenance only
+     */
+    public Connection getConnection(int shard) {
+        return shards[shard].getWriterConnection();
     }
     
     public void closeConnection() {
-        try {
-            if (connection != null && !connection.isClosed()) {
-                connection.close();
+        disableGroupCommit();
+        disableChangeLog();
+        metrics.unregister();
+        if (fanOut != null) {
+            fanOut.shutdownNow();
+        }
+        if (shards != null) {
+            for (ConnectionPool shard : shards) {
+                if (shard != null) {
+                    shard.close();
+                }
             }
+        }
+    }
+    
+    /**
+     * True once closeConnection() has run or the writer connection was closed directly
+     */
+    public boolean isClosed() {
+        try {
+            return pool == null || pool.isClosed() || pool.getWriterConnection().isClosed();
         } catch (SQLException e) {
-            e.printStackTrace();
+            return true;
         }
     }
-} 
\ No newline at end of file
+}
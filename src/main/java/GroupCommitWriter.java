@@ -0,0 +1,235 @@
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Group Commit Writer class batching concurrent writes into shared transactions
+ * Writes are queued and a single thread drains them into one transaction, either when
+ * the flush window has passed since the first queued write or when the batch is full.
+ * Each write runs inside its own savepoint, so a failing write is rolled back alone,
+ * and every caller is acknowledged only after the shared commit has returned.
+ */
+public class GroupCommitWriter implements AutoCloseable {
+    // Writes that arrive while a commit is in flight are batched anyway; a longer window
+    // only pays off when arrivals are spread out (see GroupCommitBenchmark)
+    public static final long DEFAULT_FLUSH_WINDOW_MICROS = 0;
+    public static final int DEFAULT_MAX_BATCH_SIZE = 256;
+    public static final int DEFAULT_QUEUE_CAPACITY = 16_384;
+
+    private final ConnectionPool pool;
+    private final long flushWindowNanos;
+    private final int maxBatchSize;
+    private final BlockingQueue<PendingWrite<?>> queue;
+    private final Thread drainer;
+    private volatile boolean closed;
+
+    private final Histogram writesPerCommit = new Histogram();
+    private final Histogram commitLatencyNanos = new Histogram();
+    private final LongAdder commits = new LongAdder();
+    private final LongAdder failedCommits = new LongAdder();
+    private final LongAdder failedWrites = new LongAdder();
+
+    public GroupCommitWriter(ConnectionPool pool) {
+        this(pool, DEFAULT_FLUSH_WINDOW_MICROS, DEFAULT_MAX_BATCH_SIZE, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * @param flushWindowMicros how long the first write of a batch may wait for company; 0 commits
+     *                          whatever is already queued without waiting
+     * @param maxBatchSize      writes per transaction at most
+     */
+    public GroupCommitWriter(ConnectionPool pool, long flushWindowMicros, int maxBatchSize, int queueCapacity) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("maxBatchSize must be at least 1");
+        }
+        this.pool = pool;
+        this.flushWindowNanos = TimeUnit.MICROSECONDS.toNanos(flushWindowMicros);
+        this.maxBatchSize = maxBatchSize;
+        this.queue = new LinkedBlockingQueue<>(queueCapacity);
+        this.drainer = new Thread(this::drain, "group-commit-writer");
+        drainer.setDaemon(true);
+        drainer.start();
+    }
+
+    /**
+     * Queues a write; the future completes once its transaction has committed.
+     * Blocks while the queue is full.
+     */
+    public <T> CompletableFuture<T> submit(ConnectionPool.SqlWork<T> work) {
+        PendingWrite<T> write = new PendingWrite<>(work);
+        if (closed) {
+            write.future.completeExceptionally(new SQLException("Group commit writer is closed"));
+            return write.future;
+        }
+        try {
+            queue.put(write);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            write.future.completeExceptionally(new SQLException("Interrupted while queueing a write", e));
+        }
+        // Lost a race with close(): the drainer may already have exited
+        if (closed && !drainer.isAlive() && queue.remove(write)) {
+            write.future.completeExceptionally(new SQLException("Group commit writer is closed"));
+        }
+        return write.future;
+    }
+
+    /**
+     * Queues a write and waits for its commit
+     */
+    public <T> T execute(ConnectionPool.SqlWork<T> work) throws SQLException {
+        try {
+            return submit(work).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for the commit", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SQLException) {
+                throw (SQLException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new SQLException(cause);
+        }
+    }
+
+    private void drain() {
+        List<PendingWrite<?>> batch = new ArrayList<>(maxBatchSize);
+        while (true) {
+            PendingWrite<?> first;
+            try {
+                first = queue.poll(100, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                first = null;
+            }
+            if (first == null) {
+                if (closed && queue.isEmpty()) {
+                    return;
+                }
+                continue;
+            }
+            batch.add(first);
+            long deadline = System.nanoTime() + flushWindowNanos;
+            try {
+                while (batch.size() < maxBatchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        queue.drainTo(batch, maxBatchSize - batch.size());
+                        break;
+                    }
+                    PendingWrite<?> next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                // commit what we have
+            }
+            commit(batch);
+            batch.clear();
+        }
+    }
+
+    private void commit(List<PendingWrite<?>> batch) {
+        long start = System.nanoTime();
+        try {
+            pool.transaction(connection -> {
+                for (PendingWrite<?> write : batch) {
+                    write.apply(connection);
+                }
+                return null;
+            });
+        } catch (SQLException | RuntimeException e) {
+            failedCommits.increment();
+            for (PendingWrite<?> write : batch) {
+                write.future.completeExceptionally(e);
+            }
+            return;
+        }
+        commitLatencyNanos.record(System.nanoTime() - start);
+        writesPerCommit.record(batch.size());
+        commits.increment();
+        for (PendingWrite<?> write : batch) {
+            write.acknowledge();
+        }
+    }
+
+    public Histogram getWritesPerCommit() { return writesPerCommit; }
+    public Histogram getCommitLatencyNanos() { return commitLatencyNanos; }
+    public long getCommitCount() { return commits.sum(); }
+    public long getFailedCommitCount() { return failedCommits.sum(); }
+    public long getFailedWriteCount() { return failedWrites.sum(); }
+    public int getQueueDepth() { return queue.size(); }
+
+    @Override
+    public String toString() {
+        return String.format("commits=%d (failed %d), failed writes=%d%n  writes per commit: %s%n  commit latency ms: %s",
+            getCommitCount(), getFailedCommitCount(), getFailedWriteCount(),
+            writesPerCommit, commitLatencyNanos.summary(1e6));
+    }
+
+    /**
+     * Stops accepting writes, commits everything already queued and stops the drainer
+     */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            drainer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * A queued write and the caller waiting for it
+     */
+    private final class PendingWrite<T> {
+        private final ConnectionPool.SqlWork<T> work;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+        private T result;
+        private Exception error;
+
+        PendingWrite(ConnectionPool.SqlWork<T> work) {
+            this.work = work;
+        }
+
+        void apply(PooledConnection connection) throws SQLException {
+            // A batch whose commit hit a lock is run again: only the last attempt counts
+            result = null;
+            error = null;
+            Connection raw = connection.getConnection();
+            connection.prepare("SAVEPOINT group_write").execute();
+            try {
+                result = work.execute(connection);
+            } catch (SQLException | RuntimeException e) {
+                error = e;
+                connection.prepare("ROLLBACK TO group_write").execute();
+                pool.getMetrics().recordRollback();
+            }
+            connection.prepare("RELEASE group_write").execute();
+            if (raw.getAutoCommit()) {
+                throw new SQLException("A grouped write must not change auto-commit");
+            }
+        }
+
+        void acknowledge() {
+            if (error == null) {
+                future.complete(result);
+            } else {
+                failedWrites.increment();
+                future.completeExceptionally(error);
+            }
+        }
+    }
+}
@@ -0,0 +1,61 @@
+import java.io.IOException;
+import java.sql.SQLException;
+
+/**
+ * Healthcare Exception class carrying a typed error code
+ * Lets callers tell a rejected request (slot taken, not enough stock) apart from a
+ * storage failure without parsing messages.
+ */
+public class HealthcareException extends Exception {
+    /**
+     * Why an operation failed
+     */
+    public enum ErrorCode {
+        /** The request itself is malformed (bad date, non-positive quantity, ...) */
+        INVALID_ARGUMENT,
+        /** A uniqueness rule was violated, e.g. the username already exists */
+        CONFLICT,
+        /** The requested slot is taken or the doctor's day is full */
+        SLOT_UNAVAILABLE,
+        /** The medicine is unknown or does not have enough stock */
+        INSUFFICIENT_STOCK,
+        /** The write queue is full; retry later */
+        OVERLOADED,
+        /** The system has been shut down */
+        SHUT_DOWN,
+        /** SQLite or the inventory journal failed */
+        STORAGE_ERROR,
+        /** Anything unexpected */
+        INTERNAL_ERROR
+    }
+
+    private static final long serialVersionUID = 1L;
+
+    // Primary result code SQLite uses for constraint violations
+    private static final int SQLITE_CONSTRAINT = 19;
+
+    private final ErrorCode code;
+
+    public HealthcareException(ErrorCode code, String message) {
+        super(message);
+        this.code = code;
+    }
+
+    public HealthcareException(ErrorCode code, String message, Throwable cause) {
+        super(message, cause);
+        this.code = code;
+    }
+
+    public static HealthcareException from(SQLException e) {
+        ErrorCode code = (e.getErrorCode() & 0xff) == SQLITE_CONSTRAINT ? ErrorCode.CONFLICT : ErrorCode.STORAGE_ERROR;
+        return new HealthcareException(code, e.getMessage(), e);
+    }
+
+    public static HealthcareException from(IOException e) {
+        return new HealthcareException(ErrorCode.STORAGE_ERROR, e.getMessage(), e);
+    }
+
+    public ErrorCode getCode() {
+        return code;
+    }
+}
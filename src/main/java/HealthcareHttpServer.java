@@ -0,0 +1,951 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+
+/**
+ * Healthcare Http Server class exposing HealthcareSystem as a JSON API
+ * Built on the JDK HttpServer; requests run on virtual threads, or on a fixed pool sized to
+ * the admission limits on Java 17. Reads and writes pass separate admission lanes: a lane
+ * runs a bounded number of requests at once and lets a bounded number wait briefly for a
+ * turn, and anything beyond that is answered 503 with Retry-After instead of queueing
+ * without limit. List endpoints stream a JSON array a page at a time, so listing a whole
+ * table needs no more memory than one page and holds no reader while the client is written
+ * to. Every endpoint keeps a latency histogram (/stats).
+ *
+ * Requests take parameters from the query string and from a JSON object or form body.
+ * POST /login, POST /patients, POST /appointments, POST /records, POST /prescriptions,
+ * POST /inventory (restock); GET /appointments, /records, /prescriptions (by patient, doctor
+ * or query; everything when unfiltered), GET /inventory and GET /stats.
+ *
+ * POST /login answers a bearer token, and every other endpoint wants it in an
+ * Authorization: Bearer header; requests without a valid token get 401. Admins may call
+ * everything. Patients may book and list only their own appointments, records and
+ * prescriptions and read the inventory; anything else is 403. The server listens on the
+ * loopback interface unless it is given another address.
+ *
+ * Usage: java HealthcareHttpServer [port [bind-address]]
+ */
+public class HealthcareHttpServer implements AutoCloseable {
+    public static final int DEFAULT_PORT = 8080;
+    public static final int DEFAULT_MAX_CONCURRENT_READS = 64;
+    // SQLite has a single writer; more concurrent writes only queue on it
+    public static final int DEFAULT_MAX_CONCURRENT_WRITES = 16;
+    public static final int DEFAULT_QUEUE_CAPACITY = 256;
+    public static final long DEFAULT_QUEUE_TIMEOUT_MILLIS = 1_000;
+    public static final int DEFAULT_PAGE_SIZE = 100;
+    public static final int MAX_PAGE_SIZE = 1_000;
+    public static final long DEFAULT_SESSION_TTL_MILLIS = TimeUnit.MINUTES.toMillis(30);
+    private static final int MAX_BODY_BYTES = 64 * 1024;
+
+    static {
+        // Without TCP_NODELAY, Nagle's algorithm and delayed ACKs add ~40 ms to every small
+        // response; the JDK server only reads this property before its first use
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    /**
+     * Handles one admitted request
+     */
+    @FunctionalInterface
+    private interface Action {
+        void handle(Request request) throws HealthcareException, SQLException, IOException;
+    }
+
+    /**
+     * Who may call an endpoint
+     */
+    private enum Access {
+        /** Anyone; only /login, which hands out the tokens */
+        OPEN,
+        /** Any signed-in user; patients only for their own data */
+        PATIENT,
+        /** Admins only */
+        ADMIN
+    }
+
+    private final HealthcareSystem system;
+    private final DatabaseManager dbManager;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Admission reads;
+    private final Admission writes;
+    private final Sessions sessions = new Sessions(DEFAULT_SESSION_TTL_MILLIS);
+    // By "METHOD /path"
+    private final Map<String, Endpoint> endpoints = new LinkedHashMap<>();
+
+    /**
+     * Server on the loopback interface with the default admission limits
+     */
+    public HealthcareHttpServer(HealthcareSystem system, int port) throws IOException {
+        this(system, new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+    }
+
+    public HealthcareHttpServer(HealthcareSystem system, InetSocketAddress address) throws IOException {
+        this(system, address, DEFAULT_MAX_CONCURRENT_READS, DEFAULT_MAX_CONCURRENT_WRITES,
+            DEFAULT_QUEUE_CAPACITY, DEFAULT_QUEUE_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * @param queueCapacity      requests per lane that may wait for a turn; 0 sheds as soon as the lane is full
+     * @param queueTimeoutMillis how long a waiting request waits before it is shed
+     */
+    public HealthcareHttpServer(HealthcareSystem system, InetSocketAddress address, int maxConcurrentReads,
+                                int maxConcurrentWrites, int queueCapacity, long queueTimeoutMillis)
+            throws IOException {
+        this.system = system;
+        this.dbManager = system.getDatabaseManager();
+        this.reads = new Admission(maxConcurrentReads, queueCapacity, queueTimeoutMillis);
+        this.writes = new Admission(maxConcurrentWrites, queueCapacity, queueTimeoutMillis);
+        // A fallback pool has a thread for every request a lane can hold, so only
+        // requests that are about to be shed wait in its queue
+        this.executor = VirtualThreads.newPerTaskExecutor("http-",
+            maxConcurrentReads + maxConcurrentWrites + 2 * queueCapacity + 2);
+        this.server = HttpServer.create(address, 0);
+        server.setExecutor(executor);
+        server.createContext("/", this::dispatch);
+
+        endpoint("POST", "/login", Access.OPEN, reads, this::login);
+        endpoint("POST", "/patients", Access.ADMIN, writes, this::registerPatient);
+        endpoint("POST", "/appointments", Access.PATIENT, writes, this::bookAppointment);
+        endpoint("GET", "/appointments", Access.PATIENT, reads, this::listAppointments);
+        endpoint("POST", "/records", Access.ADMIN, writes, this::addMedicalRecord);
+        endpoint("GET", "/records", Access.PATIENT, reads, this::listMedicalRecords);
+        endpoint("POST", "/prescriptions", Access.ADMIN, writes, this::addPrescription);
+        endpoint("GET", "/prescriptions", Access.PATIENT, reads, this::listPrescriptions);
+        endpoint("POST", "/inventory", Access.ADMIN, writes, this::restockMedicine);
+        endpoint("GET", "/inventory", Access.PATIENT, reads, this::getInventory);
+        // Never shed, so the stats stay reachable under overload
+        endpoint("GET", "/stats", Access.ADMIN, null, this::getStats);
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        InetAddress bindAddress = args.length > 1 ? InetAddress.getByName(args[1]) : InetAddress.getLoopbackAddress();
+        HealthcareSystem system = HealthcareSystem.getInstance();
+        HealthcareHttpServer server = new HealthcareHttpServer(system, new InetSocketAddress(bindAddress, port));
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.close();
+            system.shutdown();
+        }));
+        server.start();
+        System.out.println("Healthcare API listening on " + bindAddress.getHostAddress() + ":" + server.getPort()
+            + (VirtualThreads.isAvailable() ? " (virtual threads)" : ""));
+    }
+
+    private void endpoint(String method, String path, Access access, Admission lane, Action action) {
+        endpoints.put(method + " " + path, new Endpoint(method + " " + path, access, lane, action));
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Latency of one endpoint, e.g. "GET /appointments", in nanoseconds; null if unknown
+     */
+    public Histogram getLatencyNanos(String endpoint) {
+        Endpoint stats = endpoints.get(endpoint);
+        return stats == null ? null : stats.latencyNanos;
+    }
+
+    /**
+     * Requests answered 503 because their lane was full
+     */
+    public long getShedCount() {
+        return reads.getShedCount() + writes.getShedCount();
+    }
+
+    /**
+     * Request counts and latency of every endpoint
+     */
+    public String dumpStats() {
+        StringBuilder dump = new StringBuilder();
+        for (Endpoint endpoint : endpoints.values()) {
+            dump.append(String.format("%-20s requests=%d shed=%d 4xx=%d 5xx=%d%n  latency ms: %s%n", endpoint.name,
+                endpoint.requests.sum(), endpoint.shed.sum(), endpoint.clientErrors.sum(),
+                endpoint.serverErrors.sum(), endpoint.latencyNanos.summary(1e6)));
+        }
+        return dump.toString();
+    }
+
+    /**
+     * Stops accepting connections and gives running requests a second to finish
+     */
+    @Override
+    public void close() {
+        server.stop(1);
+        executor.shutdown();
+    }
+
+    // Dispatch
+
+    private void dispatch(HttpExchange exchange) throws IOException {
+        long start = System.nanoTime();
+        Request request = new Request(exchange);
+        try {
+            String path = exchange.getRequestURI().getPath();
+            Endpoint endpoint = endpoints.get(exchange.getRequestMethod() + " " + path);
+            if (endpoint == null) {
+                List<String> allowed = new ArrayList<>();
+                for (Endpoint candidate : endpoints.values()) {
+                    if (candidate.name.endsWith(" " + path)) {
+                        allowed.add(candidate.name.substring(0, candidate.name.indexOf(' ')));
+                    }
+                }
+                if (allowed.isEmpty()) {
+                    request.sendError(404, "NOT_FOUND", "No endpoint " + path);
+                } else {
+                    exchange.getResponseHeaders().set("Allow", String.join(", ", allowed));
+                    request.sendError(405, "METHOD_NOT_ALLOWED", exchange.getRequestMethod() + " is not allowed on " + path);
+                }
+                return;
+            }
+            endpoint.requests.increment();
+            if (!authorize(endpoint, request)) {
+                endpoint.clientErrors.increment();
+                return;
+            }
+            if (endpoint.lane != null && !endpoint.lane.enter()) {
+                endpoint.shed.increment();
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                request.sendError(503, HealthcareException.ErrorCode.OVERLOADED.name(), "Server is overloaded");
+                return;
+            }
+            try {
+                run(endpoint, request);
+            } finally {
+                if (endpoint.lane != null) {
+                    endpoint.lane.exit();
+                }
+                endpoint.latencyNanos.record(System.nanoTime() - start);
+                if (request.status >= 500) {
+                    endpoint.serverErrors.increment();
+                } else if (request.status >= 400) {
+                    endpoint.clientErrors.increment();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            request.sendError(503, HealthcareException.ErrorCode.SHUT_DOWN.name(), "Server is shutting down");
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Resolves the request's token; answers 401 or 403 and returns false if it may not go on
+     */
+    private boolean authorize(Endpoint endpoint, Request request) throws IOException {
+        if (endpoint.access == Access.OPEN) {
+            return true;
+        }
+        String authorization = request.exchange.getRequestHeaders().getFirst("Authorization");
+        if (authorization != null && authorization.regionMatches(true, 0, "Bearer ", 0, 7)) {
+            request.session = sessions.find(authorization.substring(7).trim());
+        }
+        if (request.session == null) {
+            request.exchange.getResponseHeaders().set("WWW-Authenticate", "Bearer");
+            request.sendError(401, "UNAUTHORIZED", "Sign in at /login and send the token as Authorization: Bearer");
+            return false;
+        }
+        if (endpoint.access == Access.ADMIN && !request.session.isAdmin()) {
+            request.sendError(403, "FORBIDDEN", endpoint.name + " is for admins only");
+            return false;
+        }
+        return true;
+    }
+
+    private void run(Endpoint endpoint, Request request) throws IOException {
+        try {
+            endpoint.action.handle(request);
+        } catch (HealthcareException e) {
+            request.sendError(statusOf(e.getCode()), e.getCode().name(), e.getMessage());
+        } catch (SQLException e) {
+            HealthcareException failure = HealthcareException.from(e);
+            request.sendError(statusOf(failure.getCode()), failure.getCode().name(), failure.getMessage());
+        } catch (ForbiddenException e) {
+            request.sendError(403, "FORBIDDEN", e.getMessage());
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            request.sendError(400, HealthcareException.ErrorCode.INVALID_ARGUMENT.name(), e.getMessage());
+        } catch (IOException e) {
+            // The client went away, or a streamed response broke off half way
+            request.status = Math.max(request.status, 500);
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            request.sendError(500, HealthcareException.ErrorCode.INTERNAL_ERROR.name(), e.getMessage());
+        }
+    }
+
+    private static int statusOf(HealthcareException.ErrorCode code) {
+        return switch (code) {
+            case INVALID_ARGUMENT -> 400;
+            case CONFLICT, SLOT_UNAVAILABLE, INSUFFICIENT_STOCK -> 409;
+            case OVERLOADED, SHUT_DOWN -> 503;
+            default -> 500;
+        };
+    }
+
+    // Endpoints
+
+    private void login(Request request) throws HealthcareException, SQLException, IOException {
+        String username = request.require("username");
+        boolean valid;
+        try {
+            valid = system.loginAsync(username, request.require("password")).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof HealthcareException) {
+                throw (HealthcareException) e.getCause();
+            }
+            if (e.getCause() instanceof SQLException) {
+                throw HealthcareException.from((SQLException) e.getCause());
+            }
+            throw e;
+        }
+        String role = valid ? dbManager.getUserRole(username) : null;
+        if (role == null) {
+            request.send(401, "{\"authenticated\":false}");
+            return;
+        }
+        StringBuilder json = new StringBuilder("{\"authenticated\":true,\"token\":");
+        RecordExporter.json(json, sessions.issue(username, role)).append(",\"role\":");
+        request.send(200, RecordExporter.json(json, role).append('}').toString());
+    }
+
+    private void registerPatient(Request request) throws HealthcareException, IOException {
+        String username = request.require("username");
+        system.register(username, request.require("password"));
+        request.send(201, RecordExporter.json(new StringBuilder("{\"username\":"), username).append('}').toString());
+    }
+
+    private void bookAppointment(Request request) throws HealthcareException, IOException {
+        String patient = request.require("patient");
+        request.checkPatient(patient);
+        String doctor = request.require("doctor");
+        LocalDate date = LocalDate.parse(request.require("date"));
+        String slot = request.get("slot");
+        Appointment appointment = slot == null ? system.book(patient, doctor, date)
+            : system.book(patient, doctor, date, Integer.parseInt(slot));
+        request.send(201, appendAppointment(new StringBuilder(), appointment).toString());
+    }
+
+    private void listAppointments(Request request) throws SQLException, IOException {
+        String patient = request.get("patient");
+        String doctor = request.get("doctor");
+        request.checkPatient(patient);
+        if (patient != null) {
+            request.sendArray(dbManager.getAppointmentsForPatient(patient, request.getLong("afterId", 0),
+                request.getLimit()), HealthcareHttpServer::appendAppointment);
+        } else if (doctor != null) {
+            request.sendArray(dbManager.getAppointmentsForDoctor(doctor, LocalDate.parse(request.require("from")),
+                LocalDate.parse(request.require("to"))), HealthcareHttpServer::appendAppointment);
+        } else {
+            request.sendPages(dbManager::getAppointments, Appointment::getId, HealthcareHttpServer::appendAppointment);
+        }
+    }
+
+    private void addMedicalRecord(Request request) throws HealthcareException, IOException {
+        String patient = request.require("patient");
+        system.record(patient, request.require("diagnosis"), request.get("treatment"));
+        request.send(201, RecordExporter.json(new StringBuilder("{\"patient_username\":"), patient)
+            .append('}').toString());
+    }
+
+    private void listMedicalRecords(Request request) throws SQLException, IOException {
+        String query = request.get("q");
+        String patient = request.get("patient");
+        request.checkPatient(patient);
+        if (query != null) {
+            request.sendArray(dbManager.searchMedicalRecords(query, patient, (int) request.getLong("offset", 0),
+                request.getLimit()), HealthcareHttpServer::appendMedicalRecord);
+        } else if (patient != null) {
+            request.sendArray(dbManager.getMedicalRecordsForPatient(patient, request.getLong("afterId", 0),
+                request.getLimit()), HealthcareHttpServer::appendMedicalRecord);
+        } else {
+            request.sendPages(dbManager::getMedicalRecords, MedicalRecord::getId,
+                HealthcareHttpServer::appendMedicalRecord);
+        }
+    }
+
+    private void addPrescription(Request request) throws HealthcareException, IOException {
+        String patient = request.require("patient");
+        String medicine = request.require("medicine");
+        int quantity = Integer.parseInt(request.require("quantity"));
+        system.prescribe(patient, medicine, quantity);
+        StringBuilder json = new StringBuilder("{\"patient_username\":");
+        RecordExporter.json(json, patient).append(",\"medicine\":");
+        RecordExporter.json(json, medicine).append(",\"quantity\":").append(quantity).append('}');
+        request.send(201, json.toString());
+    }
+
+    private void listPrescriptions(Request request) throws SQLException, IOException {
+        String patient = request.get("patient");
+        request.checkPatient(patient);
+        if (patient != null) {
+            request.sendArray(dbManager.getPrescriptionsForPatient(patient, request.getLong("afterId", 0),
+                request.getLimit()), HealthcareHttpServer::appendPrescription);
+        } else {
+            request.sendPages(dbManager::getPrescriptions, Prescription::getId,
+                HealthcareHttpServer::appendPrescription);
+        }
+    }
+
+    private void restockMedicine(Request request) throws HealthcareException, IOException {
+        String medicine = request.require("medicine");
+        system.restock(medicine, Integer.parseInt(request.require("quantity")));
+        StringBuilder json = RecordExporter.json(new StringBuilder("{\"medicine\":"), medicine);
+        json.append(",\"quantity\":").append(system.getInventory().getStock(medicine)).append('}');
+        request.send(200, json.toString());
+    }
+
+    private void getInventory(Request request) throws IOException {
+        StringBuilder json = new StringBuilder("{");
+        for (Map.Entry<String, Integer> entry : system.getMedicineInventory().entrySet()) {
+            if (json.length() > 1) {
+                json.append(',');
+            }
+            RecordExporter.json(json, entry.getKey()).append(':').append(entry.getValue());
+        }
+        request.send(200, json.append('}').toString());
+    }
+
+    private void getStats(Request request) throws IOException {
+        StringBuilder json = new StringBuilder("{\"endpoints\":[");
+        boolean first = true;
+        for (Endpoint endpoint : endpoints.values()) {
+            if (!first) {
+                json.append(',');
+            }
+            first = false;
+            Histogram latency = endpoint.latencyNanos;
+            RecordExporter.json(json.append("{\"endpoint\":"), endpoint.name)
+                .append(",\"requests\":").append(endpoint.requests.sum())
+                .append(",\"shed\":").append(endpoint.shed.sum())
+                .append(",\"client_errors\":").append(endpoint.clientErrors.sum())
+                .append(",\"server_errors\":").append(endpoint.serverErrors.sum())
+                .append(String.format(Locale.ROOT,
+                    ",\"latency_ms\":{\"mean\":%.3f,\"p50\":%.3f,\"p99\":%.3f,\"p999\":%.3f,\"max\":%.3f}}",
+                    latency.getMean() / 1e6, latency.getPercentile(50) / 1e6, latency.getPercentile(99) / 1e6,
+                    latency.getPercentile(99.9) / 1e6, latency.getMax() / 1e6));
+        }
+        json.append("],\"reads\":");
+        reads.appendJson(json);
+        json.append(",\"writes\":");
+        writes.appendJson(json);
+        request.send(200, json.append('}').toString());
+    }
+
+    // JSON of the model
+
+    private static StringBuilder appendAppointment(StringBuilder json, Appointment appointment) {
+        json.append("{\"id\":").append(appointment.getId());
+        RecordExporter.json(json.append(",\"patient_username\":"), appointment.getPatientUsername());
+        RecordExporter.json(json.append(",\"doctor_name\":"), appointment.getDoctorName());
+        RecordExporter.json(json.append(",\"date\":"), appointment.getDate());
+        if (appointment.hasSlot()) {
+            json.append(",\"slot\":").append(appointment.getSlot());
+        }
+        return json.append('}');
+    }
+
+    private static StringBuilder appendMedicalRecord(StringBuilder json, MedicalRecord record) {
+        json.append("{\"id\":").append(record.getId());
+        RecordExporter.json(json.append(",\"patient_username\":"), record.getPatientUsername());
+        RecordExporter.json(json.append(",\"diagnosis\":"), record.getDiagnosis());
+        RecordExporter.json(json.append(",\"treatment\":"), record.getTreatment());
+        return json.append('}');
+    }
+
+    private static StringBuilder appendPrescription(StringBuilder json, Prescription prescription) {
+        json.append("{\"id\":").append(prescription.getId());
+        RecordExporter.json(json.append(",\"patient_username\":"), prescription.getPatientUsername());
+        RecordExporter.json(json.append(",\"medicine\":"), prescription.getMedicine());
+        return json.append(",\"quantity\":").append(prescription.getQuantity()).append('}');
+    }
+
+    /**
+     * Flat JSON object of strings, numbers, booleans and nulls; values come back as their text
+     */
+    static Map<String, String> parseJsonObject(String text) {
+        Map<String, String> values = new HashMap<>();
+        int[] position = {skipWhitespace(text, 0)};
+        expect(text, position, '{');
+        if (peek(text, position) == '}') {
+            position[0]++;
+            return values;
+        }
+        while (true) {
+            String key = parseJsonString(text, position);
+            expect(text, position, ':');
+            char next = peek(text, position);
+            String value;
+            if (next == '"') {
+                value = parseJsonString(text, position);
+            } else {
+                int start = position[0];
+                while (position[0] < text.length() && ",} \t\r\n".indexOf(text.charAt(position[0])) < 0) {
+                    position[0]++;
+                }
+                value = text.substring(start, position[0]);
+                if (value.isEmpty() || value.startsWith("{") || value.startsWith("[")) {
+                    throw new IllegalArgumentException("Only flat JSON objects are accepted");
+                }
+                if (value.equals("null")) {
+                    value = null;
+                }
+            }
+            values.put(key, value);
+            char separator = peek(text, position);
+            position[0]++;
+            if (separator == '}') {
+                return values;
+            }
+            if (separator != ',') {
+                throw new IllegalArgumentException("Malformed JSON at " + (position[0] - 1));
+            }
+        }
+    }
+
+    private static String parseJsonString(String text, int[] position) {
+        expect(text, position, '"');
+        StringBuilder value = new StringBuilder();
+        for (int i = position[0]; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"') {
+                position[0] = i + 1;
+                return value.toString();
+            }
+            if (c == '\\' && i + 1 < text.length()) {
+                char escaped = text.charAt(++i);
+                switch (escaped) {
+                    case 'n' -> value.append('\n');
+                    case 'r' -> value.append('\r');
+                    case 't' -> value.append('\t');
+                    case 'b' -> value.append('\b');
+                    case 'f' -> value.append('\f');
+                    case 'u' -> {
+                        if (i + 4 >= text.length()) {
+                            throw new IllegalArgumentException("Malformed JSON escape");
+                        }
+                        value.append((char) Integer.parseInt(text.substring(i + 1, i + 5), 16));
+                        i += 4;
+                    }
+                    default -> value.append(escaped);
+                }
+            } else {
+                value.append(c);
+            }
+        }
+        throw new IllegalArgumentException("Unterminated JSON string");
+    }
+
+    private static void expect(String text, int[] position, char expected) {
+        if (peek(text, position) != expected) {
+            throw new IllegalArgumentException("Malformed JSON: expected '" + expected + "' at " + position[0]);
+        }
+        position[0]++;
+    }
+
+    private static char peek(String text, int[] position) {
+        position[0] = skipWhitespace(text, position[0]);
+        if (position[0] >= text.length()) {
+            throw new IllegalArgumentException("Malformed JSON: unexpected end");
+        }
+        return text.charAt(position[0]);
+    }
+
+    private static int skipWhitespace(String text, int position) {
+        while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+            position++;
+        }
+        return position;
+    }
+
+    private static void parseForm(String form, Map<String, String> into) {
+        if (form == null || form.isEmpty()) {
+            return;
+        }
+        for (String pair : form.split("&")) {
+            int equals = pair.indexOf('=');
+            String key = equals < 0 ? pair : pair.substring(0, equals);
+            String value = equals < 0 ? "" : pair.substring(equals + 1);
+            into.put(URLDecoder.decode(key, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Admission lane: at most maxConcurrent requests run, at most queueCapacity wait up to
+     * the timeout for a turn, and the rest are turned away at once
+     */
+    static final class Admission {
+        private final int maxConcurrent;
+        private final Semaphore permits;
+        private final int queueCapacity;
+        private final long timeoutMillis;
+        private final AtomicInteger waiting = new AtomicInteger();
+        private final LongAdder shed = new LongAdder();
+
+        Admission(int maxConcurrent, int queueCapacity, long timeoutMillis) {
+            if (maxConcurrent < 1 || queueCapacity < 0) {
+                throw new IllegalArgumentException("maxConcurrent must be positive and queueCapacity not negative");
+            }
+            this.maxConcurrent = maxConcurrent;
+            this.permits = new Semaphore(maxConcurrent, true);
+            this.queueCapacity = queueCapacity;
+            this.timeoutMillis = timeoutMillis;
+        }
+
+        /**
+         * True if the request may run, in which case exit() must follow; false if it is shed
+         */
+        boolean enter() throws InterruptedException {
+            if (permits.tryAcquire()) {
+                return true;
+            }
+            if (waiting.incrementAndGet() > queueCapacity) {
+                waiting.decrementAndGet();
+                shed.increment();
+                return false;
+            }
+            try {
+                if (permits.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                    return true;
+                }
+                shed.increment();
+                return false;
+            } finally {
+                waiting.decrementAndGet();
+            }
+        }
+
+        void exit() {
+            permits.release();
+        }
+
+        int getRunning() {
+            return maxConcurrent - permits.availablePermits();
+        }
+
+        int getWaiting() {
+            return waiting.get();
+        }
+
+        long getShedCount() {
+            return shed.sum();
+        }
+
+        void appendJson(StringBuilder json) {
+            json.append("{\"running\":").append(getRunning()).append(",\"waiting\":").append(getWaiting())
+                .append(",\"shed\":").append(getShedCount()).append('}');
+        }
+    }
+
+    /**
+     * Bearer tokens handed out by /login; a token is good for the TTL after it was issued.
+     * Tokens are 256 random bits, so they cannot be guessed, and live only in memory: a
+     * restart signs everybody out.
+     */
+    static final class Sessions {
+        private static final int TOKEN_BYTES = 32;
+        // Expired sessions are swept out once every this many logins
+        private static final int SWEEP_INTERVAL = 1_024;
+
+        private final long ttlNanos;
+        private final SecureRandom random = new SecureRandom();
+        private final Map<String, Session> byToken = new ConcurrentHashMap<>();
+        private final AtomicInteger issued = new AtomicInteger();
+
+        Sessions(long ttlMillis) {
+            this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        }
+
+        String issue(String username, String role) {
+            long now = System.nanoTime();
+            if (issued.incrementAndGet() % SWEEP_INTERVAL == 0) {
+                byToken.values().removeIf(session -> session.isExpired(now));
+            }
+            byte[] bytes = new byte[TOKEN_BYTES];
+            random.nextBytes(bytes);
+            String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+            byToken.put(token, new Session(username, role, now + ttlNanos));
+            return token;
+        }
+
+        /**
+         * Session of the token, or null if it is unknown or has expired
+         */
+        Session find(String token) {
+            Session session = token == null ? null : byToken.get(token);
+            if (session != null && session.isExpired(System.nanoTime())) {
+                byToken.remove(token, session);
+                return null;
+            }
+            return session;
+        }
+
+        int size() {
+            return byToken.size();
+        }
+    }
+
+    /**
+     * Signed-in user behind a token
+     */
+    record Session(String username, String role, long expiresAtNanos) {
+        boolean isAdmin() {
+            return "ADMIN".equals(role);
+        }
+
+        boolean isExpired(long now) {
+            return now - expiresAtNanos >= 0;
+        }
+    }
+
+    /**
+     * A signed-in user asked for data that is not theirs; answered 403
+     */
+    private static final class ForbiddenException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        ForbiddenException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Latency and outcome counts of one endpoint
+     */
+    private static final class Endpoint {
+        private final String name;
+        private final Access access;
+        private final Admission lane;
+        private final Action action;
+        private final Histogram latencyNanos = new Histogram();
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder shed = new LongAdder();
+        private final LongAdder clientErrors = new LongAdder();
+        private final LongAdder serverErrors = new LongAdder();
+
+        Endpoint(String name, Access access, Admission lane, Action action) {
+            this.name = name;
+            this.access = access;
+            this.lane = lane;
+            this.action = action;
+        }
+    }
+
+    /**
+     * One exchange: its parameters, read lazily, the signed-in user and the response status once sent
+     */
+    private static final class Request {
+        private final HttpExchange exchange;
+        private Map<String, String> parameters;
+        private Session session;
+        private int status;
+
+        Request(HttpExchange exchange) {
+            this.exchange = exchange;
+        }
+
+        String get(String name) throws IOException {
+            if (parameters == null) {
+                parameters = new HashMap<>();
+                parseForm(exchange.getRequestURI().getRawQuery(), parameters);
+                String body = readBody();
+                if (!body.isBlank()) {
+                    String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+                    if (contentType != null && contentType.startsWith("application/x-www-form-urlencoded")) {
+                        parseForm(body, parameters);
+                    } else {
+                        parameters.putAll(parseJsonObject(body));
+                    }
+                }
+            }
+            return parameters.get(name);
+        }
+
+        /**
+         * Lets admins through and patients only to their own data; a null patient means
+         * everybody's
+         */
+        void checkPatient(String patient) {
+            if (!session.isAdmin() && !session.username().equals(patient)) {
+                throw new ForbiddenException("Patients may only see and book their own appointments and records");
+            }
+        }
+
+        String require(String name) throws IOException {
+            String value = get(name);
+            if (value == null || value.isEmpty()) {
+                throw new IllegalArgumentException("Missing parameter " + name);
+            }
+            return value;
+        }
+
+        long getLong(String name, long defaultValue) throws IOException {
+            String value = get(name);
+            return value == null ? defaultValue : Long.parseLong(value);
+        }
+
+        int getLimit() throws IOException {
+            long limit = getLong("limit", DEFAULT_PAGE_SIZE);
+            if (limit < 1 || limit > MAX_PAGE_SIZE) {
+                throw new IllegalArgumentException("limit must be between 1 and " + MAX_PAGE_SIZE);
+            }
+            return (int) limit;
+        }
+
+        private String readBody() throws IOException {
+            try (InputStream in = exchange.getRequestBody()) {
+                byte[] body = in.readNBytes(MAX_BODY_BYTES + 1);
+                if (body.length > MAX_BODY_BYTES) {
+                    throw new IllegalArgumentException("Request body is larger than " + MAX_BODY_BYTES + " bytes");
+                }
+                return new String(body, StandardCharsets.UTF_8);
+            }
+        }
+
+        void send(int status, String json) throws IOException {
+            byte[] body = json.getBytes(StandardCharsets.UTF_8);
+            this.status = status;
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            exchange.sendResponseHeaders(status, body.length);
+            exchange.getResponseBody().write(body);
+        }
+
+        void sendError(int status, String code, String message) throws IOException {
+            if (this.status != 0) {
+                // Headers are out already: the array is left unterminated, so the client
+                // cannot mistake a broken stream for a complete one
+                this.status = status;
+                return;
+            }
+            StringBuilder json = RecordExporter.json(new StringBuilder("{\"error\":"), code);
+            RecordExporter.json(json.append(",\"message\":"), message).append('}');
+            send(status, json.toString());
+        }
+
+        <T> void sendArray(List<T> rows, JsonElement<T> element) throws IOException {
+            JsonArray array = startArray();
+            for (T row : rows) {
+                array.add(element.append(array.element(), row));
+            }
+            array.finish();
+        }
+
+        /**
+         * Sends a whole table as one array, fetching it a page at a time: the reader goes back
+         * to the pool before each page is written, so a slow client pins no connection
+         */
+        <T> void sendPages(PageSource<T> source, ToLongFunction<T> idOf, JsonElement<T> element)
+                throws SQLException, IOException {
+            JsonArray array = startArray();
+            long afterId = 0;
+            while (true) {
+                List<T> rows = source.fetch(afterId, MAX_PAGE_SIZE);
+                for (T row : rows) {
+                    array.add(element.append(array.element(), row));
+                }
+                if (rows.size() < MAX_PAGE_SIZE) {
+                    break;
+                }
+                afterId = idOf.applyAsLong(rows.get(rows.size() - 1));
+            }
+            array.finish();
+        }
+
+        /**
+         * Starts a chunked 200 response carrying a JSON array
+         */
+        JsonArray startArray() throws IOException {
+            status = 200;
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            exchange.sendResponseHeaders(200, 0);
+            return new JsonArray(exchange);
+        }
+    }
+
+    @FunctionalInterface
+    private interface JsonElement<T> {
+        StringBuilder append(StringBuilder json, T row);
+    }
+
+    /**
+     * One keyset page of a table: rows with an id above afterId, in id order
+     */
+    @FunctionalInterface
+    private interface PageSource<T> {
+        List<T> fetch(long afterId, int limit) throws SQLException;
+    }
+
+    /**
+     * Writes array elements to a chunked response as they are added
+     */
+    private static final class JsonArray {
+        private final Writer out;
+        private final StringBuilder element = new StringBuilder(256);
+        private boolean first = true;
+
+        JsonArray(HttpExchange exchange) throws IOException {
+            out = new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8),
+                16 * 1024);
+            out.write('[');
+        }
+
+        /**
+         * The reused builder for the next element
+         */
+        StringBuilder element() {
+            element.setLength(0);
+            if (!first) {
+                element.append(',');
+            }
+            first = false;
+            return element;
+        }
+
+        void add(StringBuilder json) throws IOException {
+            out.append(json);
+        }
+
+        /**
+         * Closes the array; a stream that failed part way is never finished
+         */
+        void finish() throws IOException {
+            out.write(']');
+            out.flush();
+        }
+    }
+}
@@ -1,5 +1,22 @@
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.sql.PreparedStatement;
 
 /**
@@ -8,13 +25,190 @@ import java.sql.PreparedStatement;
  */
 public class HealthcareSystem {
     private static HealthcareSystem instance;
+    /** Path of a hot state image getInstance() bootstraps from, when the file exists */
+    public static final String HOT_STATE_PROPERTY = "healthcare.hot-state";
     private DatabaseManager dbManager;
+    private final InventoryEngine inventory;
+    private final ScheduleEngine schedule;
+    private final AnalyticsEngine analytics;
+    private final ReorderPlanner reorders;
+    // Set when started from a hot state image: the schedule before scheduleFrom and the
+    // analytics are loaded in the background, and logins use the image's credentials
+    private final HotStateImage bootstrapImage;
+    private final LocalDate scheduleFrom;
+    private final CompletableFuture<Void> scheduleHistory;
+    private final CompletableFuture<Void> analyticsLoaded;
+    private final AuthCache authCache = new AuthCache();
+    private final PatientViewCache patientViews;
+    /** Logins and registrations that may wait for a password-hasher thread; more are rejected */
+    public static final int HASH_QUEUE_CAPACITY = 256;
+    // Password hashing is deliberately slow, so it gets its own bounded pool; a burst beyond
+    // the queue fails fast as OVERLOADED instead of piling up behind the hashers
+    private final ExecutorService hashExecutor = newHashExecutor(Math.max(2, Runtime.getRuntime().availableProcessors()));
     
     private HealthcareSystem() {
-        dbManager = DatabaseManager.getInstance();
+        this(DatabaseManager.getInstance(), journalDirOf(DatabaseManager.getInstance().getStorageConfig()),
+            configuredHotState());
     }
     
-    public static HealthcareSystem getInstance() {
+    /**
+     * For tests and benchmarks that run against their own database and journal; a null
+     * journalDir keeps the inventory without an on-disk journal
+     */
+    HealthcareSystem(DatabaseManager dbManager, Path journalDir) {
+        this(dbManager, journalDir, null);
+    }
+    
+    /**
+     * Starts from a hot state image instead of scanning every appointment and row: the
+     * schedule from the image's first day on comes from the image plus the appointments
+     * written since, and is ready when this returns. Earlier days and the analytics load
+     * in the background; bookings before the image's first day and getAnalytics() wait
+     * for them. Stock is still read from the database, after the inventory journal has
+     * been replayed into it. An image that is newer than the database is ignored, and so
+     * is any image on a sharded database.
+     */
+    HealthcareSystem(DatabaseManager dbManager, Path journalDir, HotStateImage image) {
+        this.dbManager = dbManager;
+        patientViews = new PatientViewCache(dbManager::getPatientView);
+        try {
+            inventory = new InventoryEngine(dbManager, journalDir);
+        } catch (SQLException | IOException e) {
+            throw new IllegalStateException("Could not start the inventory engine", e);
+        }
+        int parallelism = Math.max(1, dbManager.getStorageConfig().getReaders());
+        long[] maxIds;
+        try {
+            maxIds = new long[] {dbManager.getMaxId("appointments"), dbManager.getMaxId("medical_records"),
+                dbManager.getMaxId("prescriptions")};
+        } catch (SQLException e) {
+            throw new IllegalStateException("Could not read the database", e);
+        }
+        if (image != null && dbManager.getShardCount() > 1) {
+            System.err.println("Ignoring " + image + ": the database has " + dbManager.getShardCount() + " shards");
+            image = null;
+        }
+        if (image != null && image.getMaxAppointmentId() > maxIds[0]) {
+            System.err.println("Ignoring " + image + ": the database only has appointments up to id " + maxIds[0]);
+            image = null;
+        }
+        bootstrapImage = image;
+        if (image == null) {
+            scheduleFrom = null;
+            scheduleHistory = null;
+            analyticsLoaded = null;
+            try {
+                schedule = ScheduleEngine.rebuild(dbManager);
+            } catch (SQLException e) {
+                throw new IllegalStateException("Could not load the doctor schedules", e);
+            }
+            try {
+                analytics = AnalyticsEngine.rebuild(dbManager, parallelism);
+            } catch (SQLException e) {
+                throw new IllegalStateException("Could not rebuild the analytics", e);
+            }
+        } else {
+            scheduleFrom = image.getFrom();
+            schedule = new ScheduleEngine();
+            image.restoreSchedule(schedule);
+            try {
+                schedule.load(dbManager, image.getMaxAppointmentId() + 1, maxIds[0], scheduleFrom, LocalDate.MAX);
+            } catch (SQLException e) {
+                throw new IllegalStateException("Could not load the doctor schedules", e);
+            }
+            analytics = new AnalyticsEngine();
+            // Nothing is written before this constructor returns, so every row up to
+            // maxIds is loaded here and every later one is recorded by the write paths
+            ExecutorService loader = Executors.newSingleThreadExecutor(daemonThreads("bootstrap-loader-"));
+            scheduleHistory = CompletableFuture.runAsync(() -> {
+                try {
+                    schedule.load(dbManager, 1, maxIds[0], LocalDate.MIN, scheduleFrom);
+                } catch (SQLException e) {
+                    throw new CompletionException(e);
+                }
+            }, loader);
+            analyticsLoaded = CompletableFuture.runAsync(() -> {
+                try {
+                    analytics.load(dbManager, parallelism, maxIds[0], maxIds[1], maxIds[2]);
+                } catch (SQLException e) {
+                    throw new CompletionException(e);
+                }
+            }, loader);
+            loader.shutdown();
+        }
+        reorders = new ReorderPlanner(dbManager.getInventoryEvents());
+    }
+    
+    /**
+     * Inventory journal of a database file, next to it: healthcare.db journals into
+     * healthcare-journal. In-memory and raw URL databases get none, so a journal is
+     * never replayed into a database it was not written for.
+     */
+    static Path journalDirOf(StorageConfig config) {
+        Path database = config.getPath();
+        if (database == null) {
+            return null;
+        }
+        String name = database.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return database.resolveSibling((dot > 0 ? name.substring(0, dot) : name) + "-journal");
+    }
+    
+    private static HotStateImage configuredHotState() {
+        String path = System.getProperty(HOT_STATE_PROPERTY);
+        if (path == null || !Files.exists(Path.of(path))) {
+            return null;
+        }
+        try {
+            return HotStateImage.read(Path.of(path));
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+    
+    /**
+     * Completes once everything a hot state bootstrap left to the background is loaded;
+     * already complete for a system that was started by scanning the database
+     */
+    public CompletableFuture<Void> getWarmup() {
+        if (bootstrapImage == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return CompletableFuture.allOf(scheduleHistory, analyticsLoaded);
+    }
+    
+    /**
+     * Waits until the schedule holds the given day; only days before a bootstrap image's
+     * first day can still be loading
+     */
+    private void awaitSchedule(LocalDate day) throws HealthcareException {
+        if (scheduleHistory == null || !day.isBefore(scheduleFrom)) {
+            return;
+        }
+        try {
+            scheduleHistory.join();
+        } catch (CompletionException e) {
+            throw new HealthcareException(HealthcareException.ErrorCode.STORAGE_ERROR,
+                "Could not load the schedule before " + scheduleFrom, e.getCause());
+        }
+    }
+    
+    private static ExecutorService newHashExecutor(int threads) {
+        return new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(HASH_QUEUE_CAPACITY), daemonThreads("password-hasher-"));
+    }
+    
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+    
+    public static synchronized HealthcareSystem getInstance() {
         if (instance == null) {
             instance = new HealthcareSystem();
         }
@@ -24,60 +218,517 @@ public class HealthcareSystem {
     // Authentication
     public boolean login(String username, String password) {
         try {
-            return dbManager.validateUser(username, password);
-        } catch (SQLException e) {
-            e.printStackTrace();
+            return loginAsync(username, password).join();
+        } catch (CompletionException e) {
+            e.getCause().printStackTrace();
             return false;
         }
     }
     
+    /**
+     * Recently verified credentials are answered from the cache; everything else
+     * is looked up and hashed on the password-hasher pool, not the caller's thread.
+     * Fails with an OVERLOADED HealthcareException when the pool's queue is full.
+     */
+    public CompletableFuture<Boolean> loginAsync(String username, String password) {
+        if (authCache.verify(username, password)) {
+            return CompletableFuture.completedFuture(true);
+        }
+        try {
+            return verifyAsync(username, password);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(new HealthcareException(
+                HealthcareException.ErrorCode.OVERLOADED, "Password hashing queue is full", e));
+        }
+    }
+    
+    private CompletableFuture<Boolean> verifyAsync(String username, String password) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                // Users are never updated or removed, so a hash in the image is current
+                String passwordHash = bootstrapImage != null ? bootstrapImage.getPasswordHash(username) : null;
+                boolean valid = passwordHash != null ? dbManager.verifyPassword(password, passwordHash)
+                    : dbManager.validateUser(username, password);
+                if (valid) {
+                    authCache.put(username, password);
+                }
+                return valid;
+            } catch (SQLException e) {
+                throw new CompletionException(e);
+            }
+        }, hashExecutor);
+    }
+    
+    public AuthCache getAuthCache() {
+        return authCache;
+    }
+    
+    // The public methods below keep the original contract: failures are printed and a
+    // default is returned. Each delegates to a package-private variant that throws a
+    // typed HealthcareException instead, which AsyncHealthcareSystem builds on.
+    
+    private static void report(HealthcareException e) {
+        // Rejections such as a full day or missing stock are expected outcomes
+        if (e.getCause() != null) {
+            e.printStackTrace();
+        }
+    }
+    
     // User Management
     public void registerPatient(String username, String password) {
+        try {
+            register(username, password);
+        } catch (HealthcareException e) {
+            e.printStackTrace();
+        }
+    }
+    
+    void register(String username, String password) throws HealthcareException {
         try {
             User user = new User(username, password, "PATIENT");
             dbManager.addUser(user);
         } catch (SQLException e) {
-            e.printStackTrace();
+            throw HealthcareException.from(e);
+        } finally {
+            authCache.invalidate(username);
         }
     }
     
-    // Appointment Management
-    public void bookAppointment(String patientUsername, String doctorName, String date) {
+    /**
+     * Hashes a password on the password-hasher pool, so a caller that serializes writes
+     * only queues the insert
+     */
+    CompletableFuture<String> hashPasswordAsync(String password) {
+        return CompletableFuture.supplyAsync(() -> dbManager.hashPassword(password), hashExecutor);
+    }
+    
+    /**
+     * Registers a patient whose password came from hashPasswordAsync
+     */
+    void registerHashed(String username, String passwordHash) throws HealthcareException {
         try {
-            dbManager.addAppointment(new Appointment(patientUsername, doctorName, date));
+            dbManager.addUser(new User(username, null, "PATIENT"), passwordHash);
         } catch (SQLException e) {
+            throw HealthcareException.from(e);
+        } finally {
+            authCache.invalidate(username);
+        }
+    }
+    
+    // Appointment Management
+    // A slot is reserved in the in-memory schedule before the row is written, so two
+    // patients can never be booked into the same slot; a failed insert frees it again
+    
+    /**
+     * Books the earliest free slot of the given day; false if the doctor is fully booked
+     */
+    public boolean bookAppointment(String patientUsername, String doctorName, String date) {
+        LocalDate day;
+        try {
+            day = LocalDate.parse(date);
+        } catch (DateTimeParseException e) {
             e.printStackTrace();
+            return false;
+        }
+        try {
+            book(patientUsername, doctorName, day);
+            return true;
+        } catch (HealthcareException e) {
+            report(e);
+            return false;
+        }
+    }
+    
+    /**
+     * Books one specific slot; false if it is already taken
+     */
+    public boolean bookAppointment(String patientUsername, String doctorName, LocalDate date, int slot) {
+        try {
+            book(patientUsername, doctorName, date, slot);
+            return true;
+        } catch (HealthcareException e) {
+            report(e);
+            return false;
+        }
+    }
+    
+    /**
+     * Books the doctor's earliest free slot on or after the given day
+     */
+    public Appointment bookNextAvailable(String patientUsername, String doctorName, LocalDate from) {
+        try {
+            return bookNext(patientUsername, doctorName, from);
+        } catch (HealthcareException e) {
+            report(e);
+            return null;
+        }
+    }
+    
+    Appointment book(String patientUsername, String doctorName, LocalDate date) throws HealthcareException {
+        awaitSchedule(date);
+        int slot = schedule.reserveFirstFree(doctorName, date);
+        if (slot < 0) {
+            throw new HealthcareException(HealthcareException.ErrorCode.SLOT_UNAVAILABLE,
+                doctorName + " is fully booked on " + date);
+        }
+        return insertReserved(new Appointment(patientUsername, doctorName, date.toString(), slot));
+    }
+    
+    Appointment book(String patientUsername, String doctorName, LocalDate date, int slot) throws HealthcareException {
+        if (slot < 0 || slot >= schedule.getSlotsPerDay()) {
+            throw new HealthcareException(HealthcareException.ErrorCode.INVALID_ARGUMENT,
+                "slot must be between 0 and " + (schedule.getSlotsPerDay() - 1));
+        }
+        awaitSchedule(date);
+        if (!schedule.reserve(doctorName, date, slot)) {
+            throw new HealthcareException(HealthcareException.ErrorCode.SLOT_UNAVAILABLE,
+                "Slot " + slot + " is not available for " + doctorName + " on " + date);
+        }
+        return insertReserved(new Appointment(patientUsername, doctorName, date.toString(), slot));
+    }
+    
+    Appointment bookNext(String patientUsername, String doctorName, LocalDate from) throws HealthcareException {
+        awaitSchedule(from);
+        ScheduleEngine.Slot slot = schedule.reserveNextFree(doctorName, from);
+        return insertReserved(
+            new Appointment(patientUsername, doctorName, slot.getDate().toString(), slot.getIndex()));
+    }
+    
+    public ScheduleEngine.Slot findNextFreeSlot(String doctorName, LocalDate from) {
+        try {
+            awaitSchedule(from);
+        } catch (HealthcareException e) {
+            e.printStackTrace();
+            return null;
+        }
+        return schedule.findNextFree(doctorName, from);
+    }
+    
+    private Appointment insertReserved(Appointment appointment) throws HealthcareException {
+        try {
+            dbManager.addAppointment(appointment);
+            patientViews.invalidate(appointment.getPatientUsername());
+            analytics.recordAppointment(appointment.getPatientUsername(), appointment.getDoctorName(),
+                LocalDate.parse(appointment.getDate()));
+            return appointment;
+        } catch (SQLException e) {
+            schedule.release(appointment.getDoctorName(), LocalDate.parse(appointment.getDate()),
+                appointment.getSlot());
+            throw HealthcareException.from(e);
         }
     }
     
+    public ScheduleEngine getSchedule() {
+        return schedule;
+    }
+    
     // Medical Record Management
     public void addMedicalRecord(String patientUsername, String diagnosis, String treatment) {
+        try {
+            record(patientUsername, diagnosis, treatment);
+        } catch (HealthcareException e) {
+            e.printStackTrace();
+        }
+    }
+    
+    void record(String patientUsername, String diagnosis, String treatment) throws HealthcareException {
         try {
             dbManager.addMedicalRecord(patientUsername, diagnosis, treatment);
+            patientViews.invalidate(patientUsername);
+            analytics.recordMedicalRecord(patientUsername);
         } catch (SQLException e) {
-            e.printStackTrace();
+            throw HealthcareException.from(e);
         }
     }
     
     // Prescription Management
-    public void addPrescription(String patientUsername, String medicine, int quantity) {
+    // Stock is taken from the in-memory inventory first; an overdraw is rejected
+    // and nothing is written
+    public boolean addPrescription(String patientUsername, String medicine, int quantity) {
+        try {
+            prescribe(patientUsername, medicine, quantity);
+            return true;
+        } catch (HealthcareException e) {
+            report(e);
+            return false;
+        }
+    }
+    
+    void prescribe(String patientUsername, String medicine, int quantity) throws HealthcareException {
+        if (quantity <= 0) {
+            throw new HealthcareException(HealthcareException.ErrorCode.INVALID_ARGUMENT, "quantity must be positive");
+        }
+        try {
+            if (!inventory.tryDispense(medicine, quantity)) {
+                throw new HealthcareException(HealthcareException.ErrorCode.INSUFFICIENT_STOCK,
+                    "Not enough " + medicine + " in stock for " + quantity + " units");
+            }
+        } catch (IOException e) {
+            throw HealthcareException.from(e);
+        }
+        try {
+            dbManager.insertPrescription(patientUsername, medicine, quantity);
+            patientViews.invalidate(patientUsername);
+            analytics.recordPrescription(patientUsername, medicine, quantity, today());
+        } catch (SQLException e) {
+            releaseStock(medicine, quantity);
+            throw HealthcareException.from(e);
+        }
+    }
+    
+    private static LocalDate today() {
+        // prescription_date defaults to CURRENT_TIMESTAMP, which SQLite keeps in UTC
+        return LocalDate.now(ZoneOffset.UTC);
+    }
+    
+    private void releaseStock(String medicine, int quantity) {
+        try {
+            inventory.release(medicine, quantity);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+    
+    // Bulk ingestion
+    
+    /**
+     * Rows that ask for a taken slot, or fall on a fully booked day, are reported as failed
+     */
+    public BatchResult bookAppointments(Collection<Appointment> appointments) {
+        List<Appointment> rows = new ArrayList<>(appointments);
+        int[] counts = new int[rows.size()];
+        List<SQLException> errors = new ArrayList<>();
+        List<Appointment> reserved = new ArrayList<>();
+        List<Integer> reservedRows = new ArrayList<>();
+        for (int i = 0; i < rows.size(); i++) {
+            Appointment appointment = rows.get(i);
+            Appointment booked = reserveSlot(appointment, errors);
+            if (booked != null) {
+                reserved.add(booked);
+                reservedRows.add(i);
+            } else {
+                counts[i] = Statement.EXECUTE_FAILED;
+            }
+        }
+        
+        BatchResult inserted;
+        try {
+            inserted = dbManager.addAppointments(reserved);
+        } catch (SQLException e) {
+            e.printStackTrace();
+            inserted = BatchResult.failed(reserved.size(), e);
+        }
+        errors.addAll(inserted.getErrors());
+        for (int i = 0; i < reserved.size(); i++) {
+            counts[reservedRows.get(i)] = inserted.getUpdateCount(i);
+            Appointment appointment = reserved.get(i);
+            if (inserted.isSuccess(i)) {
+                patientViews.invalidate(appointment.getPatientUsername());
+                analytics.recordAppointment(appointment.getPatientUsername(), appointment.getDoctorName(),
+                    LocalDate.parse(appointment.getDate()));
+            } else {
+                schedule.release(appointment.getDoctorName(), LocalDate.parse(appointment.getDate()),
+                    appointment.getSlot());
+            }
+        }
+        return new BatchResult(counts, errors);
+    }
+    
+    private Appointment reserveSlot(Appointment appointment, List<SQLException> errors) {
+        LocalDate day;
+        try {
+            day = LocalDate.parse(appointment.getDate());
+        } catch (DateTimeParseException | NullPointerException e) {
+            errors.add(new SQLException("Invalid appointment date (expected yyyy-MM-dd): " + appointment.getDate(), e));
+            return null;
+        }
+        try {
+            awaitSchedule(day);
+        } catch (HealthcareException e) {
+            errors.add(new SQLException(e.getMessage(), e));
+            return null;
+        }
+        if (appointment.hasSlot()) {
+            if (appointment.getSlot() >= 0 && appointment.getSlot() < schedule.getSlotsPerDay()
+                    && schedule.reserve(appointment.getDoctorName(), day, appointment.getSlot())) {
+                return appointment;
+            }
+            errors.add(new SQLException("Slot " + appointment.getSlot() + " is not available for "
+                + appointment.getDoctorName() + " on " + appointment.getDate()));
+            return null;
+        }
+        int slot = schedule.reserveFirstFree(appointment.getDoctorName(), day);
+        if (slot < 0) {
+            errors.add(new SQLException(appointment.getDoctorName() + " is fully booked on " + appointment.getDate()));
+            return null;
+        }
+        return new Appointment(appointment.getId(), appointment.getPatientUsername(),
+            appointment.getDoctorName(), appointment.getDate(), slot);
+    }
+    
+    public BatchResult addMedicalRecords(Collection<MedicalRecord> records) {
+        List<MedicalRecord> rows = new ArrayList<>(records);
+        BatchResult inserted;
         try {
-            dbManager.addPrescription(patientUsername, medicine, quantity);
+            inserted = dbManager.addMedicalRecords(rows);
         } catch (SQLException e) {
             e.printStackTrace();
+            inserted = BatchResult.failed(rows.size(), e);
         }
+        // Failed chunks were rolled back, so dropping those entries too is merely redundant
+        rows.forEach(record -> patientViews.invalidate(record.getPatientUsername()));
+        for (int i = 0; i < rows.size(); i++) {
+            if (inserted.isSuccess(i)) {
+                analytics.recordMedicalRecord(rows.get(i).getPatientUsername());
+            }
+        }
+        return inserted;
+    }
+    
+    /**
+     * Rows without a medicine or a positive quantity, and rows whose stock cannot be
+     * dispensed, are reported as failed and not inserted
+     */
+    public BatchResult addPrescriptions(Collection<Prescription> prescriptions) {
+        List<Prescription> rows = new ArrayList<>(prescriptions);
+        int[] counts = new int[rows.size()];
+        List<SQLException> errors = new ArrayList<>();
+        List<Prescription> dispensed = new ArrayList<>();
+        List<Integer> dispensedRows = new ArrayList<>();
+        int invalid = 0;
+        try {
+            for (int i = 0; i < rows.size(); i++) {
+                Prescription prescription = rows.get(i);
+                boolean taken = false;
+                if (prescription.getMedicine() == null || prescription.getQuantity() <= 0) {
+                    invalid++;
+                } else {
+                    try {
+                        taken = inventory.tryDispense(prescription.getMedicine(), prescription.getQuantity());
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                }
+                if (taken) {
+                    dispensed.add(prescription);
+                    dispensedRows.add(i);
+                } else {
+                    counts[i] = Statement.EXECUTE_FAILED;
+                }
+            }
+        } catch (RuntimeException e) {
+            // Nothing is inserted, so the stock taken for earlier rows goes back
+            for (Prescription prescription : dispensed) {
+                releaseStock(prescription.getMedicine(), prescription.getQuantity());
+            }
+            throw e;
+        }
+        if (invalid > 0) {
+            errors.add(new SQLException(invalid + " prescriptions have no medicine or a quantity below 1"));
+        }
+        if (dispensed.size() + invalid < rows.size()) {
+            errors.add(new SQLException((rows.size() - dispensed.size() - invalid)
+                + " prescriptions exceed available stock"));
+        }
+        
+        BatchResult inserted;
+        try {
+            inserted = dbManager.insertPrescriptions(dispensed);
+        } catch (SQLException e) {
+            e.printStackTrace();
+            inserted = BatchResult.failed(dispensed.size(), e);
+        }
+        errors.addAll(inserted.getErrors());
+        for (int i = 0; i < dispensed.size(); i++) {
+            counts[dispensedRows.get(i)] = inserted.getUpdateCount(i);
+            if (inserted.isSuccess(i)) {
+                Prescription prescription = dispensed.get(i);
+                patientViews.invalidate(prescription.getPatientUsername());
+                analytics.recordPrescription(prescription.getPatientUsername(), prescription.getMedicine(),
+                    prescription.getQuantity(), today());
+            } else {
+                releaseStock(dispensed.get(i).getMedicine(), dispensed.get(i).getQuantity());
+            }
+        }
+        return new BatchResult(counts, errors);
     }
     
     // Inventory Management
     public void addMedicine(String medicine, int quantity) {
         try {
-            dbManager.addMedicine(medicine, quantity);
-        } catch (SQLException e) {
+            stock(medicine, quantity);
+        } catch (HealthcareException e) {
             e.printStackTrace();
         }
     }
     
+    /**
+     * Adds units to the stock instead of replacing it, unlike addMedicine
+     */
+    public void restockMedicine(String medicine, int quantity) {
+        try {
+            restock(medicine, quantity);
+        } catch (HealthcareException e) {
+            e.printStackTrace();
+        }
+    }
+    
+    void restock(String medicine, int quantity) throws HealthcareException {
+        if (quantity <= 0) {
+            throw new HealthcareException(HealthcareException.ErrorCode.INVALID_ARGUMENT, "quantity must be positive");
+        }
+        try {
+            inventory.restock(medicine, quantity);
+        } catch (SQLException e) {
+            throw HealthcareException.from(e);
+        } catch (IOException e) {
+            throw HealthcareException.from(e);
+        }
+    }
+    
+    /**
+     * Restocks every open reorder; the RESTOCKED events close them
+     */
+    public int fulfilReorders() {
+        int fulfilled = 0;
+        for (ReorderPlanner.Reorder reorder : reorders.getOpenReorders()) {
+            try {
+                restock(reorder.getMedicine(), reorder.getQuantity());
+                fulfilled++;
+            } catch (HealthcareException e) {
+                e.printStackTrace();
+            }
+        }
+        return fulfilled;
+    }
+    
+    void stock(String medicine, int quantity) throws HealthcareException {
+        try {
+            inventory.setStock(medicine, quantity);
+        } catch (SQLException e) {
+            throw HealthcareException.from(e);
+        } catch (IOException e) {
+            throw HealthcareException.from(e);
+        }
+    }
+    
     // Getters for lists
+    /**
+     * A patient's dashboard, served read-through from the patient view cache
+     */
+    public PatientView getPatientView(String patientUsername) {
+        try {
+            return patientViews.get(patientUsername);
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return PatientView.empty(patientUsername);
+        }
+    }
+    
+    public PatientViewCache getPatientViewCache() {
+        return patientViews;
+    }
+    
     public List<Appointment> getAppointments() {
         try {
             return dbManager.getAllAppointments();
@@ -105,12 +756,177 @@ public class HealthcareSystem {
         }
     }
     
+    // Paged, filtered lookups (pass 0 as afterId for the first page)
+    public List<Appointment> getAppointmentsForPatient(String patientUsername, long afterId, int limit) {
+        try {
+            return dbManager.getAppointmentsForPatient(patientUsername, afterId, limit);
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return new ArrayList<>();
+        }
+    }
+    
+    public List<Appointment> getAppointmentsForDoctor(String doctorName, LocalDate from, LocalDate to) {
+        try {
+            return dbManager.getAppointmentsForDoctor(doctorName, from, to);
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return new ArrayList<>();
+        }
+    }
+    
+    public List<MedicalRecord> getMedicalRecordsForPatient(String patientUsername, long afterId, int limit) {
+        try {
+            return dbManager.getMedicalRecordsForPatient(patientUsername, afterId, limit);
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return new ArrayList<>();
+        }
+    }
+    
+    /**
+     * Ranked full-text search over diagnoses and treatments; see DatabaseManager.searchMedicalRecords
+     */
+    public List<MedicalRecord> searchMedicalRecords(String query, String patientUsername, int offset, int limit) {
+        try {
+            return dbManager.searchMedicalRecords(query, patientUsername, offset, limit);
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return new ArrayList<>();
+        }
+    }
+    
+    public List<Prescription> getPrescriptionsForPatient(String patientUsername, long afterId, int limit) {
+        try {
+            return dbManager.getPrescriptionsForPatient(patientUsername, afterId, limit);
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return new ArrayList<>();
+        }
+    }
+    
+    /**
+     * Served from the in-memory inventory; SQLite is updated write-behind
+     */
     public Map<String, Integer> getMedicineInventory() {
+        return inventory.snapshot();
+    }
+    
+    public InventoryEngine getInventory() {
+        return inventory;
+    }
+    
+    /**
+     * Thresholds and subscriptions for low-stock events
+     */
+    public InventoryEvents getInventoryEvents() {
+        return dbManager.getInventoryEvents();
+    }
+    
+    public ReorderPlanner getReorderPlanner() {
+        return reorders;
+    }
+    
+    // Analytics
+    
+    /**
+     * After a hot state bootstrap, waits for the analytics to finish loading
+     */
+    public AnalyticsEngine getAnalytics() {
+        if (analyticsLoaded != null) {
+            try {
+                analyticsLoaded.join();
+            } catch (CompletionException e) {
+                e.getCause().printStackTrace();
+            }
+        }
+        return analytics;
+    }
+    
+    /**
+     * Days the current stock lasts at the average burn rate of the last given days;
+     * infinite when nothing was prescribed in that window
+     */
+    public double getDaysOfStockLeft(String medicine, int days) {
+        Integer stock = inventory.getStock(medicine);
+        double burnRate = getAnalytics().getBurnRate(medicine, today(), days);
+        if (stock == null || stock <= 0) {
+            return 0;
+        }
+        return burnRate == 0 ? Double.POSITIVE_INFINITY : stock / burnRate;
+    }
+    
+    // Snapshots
+    
+    /**
+     * Writes a compacted copy of the database and a hot state image of that copy into
+     * directory, as healthcare.db and hot-state.img; writers are not blocked meanwhile.
+     * A new node started on the copy with the image serves requests without first
+     * scanning every table. A sharded database is copied without an image.
+     */
+    public boolean snapshot(Path directory) {
         try {
-            return dbManager.getMedicineInventory();
+            writeSnapshot(directory);
+            return true;
+        } catch (HealthcareException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+    
+    void writeSnapshot(Path directory) throws HealthcareException {
+        try {
+            // Pending dispenses only live in the journal until they are flushed
+            inventory.flush();
+            Path database = directory.resolve(StorageConfig.DEFAULT_PATH);
+            dbManager.snapshot(database);
+            if (dbManager.getShardCount() > 1) {
+                return;
+            }
+            // Read from the copy, not the live database, so the image matches it exactly
+            DatabaseManager copy = new DatabaseManager(StorageConfig.file(database).readers(1).build());
+            try {
+                copy.readHotState(today()).write(directory.resolve(HotStateImage.FILE_NAME));
+            } finally {
+                copy.closeConnection();
+            }
+        } catch (SQLException e) {
+            throw HealthcareException.from(e);
+        } catch (IOException e) {
+            throw HealthcareException.from(e);
+        }
+    }
+    
+    /**
+     * Moves appointments and prescriptions older than the archive horizon into monthly
+     * partitions and returns the number of rows moved; see DatabaseManager.archive.
+     * Waits for the analytics to finish loading, which reads the archive as well.
+     */
+    public long archive() {
+        try {
+            getWarmup().exceptionally(e -> null).join();
+            return dbManager.archive();
         } catch (SQLException e) {
             e.printStackTrace();
-            return new HashMap<>();
+            return 0;
+        }
+    }
+    
+    DatabaseManager getDatabaseManager() {
+        return dbManager;
+    }
+    
+    /**
+     * Flushes pending inventory changes and closes the database
+     */
+    public void shutdown() {
+        getWarmup().exceptionally(e -> null).join();
+        reorders.close();
+        try {
+            inventory.close();
+        } catch (SQLException | IOException e) {
+            e.printStackTrace();
         }
+        dbManager.closeConnection();
     }
 } 
\ No newline at end of file
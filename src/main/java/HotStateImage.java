@@ -0,0 +1,304 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Hot State Image class holding what a node needs to serve requests right away
+ * Medicine stock, user credentials and the appointments from one day on, captured in a
+ * single read transaction together with the largest appointment id at that point. The
+ * appointments are also kept as the schedule they produce, one slot bitmap per doctor
+ * and day, so restoring the schedule does not replay every booking.
+ * The binary file is one string table followed by fixed-width records that refer to it,
+ * ending in a CRC32; it is written to a temporary file and moved into place, and read
+ * back through a memory-mapped buffer. The appointment records are only decoded when
+ * getAppointments() is called.
+ */
+public final class HotStateImage {
+    public static final String FILE_NAME = "hot-state.img";
+    private static final int MAGIC = 0x48535449; // "HSTI"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 4 + 4 + 8 + 8 + 8;
+    private static final int APPOINTMENT_BYTES = 8 + 4 + 4 + 4 + 4;
+
+    private final long createdMillis;
+    private final long fromEpochDay;
+    private final long maxAppointmentId;
+    private final NamePool names;
+    private final Map<String, Integer> inventory;
+    private final Map<String, String> passwordHashes;
+    private final Map<String, String> roles;
+    // Schedule bitmaps: scheduleDoctors[i] is a names id
+    private final int scheduleDays;
+    private final int[] scheduleDoctors;
+    private final int[] scheduleEpochDays;
+    private final long[] scheduleBits;
+    private final int appointmentCount;
+    private ByteBuffer appointmentRecords;
+    private List<CompactAppointment> appointments;
+
+    /**
+     * A freshly captured image
+     * @param names pool the appointments' patient and doctor ids refer to
+     * @param schedule the schedule the appointments produce; only days from fromEpochDay on are kept
+     */
+    HotStateImage(long createdMillis, long fromEpochDay, long maxAppointmentId, NamePool names,
+                  Map<String, Integer> inventory, Map<String, String> passwordHashes,
+                  Map<String, String> roles, ScheduleEngine schedule, List<CompactAppointment> appointments) {
+        this.createdMillis = createdMillis;
+        this.fromEpochDay = fromEpochDay;
+        this.maxAppointmentId = maxAppointmentId;
+        this.names = names;
+        this.inventory = Collections.unmodifiableMap(inventory);
+        this.passwordHashes = Collections.unmodifiableMap(passwordHashes);
+        this.roles = Collections.unmodifiableMap(roles);
+        List<long[]> days = new ArrayList<>();
+        schedule.forEachDay(LocalDate.ofEpochDay(fromEpochDay),
+            (doctor, epochDay, bits) -> days.add(new long[] {names.id(doctor), epochDay, bits}));
+        this.scheduleDays = days.size();
+        this.scheduleDoctors = new int[scheduleDays];
+        this.scheduleEpochDays = new int[scheduleDays];
+        this.scheduleBits = new long[scheduleDays];
+        for (int i = 0; i < scheduleDays; i++) {
+            long[] day = days.get(i);
+            scheduleDoctors[i] = (int) day[0];
+            scheduleEpochDays[i] = (int) day[1];
+            scheduleBits[i] = day[2];
+        }
+        this.appointmentCount = appointments.size();
+        this.appointments = Collections.unmodifiableList(appointments);
+    }
+
+    private HotStateImage(long createdMillis, long fromEpochDay, long maxAppointmentId, NamePool names,
+                          Map<String, Integer> inventory, Map<String, String> passwordHashes,
+                          Map<String, String> roles, int[] scheduleDoctors, int[] scheduleEpochDays,
+                          long[] scheduleBits, int appointmentCount, ByteBuffer appointmentRecords) {
+        this.createdMillis = createdMillis;
+        this.fromEpochDay = fromEpochDay;
+        this.maxAppointmentId = maxAppointmentId;
+        this.names = names;
+        this.inventory = Collections.unmodifiableMap(inventory);
+        this.passwordHashes = Collections.unmodifiableMap(passwordHashes);
+        this.roles = Collections.unmodifiableMap(roles);
+        this.scheduleDays = scheduleDoctors.length;
+        this.scheduleDoctors = scheduleDoctors;
+        this.scheduleEpochDays = scheduleEpochDays;
+        this.scheduleBits = scheduleBits;
+        this.appointmentCount = appointmentCount;
+        this.appointmentRecords = appointmentRecords;
+    }
+
+    public long getCreatedMillis() { return createdMillis; }
+
+    /**
+     * First day whose appointments are in the image
+     */
+    public LocalDate getFrom() { return LocalDate.ofEpochDay(fromEpochDay); }
+
+    /**
+     * Every appointment with a larger id was written after the image was captured
+     */
+    public long getMaxAppointmentId() { return maxAppointmentId; }
+
+    public NamePool getNames() { return names; }
+    public Map<String, Integer> getInventory() { return inventory; }
+    public int getUserCount() { return passwordHashes.size(); }
+    public int getAppointmentCount() { return appointmentCount; }
+
+    public String getPasswordHash(String username) {
+        return passwordHashes.get(username);
+    }
+
+    public String getRole(String username) {
+        return roles.get(username);
+    }
+
+    /**
+     * Books the image's days into schedule
+     */
+    public void restoreSchedule(ScheduleEngine schedule) {
+        for (int i = 0; i < scheduleDays; i++) {
+            schedule.reserveAll(names.name(scheduleDoctors[i]), scheduleEpochDays[i], scheduleBits[i]);
+        }
+    }
+
+    /**
+     * The appointments from getFrom() on, in id order; patient and doctor are getNames() ids
+     */
+    public synchronized List<CompactAppointment> getAppointments() {
+        if (appointments == null) {
+            ByteBuffer records = appointmentRecords.duplicate();
+            List<CompactAppointment> decoded = new ArrayList<>(appointmentCount);
+            for (int i = 0; i < appointmentCount; i++) {
+                decoded.add(new CompactAppointment(records.getLong(), records.getInt(), records.getInt(),
+                    records.getInt(), records.getInt()));
+            }
+            appointments = Collections.unmodifiableList(decoded);
+            appointmentRecords = null;
+        }
+        return appointments;
+    }
+
+    // Writing
+
+    /**
+     * Writes the image to file, replacing it atomically
+     */
+    public void write(Path file) throws IOException {
+        List<CompactAppointment> rows = getAppointments();
+        // Every name, hash and role goes into the string table once; the image's own
+        // names come first, so the ids in the appointments and schedule carry over
+        NamePool strings = new NamePool();
+        for (int id = 0; id < names.size(); id++) {
+            strings.id(names.name(id));
+        }
+        inventory.keySet().forEach(strings::id);
+        passwordHashes.forEach((username, hash) -> {
+            strings.id(username);
+            strings.id(hash);
+            strings.id(roles.get(username));
+        });
+
+        List<byte[]> encoded = new ArrayList<>(strings.size());
+        long size = HEADER_BYTES + 4 + 4 + 4 + 4 + 4 + 8;
+        for (int id = 0; id < strings.size(); id++) {
+            byte[] bytes = strings.name(id).getBytes(StandardCharsets.UTF_8);
+            encoded.add(bytes);
+            size += 4 + bytes.length;
+        }
+        size += inventory.size() * 8L + passwordHashes.size() * 12L + scheduleDays * 16L
+            + (long) rows.size() * APPOINTMENT_BYTES;
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Hot state image would be " + size + " bytes");
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate((int) size);
+        buffer.putInt(MAGIC).putInt(VERSION).putLong(createdMillis).putLong(fromEpochDay).putLong(maxAppointmentId);
+        buffer.putInt(encoded.size());
+        for (byte[] bytes : encoded) {
+            buffer.putInt(bytes.length).put(bytes);
+        }
+        buffer.putInt(inventory.size());
+        inventory.forEach((medicine, quantity) -> buffer.putInt(strings.find(medicine)).putInt(quantity));
+        buffer.putInt(passwordHashes.size());
+        passwordHashes.forEach((username, hash) -> buffer.putInt(strings.find(username))
+            .putInt(strings.find(hash)).putInt(strings.find(roles.get(username))));
+        buffer.putInt(scheduleDays);
+        for (int i = 0; i < scheduleDays; i++) {
+            buffer.putInt(scheduleDoctors[i]).putInt(scheduleEpochDays[i]).putLong(scheduleBits[i]);
+        }
+        buffer.putInt(rows.size());
+        for (CompactAppointment appointment : rows) {
+            buffer.putLong(appointment.id()).putInt(appointment.patient()).putInt(appointment.doctor())
+                .putInt(appointment.epochDay()).putInt(appointment.slot());
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, buffer.position());
+        buffer.putLong(crc.getValue());
+        buffer.flip();
+
+        Path directory = file.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path temp = Files.createTempFile(directory, FILE_NAME, ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(false);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    // Reading
+
+    /**
+     * Maps the file and decodes it; IOException if it is truncated, corrupt or of another version
+     */
+    public static HotStateImage read(Path file) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES + 8 || channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Not a hot state image: " + file);
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        try {
+            int end = buffer.limit() - 8;
+            CRC32 crc = new CRC32();
+            crc.update(buffer.duplicate().limit(end));
+            if (buffer.getInt() != MAGIC || crc.getValue() != buffer.getLong(end)) {
+                throw new IOException("Corrupt hot state image: " + file);
+            }
+            int version = buffer.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported hot state image version " + version + ": " + file);
+            }
+            long createdMillis = buffer.getLong();
+            long fromEpochDay = buffer.getLong();
+            long maxAppointmentId = buffer.getLong();
+
+            NamePool strings = new NamePool();
+            int stringCount = buffer.getInt();
+            for (int i = 0; i < stringCount; i++) {
+                int length = buffer.getInt();
+                strings.id(StandardCharsets.UTF_8.decode(buffer.slice(buffer.position(), length)).toString());
+                buffer.position(buffer.position() + length);
+            }
+            int medicines = buffer.getInt();
+            Map<String, Integer> inventory = new LinkedHashMap<>(medicines * 2);
+            for (int i = 0; i < medicines; i++) {
+                inventory.put(strings.name(buffer.getInt()), buffer.getInt());
+            }
+            int users = buffer.getInt();
+            Map<String, String> passwordHashes = new HashMap<>(users * 2);
+            Map<String, String> roles = new HashMap<>(users * 2);
+            for (int i = 0; i < users; i++) {
+                String username = strings.name(buffer.getInt());
+                passwordHashes.put(username, strings.name(buffer.getInt()));
+                roles.put(username, strings.name(buffer.getInt()));
+            }
+            int days = buffer.getInt();
+            int[] doctors = new int[days];
+            int[] epochDays = new int[days];
+            long[] bits = new long[days];
+            for (int i = 0; i < days; i++) {
+                doctors[i] = buffer.getInt();
+                epochDays[i] = buffer.getInt();
+                bits[i] = buffer.getLong();
+            }
+            int appointmentCount = buffer.getInt();
+            if ((long) appointmentCount * APPOINTMENT_BYTES != end - buffer.position()) {
+                throw new IOException("Corrupt hot state image: " + file);
+            }
+            return new HotStateImage(createdMillis, fromEpochDay, maxAppointmentId, strings, inventory,
+                passwordHashes, roles, doctors, epochDays, bits, appointmentCount,
+                buffer.slice(buffer.position(), end - buffer.position()));
+        } catch (RuntimeException e) {
+            // A bad length or id in a file whose checksum still matched
+            throw new IOException("Corrupt hot state image: " + file, e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("hot state image (%d medicines, %d users, %d appointments on %d doctor days from %s, max id %d)",
+            inventory.size(), passwordHashes.size(), appointmentCount, scheduleDays, getFrom(), maxAppointmentId);
+    }
+}
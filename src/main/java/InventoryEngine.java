@@ -0,0 +1,481 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+/**
+ * Inventory Engine class keeping medicine stock in memory
+ * Dispenses are atomic compare-and-set decrements on a per-medicine counter, so an
+ * overdraw is rejected without touching SQLite. Every change is appended to a journal
+ * segment first; a write-behind flusher coalesces the pending changes into one batched
+ * UPDATE per medicine and records the flushed segment in the same transaction.
+ * On startup, segments newer than that checkpoint are replayed. Every change is also
+ * reported to the database's InventoryEvents, which raise low-stock events.
+ * Without a journal directory (for in-memory databases) nothing is written to disk and
+ * changes not yet flushed are lost with the process, as the database itself is.
+ * A flush that fails is retried as it was, with the background flusher backing off,
+ * so a database that stays down neither floods the log nor piles up journal segments.
+ */
+public class InventoryEngine implements AutoCloseable {
+    public static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 200;
+    public static final long MAX_RETRY_DELAY_MILLIS = 30_000;
+    private static final String SEGMENT_PREFIX = "inventory-";
+    private static final String SEGMENT_SUFFIX = ".journal";
+
+    private final DatabaseManager dbManager;
+    private final InventoryEvents events;
+    private final Path journalDir;
+    private final boolean syncJournal;
+    private final ConcurrentHashMap<String, AtomicInteger> stock = new ConcurrentHashMap<>();
+    // Dispenses hold the read lock; rotating the journal and absolute stock changes hold the write lock
+    private final ReentrantReadWriteLock rotationLock = new ReentrantReadWriteLock();
+    private volatile ConcurrentHashMap<String, AtomicInteger> pending = new ConcurrentHashMap<>();
+    // Null without a journal directory
+    private volatile FileChannel journal;
+    private volatile long segment;
+    private final Object flushMonitor = new Object();
+    // A snapshot whose write failed; retried before anything else is rotated out (guarded by flushMonitor)
+    private Snapshot failed;
+    private final ScheduledExecutorService flusher;
+    private final long flushIntervalMillis;
+    // Only touched by the flusher thread
+    private int failureStreak;
+    private long retryAtNanos;
+    private volatile boolean closed;
+
+    private final LongAdder dispensed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder flushes = new LongAdder();
+    private final LongAdder flushedUpdates = new LongAdder();
+    private final LongAdder flushFailures = new LongAdder();
+
+    public InventoryEngine(DatabaseManager dbManager, Path journalDir) throws SQLException, IOException {
+        this(dbManager, journalDir, DEFAULT_FLUSH_INTERVAL_MILLIS, true);
+    }
+
+    /**
+     * @param journalDir directory of the journal segments, or null for no journal
+     * @param flushIntervalMillis write-behind period, 0 disables the background flusher
+     * @param syncJournal force every journal append to disk before acknowledging it
+     */
+    public InventoryEngine(DatabaseManager dbManager, Path journalDir, long flushIntervalMillis,
+                           boolean syncJournal) throws SQLException, IOException {
+        this.dbManager = dbManager;
+        this.events = dbManager.getInventoryEvents();
+        this.journalDir = journalDir;
+        this.syncJournal = syncJournal;
+        this.flushIntervalMillis = flushIntervalMillis;
+        if (journalDir != null) {
+            Files.createDirectories(journalDir);
+        }
+
+        segment = recover();
+        stock.clear();
+        dbManager.getMedicineInventory().forEach((medicine, quantity) ->
+            stock.put(medicine, new AtomicInteger(quantity)));
+        journal = openSegment(++segment);
+
+        if (flushIntervalMillis > 0) {
+            flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "inventory-flusher");
+                thread.setDaemon(true);
+                return thread;
+            });
+            flusher.scheduleWithFixedDelay(this::backgroundFlush, flushIntervalMillis, flushIntervalMillis,
+                TimeUnit.MILLISECONDS);
+        } else {
+            flusher = null;
+        }
+    }
+
+    /**
+     * One tick of the background flusher. After a failure the next attempts wait twice
+     * as long each time, up to MAX_RETRY_DELAY_MILLIS; only the first failure of a run
+     * is printed, the rest are counted in getFlushFailureCount(). Once the database has been
+     * closed underneath the engine the flusher stops; the journal keeps what was not flushed.
+     */
+    private void backgroundFlush() {
+        if (failureStreak > 0 && System.nanoTime() - retryAtNanos < 0) {
+            return;
+        }
+        try {
+            flush();
+            failureStreak = 0;
+        } catch (SQLException | IOException | RuntimeException e) {
+            if (dbManager.isClosed()) {
+                flusher.shutdown();
+                return;
+            }
+            if (failureStreak == 0) {
+                e.printStackTrace();
+            }
+            failureStreak++;
+            long delayMillis = Math.min(MAX_RETRY_DELAY_MILLIS, flushIntervalMillis << Math.min(failureStreak, 16));
+            retryAtNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis);
+        }
+    }
+
+    /**
+     * Atomically takes quantity units out of stock; false if the medicine is unknown
+     * or the stock would go negative
+     */
+    public boolean tryDispense(String medicine, int quantity) throws IOException {
+        if (quantity <= 0) {
+            throw new IllegalArgumentException("quantity must be positive");
+        }
+        AtomicInteger counter = stock.get(medicine);
+        if (counter == null) {
+            rejected.increment();
+            return false;
+        }
+        int current;
+        rotationLock.readLock().lock();
+        try {
+            do {
+                current = counter.get();
+                if (current < quantity) {
+                    rejected.increment();
+                    return false;
+                }
+            } while (!counter.compareAndSet(current, current - quantity));
+            try {
+                record(medicine, -quantity);
+            } catch (IOException e) {
+                counter.addAndGet(quantity);
+                throw e;
+            }
+        } finally {
+            rotationLock.readLock().unlock();
+        }
+        dispensed.increment();
+        events.onChange(medicine, current, current - quantity);
+        return true;
+    }
+
+    /**
+     * Puts units back, e.g. when the prescription insert after a dispense failed
+     */
+    public void release(String medicine, int quantity) throws IOException {
+        AtomicInteger counter = stock.get(medicine);
+        if (counter == null || quantity <= 0) {
+            return;
+        }
+        add(medicine, counter, quantity);
+    }
+    
+    /**
+     * Adds units to the stock. Known medicines go through the journal and write-behind
+     * like a dispense; a new medicine is inserted right away.
+     */
+    public void restock(String medicine, int quantity) throws SQLException, IOException {
+        if (quantity <= 0) {
+            throw new IllegalArgumentException("quantity must be positive");
+        }
+        AtomicInteger counter = stock.get(medicine);
+        if (counter != null) {
+            add(medicine, counter, quantity);
+            return;
+        }
+        synchronized (flushMonitor) {
+            rotationLock.writeLock().lock();
+            try {
+                counter = stock.get(medicine);
+                if (counter == null) {
+                    // restockMedicine raises the event for this change itself
+                    stock.put(medicine, new AtomicInteger(dbManager.restockMedicine(medicine, quantity)));
+                    return;
+                }
+            } finally {
+                rotationLock.writeLock().unlock();
+            }
+        }
+        add(medicine, counter, quantity);
+    }
+    
+    private void add(String medicine, AtomicInteger counter, int quantity) throws IOException {
+        int after;
+        rotationLock.readLock().lock();
+        try {
+            record(medicine, quantity);
+            after = counter.addAndGet(quantity);
+        } finally {
+            rotationLock.readLock().unlock();
+        }
+        events.onChange(medicine, (long) after - quantity, after);
+    }
+
+    /**
+     * Sets the absolute stock level. Pending changes are flushed first so the
+     * absolute value is not overwritten by older write-behind deltas.
+     */
+    public void setStock(String medicine, int quantity) throws SQLException, IOException {
+        // Same lock order as flush(): monitor first, then the rotation lock
+        synchronized (flushMonitor) {
+            rotationLock.writeLock().lock();
+            try {
+                retryFailed();
+                applySnapshot(rotate());
+                dbManager.addMedicine(medicine, quantity);
+                int before = stock.computeIfAbsent(medicine, k -> new AtomicInteger()).getAndSet(quantity);
+                events.onChange(medicine, before, quantity);
+            } finally {
+                rotationLock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Current stock, or null if the medicine is unknown
+     */
+    public Integer getStock(String medicine) {
+        AtomicInteger counter = stock.get(medicine);
+        return counter == null ? null : counter.get();
+    }
+
+    public Map<String, Integer> snapshot() {
+        Map<String, Integer> copy = new HashMap<>();
+        stock.forEach((medicine, counter) -> copy.put(medicine, counter.get()));
+        return copy;
+    }
+
+    /**
+     * Writes all pending changes to SQLite in one transaction
+     */
+    public void flush() throws SQLException, IOException {
+        // Checked under the monitor: a flush already in progress has emptied pending
+        // but may not have reached the database yet
+        synchronized (flushMonitor) {
+            retryFailed();
+            if (pending.isEmpty()) {
+                return;
+            }
+            Snapshot snapshot;
+            rotationLock.writeLock().lock();
+            try {
+                snapshot = rotate();
+            } finally {
+                rotationLock.writeLock().unlock();
+            }
+            applySnapshot(snapshot);
+        }
+    }
+
+    private void record(String medicine, int delta) throws IOException {
+        byte[] name = medicine.getBytes(StandardCharsets.UTF_8);
+        CRC32 crc = new CRC32();
+        crc.update(name);
+        crc.update(ByteBuffer.allocate(4).putInt(0, delta));
+        ByteBuffer entry = ByteBuffer.allocate(4 + name.length + 4 + 4);
+        entry.putInt(name.length).put(name).putInt(delta).putInt((int) crc.getValue()).flip();
+        FileChannel channel = journal;
+        if (channel != null) {
+            while (entry.hasRemaining()) {
+                channel.write(entry);
+            }
+            if (syncJournal) {
+                channel.force(false);
+            }
+        }
+        pending.computeIfAbsent(medicine, k -> new AtomicInteger()).addAndGet(delta);
+    }
+
+    /**
+     * Swaps in an empty pending map and a fresh journal segment; caller holds the write lock
+     */
+    private Snapshot rotate() throws IOException {
+        Snapshot snapshot = new Snapshot(pending, segment);
+        pending = new ConcurrentHashMap<>();
+        FileChannel previous = journal;
+        journal = openSegment(++segment);
+        if (previous != null) {
+            previous.close();
+        }
+        return snapshot;
+    }
+
+    /**
+     * Writes the snapshot that failed last time, if any; caller holds flushMonitor.
+     * Until it is written no further segment is rotated out, so a failing database
+     * leaves at most that segment and the current one on disk.
+     */
+    private void retryFailed() throws SQLException, IOException {
+        if (failed != null) {
+            Snapshot retry = failed;
+            failed = null;
+            applySnapshot(retry);
+        }
+    }
+
+    private void applySnapshot(Snapshot snapshot) throws SQLException, IOException {
+        Map<String, Integer> deltas = new HashMap<>();
+        snapshot.deltas.forEach((medicine, delta) -> {
+            if (delta.get() != 0) {
+                deltas.put(medicine, delta.get());
+            }
+        });
+        try {
+            dbManager.applyInventoryDeltas(deltas, snapshot.segment);
+        } catch (SQLException | RuntimeException e) {
+            // Kept as it is for the next flush; its segment stays on disk until then
+            flushFailures.increment();
+            failed = snapshot;
+            throw e;
+        }
+        flushes.increment();
+        flushedUpdates.add(deltas.size());
+        deleteSegmentsUpTo(snapshot.segment);
+    }
+
+    /**
+     * Replays journal segments newer than the database checkpoint and returns the last segment number
+     */
+    private long recover() throws SQLException, IOException {
+        long checkpoint = dbManager.getInventoryCheckpoint();
+        TreeMap<Long, Path> segments = listSegments();
+        Map<String, Integer> deltas = new HashMap<>();
+        long last = checkpoint;
+        for (Map.Entry<Long, Path> entry : segments.entrySet()) {
+            last = Math.max(last, entry.getKey());
+            if (entry.getKey() > checkpoint) {
+                readSegment(entry.getValue(), deltas);
+            }
+        }
+        if (last > checkpoint) {
+            deltas.values().removeIf(delta -> delta == 0);
+            dbManager.applyInventoryDeltas(deltas, last);
+        }
+        deleteSegmentsUpTo(last);
+        return last;
+    }
+
+    private static void readSegment(Path file, Map<String, Integer> deltas) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+        while (buffer.remaining() >= 4) {
+            int start = buffer.position();
+            int length = buffer.getInt();
+            if (length < 0 || buffer.remaining() < length + 8) {
+                break; // torn write at the tail
+            }
+            byte[] name = new byte[length];
+            buffer.get(name);
+            int delta = buffer.getInt();
+            int storedCrc = buffer.getInt();
+            CRC32 crc = new CRC32();
+            crc.update(name);
+            crc.update(ByteBuffer.allocate(4).putInt(0, delta));
+            if ((int) crc.getValue() != storedCrc) {
+                buffer.position(start);
+                break;
+            }
+            deltas.merge(new String(name, StandardCharsets.UTF_8), delta, Integer::sum);
+        }
+    }
+
+    private TreeMap<Long, Path> listSegments() throws IOException {
+        TreeMap<Long, Path> segments = new TreeMap<>();
+        if (journalDir == null) {
+            return segments;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(journalDir,
+                SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                String number = name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length());
+                try {
+                    segments.put(Long.parseLong(number), file);
+                } catch (NumberFormatException e) {
+                    // not one of ours
+                }
+            }
+        }
+        return segments;
+    }
+
+    private void deleteSegmentsUpTo(long lastFlushed) throws IOException {
+        for (Map.Entry<Long, Path> entry : listSegments().headMap(lastFlushed, true).entrySet()) {
+            Files.deleteIfExists(entry.getValue());
+        }
+    }
+
+    private FileChannel openSegment(long number) throws IOException {
+        if (journalDir == null) {
+            return null;
+        }
+        return FileChannel.open(journalDir.resolve(SEGMENT_PREFIX + number + SEGMENT_SUFFIX),
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    public long getDispensedCount() { return dispensed.sum(); }
+    public long getRejectedCount() { return rejected.sum(); }
+    public long getFlushCount() { return flushes.sum(); }
+    public long getFlushedUpdateCount() { return flushedUpdates.sum(); }
+    public long getFlushFailureCount() { return flushFailures.sum(); }
+
+    /**
+     * Flushes pending changes and stops the background flusher
+     */
+    @Override
+    public void close() throws SQLException, IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (flusher != null) {
+            flusher.shutdown();
+            try {
+                flusher.awaitTermination(30, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        try {
+            flush();
+        } finally {
+            if (journal != null) {
+                journal.close();
+            }
+        }
+    }
+
+    /**
+     * Stops without flushing, leaving the journal to be replayed (simulates a crash in tests)
+     */
+    void abandon() throws IOException {
+        closed = true;
+        if (flusher != null) {
+            flusher.shutdownNow();
+        }
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
+    /**
+     * Pending deltas and the journal segment they were recorded in
+     */
+    private static final class Snapshot {
+        private final ConcurrentHashMap<String, AtomicInteger> deltas;
+        private final long segment;
+
+        Snapshot(ConcurrentHashMap<String, AtomicInteger> deltas, long segment) {
+            this.deltas = deltas;
+            this.segment = segment;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+/**
+ * Inventory Event class describing a stock level crossing a threshold
+ */
+public class InventoryEvent {
+    /**
+     * What the change crossed
+     */
+    public enum Type {
+        /** Stock fell to or below the medicine's threshold */
+        LOW_STOCK,
+        /** Stock fell below zero (only the unchecked SQL decrement can do this) */
+        NEGATIVE_STOCK,
+        /** Stock rose back above the threshold */
+        RESTOCKED
+    }
+
+    private final Type type;
+    private final String medicine;
+    private final int quantity;
+    private final int threshold;
+    private final long timestampMillis;
+
+    public InventoryEvent(Type type, String medicine, int quantity, int threshold, long timestampMillis) {
+        this.type = type;
+        this.medicine = medicine;
+        this.quantity = quantity;
+        this.threshold = threshold;
+        this.timestampMillis = timestampMillis;
+    }
+
+    public Type getType() { return type; }
+    public String getMedicine() { return medicine; }
+    /** Stock level right after the change */
+    public int getQuantity() { return quantity; }
+    public int getThreshold() { return threshold; }
+    public long getTimestampMillis() { return timestampMillis; }
+
+    @Override
+    public String toString() {
+        return type + " " + medicine + ": " + quantity + " (threshold " + threshold + ")";
+    }
+}
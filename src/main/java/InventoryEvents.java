@@ -0,0 +1,84 @@
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Inventory Events class turning stock changes into threshold events
+ * Every write that changes a stock level reports the level before and after. An event is
+ * raised only when the change crosses the medicine's threshold (or zero), so a steady
+ * stream of dispenses costs one map lookup each. Events are offered to each
+ * subscriber's bounded RingBuffer; a subscriber that falls behind loses events (counted)
+ * rather than slowing the write path down.
+ */
+public class InventoryEvents {
+    public static final int DEFAULT_THRESHOLD = 10;
+
+    private final ConcurrentHashMap<String, Integer> thresholds = new ConcurrentHashMap<>();
+    private volatile int defaultThreshold = DEFAULT_THRESHOLD;
+    private final List<RingBuffer<InventoryEvent>> subscribers = new CopyOnWriteArrayList<>();
+    private final LongAdder published = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    /**
+     * Stock at or below this level is low for the medicine
+     */
+    public void setThreshold(String medicine, int threshold) {
+        thresholds.put(medicine, threshold);
+    }
+
+    public void setDefaultThreshold(int threshold) {
+        defaultThreshold = threshold;
+    }
+
+    public int getThreshold(String medicine) {
+        return thresholds.getOrDefault(medicine, defaultThreshold);
+    }
+
+    /**
+     * A new queue receiving every event from now on
+     */
+    public RingBuffer<InventoryEvent> subscribe(int capacity) {
+        RingBuffer<InventoryEvent> queue = new RingBuffer<>(capacity);
+        subscribers.add(queue);
+        return queue;
+    }
+
+    public void unsubscribe(RingBuffer<InventoryEvent> queue) {
+        subscribers.remove(queue);
+    }
+
+    /**
+     * Called by the writers after a stock level changed from before to after
+     */
+    void onChange(String medicine, long before, long after) {
+        if (before == after || subscribers.isEmpty()) {
+            return;
+        }
+        int threshold = getThreshold(medicine);
+        if (after < before) {
+            if (before > threshold && after <= threshold) {
+                publish(InventoryEvent.Type.LOW_STOCK, medicine, after, threshold);
+            }
+            if (before >= 0 && after < 0) {
+                publish(InventoryEvent.Type.NEGATIVE_STOCK, medicine, after, threshold);
+            }
+        } else if (before <= threshold && after > threshold) {
+            publish(InventoryEvent.Type.RESTOCKED, medicine, after, threshold);
+        }
+    }
+
+    private void publish(InventoryEvent.Type type, String medicine, long quantity, int threshold) {
+        InventoryEvent event = new InventoryEvent(type, medicine, (int) quantity, threshold, System.currentTimeMillis());
+        for (RingBuffer<InventoryEvent> queue : subscribers) {
+            if (queue.offer(event)) {
+                published.increment();
+            } else {
+                dropped.increment();
+            }
+        }
+    }
+
+    public long getPublishedCount() { return published.sum(); }
+    public long getDroppedCount() { return dropped.sum(); }
+}
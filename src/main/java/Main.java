@@ -64,8 +64,25 @@ public class Main {
             system.getMedicineInventory().forEach((medicine, quantity) -> 
                 System.out.println(medicine + ": " + quantity + " units"));
             
-            // Close database connection when done
-            DatabaseManager.getInstance().closeConnection();
+            // Print a patient dashboard (the second lookup is served from the cache)
+            System.out.println("\n=== Patient Dashboard: john ===");
+            system.getPatientView("john");
+            PatientView dashboard = system.getPatientView("john");
+            System.out.println("Appointments: " + dashboard.getAppointments().size() +
+                             "\nMedical records: " + dashboard.getMedicalRecords().size() +
+                             "\nPrescriptions: " + dashboard.getPrescriptions().size());
+            System.out.println(system.getPatientViewCache().getStats());
+            
+            // Print connection pool metrics
+            System.out.println("\n=== Connection Pool ===");
+            System.out.println(DatabaseManager.getInstance().getPoolStats());
+            
+            // Print per-operation latencies and database counters (also exposed over JMX)
+            System.out.println("\n=== Database Metrics ===");
+            System.out.print(DatabaseManager.getInstance().getMetrics().dump());
+            
+            // Flush inventory and close database connection when done
+            system.shutdown();
             
         } catch (Exception e) {
             System.err.println("\nError occurred: " + e.getMessage());
@@ -2,17 +2,24 @@
  * Medical Record class following Single Responsibility Principle
  */
 public class MedicalRecord {
-    private String patientUsername;
-    private String diagnosis;
-    private String treatment;
+    private final long id;
+    private final String patientUsername;
+    private final String diagnosis;
+    private final String treatment;
     
     public MedicalRecord(String patientUsername, String diagnosis, String treatment) {
+        this(0, patientUsername, diagnosis, treatment);
+    }
+    
+    public MedicalRecord(long id, String patientUsername, String diagnosis, String treatment) {
+        this.id = id;
         this.patientUsername = patientUsername;
         this.diagnosis = diagnosis;
         this.treatment = treatment;
     }
     
     // Getters
+    public long getId() { return id; }
     public String getPatientUsername() { return patientUsername; }
     public String getDiagnosis() { return diagnosis; }
     public String getTreatment() { return treatment; }
@@ -0,0 +1,354 @@
+import java.lang.management.ManagementFactory;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Metrics class holding per-operation latency histograms and database counters
+ * Every DatabaseManager call is timed into the Histogram of its Operation; rows read
+ * and written, rollbacks and SQLITE_BUSY retries are counted alongside. Recording is
+ * a nanoTime call plus atomic increments and never allocates. Calls slower than the
+ * slow threshold are also kept in a small ring of recent slow operations.
+ */
+public class Metrics implements MetricsMXBean {
+    public static final String OBJECT_NAME = "healthcare:type=DatabaseMetrics";
+    public static final long DEFAULT_SLOW_THRESHOLD_MILLIS = 100;
+    private static final int SLOW_RING_SIZE = 64;
+
+    /**
+     * Instrumented DatabaseManager calls
+     */
+    public enum Operation {
+        ADD_USER("addUser"),
+        VALIDATE_USER("validateUser"),
+        ADD_APPOINTMENT("addAppointment"),
+        GET_ALL_APPOINTMENTS("getAllAppointments"),
+        GET_APPOINTMENTS_FOR_PATIENT("getAppointmentsForPatient"),
+        GET_APPOINTMENTS_FOR_DOCTOR("getAppointmentsForDoctor"),
+        ADD_MEDICAL_RECORD("addMedicalRecord"),
+        GET_ALL_MEDICAL_RECORDS("getAllMedicalRecords"),
+        GET_MEDICAL_RECORDS_FOR_PATIENT("getMedicalRecordsForPatient"),
+        SEARCH_MEDICAL_RECORDS("searchMedicalRecords"),
+        ADD_PRESCRIPTION("addPrescription"),
+        INSERT_PRESCRIPTION("insertPrescription"),
+        GET_ALL_PRESCRIPTIONS("getAllPrescriptions"),
+        GET_PRESCRIPTIONS_FOR_PATIENT("getPrescriptionsForPatient"),
+        GET_PATIENT_VIEW("getPatientView"),
+        STREAM_APPOINTMENTS("streamAppointments"),
+        STREAM_MEDICAL_RECORDS("streamMedicalRecords"),
+        STREAM_PRESCRIPTIONS("streamPrescriptions"),
+        STREAM_PRESCRIPTION_USAGE("streamPrescriptionUsage"),
+        GET_MAX_ID("getMaxId"),
+        LOAD_APPOINTMENTS("loadAppointments"),
+        LOAD_MEDICAL_RECORDS("loadMedicalRecords"),
+        LOAD_PRESCRIPTIONS("loadPrescriptions"),
+        ADD_APPOINTMENTS("addAppointments"),
+        ADD_MEDICAL_RECORDS("addMedicalRecords"),
+        ADD_PRESCRIPTIONS("addPrescriptions"),
+        INSERT_PRESCRIPTIONS("insertPrescriptions"),
+        ADD_MEDICINE("addMedicine"),
+        RESTOCK_MEDICINE("restockMedicine"),
+        GET_INVENTORY_CHECKPOINT("getInventoryCheckpoint"),
+        APPLY_INVENTORY_DELTAS("applyInventoryDeltas"),
+        GET_MEDICINE_INVENTORY("getMedicineInventory"),
+        SNAPSHOT("snapshot"),
+        READ_HOT_STATE("readHotState"),
+        ARCHIVE("archive");
+
+        private final String method;
+
+        Operation(String method) {
+            this.method = method;
+        }
+
+        public String getMethod() {
+            return method;
+        }
+    }
+
+    private static final Operation[] OPERATIONS = Operation.values();
+
+    private volatile boolean enabled = true;
+    private volatile long slowThresholdNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_SLOW_THRESHOLD_MILLIS);
+    private final Histogram[] latencyNanos = new Histogram[OPERATIONS.length];
+    private final LongAdder[] errors = new LongAdder[OPERATIONS.length];
+    private final Throwable[] lastErrors = new Throwable[OPERATIONS.length];
+    private final LongAdder rowsRead = new LongAdder();
+    private final LongAdder rowsWritten = new LongAdder();
+    private final LongAdder rollbacks = new LongAdder();
+    private final LongAdder busyRetries = new LongAdder();
+    private final LongAdder busyWaitNanos = new LongAdder();
+
+    // Slow-operation ring; slots are overwritten oldest first and read best-effort
+    private final AtomicLong slowCount = new AtomicLong();
+    private final int[] slowOperation = new int[SLOW_RING_SIZE];
+    private final long[] slowNanos = new long[SLOW_RING_SIZE];
+    private final long[] slowAtMillis = new long[SLOW_RING_SIZE];
+    private final boolean[] slowFailed = new boolean[SLOW_RING_SIZE];
+
+    private ObjectName registeredName;
+
+    public Metrics() {
+        for (int i = 0; i < OPERATIONS.length; i++) {
+            latencyNanos[i] = new Histogram();
+            errors[i] = new LongAdder();
+        }
+    }
+
+    // Recording
+
+    /**
+     * Start time for record(); 0 while recording is disabled
+     */
+    public long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    public void record(Operation operation, long startNanos) {
+        record(operation, startNanos, null);
+    }
+
+    /**
+     * Records one call of the operation that began at startNanos
+     * @param error the failure, or null if the call succeeded
+     */
+    public void record(Operation operation, long startNanos, Throwable error) {
+        if (startNanos == 0) {
+            return;
+        }
+        long elapsed = System.nanoTime() - startNanos;
+        int index = operation.ordinal();
+        latencyNanos[index].record(elapsed);
+        if (error != null) {
+            errors[index].increment();
+            lastErrors[index] = error;
+        }
+        if (elapsed >= slowThresholdNanos) {
+            int slot = (int) (slowCount.getAndIncrement() % SLOW_RING_SIZE);
+            slowOperation[slot] = index;
+            slowNanos[slot] = elapsed;
+            slowAtMillis[slot] = System.currentTimeMillis();
+            slowFailed[slot] = error != null;
+        }
+    }
+
+    public void addRowsRead(long rows) {
+        rowsRead.add(rows);
+    }
+
+    public void addRowsWritten(long rows) {
+        rowsWritten.add(rows);
+    }
+
+    public void recordRollback() {
+        rollbacks.increment();
+    }
+
+    public void recordBusyRetry(long waitedNanos) {
+        busyRetries.increment();
+        busyWaitNanos.add(waitedNanos);
+    }
+
+    // Reading
+
+    public Histogram getLatencyNanos(Operation operation) {
+        return latencyNanos[operation.ordinal()];
+    }
+
+    public long getErrors(Operation operation) {
+        return errors[operation.ordinal()].sum();
+    }
+
+    @Override
+    public long getRowsRead() { return rowsRead.sum(); }
+    @Override
+    public long getRowsWritten() { return rowsWritten.sum(); }
+    @Override
+    public long getRollbacks() { return rollbacks.sum(); }
+    @Override
+    public long getBusyRetries() { return busyRetries.sum(); }
+    @Override
+    public double getBusyWaitMillis() { return busyWaitNanos.sum() / 1e6; }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Turns timing on or off; counters keep counting either way
+     */
+    @Override
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @Override
+    public long getSlowThresholdMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(slowThresholdNanos);
+    }
+
+    @Override
+    public void setSlowThresholdMillis(long slowThresholdMillis) {
+        this.slowThresholdNanos = TimeUnit.MILLISECONDS.toNanos(slowThresholdMillis);
+    }
+
+    /**
+     * Stats of every operation called at least once
+     */
+    @Override
+    public List<OperationStats> getOperations() {
+        List<OperationStats> stats = new ArrayList<>();
+        for (Operation operation : OPERATIONS) {
+            Histogram histogram = latencyNanos[operation.ordinal()];
+            if (histogram.getCount() > 0) {
+                Throwable lastError = lastErrors[operation.ordinal()];
+                stats.add(new OperationStats(operation.getMethod(), histogram, getErrors(operation),
+                    lastError == null ? null : String.valueOf(lastError.getMessage())));
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * Most recent slow operations, newest first
+     */
+    @Override
+    public List<String> getSlowOperations() {
+        List<String> slow = new ArrayList<>();
+        long count = slowCount.get();
+        for (long i = count - 1; i >= Math.max(0, count - SLOW_RING_SIZE); i--) {
+            int slot = (int) (i % SLOW_RING_SIZE);
+            slow.add(String.format(Locale.ROOT, "%s %s %.3f ms%s",
+                Instant.ofEpochMilli(slowAtMillis[slot]), OPERATIONS[slowOperation[slot]].getMethod(),
+                slowNanos[slot] / 1e6, slowFailed[slot] ? " (failed)" : ""));
+        }
+        return slow;
+    }
+
+    /**
+     * Plain-text report of every operation's latency and the counters
+     */
+    @Override
+    public String dump() {
+        StringBuilder out = new StringBuilder();
+        out.append(String.format(Locale.ROOT, "%-28s %9s %7s %10s %10s %10s %10s %10s%n",
+            "operation", "calls", "errors", "mean ms", "p50 ms", "p99 ms", "p99.9 ms", "max ms"));
+        for (OperationStats stats : getOperations()) {
+            out.append(String.format(Locale.ROOT, "%-28s %9d %7d %10.3f %10.3f %10.3f %10.3f %10.3f%n",
+                stats.getName(), stats.getCalls(), stats.getErrors(), stats.getMeanMillis(),
+                stats.getP50Millis(), stats.getP99Millis(), stats.getP999Millis(), stats.getMaxMillis()));
+        }
+        out.append(String.format(Locale.ROOT,
+            "rows read=%d, rows written=%d, rollbacks=%d, busy retries=%d (waited %.1f ms)%n",
+            getRowsRead(), getRowsWritten(), getRollbacks(), getBusyRetries(), getBusyWaitMillis()));
+        for (OperationStats stats : getOperations()) {
+            if (stats.getLastError() != null) {
+                out.append("last error in ").append(stats.getName()).append(": ")
+                    .append(stats.getLastError()).append(System.lineSeparator());
+            }
+        }
+        List<String> slow = getSlowOperations();
+        if (!slow.isEmpty()) {
+            out.append("slow operations (>= ").append(getSlowThresholdMillis()).append(" ms):")
+                .append(System.lineSeparator());
+            for (String line : slow) {
+                out.append("  ").append(line).append(System.lineSeparator());
+            }
+        }
+        return out.toString();
+    }
+
+    @Override
+    public void reset() {
+        for (int i = 0; i < OPERATIONS.length; i++) {
+            latencyNanos[i].reset();
+            errors[i].reset();
+            lastErrors[i] = null;
+        }
+        rowsRead.reset();
+        rowsWritten.reset();
+        rollbacks.reset();
+        busyRetries.reset();
+        busyWaitNanos.reset();
+        slowCount.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return dump();
+    }
+
+    // JMX
+
+    /**
+     * Registers this registry with the platform MBean server, replacing any earlier
+     * registration under the same name
+     */
+    public synchronized void register(String objectName) throws JMException {
+        unregister();
+        ObjectName name = new ObjectName(objectName);
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        if (server.isRegistered(name)) {
+            server.unregisterMBean(name);
+        }
+        server.registerMBean(this, name);
+        registeredName = name;
+    }
+
+    public synchronized void unregister() {
+        if (registeredName == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(registeredName);
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+        registeredName = null;
+    }
+
+    /**
+     * Point-in-time latency summary of one operation, in milliseconds
+     */
+    public static final class OperationStats {
+        private final String name;
+        private final long calls;
+        private final long errors;
+        private final double meanMillis;
+        private final double p50Millis;
+        private final double p99Millis;
+        private final double p999Millis;
+        private final double maxMillis;
+        private final String lastError;
+
+        OperationStats(String name, Histogram latencyNanos, long errors, String lastError) {
+            this.name = name;
+            this.calls = latencyNanos.getCount();
+            this.errors = errors;
+            this.meanMillis = latencyNanos.getMean() / 1e6;
+            this.p50Millis = latencyNanos.getPercentile(50) / 1e6;
+            this.p99Millis = latencyNanos.getPercentile(99) / 1e6;
+            this.p999Millis = latencyNanos.getPercentile(99.9) / 1e6;
+            this.maxMillis = latencyNanos.getMax() / 1e6;
+            this.lastError = lastError;
+        }
+
+        public String getName() { return name; }
+        public long getCalls() { return calls; }
+        public long getErrors() { return errors; }
+        public double getMeanMillis() { return meanMillis; }
+        public double getP50Millis() { return p50Millis; }
+        public double getP99Millis() { return p99Millis; }
+        public double getP999Millis() { return p999Millis; }
+        public double getMaxMillis() { return maxMillis; }
+        public String getLastError() { return lastError; }
+    }
+}
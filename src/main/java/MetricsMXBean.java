@@ -0,0 +1,33 @@
+import java.util.List;
+
+/**
+ * JMX view of the database metrics (see Metrics)
+ * Registered by DatabaseManager as healthcare:type=DatabaseMetrics.
+ */
+public interface MetricsMXBean {
+    long getRowsRead();
+
+    long getRowsWritten();
+
+    long getRollbacks();
+
+    long getBusyRetries();
+
+    double getBusyWaitMillis();
+
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    long getSlowThresholdMillis();
+
+    void setSlowThresholdMillis(long slowThresholdMillis);
+
+    List<Metrics.OperationStats> getOperations();
+
+    List<String> getSlowOperations();
+
+    String dump();
+
+    void reset();
+}
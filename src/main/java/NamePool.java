@@ -0,0 +1,67 @@
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Name Pool class interning repeated names (usernames, doctors, medicines)
+ * Each distinct name is stored once and gets a dense int id, so bulk-loaded rows can
+ * share one String instance or hold just the id. Lookups of known names are lock-free;
+ * only the first sighting of a name takes the lock. Ids are never reused. null maps to
+ * NONE and back.
+ */
+public class NamePool {
+    public static final int NONE = -1;
+
+    private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+    private volatile String[] names = new String[64];
+    private int size;
+
+    /**
+     * Id of the name, registering it on first use
+     */
+    public int id(String name) {
+        if (name == null) {
+            return NONE;
+        }
+        Integer id = ids.get(name);
+        return id != null ? id : register(name);
+    }
+
+    /**
+     * Id of a name already in the pool, or NONE
+     */
+    public int find(String name) {
+        Integer id = name == null ? null : ids.get(name);
+        return id == null ? NONE : id;
+    }
+
+    public String name(int id) {
+        return id == NONE ? null : names[id];
+    }
+
+    /**
+     * The pooled instance equal to the name
+     */
+    public String intern(String name) {
+        return name(id(name));
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    private synchronized int register(String name) {
+        Integer id = ids.get(name);
+        if (id != null) {
+            return id;
+        }
+        String[] current = names;
+        if (size == current.length) {
+            current = Arrays.copyOf(current, size * 2);
+        }
+        current[size] = name;
+        // Publish the array before the id, so a reader that sees the id sees the name
+        names = current;
+        ids.put(name, size);
+        return size++;
+    }
+}
@@ -0,0 +1,30 @@
+import java.util.List;
+
+/**
+ * Patient View class following Single Responsibility Principle
+ * Read-only snapshot of one patient's appointments, records and prescriptions
+ */
+public class PatientView {
+    private final String patientUsername;
+    private final List<Appointment> appointments;
+    private final List<MedicalRecord> medicalRecords;
+    private final List<Prescription> prescriptions;
+
+    public PatientView(String patientUsername, List<Appointment> appointments,
+                       List<MedicalRecord> medicalRecords, List<Prescription> prescriptions) {
+        this.patientUsername = patientUsername;
+        this.appointments = List.copyOf(appointments);
+        this.medicalRecords = List.copyOf(medicalRecords);
+        this.prescriptions = List.copyOf(prescriptions);
+    }
+
+    public static PatientView empty(String patientUsername) {
+        return new PatientView(patientUsername, List.of(), List.of(), List.of());
+    }
+
+    // Getters
+    public String getPatientUsername() { return patientUsername; }
+    public List<Appointment> getAppointments() { return appointments; }
+    public List<MedicalRecord> getMedicalRecords() { return medicalRecords; }
+    public List<Prescription> getPrescriptions() { return prescriptions; }
+}
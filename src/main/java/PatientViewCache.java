@@ -0,0 +1,237 @@
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Patient View Cache class serving patient dashboards read-through
+ * Bounded LRU with a time-to-live, keyed by username. Concurrent misses for the same
+ * patient share one load, and a load that overlaps an invalidation is handed to its
+ * callers but never cached, so a write is always visible to the next read.
+ */
+public class PatientViewCache {
+    public static final int DEFAULT_MAX_ENTRIES = 1_000;
+    public static final long DEFAULT_TTL_MILLIS = 60 * 1000;
+
+    /**
+     * Loads a patient's view on a miss
+     */
+    @FunctionalInterface
+    public interface Loader {
+        PatientView load(String patientUsername) throws SQLException;
+    }
+
+    private final Loader loader;
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final LinkedHashMap<String, Entry> entries;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+    private final LongAdder loadFailures = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder loadNanos = new LongAdder();
+    private final AtomicLong maxLoadNanos = new AtomicLong();
+
+    public PatientViewCache(Loader loader) {
+        this(loader, DEFAULT_MAX_ENTRIES, DEFAULT_TTL_MILLIS);
+    }
+
+    public PatientViewCache(Loader loader, int maxEntries, long ttlMillis) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("maxEntries must be at least 1");
+        }
+        this.loader = loader;
+        this.maxEntries = maxEntries;
+        this.ttlNanos = ttlMillis * 1_000_000;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() <= PatientViewCache.this.maxEntries) {
+                    return false;
+                }
+                evictions.increment();
+                return true;
+            }
+        };
+    }
+
+    /**
+     * The cached view, loading it on a miss
+     */
+    public PatientView get(String patientUsername) throws SQLException {
+        Entry entry;
+        boolean owner = false;
+        synchronized (entries) {
+            entry = entries.get(patientUsername);
+            if (entry != null && entry.isExpired(System.nanoTime(), ttlNanos)) {
+                entries.remove(patientUsername);
+                expirations.increment();
+                entry = null;
+            }
+            if (entry == null) {
+                entry = new Entry();
+                entries.put(patientUsername, entry);
+                owner = true;
+            }
+        }
+        if (owner) {
+            misses.increment();
+            return load(patientUsername, entry);
+        }
+        hits.increment();
+        try {
+            return entry.view.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof SQLException) {
+                throw (SQLException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private PatientView load(String patientUsername, Entry entry) throws SQLException {
+        long start = System.nanoTime();
+        PatientView view;
+        try {
+            view = loader.load(patientUsername);
+        } catch (SQLException | RuntimeException e) {
+            loadFailures.increment();
+            synchronized (entries) {
+                entries.remove(patientUsername, entry);
+            }
+            entry.view.completeExceptionally(e);
+            throw e;
+        }
+        long elapsed = System.nanoTime() - start;
+        loads.increment();
+        loadNanos.add(elapsed);
+        maxLoadNanos.accumulateAndGet(elapsed, Math::max);
+        entry.loadedAt = System.nanoTime();
+        entry.view.complete(view);
+        return view;
+    }
+
+    /**
+     * Drops the patient's entry; call after the write has committed
+     */
+    public void invalidate(String patientUsername) {
+        synchronized (entries) {
+            if (entries.remove(patientUsername) != null) {
+                invalidations.increment();
+            }
+        }
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    /**
+     * Drops expired entries; lookups also expire lazily
+     */
+    public void purgeExpired() {
+        long now = System.nanoTime();
+        synchronized (entries) {
+            Iterator<Entry> it = entries.values().iterator();
+            while (it.hasNext()) {
+                if (it.next().isExpired(now, ttlNanos)) {
+                    it.remove();
+                    expirations.increment();
+                }
+            }
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public Stats getStats() {
+        return new Stats(hits.sum(), misses.sum(), evictions.sum(), expirations.sum(),
+            invalidations.sum(), loads.sum(), loadFailures.sum(), loadNanos.sum(), maxLoadNanos.get(), size());
+    }
+
+    private static final class Entry {
+        private final CompletableFuture<PatientView> view = new CompletableFuture<>();
+        // Zero while the load is still running; loading entries never expire
+        private volatile long loadedAt;
+
+        boolean isExpired(long now, long ttlNanos) {
+            long loaded = loadedAt;
+            return loaded != 0 && now - loaded > ttlNanos;
+        }
+    }
+
+    /**
+     * Point-in-time snapshot of the cache counters
+     */
+    public static final class Stats {
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+        private final long expirations;
+        private final long invalidations;
+        private final long loads;
+        private final long loadFailures;
+        private final long loadNanos;
+        private final long maxLoadNanos;
+        private final int size;
+
+        Stats(long hits, long misses, long evictions, long expirations, long invalidations,
+              long loads, long loadFailures, long loadNanos, long maxLoadNanos, int size) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.expirations = expirations;
+            this.invalidations = invalidations;
+            this.loads = loads;
+            this.loadFailures = loadFailures;
+            this.loadNanos = loadNanos;
+            this.maxLoadNanos = maxLoadNanos;
+            this.size = size;
+        }
+
+        public long getHits() { return hits; }
+        public long getMisses() { return misses; }
+        public long getEvictions() { return evictions; }
+        public long getExpirations() { return expirations; }
+        public long getInvalidations() { return invalidations; }
+        public long getLoads() { return loads; }
+        public long getLoadFailures() { return loadFailures; }
+        public int getSize() { return size; }
+
+        public double getHitRatio() {
+            long lookups = hits + misses;
+            return lookups == 0 ? 0 : (double) hits / lookups;
+        }
+
+        public double getAverageLoadMillis() {
+            return loads == 0 ? 0 : loadNanos / 1e6 / loads;
+        }
+
+        public double getMaxLoadMillis() {
+            return maxLoadNanos / 1e6;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(
+                "size=%d, hits=%d misses=%d (hit ratio %.1f%%), evictions=%d, expirations=%d, "
+                    + "invalidations=%d, loads=%d (avg %.3f ms, max %.3f ms), load failures=%d",
+                size, hits, misses, getHitRatio() * 100, evictions, expirations,
+                invalidations, loads, getAverageLoadMillis(), getMaxLoadMillis(), loadFailures);
+        }
+    }
+}
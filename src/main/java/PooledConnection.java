@@ -0,0 +1,65 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Pooled Connection class wrapping a leased connection and its statement cache
+ * With caching disabled, statements prepared during a lease are closed when it ends.
+ */
+public class PooledConnection {
+    private final Connection connection;
+    private final StatementCache cache;
+    private final List<PreparedStatement> leaseStatements = new ArrayList<>();
+    
+    PooledConnection(Connection connection, int statementCacheSize) {
+        this.connection = connection;
+        this.cache = statementCacheSize > 0 ? new StatementCache(connection, statementCacheSize) : null;
+    }
+    
+    /**
+     * Prepared statement for this SQL, owned by the pool: do not close it
+     */
+    public PreparedStatement prepare(String sql) throws SQLException {
+        if (cache != null) {
+            return cache.prepare(sql);
+        }
+        PreparedStatement ps = connection.prepareStatement(sql);
+        leaseStatements.add(ps);
+        return ps;
+    }
+    
+    public Connection getConnection() {
+        return connection;
+    }
+    
+    StatementCache getStatementCache() {
+        return cache;
+    }
+    
+    void release() {
+        for (PreparedStatement ps : leaseStatements) {
+            try {
+                ps.close();
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        }
+        leaseStatements.clear();
+    }
+    
+    void close() {
+        release();
+        if (cache != null) {
+            cache.close();
+        }
+        try {
+            if (!connection.isClosed()) {
+                connection.close();
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+}
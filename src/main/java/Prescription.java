@@ -2,17 +2,24 @@
  * Prescription class following Single Responsibility Principle
  */
 public class Prescription {
-    private String patientUsername;
-    private String medicine;
-    private int quantity;
+    private final long id;
+    private final String patientUsername;
+    private final String medicine;
+    private final int quantity;
     
     public Prescription(String patientUsername, String medicine, int quantity) {
+        this(0, patientUsername, medicine, quantity);
+    }
+    
+    public Prescription(long id, String patientUsername, String medicine, int quantity) {
+        this.id = id;
         this.patientUsername = patientUsername;
         this.medicine = medicine;
         this.quantity = quantity;
     }
     
    
+    public long getId() { return id; }
     public String getPatientUsername() { return patientUsername; }
     public String getMedicine() { return medicine; }
     public int getQuantity() { return quantity; }
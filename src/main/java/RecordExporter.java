@@ -0,0 +1,191 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+
+/**
+ * Record Exporter class for regulatory exports
+ * Streams medical records and prescriptions straight from the database cursor into a
+ * FileChannel as CSV or NDJSON, reusing one line builder and one direct buffer,
+ * so memory use does not grow with the table size.
+ */
+public class RecordExporter {
+    /**
+     * Output format of an export
+     */
+    public enum Format { CSV, NDJSON }
+    
+    private static final int BUFFER_SIZE = 256 * 1024;
+    
+    private final DatabaseManager dbManager;
+    private final int fetchSize;
+    
+    public RecordExporter(DatabaseManager dbManager) {
+        this(dbManager, DatabaseManager.DEFAULT_FETCH_SIZE);
+    }
+    
+    public RecordExporter(DatabaseManager dbManager, int fetchSize) {
+        this.dbManager = dbManager;
+        this.fetchSize = fetchSize;
+    }
+    
+    /**
+     * Writes every medical record to the file and returns the number of rows written
+     */
+    public long exportMedicalRecords(Path file, Format format) throws IOException, SQLException {
+        try (Writer writer = new Writer(file)) {
+            if (format == Format.CSV) {
+                writer.line().append("id,patient_username,diagnosis,treatment");
+                writer.endLine();
+            }
+            return dbManager.streamMedicalRecords(fetchSize, record -> {
+                StringBuilder line = writer.line();
+                if (format == Format.CSV) {
+                    line.append(record.getId()).append(',');
+                    csv(line, record.getPatientUsername()).append(',');
+                    csv(line, record.getDiagnosis()).append(',');
+                    csv(line, record.getTreatment());
+                } else {
+                    line.append("{\"id\":").append(record.getId());
+                    json(line.append(",\"patient_username\":"), record.getPatientUsername());
+                    json(line.append(",\"diagnosis\":"), record.getDiagnosis());
+                    json(line.append(",\"treatment\":"), record.getTreatment());
+                    line.append('}');
+                }
+                writer.endLine();
+            });
+        }
+    }
+    
+    /**
+     * Writes every prescription to the file and returns the number of rows written
+     */
+    public long exportPrescriptions(Path file, Format format) throws IOException, SQLException {
+        try (Writer writer = new Writer(file)) {
+            if (format == Format.CSV) {
+                writer.line().append("id,patient_username,medicine,quantity");
+                writer.endLine();
+            }
+            return dbManager.streamPrescriptions(fetchSize, prescription -> {
+                StringBuilder line = writer.line();
+                if (format == Format.CSV) {
+                    line.append(prescription.getId()).append(',');
+                    csv(line, prescription.getPatientUsername()).append(',');
+                    csv(line, prescription.getMedicine()).append(',');
+                    line.append(prescription.getQuantity());
+                } else {
+                    line.append("{\"id\":").append(prescription.getId());
+                    json(line.append(",\"patient_username\":"), prescription.getPatientUsername());
+                    json(line.append(",\"medicine\":"), prescription.getMedicine());
+                    line.append(",\"quantity\":").append(prescription.getQuantity()).append('}');
+                }
+                writer.endLine();
+            });
+        }
+    }
+    
+    static StringBuilder csv(StringBuilder line, String value) {
+        if (value == null) {
+            return line;
+        }
+        boolean quote = value.indexOf(',') >= 0 || value.indexOf('"') >= 0
+            || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0;
+        if (!quote) {
+            return line.append(value);
+        }
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                line.append('"');
+            }
+            line.append(c);
+        }
+        return line.append('"');
+    }
+    
+    static StringBuilder json(StringBuilder line, String value) {
+        if (value == null) {
+            return line.append("null");
+        }
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> line.append("\\\"");
+                case '\\' -> line.append("\\\\");
+                case '\n' -> line.append("\\n");
+                case '\r' -> line.append("\\r");
+                case '\t' -> line.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        line.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        line.append(c);
+                    }
+                }
+            }
+        }
+        return line.append('"');
+    }
+    
+    /**
+     * Encodes lines into a reusable direct buffer and drains it to the channel when full
+     */
+    private static final class Writer implements AutoCloseable {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+        private final StringBuilder line = new StringBuilder(256);
+        
+        Writer(Path file) throws IOException {
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        }
+        
+        StringBuilder line() {
+            line.setLength(0);
+            return line;
+        }
+        
+        void endLine() throws IOException {
+            line.append('\n');
+            CharBuffer chars = CharBuffer.wrap(line);
+            encoder.reset();
+            while (true) {
+                CoderResult result = encoder.encode(chars, buffer, true);
+                if (result.isOverflow()) {
+                    drain();
+                } else if (result.isError()) {
+                    result.throwException();
+                } else {
+                    break;
+                }
+            }
+        }
+        
+        private void drain() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+        
+        @Override
+        public void close() throws IOException {
+            try {
+                drain();
+                channel.force(false);
+            } finally {
+                channel.close();
+            }
+        }
+    }
+}
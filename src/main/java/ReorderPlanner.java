@@ -0,0 +1,146 @@
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Reorder Planner class turning low-stock events into reorders
+ * Consumes an InventoryEvents subscription through its bounded RingBuffer on a daemon
+ * thread. A LOW_STOCK or NEGATIVE_STOCK event opens one reorder per medicine for the
+ * units needed to get back to the medicine's par level; a later event for the same
+ * medicine only ever raises that quantity. A RESTOCKED event closes the reorder.
+ */
+public class ReorderPlanner implements AutoCloseable {
+    public static final int DEFAULT_QUEUE_CAPACITY = 1_024;
+    /** Without an explicit par level, a medicine is reordered up to this multiple of its threshold */
+    public static final int DEFAULT_PAR_MULTIPLE = 3;
+    private static final long IDLE_PARK_NANOS = 1_000_000;
+    private static final int DRAIN_BATCH = 256;
+
+    private final InventoryEvents events;
+    private final RingBuffer<InventoryEvent> queue;
+    private final ConcurrentHashMap<String, Integer> parLevels = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Reorder> openReorders = new ConcurrentHashMap<>();
+    private final Thread worker;
+    private volatile boolean running = true;
+
+    public ReorderPlanner(InventoryEvents events) {
+        this(events, DEFAULT_QUEUE_CAPACITY, true);
+    }
+
+    /**
+     * @param start false leaves consuming to explicit drain() calls
+     */
+    public ReorderPlanner(InventoryEvents events, int queueCapacity, boolean start) {
+        this.events = events;
+        this.queue = events.subscribe(queueCapacity);
+        if (start) {
+            worker = new Thread(this::run, "reorder-planner");
+            worker.setDaemon(true);
+            worker.start();
+        } else {
+            worker = null;
+        }
+    }
+
+    private void run() {
+        while (running) {
+            if (drain() == 0) {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+        }
+    }
+
+    /**
+     * Handles the queued events and returns how many there were. Only one thread may
+     * drain at a time: the worker, or the caller when the planner was not started.
+     */
+    public int drain() {
+        int handled = 0;
+        int batch;
+        do {
+            batch = queue.drain(this::handle, DRAIN_BATCH);
+            handled += batch;
+        } while (batch == DRAIN_BATCH);
+        return handled;
+    }
+
+    private void handle(InventoryEvent event) {
+        String medicine = event.getMedicine();
+        switch (event.getType()) {
+            case LOW_STOCK, NEGATIVE_STOCK -> {
+                int quantity = getParLevel(medicine) - event.getQuantity();
+                openReorders.merge(medicine, new Reorder(medicine, quantity, event),
+                    (open, latest) -> latest.quantity > open.quantity ? latest : open);
+            }
+            case RESTOCKED -> openReorders.remove(medicine);
+        }
+    }
+
+    public void setParLevel(String medicine, int level) {
+        parLevels.put(medicine, level);
+    }
+
+    /**
+     * Level a reorder refills to; always above the threshold, so filling it raises RESTOCKED
+     */
+    public int getParLevel(String medicine) {
+        int threshold = events.getThreshold(medicine);
+        Integer par = parLevels.get(medicine);
+        int level = par != null ? par : threshold * DEFAULT_PAR_MULTIPLE;
+        return Math.max(level, threshold + 1);
+    }
+
+    /**
+     * Open reorders, oldest first
+     */
+    public List<Reorder> getOpenReorders() {
+        List<Reorder> reorders = new ArrayList<>(openReorders.values());
+        reorders.sort(Comparator.comparingLong(Reorder::getCreatedMillis));
+        return reorders;
+    }
+
+    public Reorder getOpenReorder(String medicine) {
+        return openReorders.get(medicine);
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        events.unsubscribe(queue);
+        if (worker != null) {
+            LockSupport.unpark(worker);
+            try {
+                worker.join(1_000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Units to order for one medicine and the event that triggered it
+     */
+    public static final class Reorder {
+        private final String medicine;
+        private final int quantity;
+        private final InventoryEvent trigger;
+
+        Reorder(String medicine, int quantity, InventoryEvent trigger) {
+            this.medicine = medicine;
+            this.quantity = quantity;
+            this.trigger = trigger;
+        }
+
+        public String getMedicine() { return medicine; }
+        public int getQuantity() { return quantity; }
+        public InventoryEvent getTrigger() { return trigger; }
+        public long getCreatedMillis() { return trigger.getTimestampMillis(); }
+
+        @Override
+        public String toString() {
+            return "reorder " + quantity + " x " + medicine + " (" + trigger + ")";
+        }
+    }
+}
@@ -0,0 +1,350 @@
+import java.io.IOException;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Schedule Engine class keeping every doctor's booked slots in memory
+ * A day is a bitmap of fixed-length slots held in an AtomicLong, so a reservation is a
+ * single compare-and-set and two concurrent bookings can never take the same slot.
+ * Fully booked days are kept as merged runs per doctor, which lets the next free slot
+ * be found with a couple of O(log n) lookups instead of scanning appointments.
+ */
+public class ScheduleEngine {
+    public static final int DEFAULT_SLOTS_PER_DAY = 16;
+    public static final LocalTime DEFAULT_DAY_START = LocalTime.of(9, 0);
+    public static final int DEFAULT_SLOT_MINUTES = 30;
+
+    private final int slotsPerDay;
+    private final long fullMask;
+    private final LocalTime dayStart;
+    private final int slotMinutes;
+    private final ConcurrentHashMap<String, DoctorSchedule> doctors = new ConcurrentHashMap<>();
+
+    public ScheduleEngine() {
+        this(DEFAULT_SLOTS_PER_DAY, DEFAULT_DAY_START, DEFAULT_SLOT_MINUTES);
+    }
+
+    public ScheduleEngine(int slotsPerDay, LocalTime dayStart, int slotMinutes) {
+        if (slotsPerDay < 1 || slotsPerDay > 64) {
+            throw new IllegalArgumentException("slotsPerDay must be between 1 and 64");
+        }
+        this.slotsPerDay = slotsPerDay;
+        this.fullMask = slotsPerDay == 64 ? -1L : (1L << slotsPerDay) - 1;
+        this.dayStart = dayStart;
+        this.slotMinutes = slotMinutes;
+    }
+
+    /**
+     * Builds the schedule from the appointments table. Legacy rows without a slot
+     * take the first free slot of their day.
+     */
+    public static ScheduleEngine rebuild(DatabaseManager dbManager) throws SQLException {
+        ScheduleEngine engine = new ScheduleEngine();
+        engine.load(dbManager);
+        return engine;
+    }
+
+    public void load(DatabaseManager dbManager) throws SQLException {
+        try {
+            dbManager.streamAppointments(appointment -> {
+                if (appointment.getDate() != null) {
+                    place(appointment.getDoctorName(), LocalDate.parse(appointment.getDate()), appointment.getSlot());
+                }
+            });
+        } catch (IOException e) {
+            throw new SQLException("Could not load the schedule", e);
+        }
+    }
+
+    /**
+     * Loads the appointments with fromId <= id <= toId whose day lies in [fromDay, toDay).
+     * Loading disjoint parts in id order per day gives the same slots as load().
+     */
+    public void load(DatabaseManager dbManager, long fromId, long toId, LocalDate fromDay, LocalDate toDay)
+            throws SQLException {
+        try {
+            dbManager.streamAppointments(fromId, toId, appointment -> {
+                if (appointment.getDate() == null) {
+                    return;
+                }
+                LocalDate day = LocalDate.parse(appointment.getDate());
+                if (!day.isBefore(fromDay) && day.isBefore(toDay)) {
+                    place(appointment.getDoctorName(), day, appointment.getSlot());
+                }
+            });
+        } catch (IOException e) {
+            throw new SQLException("Could not load the schedule", e);
+        }
+    }
+
+    /**
+     * Takes the slot of an existing appointment; legacy rows without a slot take the
+     * first free slot of their day
+     */
+    public void place(String doctor, LocalDate day, int slot) {
+        if (doctor == null) {
+            return;
+        }
+        if (slot >= 0 && slot < slotsPerDay) {
+            reserve(doctor, day, slot);
+        } else {
+            reserveFirstFree(doctor, day);
+        }
+    }
+
+    /**
+     * Books every slot set in bits at once, e.g. a whole day restored from an image
+     */
+    public void reserveAll(String doctor, long epochDay, long bits) {
+        DoctorSchedule schedule = schedule(doctor);
+        AtomicLong day = schedule.day(epochDay);
+        long previous = day.getAndAccumulate(bits & fullMask, (current, add) -> current | add);
+        if (previous != fullMask && (previous | (bits & fullMask)) == fullMask) {
+            schedule.refresh(epochDay, day, fullMask);
+        }
+    }
+
+    /**
+     * Visits the booked slots of every doctor's days on or after from
+     */
+    public void forEachDay(LocalDate from, DayVisitor visitor) {
+        long fromDay = from.toEpochDay();
+        doctors.forEach((doctor, schedule) -> schedule.days.tailMap(fromDay).forEach((epochDay, bits) -> {
+            long booked = bits.get();
+            if (booked != 0) {
+                visitor.visit(doctor, epochDay, booked);
+            }
+        }));
+    }
+
+    @FunctionalInterface
+    public interface DayVisitor {
+        void visit(String doctor, long epochDay, long bits);
+    }
+
+    /**
+     * Takes one specific slot; false if it is already booked
+     */
+    public boolean reserve(String doctor, LocalDate day, int slot) {
+        checkSlot(slot);
+        DoctorSchedule schedule = schedule(doctor);
+        AtomicLong bits = schedule.day(day.toEpochDay());
+        long bit = 1L << slot;
+        while (true) {
+            long current = bits.get();
+            if ((current & bit) != 0) {
+                return false;
+            }
+            long updated = current | bit;
+            if (bits.compareAndSet(current, updated)) {
+                if (updated == fullMask) {
+                    schedule.refresh(day.toEpochDay(), bits, fullMask);
+                }
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Takes the earliest free slot of the day and returns its index, or -1 if the day is full
+     */
+    public int reserveFirstFree(String doctor, LocalDate day) {
+        DoctorSchedule schedule = schedule(doctor);
+        long epochDay = day.toEpochDay();
+        AtomicLong bits = schedule.day(epochDay);
+        while (true) {
+            long current = bits.get();
+            long free = ~current & fullMask;
+            if (free == 0) {
+                return -1;
+            }
+            int slot = Long.numberOfTrailingZeros(free);
+            long updated = current | (1L << slot);
+            if (bits.compareAndSet(current, updated)) {
+                if (updated == fullMask) {
+                    schedule.refresh(epochDay, bits, fullMask);
+                }
+                return slot;
+            }
+        }
+    }
+
+    /**
+     * Takes the earliest free slot on or after the given day
+     */
+    public Slot reserveNextFree(String doctor, LocalDate from) {
+        DoctorSchedule schedule = schedule(doctor);
+        long epochDay = from.toEpochDay();
+        while (true) {
+            epochDay = schedule.firstNotFull(epochDay);
+            LocalDate day = LocalDate.ofEpochDay(epochDay);
+            int slot = reserveFirstFree(doctor, day);
+            if (slot >= 0) {
+                return new Slot(day, slot, slotStart(slot));
+            }
+            // Lost the race for the last slot of that day; it is now marked full
+        }
+    }
+
+    /**
+     * Earliest free slot on or after the given day, without reserving it
+     */
+    public Slot findNextFree(String doctor, LocalDate from) {
+        DoctorSchedule schedule = doctors.get(doctor);
+        if (schedule == null) {
+            return new Slot(from, 0, slotStart(0));
+        }
+        long epochDay = from.toEpochDay();
+        while (true) {
+            epochDay = schedule.firstNotFull(epochDay);
+            AtomicLong bits = schedule.days.get(epochDay);
+            long free = ~(bits == null ? 0 : bits.get()) & fullMask;
+            if (free != 0) {
+                int slot = Long.numberOfTrailingZeros(free);
+                return new Slot(LocalDate.ofEpochDay(epochDay), slot, slotStart(slot));
+            }
+            epochDay++;
+        }
+    }
+
+    /**
+     * Frees a slot again, e.g. when the appointment insert failed
+     */
+    public void release(String doctor, LocalDate day, int slot) {
+        checkSlot(slot);
+        DoctorSchedule schedule = doctors.get(doctor);
+        if (schedule == null) {
+            return;
+        }
+        long epochDay = day.toEpochDay();
+        AtomicLong bits = schedule.days.get(epochDay);
+        if (bits == null) {
+            return;
+        }
+        long previous = bits.getAndUpdate(current -> current & ~(1L << slot));
+        if (previous == fullMask) {
+            schedule.refresh(epochDay, bits, fullMask);
+        }
+    }
+
+    public boolean isReserved(String doctor, LocalDate day, int slot) {
+        checkSlot(slot);
+        DoctorSchedule schedule = doctors.get(doctor);
+        AtomicLong bits = schedule == null ? null : schedule.days.get(day.toEpochDay());
+        return bits != null && (bits.get() & (1L << slot)) != 0;
+    }
+
+    public int getFreeSlots(String doctor, LocalDate day) {
+        DoctorSchedule schedule = doctors.get(doctor);
+        AtomicLong bits = schedule == null ? null : schedule.days.get(day.toEpochDay());
+        return slotsPerDay - (bits == null ? 0 : Long.bitCount(bits.get()));
+    }
+
+    public int getSlotsPerDay() {
+        return slotsPerDay;
+    }
+
+    public LocalTime slotStart(int slot) {
+        return dayStart.plusMinutes((long) slot * slotMinutes);
+    }
+
+    private DoctorSchedule schedule(String doctor) {
+        return doctors.computeIfAbsent(doctor, k -> new DoctorSchedule());
+    }
+
+    private void checkSlot(int slot) {
+        if (slot < 0 || slot >= slotsPerDay) {
+            throw new IllegalArgumentException("slot must be between 0 and " + (slotsPerDay - 1));
+        }
+    }
+
+    /**
+     * A bookable slot: the day, its index within the day and its start time
+     */
+    public static final class Slot {
+        private final LocalDate date;
+        private final int index;
+        private final LocalTime start;
+
+        Slot(LocalDate date, int index, LocalTime start) {
+            this.date = date;
+            this.index = index;
+            this.start = start;
+        }
+
+        public LocalDate getDate() { return date; }
+        public int getIndex() { return index; }
+        public LocalTime getStart() { return start; }
+
+        @Override
+        public String toString() {
+            return date + " " + start + " (slot " + index + ")";
+        }
+    }
+
+    /**
+     * Slot bitmaps per day for one doctor, plus the runs of fully booked days
+     */
+    private static final class DoctorSchedule {
+        private final ConcurrentSkipListMap<Long, AtomicLong> days = new ConcurrentSkipListMap<>();
+        // start day -> end day (inclusive) of consecutive fully booked days
+        private final TreeMap<Long, Long> fullRuns = new TreeMap<>();
+
+        AtomicLong day(long epochDay) {
+            return days.computeIfAbsent(epochDay, k -> new AtomicLong());
+        }
+
+        synchronized long firstNotFull(long epochDay) {
+            Map.Entry<Long, Long> run = fullRuns.floorEntry(epochDay);
+            return run != null && run.getValue() >= epochDay ? run.getValue() + 1 : epochDay;
+        }
+
+        /**
+         * Records the day as full or not as its bitmap is now. Called after every change
+         * that fills or frees a full day; a change racing with another one is corrected by
+         * whichever call comes last, as each reads the bitmap under the lock.
+         */
+        synchronized void refresh(long epochDay, AtomicLong bits, long fullMask) {
+            if (bits.get() == fullMask) {
+                markFull(epochDay);
+            } else {
+                markNotFull(epochDay);
+            }
+        }
+
+        private void markFull(long epochDay) {
+            long start = epochDay;
+            long end = epochDay;
+            Map.Entry<Long, Long> before = fullRuns.floorEntry(epochDay - 1);
+            if (before != null && before.getValue() >= epochDay - 1) {
+                start = before.getKey();
+                end = Math.max(end, before.getValue());
+            }
+            Long afterEnd = fullRuns.remove(epochDay + 1);
+            if (afterEnd != null) {
+                end = Math.max(end, afterEnd);
+            }
+            fullRuns.put(start, end);
+        }
+
+        private void markNotFull(long epochDay) {
+            Map.Entry<Long, Long> run = fullRuns.floorEntry(epochDay);
+            if (run == null || run.getValue() < epochDay) {
+                return;
+            }
+            fullRuns.remove(run.getKey());
+            if (run.getKey() < epochDay) {
+                fullRuns.put(run.getKey(), epochDay - 1);
+            }
+            if (run.getValue() > epochDay) {
+                fullRuns.put(epochDay + 1, run.getValue());
+            }
+        }
+    }
+}
@@ -0,0 +1,122 @@
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Schema Migrator class applying ordered, versioned migrations at startup
+ * Applied versions are recorded in the schema_version table; each pending
+ * migration runs in its own transaction together with its version row.
+ */
+public class SchemaMigrator {
+    /**
+     * Schema change applied by a migration
+     */
+    @FunctionalInterface
+    public interface Step {
+        void apply(Connection connection) throws SQLException;
+    }
+    
+    /**
+     * One versioned schema change
+     */
+    public static final class Migration {
+        private final int version;
+        private final String description;
+        private final Step step;
+        
+        Migration(int version, String description, Step step) {
+            this.version = version;
+            this.description = description;
+            this.step = step;
+        }
+        
+        public int getVersion() { return version; }
+        public String getDescription() { return description; }
+    }
+    
+    private final List<Migration> migrations = new ArrayList<>();
+    
+    /**
+     * Registers a migration; versions must be added in increasing order
+     */
+    public SchemaMigrator add(int version, String description, Step step) {
+        if (!migrations.isEmpty() && migrations.get(migrations.size() - 1).version >= version) {
+            throw new IllegalArgumentException("Migration versions must increase: " + version);
+        }
+        migrations.add(new Migration(version, description, step));
+        return this;
+    }
+    
+    /**
+     * Convenience for migrations that are plain SQL statements
+     */
+    public SchemaMigrator add(int version, String description, String... statements) {
+        return add(version, description, connection -> {
+            try (Statement stmt = connection.createStatement()) {
+                for (String sql : statements) {
+                    stmt.execute(sql);
+                }
+            }
+        });
+    }
+    
+    public List<Migration> getMigrations() {
+        return Collections.unmodifiableList(migrations);
+    }
+    
+    public int getLatestVersion() {
+        return migrations.isEmpty() ? 0 : migrations.get(migrations.size() - 1).version;
+    }
+    
+    /**
+     * Applies every migration newer than the database's version and returns how many ran
+     */
+    public int migrate(Connection connection) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("""
+                CREATE TABLE IF NOT EXISTS schema_version (
+                    version INTEGER PRIMARY KEY,
+                    description TEXT NOT NULL,
+                    applied_at INTEGER NOT NULL
+                )
+                """);
+        }
+        
+        int current = currentVersion(connection);
+        int applied = 0;
+        boolean autoCommit = connection.getAutoCommit();
+        for (Migration migration : migrations) {
+            if (migration.version <= current) {
+                continue;
+            }
+            connection.setAutoCommit(false);
+            try {
+                migration.step.apply(connection);
+                try (PreparedStatement ps = connection.prepareStatement(
+                        "INSERT INTO schema_version (version, description, applied_at) VALUES (?, ?, ?)")) {
+                    ps.setInt(1, migration.version);
+                    ps.setString(2, migration.description);
+                    ps.setLong(3, System.currentTimeMillis() / 1000);
+                    ps.executeUpdate();
+                }
+                connection.commit();
+                applied++;
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw new SQLException("Migration " + migration.version + " ("
+                    + migration.description + ") failed: " + e.getMessage(), e);
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        }
+        return applied;
+    }
+    
+    public static int currentVersion(Connection connection) throws SQLException {
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COALESCE(MAX(version), 0) FROM schema_version")) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+}
@@ -0,0 +1,275 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.YearMonth;
+import java.util.HashMap;
+import java.util.Map;
+import org.sqlite.Function;
+import org.sqlite.SQLiteConfig;
+
+/**
+ * Shard Rebalancer class changing the number of shards of a database
+ * An offline tool: nothing else may have the database open while it runs. Every shard
+ * hands the rows whose patient now hashes elsewhere to their new shard, one move per
+ * pair of shards. The files are switched to a rollback journal for the run, so a move
+ * commits on both files or on neither, and a run that dies part way can be started again.
+ * Moved appointments, medical records and prescriptions get new ids from their new
+ * shard's range; usernames are the key that stays stable across a rebalance.
+ *
+ * Archived months are rebalanced the same way: each shard's partition of a month hands
+ * its rows to the same month's partition of their new shard, so a patient's archived
+ * history always sits in the archive of the patient's shard. Archived rows keep their
+ * ids, and before anything moves every shard's id sequence is raised past the archived
+ * ids of its range, so a shard file that a shrink deleted and a grow made again never
+ * reuses one. A shrink deletes the emptied archive directories with their shard files.
+ *
+ * Usage: java ShardRebalancer <database> <shards>
+ */
+public final class ShardRebalancer {
+    private static final int BUSY_TIMEOUT_MILLIS = 5_000;
+    // Table, routing column and the columns copied; ids are given by the new shard
+    private static final String[][] TABLES = {
+        {"users", "username", "username, password, role"},
+        {"appointments", "patient_username", "patient_username, doctor_name, appointment_date, slot"},
+        {"medical_records", "patient_username", "patient_username, diagnosis, treatment, record_date"},
+        {"prescriptions", "patient_username", "patient_username, medicine, quantity, prescription_date"},
+    };
+
+    private ShardRebalancer() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 2) {
+            System.err.println("Usage: java ShardRebalancer <database> <shards>");
+            System.exit(2);
+        }
+        Path database = Path.of(args[0]);
+        int shards = Integer.parseInt(args[1]);
+        long moved = rebalance(database, shards);
+        System.out.println("Moved " + moved + " rows; " + database + " now has " + shards + " shards");
+    }
+
+    /**
+     * Spreads the database whose shard 0 is the given file over shards files and returns
+     * the number of rows moved
+     */
+    public static long rebalance(Path database, int shards) throws SQLException, IOException {
+        if (shards < 1) {
+            throw new IllegalArgumentException("shards must be at least 1");
+        }
+        int existing = Math.max(currentShardCount(database), shards);
+        // Shard files past the recorded count are left over from an interrupted shrink
+        while (Files.exists(StorageConfig.shardPath(database, existing))
+                || Files.isDirectory(archiveOf(database, existing))) {
+            existing++;
+        }
+        for (int i = 0; i < existing; i++) {
+            try (Connection connection = open(StorageConfig.shardPath(database, i))) {
+                DatabaseManager.initializeShard(connection, i);
+                setJournalMode(connection, "DELETE");
+            }
+        }
+
+        // Before any row moves and takes an id from its new shard
+        raiseSequences(database, existing, shards);
+        long moved = 0;
+        for (int source = 0; source < existing; source++) {
+            try (Connection connection = open(StorageConfig.shardPath(database, source))) {
+                registerShardOf(connection);
+                for (int target = 0; target < shards; target++) {
+                    if (target != source) {
+                        moved += move(connection, StorageConfig.shardPath(database, target), target, shards);
+                    }
+                }
+            }
+        }
+        for (int source = 0; source < existing; source++) {
+            moved += moveArchive(database, source, shards);
+        }
+
+        try (Connection connection = open(database);
+             PreparedStatement ps = connection.prepareStatement(
+                 "INSERT OR REPLACE INTO shard_map (id, shard_count) VALUES (1, ?)")) {
+            ps.setInt(1, shards);
+            ps.executeUpdate();
+        }
+        for (int i = 0; i < existing; i++) {
+            Path file = StorageConfig.shardPath(database, i);
+            if (i < shards) {
+                try (Connection connection = open(file)) {
+                    setJournalMode(connection, "WAL");
+                }
+            } else {
+                try (Connection connection = open(file)) {
+                    long rows = countRows(connection);
+                    if (rows > 0) {
+                        throw new IllegalStateException(file + " still has " + rows + " rows");
+                    }
+                }
+                Files.delete(file);
+                // Empty by now: every partition was handed on and deleted
+                Files.deleteIfExists(archiveOf(database, i));
+            }
+        }
+        return moved;
+    }
+
+    private static Path archiveOf(Path database, int shard) {
+        return ArchiveStore.directoryOf(StorageConfig.shardPath(database, shard));
+    }
+
+    /**
+     * Hands the archived rows of the source shard whose patient now hashes elsewhere to
+     * the same month's partition of their new shard; partitions left empty are deleted
+     */
+    private static long moveArchive(Path database, int source, int shards) throws SQLException, IOException {
+        ArchiveStore archive = new ArchiveStore(archiveOf(database, source));
+        long moved = 0;
+        for (YearMonth month : archive.getMonths()) {
+            Path file = archive.partition(month);
+            long left;
+            try (Connection connection = open(file)) {
+                registerShardOf(connection);
+                for (int target = 0; target < shards; target++) {
+                    String condition = "shard_of(patient_username, " + shards + ") = " + target;
+                    if (target != source && countArchivedRows(connection, condition) > 0) {
+                        moved += new ArchiveStore(archiveOf(database, target)).adopt(connection, month, condition);
+                    }
+                }
+                left = countArchivedRows(connection, "1");
+            }
+            if (left == 0) {
+                Files.delete(file);
+            }
+        }
+        return moved;
+    }
+
+    private static long countArchivedRows(Connection connection, String condition) throws SQLException {
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT (SELECT COUNT(*) FROM appointments WHERE " + condition
+                 + ") + (SELECT COUNT(*) FROM prescriptions WHERE " + condition + ")")) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+
+    /**
+     * Raises the id sequences of the first shards shards past the largest archived id of
+     * their range, wherever among the existing shards that row is archived
+     */
+    private static void raiseSequences(Path database, int existing, int shards) throws SQLException, IOException {
+        // By table, the largest archived id of each shard's range
+        Map<String, Map<Long, Long>> largest = new HashMap<>();
+        for (int shard = 0; shard < existing; shard++) {
+            ArchiveStore archive = new ArchiveStore(archiveOf(database, shard));
+            for (YearMonth month : archive.getMonths()) {
+                try (Connection connection = open(archive.partition(month));
+                     Statement stmt = connection.createStatement()) {
+                    for (String table : new String[] {"appointments", "prescriptions"}) {
+                        try (ResultSet rs = stmt.executeQuery("SELECT id >> " + DatabaseManager.SHARD_ID_BITS
+                                + ", MAX(id) FROM " + table + " GROUP BY 1")) {
+                            while (rs.next()) {
+                                largest.computeIfAbsent(table, t -> new HashMap<>())
+                                    .merge(rs.getLong(1), rs.getLong(2), Math::max);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        for (int shard = 0; shard < shards; shard++) {
+            try (Connection connection = open(StorageConfig.shardPath(database, shard));
+                 PreparedStatement ps = connection.prepareStatement(
+                     "UPDATE sqlite_sequence SET seq = ?1 WHERE name = ?2 AND seq < ?1")) {
+                for (Map.Entry<String, Map<Long, Long>> table : largest.entrySet()) {
+                    Long id = table.getValue().get((long) shard);
+                    if (id != null) {
+                        ps.setLong(1, id);
+                        ps.setString(2, table.getKey());
+                        ps.executeUpdate();
+                    }
+                }
+            }
+        }
+    }
+
+    private static void registerShardOf(Connection connection) throws SQLException {
+        Function.create(connection, "shard_of", new Function() {
+            @Override
+            protected void xFunc() throws SQLException {
+                result(DatabaseManager.shardOf(value_text(0), value_int(1)));
+            }
+        });
+    }
+
+    /**
+     * Moves every row that hashes to the target shard from the connection's database into it
+     */
+    private static long move(Connection connection, Path target, int targetShard, int shards) throws SQLException {
+        try (PreparedStatement attach = connection.prepareStatement("ATTACH DATABASE ? AS dest")) {
+            attach.setString(1, target.toString());
+            attach.execute();
+        }
+        try (Statement stmt = connection.createStatement()) {
+            connection.setAutoCommit(false);
+            try {
+                long moved = 0;
+                for (String[] table : TABLES) {
+                    String where = " WHERE shard_of(" + table[1] + ", " + shards + ") = " + targetShard;
+                    moved += stmt.executeUpdate("INSERT INTO dest." + table[0] + " (" + table[2] + ") SELECT "
+                        + table[2] + " FROM main." + table[0] + where);
+                    stmt.executeUpdate("DELETE FROM main." + table[0] + where);
+                }
+                connection.commit();
+                return moved;
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+                stmt.execute("DETACH DATABASE dest");
+            }
+        }
+    }
+
+    private static int currentShardCount(Path database) throws SQLException {
+        try (Connection connection = open(database)) {
+            DatabaseManager.initializeShard(connection, 0);
+            try (Statement stmt = connection.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT shard_count FROM shard_map WHERE id = 1")) {
+                return rs.next() ? rs.getInt(1) : 1;
+            }
+        }
+    }
+
+    private static long countRows(Connection connection) throws SQLException {
+        long rows = 0;
+        try (Statement stmt = connection.createStatement()) {
+            for (String[] table : TABLES) {
+                try (ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM " + table[0])) {
+                    rs.next();
+                    rows += rs.getLong(1);
+                }
+            }
+        }
+        return rows;
+    }
+
+    private static void setJournalMode(Connection connection, String mode) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("PRAGMA journal_mode = " + mode);
+        }
+    }
+
+    private static Connection open(Path file) throws SQLException {
+        SQLiteConfig config = new SQLiteConfig();
+        config.setBusyTimeout(BUSY_TIMEOUT_MILLIS);
+        return config.createConnection("jdbc:sqlite:" + file);
+    }
+}
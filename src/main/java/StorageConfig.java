@@ -0,0 +1,356 @@
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.UUID;
+import org.sqlite.SQLiteConfig;
+
+/**
+ * Storage Config class describing where the database lives and how SQLite is tuned
+ * Either a database file or a named in-memory database that every connection of the
+ * process opening the same name shares (for tests and ephemeral nodes). Pragmas that
+ * are not set keep SQLite's defaults. The DatabaseManager singleton reads its config
+ * from healthcare.db.* system properties unless DatabaseManager.configure was called.
+ * With shards(n) the patient data is spread over n databases: shard 0 is the file or
+ * name given, shard i lives next to it as healthcare-shard<i>.db (or name-shard<i>).
+ * DatabaseManager.archive() moves appointments and prescriptions older than the archive
+ * horizon out of a database file into monthly partitions.
+ */
+public final class StorageConfig {
+    public static final String DEFAULT_PATH = "healthcare.db";
+    public static final String PROPERTY_PREFIX = "healthcare.db.";
+    public static final int DEFAULT_READERS =
+        Math.min(8, Math.max(2, Runtime.getRuntime().availableProcessors()));
+    public static final int DEFAULT_ARCHIVE_HORIZON_MONTHS = 24;
+
+    private final String url;
+    private final boolean inMemory;
+    private final Path path;
+    private final String memoryName;
+    private final int shards;
+    private final int readers;
+    private final int statementCacheSize;
+    private final long acquireTimeoutMillis;
+    private final SQLiteConfig.JournalMode journalMode;
+    private final SQLiteConfig.SynchronousMode synchronous;
+    private final Integer cacheSize;
+    private final Long mmapSize;
+    private final SQLiteConfig.TempStore tempStore;
+    private final int archiveHorizonMonths;
+
+    private StorageConfig(Builder builder) {
+        this.url = builder.url;
+        this.inMemory = builder.inMemory;
+        this.path = builder.path;
+        this.memoryName = builder.memoryName;
+        this.shards = builder.shards;
+        this.readers = builder.readers;
+        this.statementCacheSize = builder.statementCacheSize;
+        this.acquireTimeoutMillis = builder.acquireTimeoutMillis;
+        this.journalMode = builder.journalMode;
+        this.synchronous = builder.synchronous;
+        this.cacheSize = builder.cacheSize;
+        this.mmapSize = builder.mmapSize;
+        this.tempStore = builder.tempStore;
+        this.archiveHorizonMonths = builder.archiveHorizonMonths;
+    }
+
+    /**
+     * A database file, in WAL mode
+     */
+    public static Builder file(Path path) {
+        Builder builder = new Builder("jdbc:sqlite:" + path, false).journalMode(SQLiteConfig.JournalMode.WAL);
+        builder.path = path;
+        return builder;
+    }
+
+    /**
+     * A shared in-memory database; it lives as long as its DatabaseManager is open
+     */
+    public static Builder inMemory(String name) {
+        Builder builder = new Builder("jdbc:sqlite:file:" + name + "?mode=memory&cache=shared", true);
+        builder.memoryName = name;
+        return builder;
+    }
+
+    /**
+     * A shared in-memory database under a fresh name, so it is private to its DatabaseManager
+     */
+    public static Builder inMemory() {
+        return inMemory("healthcare-" + UUID.randomUUID());
+    }
+
+    /**
+     * A raw JDBC URL; ":memory:" and mode=memory URLs are treated as in-memory
+     */
+    static Builder url(String url) {
+        boolean memory = url.contains(":memory:") || url.contains("mode=memory");
+        Builder builder = new Builder(url, memory);
+        return memory ? builder : builder.journalMode(SQLiteConfig.JournalMode.WAL);
+    }
+
+    /**
+     * Config from healthcare.db.* system properties: path or memory (a database name),
+     * readers, shards, tuned (true for the tuned() preset), journal-mode, synchronous,
+     * cache-size, mmap-size, temp-store and archive-horizon-months
+     */
+    public static StorageConfig fromSystemProperties() {
+        String memory = property("memory");
+        Builder builder = memory != null ? inMemory(memory)
+            : file(Path.of(System.getProperty(PROPERTY_PREFIX + "path", DEFAULT_PATH)));
+        if (Boolean.parseBoolean(property("tuned"))) {
+            builder.tuned();
+        }
+        if (property("readers") != null) {
+            builder.readers(Integer.parseInt(property("readers")));
+        }
+        if (property("shards") != null) {
+            builder.shards(Integer.parseInt(property("shards")));
+        }
+        if (property("journal-mode") != null) {
+            builder.journalMode(SQLiteConfig.JournalMode.valueOf(upper(property("journal-mode"))));
+        }
+        if (property("synchronous") != null) {
+            builder.synchronous(SQLiteConfig.SynchronousMode.valueOf(upper(property("synchronous"))));
+        }
+        if (property("cache-size") != null) {
+            builder.cacheSize(Integer.parseInt(property("cache-size")));
+        }
+        if (property("mmap-size") != null) {
+            builder.mmapSize(Long.parseLong(property("mmap-size")));
+        }
+        if (property("temp-store") != null) {
+            builder.tempStore(SQLiteConfig.TempStore.valueOf(upper(property("temp-store"))));
+        }
+        if (property("archive-horizon-months") != null) {
+            builder.archiveHorizonMonths(Integer.parseInt(property("archive-horizon-months")));
+        }
+        return builder.build();
+    }
+
+    private static String property(String name) {
+        return System.getProperty(PROPERTY_PREFIX + name);
+    }
+
+    private static String upper(String value) {
+        return value.trim().toUpperCase(Locale.ROOT);
+    }
+
+    public String getUrl() { return url; }
+    public boolean isInMemory() { return inMemory; }
+    public int getReaders() { return readers; }
+    public int getStatementCacheSize() { return statementCacheSize; }
+    public long getAcquireTimeoutMillis() { return acquireTimeoutMillis; }
+    public int getShards() { return shards; }
+    public int getArchiveHorizonMonths() { return archiveHorizonMonths; }
+    /** The database file of shard 0, or null for in-memory and raw URL configs */
+    public Path getPath() { return path; }
+
+    /**
+     * File of shard index of a database whose shard 0 is path: healthcare.db, then
+     * healthcare-shard1.db, healthcare-shard2.db and so on
+     */
+    public static Path shardPath(Path path, int index) {
+        if (index == 0) {
+            return path;
+        }
+        String name = path.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        String shardName = dot > 0
+            ? name.substring(0, dot) + "-shard" + index + name.substring(dot)
+            : name + "-shard" + index;
+        return path.resolveSibling(shardName);
+    }
+
+    /**
+     * The same settings for the single database holding shard index
+     */
+    StorageConfig forShard(int index) {
+        if (index < 0 || index >= shards) {
+            throw new IllegalArgumentException("No shard " + index + " in " + shards + " shards");
+        }
+        Builder builder;
+        if (path != null) {
+            builder = file(shardPath(path, index));
+        } else if (memoryName != null) {
+            builder = inMemory(index == 0 ? memoryName : memoryName + "-shard" + index);
+        } else if (index == 0) {
+            builder = new Builder(url, inMemory);
+        } else {
+            throw new IllegalStateException("A raw JDBC URL cannot be sharded: " + url);
+        }
+        builder.readers = readers;
+        builder.statementCacheSize = statementCacheSize;
+        builder.acquireTimeoutMillis = acquireTimeoutMillis;
+        builder.journalMode = journalMode;
+        builder.synchronous = synchronous;
+        builder.cacheSize = cacheSize;
+        builder.mmapSize = mmapSize;
+        builder.tempStore = tempStore;
+        return builder.build();
+    }
+
+    /**
+     * Driver settings for one pooled connection; journal mode and synchronous only
+     * matter to the writer, the cache and mmap sizes and temp_store apply per connection
+     */
+    SQLiteConfig toSQLiteConfig(boolean reader) {
+        SQLiteConfig config = new SQLiteConfig();
+        if (reader) {
+            config.setReadOnly(true);
+        } else {
+            if (journalMode != null) {
+                config.setJournalMode(journalMode);
+            }
+            if (synchronous != null) {
+                config.setSynchronous(synchronous);
+            }
+        }
+        if (cacheSize != null) {
+            config.setCacheSize(cacheSize);
+        }
+        if (mmapSize != null) {
+            config.setPragma(SQLiteConfig.Pragma.MMAP_SIZE, String.valueOf(mmapSize));
+        }
+        if (tempStore != null) {
+            config.setTempStore(tempStore);
+        }
+        return config;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s (shards=%d, readers=%d, journal_mode=%s, synchronous=%s, cache_size=%s, mmap_size=%s, temp_store=%s)",
+            url, shards, inMemory ? 0 : readers, orDefault(journalMode), orDefault(synchronous),
+            orDefault(cacheSize), orDefault(mmapSize), orDefault(tempStore));
+    }
+
+    private static String orDefault(Object value) {
+        return value == null ? "default" : value.toString();
+    }
+
+    /**
+     * Builder for StorageConfig; start from file(), inMemory() or url()
+     */
+    public static final class Builder {
+        private final String url;
+        private final boolean inMemory;
+        private Path path;
+        private String memoryName;
+        private int shards = 1;
+        private int readers = DEFAULT_READERS;
+        private int statementCacheSize = ConnectionPool.DEFAULT_STATEMENT_CACHE_SIZE;
+        private long acquireTimeoutMillis = ConnectionPool.DEFAULT_ACQUIRE_TIMEOUT_MILLIS;
+        private SQLiteConfig.JournalMode journalMode;
+        private SQLiteConfig.SynchronousMode synchronous;
+        private Integer cacheSize;
+        private Long mmapSize;
+        private SQLiteConfig.TempStore tempStore;
+        private int archiveHorizonMonths = DEFAULT_ARCHIVE_HORIZON_MONTHS;
+
+        private Builder(String url, boolean inMemory) {
+            this.url = url;
+            this.inMemory = inMemory;
+        }
+
+        /**
+         * Read-only connections; an in-memory database has none and reads through the writer
+         */
+        public Builder readers(int readers) {
+            if (readers < 1) {
+                throw new IllegalArgumentException("readers must be at least 1");
+            }
+            this.readers = readers;
+            return this;
+        }
+
+        /**
+         * Databases the patient data is spread over; each has its own writer and readers.
+         * A database keeps the shard count it was created with until ShardRebalancer changes it.
+         */
+        public Builder shards(int shards) {
+            if (shards < 1) {
+                throw new IllegalArgumentException("shards must be at least 1");
+            }
+            this.shards = shards;
+            return this;
+        }
+
+        /**
+         * Prepared statements cached per connection, 0 disables caching
+         */
+        public Builder statementCacheSize(int statementCacheSize) {
+            this.statementCacheSize = statementCacheSize;
+            return this;
+        }
+
+        public Builder acquireTimeoutMillis(long acquireTimeoutMillis) {
+            this.acquireTimeoutMillis = acquireTimeoutMillis;
+            return this;
+        }
+
+        public Builder journalMode(SQLiteConfig.JournalMode journalMode) {
+            this.journalMode = journalMode;
+            return this;
+        }
+
+        public Builder synchronous(SQLiteConfig.SynchronousMode synchronous) {
+            this.synchronous = synchronous;
+            return this;
+        }
+
+        /**
+         * PRAGMA cache_size: pages when positive, KiB when negative
+         */
+        public Builder cacheSize(int cacheSize) {
+            this.cacheSize = cacheSize;
+            return this;
+        }
+
+        public Builder cacheSizeKib(int kib) {
+            return cacheSize(-kib);
+        }
+
+        /**
+         * PRAGMA mmap_size in bytes; 0 turns memory-mapped reads off
+         */
+        public Builder mmapSize(long bytes) {
+            this.mmapSize = bytes;
+            return this;
+        }
+
+        public Builder tempStore(SQLiteConfig.TempStore tempStore) {
+            this.tempStore = tempStore;
+            return this;
+        }
+
+        /**
+         * Whole months kept in the hot tables before the current one; older months are
+         * what DatabaseManager.archive() moves out
+         */
+        public Builder archiveHorizonMonths(int months) {
+            if (months < 0) {
+                throw new IllegalArgumentException("archiveHorizonMonths must not be negative");
+            }
+            this.archiveHorizonMonths = months;
+            return this;
+        }
+
+        /**
+         * WAL with synchronous=NORMAL (a power loss can lose the last commits but never
+         * corrupts the database), a 64 MiB page cache, 256 MiB of mmap and in-memory temp tables
+         */
+        public Builder tuned() {
+            if (!inMemory) {
+                journalMode(SQLiteConfig.JournalMode.WAL);
+                mmapSize(256L << 20);
+            }
+            synchronous(SQLiteConfig.SynchronousMode.NORMAL);
+            cacheSizeKib(64 << 10);
+            tempStore(SQLiteConfig.TempStore.MEMORY);
+            return this;
+        }
+
+        public StorageConfig build() {
+            return new StorageConfig(this);
+        }
+    }
+}
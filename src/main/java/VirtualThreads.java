@@ -0,0 +1,50 @@
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Virtual Threads class handing out thread-per-task executors
+ * The project builds for Java 17, so Executors.newVirtualThreadPerTaskExecutor is looked
+ * up reflectively; on runtimes without it a fixed pool of daemon platform threads is used.
+ */
+public final class VirtualThreads {
+    private static final Method VIRTUAL_EXECUTOR = lookup();
+
+    private VirtualThreads() {
+    }
+
+    private static Method lookup() {
+        try {
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            // Preview builds expose the method but refuse to run it
+            ((ExecutorService) method.invoke(null)).shutdown();
+            return method;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    public static boolean isAvailable() {
+        return VIRTUAL_EXECUTOR != null;
+    }
+
+    /**
+     * One virtual thread per task, or a fixed pool when virtual threads are unavailable
+     */
+    public static ExecutorService newPerTaskExecutor(String fallbackPrefix, int fallbackThreads) {
+        if (VIRTUAL_EXECUTOR != null) {
+            try {
+                return (ExecutorService) VIRTUAL_EXECUTOR.invoke(null);
+            } catch (ReflectiveOperationException e) {
+                // fall through to platform threads
+            }
+        }
+        AtomicInteger counter = new AtomicInteger();
+        return Executors.newFixedThreadPool(fallbackThreads, runnable -> {
+            Thread thread = new Thread(runnable, fallbackPrefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
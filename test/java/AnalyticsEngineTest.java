@@ -0,0 +1,156 @@
+import org.junit.jupiter.api.*;
+import static org.junit.jupiter.api.Assertions.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Test class for the incremental analytics aggregates using JUnit 5
+ */
+public class AnalyticsEngineTest {
+    private static final LocalDate DAY = LocalDate.of(2025, 3, 3);
+
+    private Path journalDir;
+    private DatabaseManager dbManager;
+    private HealthcareSystem system;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        journalDir = Files.createTempDirectory("healthcare-journal");
+        dbManager = new DatabaseManager(StorageConfig.inMemory().build());
+        system = new HealthcareSystem(dbManager, journalDir);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        system.shutdown();
+        try (Stream<Path> files = Files.walk(journalDir)) {
+            for (Path path : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    @Test
+    void testLiveAggregatesMatchARebuild() throws Exception {
+        system.addMedicine("Aspirin", 1_000);
+        system.addMedicine("Ibuprofen", 1_000);
+        for (int i = 0; i < 12; i++) {
+            assertTrue(system.bookAppointment("patient" + (i % 3), "Dr. Smith", DAY.plusDays(i % 2), i));
+        }
+        system.bookAppointment("patient0", "Dr. Jones", DAY, 0);
+        List<Appointment> batch = new ArrayList<>();
+        batch.add(new Appointment("patient1", "Dr. Jones", DAY.toString()));
+        batch.add(new Appointment("patient1", "Dr. Jones", "not a date"));
+        system.bookAppointments(batch);
+        system.addMedicalRecord("patient0", "Flu", "Rest");
+        system.addMedicalRecords(List.of(new MedicalRecord("patient2", "Cold", "Tea"),
+            new MedicalRecord("patient2", "Cough", "Syrup")));
+        assertTrue(system.addPrescription("patient0", "Aspirin", 5));
+        assertFalse(system.addPrescription("patient0", "Aspirin", 5_000));
+        system.addPrescriptions(List.of(new Prescription("patient1", "Ibuprofen", 3),
+            new Prescription("patient2", "Aspirin", 2)));
+
+        AnalyticsEngine live = system.getAnalytics();
+        AnalyticsEngine rebuilt = AnalyticsEngine.rebuild(dbManager, 3);
+        for (AnalyticsEngine engine : List.of(live, rebuilt)) {
+            assertEquals(6, engine.getAppointmentCount("Dr. Smith", DAY));
+            assertEquals(6, engine.getAppointmentCount("Dr. Smith", DAY.plusDays(1)));
+            assertArrayEquals(new long[] {6, 6, 0}, engine.getAppointmentCounts("Dr. Smith", DAY, DAY.plusDays(2)));
+            assertEquals(12, engine.getAppointmentCount("Dr. Smith"));
+            assertEquals(2, engine.getAppointmentCount("Dr. Jones", DAY));
+            assertEquals(0, engine.getAppointmentCount("Dr. Nobody", DAY));
+            assertEquals(5, engine.getPatientAppointmentCount("patient0"));
+            assertEquals(5, engine.getPatientAppointmentCount("patient1"));
+            assertEquals(1, engine.getPatientMedicalRecordCount("patient0"));
+            assertEquals(2, engine.getPatientMedicalRecordCount("patient2"));
+            assertEquals(1, engine.getPatientPrescriptionCount("patient0"));
+            assertEquals(7, engine.getUnitsPrescribed("Aspirin"));
+            assertEquals(7, engine.getUnitsPrescribed("Aspirin", LocalDate.now(ZoneOffset.UTC)));
+            assertEquals(3, engine.getUnitsPrescribed("Ibuprofen"));
+            assertEquals(List.of("Aspirin", "Ibuprofen"),
+                engine.getTopMedicines(5).stream().map(AnalyticsEngine.MedicineUsage::getMedicine).toList());
+        }
+    }
+
+    @Test
+    void testTopMedicinesFollowOvertakes() {
+        AnalyticsEngine engine = new AnalyticsEngine();
+        engine.recordPrescription("patient0", "Aspirin", 10, DAY);
+        engine.recordPrescription("patient0", "Ibuprofen", 4, DAY);
+        engine.recordPrescription("patient0", "Paracetamol", 6, DAY);
+        assertEquals(List.of("Aspirin", "Paracetamol"), names(engine.getTopMedicines(2)));
+
+        engine.recordPrescription("patient1", "Ibuprofen", 7, DAY);
+        assertEquals(List.of("Ibuprofen", "Aspirin", "Paracetamol"), names(engine.getTopMedicines(10)));
+        AnalyticsEngine.MedicineUsage top = engine.getTopMedicines(1).get(0);
+        assertEquals(11, top.getUnits());
+        assertEquals(2, top.getPrescriptions());
+        assertTrue(engine.getTopMedicines(0).isEmpty());
+    }
+
+    @Test
+    void testBurnRateAndDaysOfStockLeft() {
+        AnalyticsEngine engine = new AnalyticsEngine();
+        engine.recordPrescription("patient0", "Aspirin", 10, DAY.minusDays(1));
+        engine.recordPrescription("patient0", "Aspirin", 20, DAY);
+        engine.recordPrescription("patient0", "Aspirin", 100, DAY.minusDays(10));
+        assertEquals(10.0, engine.getBurnRate("Aspirin", DAY, 3), 1e-9);
+        assertEquals(20.0, engine.getBurnRate("Aspirin", DAY, 1), 1e-9);
+        assertEquals(0.0, engine.getBurnRate("Unknown", DAY, 3), 1e-9);
+
+        system.addMedicine("Aspirin", 100);
+        assertEquals(Double.POSITIVE_INFINITY, system.getDaysOfStockLeft("Aspirin", 7));
+        assertTrue(system.addPrescription("patient0", "Aspirin", 14));
+        assertEquals(86 / 2.0, system.getDaysOfStockLeft("Aspirin", 7), 1e-9);
+        assertEquals(0.0, system.getDaysOfStockLeft("Unknown", 7));
+    }
+
+    @Test
+    void testLongLongHashMapCountsAndGrows() {
+        LongLongHashMap map = new LongLongHashMap();
+        for (long key = -5_000; key < 5_000; key++) {
+            map.add(key, key);
+            map.add(key, 1);
+        }
+        assertEquals(10_000, map.size());
+        assertEquals(-4_999, map.get(-5_000));
+        assertEquals(4_000, map.get(3_999));
+        assertEquals(0, map.get(123_456));
+        assertFalse(map.containsKey(123_456));
+
+        LongLongHashMap other = new LongLongHashMap(4);
+        other.add(0, 41);
+        other.add(Long.MAX_VALUE, 7);
+        map.addAll(other);
+        assertEquals(42, map.get(0));
+        assertEquals(7, map.get(Long.MAX_VALUE));
+        assertThrows(IllegalArgumentException.class, () -> map.add(Long.MIN_VALUE, 1));
+        map.clear();
+        assertEquals(0, map.size());
+        assertEquals(0, map.get(0));
+    }
+
+    @Test
+    void testIdRangesCoverEveryIdOnce() {
+        assertTrue(AnalyticsEngine.ranges(0, 4).isEmpty());
+        assertEquals(1, AnalyticsEngine.ranges(3, 8).get(0)[0]);
+        List<long[]> ranges = AnalyticsEngine.ranges(10, 4);
+        assertEquals(4, ranges.size());
+        long next = 1;
+        for (long[] range : ranges) {
+            assertEquals(next, range[0]);
+            next = range[1] + 1;
+        }
+        assertEquals(11, next);
+    }
+
+    private static List<String> names(List<AnalyticsEngine.MedicineUsage> usage) {
+        return usage.stream().map(AnalyticsEngine.MedicineUsage::getMedicine).toList();
+    }
+}
@@ -0,0 +1,247 @@
+import org.junit.jupiter.api.*;
+import static org.junit.jupiter.api.Assertions.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+/**
+ * Test class for archiving old appointments and prescriptions into monthly partitions using JUnit 5
+ */
+public class ArchiveTest {
+    private Path directory;
+    private DatabaseManager dbManager;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        directory = Files.createTempDirectory("healthcare-archive");
+        dbManager = new DatabaseManager(StorageConfig.file(directory.resolve("live.db")).readers(2).build());
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        if (dbManager != null) {
+            dbManager.closeConnection();
+        }
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path path : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    @Test
+    void testOldMonthsMoveOutAndStayReachable() throws Exception {
+        seedAppointments(dbManager);
+        assertEquals(40, dbManager.archiveBefore(YearMonth.of(2021, 1)));
+
+        assertEquals(List.of(YearMonth.of(2020, 1), YearMonth.of(2020, 2), YearMonth.of(2020, 3), YearMonth.of(2020, 4)),
+            dbManager.getArchivedMonths());
+        assertTrue(Files.exists(directory.resolve("live-archive").resolve("2020-02.db")));
+        assertEquals(10, dbManager.getAllAppointments().size(), "Only the upcoming appointments stay hot");
+        assertEquals(50, dbManager.getAllAppointments(true).size());
+
+        List<Appointment> spring = dbManager.getAppointmentsForDoctor("Dr. Smith",
+            LocalDate.of(2020, 2, 1), LocalDate.of(2020, 3, 31));
+        assertEquals(20, spring.size(), "The doctor query reaches the archived months it overlaps");
+        for (int i = 1; i < spring.size(); i++) {
+            assertTrue(spring.get(i - 1).getDate().compareTo(spring.get(i).getDate()) <= 0);
+        }
+        assertEquals(10, dbManager.getAppointmentsForDoctor("Dr. Smith",
+            LocalDate.of(2031, 1, 1), LocalDate.of(2031, 12, 31)).size());
+
+        assertEquals(1, dbManager.getAppointmentsForPatient("patient0", 0, 100).size());
+        List<Long> ids = new ArrayList<>();
+        long afterId = 0;
+        List<Appointment> page;
+        while (!(page = dbManager.getAppointmentsForPatient("patient0", afterId, 3, true)).isEmpty()) {
+            for (Appointment appointment : page) {
+                ids.add(appointment.getId());
+            }
+            afterId = page.get(page.size() - 1).getId();
+        }
+        assertEquals(9, ids.size(), "Pages run across the archived months in id order");
+        assertEquals(ids.stream().sorted().toList(), ids);
+    }
+
+    @Test
+    void testPrescriptionsArchiveByTheirDate() throws Exception {
+        for (int i = 0; i < 6; i++) {
+            dbManager.insertPrescription("patient" + (i % 2), "Aspirin", i + 1);
+        }
+        try (Statement stmt = dbManager.getConnection().createStatement()) {
+            stmt.executeUpdate("UPDATE prescriptions SET prescription_date = '2019-11-20 08:30:00' WHERE quantity <= 4");
+        }
+        assertEquals(4, dbManager.archiveBefore(YearMonth.of(2020, 1)));
+        assertEquals(List.of(YearMonth.of(2019, 11)), dbManager.getArchivedMonths());
+        assertEquals(2, dbManager.getAllPrescriptions().size());
+        assertEquals(6, dbManager.getAllPrescriptions(true).size());
+        List<Prescription> patient0 = dbManager.getPrescriptionsForPatient("patient0", 0, 10, true);
+        assertEquals(List.of(1, 3, 5), patient0.stream().map(Prescription::getQuantity).toList());
+    }
+
+    @Test
+    void testRerunsFinishAnInterruptedMove() throws Exception {
+        seedAppointments(dbManager);
+        dbManager.archiveBefore(YearMonth.of(2021, 1));
+        assertEquals(0, dbManager.archiveBefore(YearMonth.of(2021, 1)), "Nothing is left to move");
+
+        // A crash between the two files' commits leaves a row in the hot table and the partition
+        Appointment archived = dbManager.getAppointmentsForPatient("patient1", 0, 1, true).get(0);
+        try (PreparedStatement ps = dbManager.getConnection().prepareStatement(
+                "INSERT INTO appointments (id, patient_username, doctor_name, appointment_date, slot) VALUES (?, ?, ?, ?, ?)")) {
+            ps.setLong(1, archived.getId());
+            ps.setString(2, archived.getPatientUsername());
+            ps.setString(3, archived.getDoctorName());
+            ps.setLong(4, LocalDate.parse(archived.getDate()).toEpochDay());
+            ps.setInt(5, archived.getSlot());
+            ps.executeUpdate();
+        }
+        assertEquals(50, dbManager.getAllAppointments(true).size(), "The duplicate is read once");
+        assertEquals(1, dbManager.archiveBefore(YearMonth.of(2021, 1)));
+        assertEquals(10, dbManager.getAllAppointments().size());
+        assertEquals(50, dbManager.getAllAppointments(true).size());
+
+        // Partitions are found again when the database is reopened
+        dbManager.closeConnection();
+        dbManager = new DatabaseManager(StorageConfig.file(directory.resolve("live.db")).readers(2).build());
+        assertEquals(4, dbManager.getArchivedMonths().size());
+        assertEquals(50, dbManager.getAllAppointments(true).size());
+    }
+
+    @Test
+    void testAnalyticsRebuildCountsArchivedRows() throws Exception {
+        seedAppointments(dbManager);
+        for (int i = 0; i < 6; i++) {
+            dbManager.insertPrescription("patient0", "Aspirin", i + 1);
+        }
+        try (Statement stmt = dbManager.getConnection().createStatement()) {
+            stmt.executeUpdate("UPDATE prescriptions SET prescription_date = '2020-02-10 08:30:00' WHERE quantity <= 4");
+        }
+        dbManager.archiveBefore(YearMonth.of(2021, 1));
+
+        AnalyticsEngine analytics = AnalyticsEngine.rebuild(dbManager, 2);
+        assertEquals(50, analytics.getAppointmentCount("Dr. Smith"), "Archived months count after a restart");
+        assertEquals(1, analytics.getAppointmentCount("Dr. Smith", LocalDate.of(2020, 2, 3)));
+        assertEquals(21, analytics.getUnitsPrescribed("Aspirin"));
+        assertEquals(10, analytics.getUnitsPrescribed("Aspirin", LocalDate.of(2020, 2, 10)));
+        assertEquals(6, analytics.getPatientPrescriptionCount("patient0"));
+
+        // A row an interrupted move left in both places is counted once
+        Appointment archived = dbManager.getAppointmentsForPatient("patient1", 0, 1, true).get(0);
+        try (PreparedStatement ps = dbManager.getConnection().prepareStatement(
+                "INSERT INTO appointments (id, patient_username, doctor_name, appointment_date, slot) VALUES (?, ?, ?, ?, ?)")) {
+            ps.setLong(1, archived.getId());
+            ps.setString(2, archived.getPatientUsername());
+            ps.setString(3, archived.getDoctorName());
+            ps.setLong(4, LocalDate.parse(archived.getDate()).toEpochDay());
+            ps.setInt(5, archived.getSlot());
+            ps.executeUpdate();
+        }
+        assertEquals(50, AnalyticsEngine.rebuild(dbManager, 2).getAppointmentCount("Dr. Smith"));
+    }
+
+    @Test
+    void testEveryShardArchivesIntoItsOwnDirectory() throws Exception {
+        dbManager.closeConnection();
+        dbManager = new DatabaseManager(StorageConfig.file(directory.resolve("sharded.db")).shards(2).readers(1).build());
+        seedAppointments(dbManager);
+        assertEquals(40, dbManager.archiveBefore(YearMonth.of(2021, 1)));
+        assertTrue(Files.isDirectory(directory.resolve("sharded-archive")));
+        assertTrue(Files.isDirectory(directory.resolve("sharded-shard1-archive")));
+        assertEquals(50, dbManager.getAllAppointments(true).size());
+        assertEquals(40, dbManager.getAppointmentsForDoctor("Dr. Smith",
+            LocalDate.of(2020, 1, 1), LocalDate.of(2020, 12, 31)).size());
+    }
+
+    @Test
+    void testRebalanceMovesArchivedMonthsWithTheirPatients() throws Exception {
+        Path sharded = directory.resolve("sharded.db");
+        dbManager.closeConnection();
+        dbManager = new DatabaseManager(StorageConfig.file(sharded).shards(2).readers(1).build());
+        seedAppointments(dbManager);
+        for (int i = 0; i < 6; i++) {
+            dbManager.insertPrescription("patient" + i, "Aspirin", 1);
+        }
+        for (int shard = 0; shard < 2; shard++) {
+            try (Statement stmt = dbManager.getConnection(shard).createStatement()) {
+                stmt.executeUpdate("UPDATE prescriptions SET prescription_date = '2020-02-10 08:30:00'");
+            }
+        }
+        assertEquals(46, dbManager.archiveBefore(YearMonth.of(2021, 1)));
+        Map<String, Integer> history = historyByPatient(dbManager);
+        dbManager.closeConnection();
+
+        ShardRebalancer.rebalance(sharded, 3);
+        dbManager = new DatabaseManager(StorageConfig.file(sharded).shards(3).readers(1).build());
+        assertEquals(history, historyByPatient(dbManager), "Every patient's archive is on the patient's shard");
+        assertEquals(50, dbManager.getAllAppointments(true).size());
+        assertEquals(50, AnalyticsEngine.rebuild(dbManager, 2).getAppointmentCount("Dr. Smith"));
+        dbManager.closeConnection();
+
+        ShardRebalancer.rebalance(sharded, 1);
+        assertFalse(Files.exists(directory.resolve("sharded-shard1-archive")));
+        assertFalse(Files.exists(directory.resolve("sharded-shard2-archive")));
+        dbManager = new DatabaseManager(StorageConfig.file(sharded).readers(1).build());
+        assertEquals(history, historyByPatient(dbManager));
+        assertEquals(6, dbManager.getAllPrescriptions(true).size());
+        dbManager.closeConnection();
+
+        // A shard made again must not hand out ids its archived rows still have
+        ShardRebalancer.rebalance(sharded, 2);
+        dbManager = new DatabaseManager(StorageConfig.file(sharded).shards(2).readers(1).build());
+        for (int i = 0; i < 8; i++) {
+            dbManager.addAppointment(new Appointment("patient" + i, "Dr. Jones", "2020-03-01", i));
+        }
+        dbManager.archiveBefore(YearMonth.of(2021, 1));
+        List<Appointment> all = dbManager.getAllAppointments(true);
+        assertEquals(58, all.size());
+        assertEquals(58, all.stream().map(Appointment::getId).distinct().count());
+    }
+
+    private static Map<String, Integer> historyByPatient(DatabaseManager dbManager) throws Exception {
+        Map<String, Integer> history = new TreeMap<>();
+        for (int i = 0; i < 10; i++) {
+            String patient = "patient" + i;
+            history.put(patient, dbManager.getAppointmentsForPatient(patient, 0, 100, true).size()
+                + dbManager.getPrescriptionsForPatient(patient, 0, 100, true).size());
+        }
+        return history;
+    }
+
+    @Test
+    void testOnlyADatabaseFileCanBeArchived() {
+        DatabaseManager memory = new DatabaseManager(StorageConfig.inMemory().build());
+        try {
+            assertThrows(IllegalStateException.class, () -> memory.archiveBefore(YearMonth.of(2021, 1)));
+            assertTrue(memory.getArchivedMonths().isEmpty());
+        } finally {
+            memory.closeConnection();
+        }
+    }
+
+    /**
+     * Ten appointments with Dr. Smith in each month from January to April 2020, and ten in 2031
+     */
+    private static void seedAppointments(DatabaseManager dbManager) throws Exception {
+        List<Appointment> appointments = new ArrayList<>();
+        for (int month = 1; month <= 4; month++) {
+            for (int i = 0; i < 10; i++) {
+                appointments.add(new Appointment("patient" + (i % 8), "Dr. Smith",
+                    LocalDate.of(2020, month, 1 + i).toString(), i));
+            }
+        }
+        for (int i = 0; i < 10; i++) {
+            appointments.add(new Appointment("patient" + i, "Dr. Smith", LocalDate.of(2031, 3, 1 + i).toString(), i));
+        }
+        assertEquals(50, dbManager.addAppointments(appointments).getSuccessCount());
+    }
+}
@@ -0,0 +1,144 @@
+import org.junit.jupiter.api.*;
+import static org.junit.jupiter.api.Assertions.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Test class for the async HealthcareSystem facade using JUnit 5
+ */
+public class AsyncHealthcareSystemTest {
+    private static final LocalDate DAY = LocalDate.of(2025, 2, 3);
+
+    private Path dbFile;
+    private Path journalDir;
+    private HealthcareSystem system;
+    private AsyncHealthcareSystem async;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        dbFile = Files.createTempFile("healthcare-async", ".db");
+        journalDir = Files.createTempDirectory("healthcare-journal");
+        system = new HealthcareSystem(new DatabaseManager("jdbc:sqlite:" + dbFile, 2), journalDir);
+        async = new AsyncHealthcareSystem(system);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        async.close();
+        system.shutdown();
+        try (Stream<Path> files = Files.walk(journalDir)) {
+            for (Path path : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+        Files.deleteIfExists(dbFile);
+        Files.deleteIfExists(Path.of(dbFile + "-wal"));
+        Files.deleteIfExists(Path.of(dbFile + "-shm"));
+    }
+
+    @Test
+    void testConcurrentBookingsGetDistinctSlots() throws Exception {
+        List<CompletableFuture<Appointment>> bookings = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            bookings.add(async.bookNextAvailable("patient" + i, "Dr. Async", DAY));
+        }
+        CompletableFuture.allOf(bookings.toArray(new CompletableFuture[0])).get(30, TimeUnit.SECONDS);
+
+        Set<String> slots = new HashSet<>();
+        for (CompletableFuture<Appointment> booking : bookings) {
+            Appointment appointment = booking.join();
+            slots.add(appointment.getDate() + "#" + appointment.getSlot());
+        }
+        assertEquals(100, slots.size());
+        List<Appointment> stored = async.getAppointmentsForDoctor("Dr. Async", DAY, DAY.plusDays(30))
+            .get(10, TimeUnit.SECONDS);
+        assertEquals(100, stored.size());
+    }
+
+    @Test
+    void testFailuresCarryErrorCodes() throws Exception {
+        async.addMedicine("Paracetamol", 5).get(10, TimeUnit.SECONDS);
+        async.bookAppointment("alice", "Dr. Async", DAY, 3).get(10, TimeUnit.SECONDS);
+        async.registerPatient("alice", "secret").get(10, TimeUnit.SECONDS);
+
+        assertCode(HealthcareException.ErrorCode.SLOT_UNAVAILABLE,
+            async.bookAppointment("bob", "Dr. Async", DAY, 3));
+        assertCode(HealthcareException.ErrorCode.INVALID_ARGUMENT,
+            async.bookAppointment("bob", "Dr. Async", DAY, 99));
+        assertCode(HealthcareException.ErrorCode.INSUFFICIENT_STOCK,
+            async.addPrescription("alice", "Paracetamol", 10));
+        assertCode(HealthcareException.ErrorCode.INSUFFICIENT_STOCK,
+            async.addPrescription("alice", "Unobtainium", 1));
+        assertCode(HealthcareException.ErrorCode.INVALID_ARGUMENT,
+            async.addPrescription("alice", "Paracetamol", 0));
+        assertCode(HealthcareException.ErrorCode.CONFLICT,
+            async.registerPatient("alice", "another"));
+
+        assertTrue(async.login("alice", "secret").get(10, TimeUnit.SECONDS));
+        assertFalse(async.login("alice", "wrong").get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testWritesAreVisibleToLaterReads() throws Exception {
+        async.addMedicine("Aspirin", 20).get(10, TimeUnit.SECONDS);
+        CompletableFuture<PatientView> view = async.addMedicalRecord("alice", "Flu", "Rest")
+            .thenCompose(done -> async.addPrescription("alice", "Aspirin", 5))
+            .thenCompose(done -> async.getPatientView("alice"));
+
+        PatientView dashboard = view.get(10, TimeUnit.SECONDS);
+        assertEquals(1, dashboard.getMedicalRecords().size());
+        assertEquals(1, dashboard.getPrescriptions().size());
+        assertEquals(15, async.getMedicineInventory().join().get("Aspirin"));
+    }
+
+    @Test
+    void testBookingIsNotQueuedBehindARegistrationsHash() throws Exception {
+        CountDownLatch hashing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        system.getDatabaseManager().setPasswordHasher(new PasswordHasher(1_000) {
+            @Override
+            public String hash(String password) {
+                hashing.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.hash(password);
+            }
+        });
+        CompletableFuture<Void> registered = async.registerPatient("carol", "secret");
+        assertTrue(hashing.await(10, TimeUnit.SECONDS));
+        Appointment booked = async.bookAppointment("bob", "Dr. Async", DAY).get(10, TimeUnit.SECONDS);
+        assertNotNull(booked);
+        assertFalse(registered.isDone(), "The booking went ahead while the password was still hashing");
+
+        release.countDown();
+        registered.get(10, TimeUnit.SECONDS);
+        assertTrue(async.login("carol", "secret").get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testClosedFacadeRejectsWork() {
+        async.close();
+        assertCode(HealthcareException.ErrorCode.SHUT_DOWN, async.addMedicalRecord("alice", "Flu", "Rest"));
+        assertCode(HealthcareException.ErrorCode.SHUT_DOWN, async.getPatientView("alice"));
+    }
+
+    private static void assertCode(HealthcareException.ErrorCode expected, CompletableFuture<?> future) {
+        ExecutionException e = assertThrows(ExecutionException.class, () -> future.get(10, TimeUnit.SECONDS));
+        HealthcareException cause = assertInstanceOf(HealthcareException.class, e.getCause());
+        assertEquals(expected, cause.getCode());
+    }
+}
@@ -0,0 +1,156 @@
+import org.junit.jupiter.api.*;
+import static org.junit.jupiter.api.Assertions.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Test class for password hashing and the authentication cache using JUnit 5
+ */
+public class AuthenticationTest {
+    
+    @Test
+    void testHashesAreSaltedAndVerifiable() {
+        PasswordHasher hasher = new PasswordHasher(1_000);
+        String first = hasher.hash("secret");
+        String second = hasher.hash("secret");
+        
+        assertNotEquals(first, second, "Each hash should use its own salt");
+        assertTrue(first.startsWith("pbkdf2$1000$"));
+        assertTrue(hasher.verify("secret", first));
+        assertFalse(hasher.verify("Secret", first));
+        assertFalse(hasher.verify("secret", "secret"), "Plaintext is never accepted as a hash");
+        assertTrue(new PasswordHasher(5).verify("secret", first), "Verification uses the stored cost");
+    }
+    
+    @Test
+    void testCacheOnlyAcceptsMatchingPassword() {
+        AuthCache cache = new AuthCache(10, 60_000);
+        cache.put("alice", "secret");
+        
+        assertTrue(cache.verify("alice", "secret"));
+        assertFalse(cache.verify("alice", "wrong"));
+        assertFalse(cache.verify("bob", "secret"));
+        assertEquals(1, cache.getHits());
+        assertEquals(2, cache.getMisses());
+        
+        cache.invalidate("alice");
+        assertFalse(cache.verify("alice", "secret"));
+    }
+    
+    @Test
+    void testCacheIsBoundedAndExpires() throws InterruptedException {
+        AuthCache bounded = new AuthCache(2, 60_000);
+        bounded.put("a", "1");
+        bounded.put("b", "2");
+        bounded.put("c", "3");
+        assertEquals(2, bounded.size());
+        assertEquals(1, bounded.getEvictions());
+        assertFalse(bounded.verify("a", "1"), "Least recently used entry should be evicted");
+        
+        AuthCache shortLived = new AuthCache(10, 20);
+        shortLived.put("a", "1");
+        Thread.sleep(50);
+        assertFalse(shortLived.verify("a", "1"));
+        assertEquals(1, shortLived.getExpirations());
+    }
+    
+    @Test
+    void testUsersAreStoredHashedAndLegacyPasswordsAreMigrated() throws Exception {
+        Path dbFile = Files.createTempFile("healthcare-auth", ".db");
+        try (Connection legacy = DriverManager.getConnection("jdbc:sqlite:" + dbFile);
+             Statement stmt = legacy.createStatement()) {
+            stmt.execute("CREATE TABLE users (username TEXT PRIMARY KEY, password TEXT NOT NULL, role TEXT NOT NULL)");
+            stmt.execute("INSERT INTO users VALUES ('john', 'john123', 'PATIENT')");
+        }
+        DatabaseManager dbManager = new DatabaseManager("jdbc:sqlite:" + dbFile, 1);
+        try {
+            dbManager.addUser(new User("jane", "jane123", "PATIENT"));
+            
+            try (Statement stmt = dbManager.getConnection().createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT password FROM users")) {
+                while (rs.next()) {
+                    assertTrue(PasswordHasher.isHash(rs.getString(1)), "No plaintext passwords should remain");
+                }
+            }
+            assertTrue(dbManager.validateUser("john", "john123"));
+            assertTrue(dbManager.validateUser("jane", "jane123"));
+            assertTrue(dbManager.validateUser("admin", "admin123"));
+            assertFalse(dbManager.validateUser("jane", "john123"));
+            assertFalse(dbManager.validateUser("nobody", "jane123"));
+        } finally {
+            dbManager.closeConnection();
+            Files.deleteIfExists(dbFile);
+            Files.deleteIfExists(Path.of(dbFile + "-wal"));
+            Files.deleteIfExists(Path.of(dbFile + "-shm"));
+        }
+    }
+    
+    @Test
+    void testUnknownUsernameStillCostsAVerification() throws Exception {
+        DatabaseManager dbManager = new DatabaseManager(StorageConfig.inMemory().build());
+        AtomicInteger verifications = new AtomicInteger();
+        dbManager.setPasswordHasher(new PasswordHasher(1_000) {
+            @Override
+            public boolean verify(String password, String stored) {
+                verifications.incrementAndGet();
+                return super.verify(password, stored);
+            }
+        });
+        try {
+            assertFalse(dbManager.validateUser("nobody", "admin123"));
+            assertEquals(1, verifications.get(), "A missing user is checked against a dummy hash");
+            assertFalse(dbManager.validateUser("admin", "wrong"));
+            assertEquals(2, verifications.get());
+            assertTrue(dbManager.validateUser("admin", "admin123"));
+        } finally {
+            dbManager.closeConnection();
+        }
+    }
+    
+    @Test
+    void testLoginFailsFastWhenTheHashQueueIsFull() throws Exception {
+        HealthcareSystem system = new HealthcareSystem(new DatabaseManager(StorageConfig.inMemory().build()), null);
+        CountDownLatch release = new CountDownLatch(1);
+        system.getDatabaseManager().setPasswordHasher(new PasswordHasher(1_000) {
+            @Override
+            public boolean verify(String password, String stored) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.verify(password, stored);
+            }
+        });
+        List<CompletableFuture<Boolean>> logins = new ArrayList<>();
+        try {
+            CompletableFuture<Boolean> rejected = null;
+            for (int i = 0; i < HealthcareSystem.HASH_QUEUE_CAPACITY + 64 && rejected == null; i++) {
+                CompletableFuture<Boolean> login = system.loginAsync("user" + i, "secret");
+                if (login.isCompletedExceptionally()) {
+                    rejected = login;
+                } else {
+                    logins.add(login);
+                }
+            }
+            
+            assertNotNull(rejected, "Logins beyond the queue should not wait");
+            CompletionException e = assertThrows(CompletionException.class, rejected::join);
+            assertEquals(HealthcareException.ErrorCode.OVERLOADED, ((HealthcareException) e.getCause()).getCode());
+            assertTrue(logins.size() >= HealthcareSystem.HASH_QUEUE_CAPACITY);
+        } finally {
+            release.countDown();
+            for (CompletableFuture<Boolean> login : logins) {
+                assertFalse(login.join());
+            }
+            system.shutdown();
+        }
+    }
+}
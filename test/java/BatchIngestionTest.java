@@ -0,0 +1,89 @@
+import org.junit.jupiter.api.*;
+import static org.junit.jupiter.api.Assertions.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Test class for the bulk ingestion API using JUnit 5
+ */
+public class BatchIngestionTest {
+    private Path dbFile;
+    private DatabaseManager dbManager;
+    
+    @BeforeEach
+    void setUp() throws Exception {
+        dbFile = Files.createTempFile("healthcare-batch", ".db");
+        dbManager = new DatabaseManager("jdbc:sqlite:" + dbFile, 2);
+    }
+    
+    @AfterEach
+    void tearDown() throws Exception {
+        dbManager.closeConnection();
+        Files.deleteIfExists(dbFile);
+        Files.deleteIfExists(Path.of(dbFile + "-wal"));
+        Files.deleteIfExists(Path.of(dbFile + "-shm"));
+    }
+    
+    @Test
+    void testAppointmentsAreInsertedInChunks() throws SQLException {
+        List<Appointment> appointments = new ArrayList<>();
+        for (int i = 0; i < 1_200; i++) {
+            appointments.add(new Appointment("patient" + i, "Dr. Batch", "2024-03-21"));
+        }
+        
+        BatchResult result = dbManager.addAppointments(appointments, 500);
+        
+        assertEquals(1_200, result.size());
+        assertTrue(result.isAllSuccessful());
+        assertEquals(1_200, dbManager.getAllAppointments().size());
+    }
+    
+    @Test
+    void testFailedChunkIsRolledBackAndReportedPerRow() throws SQLException {
+        try (Statement stmt = dbManager.getConnection().createStatement()) {
+            stmt.execute("""
+                CREATE TRIGGER reject_diagnosis BEFORE INSERT ON medical_records
+                WHEN NEW.diagnosis = 'Rejected'
+                BEGIN SELECT RAISE(ABORT, 'rejected'); END
+                """);
+        }
+        List<MedicalRecord> records = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            records.add(new MedicalRecord("patient", i == 6 ? "Rejected" : "Diagnosis " + i, "Treatment"));
+        }
+        
+        BatchResult result = dbManager.addMedicalRecords(records, 4);
+        
+        assertEquals(6, result.getSuccessCount());
+        assertEquals(4, result.getFailureCount());
+        assertEquals(1, result.getErrors().size());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(i < 4 || i >= 8, result.isSuccess(i), "Row " + i);
+        }
+        assertEquals(6, dbManager.getAllMedicalRecords().size(), "Failed chunk should be rolled back");
+        
+        // The cached insert statement must be usable again after the failure
+        dbManager.addMedicalRecord("patient", "Fever", "Rest");
+        assertEquals(7, dbManager.getAllMedicalRecords().size());
+    }
+    
+    @Test
+    void testPrescriptionBatchDecrementsInventoryPerMedicine() throws SQLException {
+        dbManager.addMedicine("Paracetamol", 1_000);
+        dbManager.addMedicine("Aspirin", 1_000);
+        List<Prescription> prescriptions = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            prescriptions.add(new Prescription("patient" + i, i % 3 == 0 ? "Aspirin" : "Paracetamol", 2));
+        }
+        
+        BatchResult result = dbManager.addPrescriptions(prescriptions, 128);
+        
+        assertTrue(result.isAllSuccessful());
+        assertEquals(1_000 - 200, dbManager.getMedicineInventory().get("Aspirin"));
+        assertEquals(1_000 - 400, dbManager.getMedicineInventory().get("Paracetamol"));
+        assertEquals(300, dbManager.getAllPrescriptions().size());
+    }
+}
@@ -0,0 +1,185 @@
+import org.junit.jupiter.api.*;
+import static org.junit.jupiter.api.Assertions.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Test class for the change log and the events DatabaseManager writes to it using JUnit 5
+ */
+public class ChangeLogTest {
+    private static final int SEGMENT_BYTES = 1_024;
+
+    private Path directory;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        directory = Files.createTempDirectory("healthcare-changes");
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path path : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    @Test
+    void testTailsEventsFromAnOffsetAcrossSegments() throws Exception {
+        try (ChangeLog log = new ChangeLog(directory, SEGMENT_BYTES, 100)) {
+            for (int i = 0; i < 50; i++) {
+                assertEquals(i, log.append(ChangeEvent.Type.MEDICAL_RECORD, 100 + i, "patient" + i, "Flu", null,
+                    ChangeEvent.NO_DAY, 0));
+            }
+            assertTrue(log.getSegmentCount() > 2, "Small segments roll");
+            assertEquals(50, log.getEndOffset());
+
+            ChangeLog.Reader reader = log.tail(0);
+            assertEquals(50, reader.getLag());
+            List<String> keys = new ArrayList<>();
+            List<Long> ids = new ArrayList<>();
+            while (reader.read(event -> {
+                keys.add(event.getKey());
+                ids.add(event.getRowId());
+            }, 7) > 0) {
+                // keep reading
+            }
+            assertEquals(50, keys.size());
+            assertEquals("patient49", keys.get(49));
+            assertEquals(149L, ids.get(49));
+            assertEquals(0, reader.getLag());
+
+            ChangeLog.Reader fromMiddle = log.tail(37);
+            List<Long> offsets = new ArrayList<>();
+            fromMiddle.read(event -> offsets.add(event.getOffset()), 100);
+            assertEquals(13, offsets.size());
+            assertEquals(37L, offsets.get(0));
+
+            log.append(ChangeEvent.Type.APPOINTMENT, 7, "patient1", "Dr. Smith", null,
+                LocalDate.of(2030, 1, 2).toEpochDay(), 3);
+            List<Appointment> appointments = new ArrayList<>();
+            assertEquals(1, reader.read(event -> appointments.add(event.toAppointment()), 10));
+            assertEquals("2030-01-02", appointments.get(0).getDate());
+            assertEquals(3, appointments.get(0).getSlot());
+            assertEquals(51, reader.getPosition());
+        }
+    }
+
+    @Test
+    void testReopenCutsOffATornTail() throws Exception {
+        try (ChangeLog log = new ChangeLog(directory, SEGMENT_BYTES, 10)) {
+            for (int i = 0; i < 5; i++) {
+                log.append(ChangeEvent.Type.USER, 0, "user" + i, "PATIENT", null, ChangeEvent.NO_DAY, 0);
+            }
+            assertEquals(1, log.getSegmentCount());
+            long end = log.getAppendedBytes();
+            log.close();
+            // A record whose length was written but whose body and checksum were not
+            try (FileChannel channel = FileChannel.open(directory.resolve(String.format("changes-%020d.log", 0)),
+                    StandardOpenOption.WRITE)) {
+                ByteBuffer torn = ByteBuffer.allocate(16);
+                torn.putInt(60).putInt(12345).putLong(5).flip();
+                channel.write(torn, end);
+            }
+        }
+
+        try (ChangeLog log = new ChangeLog(directory, SEGMENT_BYTES, 10)) {
+            assertEquals(5, log.getEndOffset());
+            assertEquals(5, log.append(ChangeEvent.Type.USER, 0, "user5", null, null, ChangeEvent.NO_DAY, 0));
+            List<String> users = new ArrayList<>();
+            log.tail(0).read(event -> users.add(event.getKey() + "/" + event.getText()), 100);
+            assertEquals(List.of("user0/PATIENT", "user1/PATIENT", "user2/PATIENT", "user3/PATIENT",
+                "user4/PATIENT", "user5/null"), users);
+        }
+    }
+
+    @Test
+    void testCompactionDropsSupersededStockAndRetentionDropsOldSegments() throws Exception {
+        try (ChangeLog log = new ChangeLog(directory, SEGMENT_BYTES, 3)) {
+            for (int i = 0; i < 60; i++) {
+                log.append(ChangeEvent.Type.STOCK, 0, i % 2 == 0 ? "Aspirin" : "Ibuprofen", null, null,
+                    ChangeEvent.NO_DAY, i);
+            }
+            log.append(ChangeEvent.Type.PRESCRIPTION, 9, "patient1", "Aspirin", null, ChangeEvent.NO_DAY, 2);
+            log.maintain();
+
+            assertEquals(4, log.getSegmentCount(), "Three sealed segments and the active one");
+            assertTrue(log.getDeletedSegmentCount() > 0);
+            assertTrue(log.getCompactedCount() > 0);
+            ChangeLog.Reader reader = log.tail(0);
+            List<String> events = new ArrayList<>();
+            reader.read(event -> events.add(event.getType() + " " + event.getKey() + " " + event.getQuantity()), 1_000);
+            assertEquals(List.of("STOCK Aspirin 58", "STOCK Ibuprofen 59", "PRESCRIPTION patient1 2"),
+                events.subList(events.size() - 3, events.size()));
+            assertEquals(0, reader.getLag());
+            assertTrue(log.getStartOffset() > 0);
+        }
+    }
+
+    @Test
+    void testDatabaseWritesAreLoggedWithTheirIds() throws Exception {
+        DatabaseManager dbManager = new DatabaseManager(StorageConfig.inMemory().build());
+        try {
+            ChangeLog log = dbManager.enableChangeLog(directory.resolve("log"));
+            dbManager.addUser(new User("alice", "secret", "PATIENT"));
+            dbManager.addMedicine("Aspirin", 100);
+            dbManager.addAppointment(new Appointment("alice", "Dr. Smith", "2030-05-01", 2));
+            dbManager.addMedicalRecord("alice", "Flu", "Rest");
+            dbManager.addPrescription("alice", "Aspirin", 5);
+            dbManager.enableGroupCommit(GroupCommitWriter.DEFAULT_FLUSH_WINDOW_MICROS,
+                GroupCommitWriter.DEFAULT_MAX_BATCH_SIZE);
+            dbManager.insertPrescription("alice", "Aspirin", 1);
+            dbManager.disableGroupCommit();
+            List<MedicalRecord> records = new ArrayList<>();
+            for (int i = 0; i < 5; i++) {
+                records.add(new MedicalRecord("bob", "Cold " + i, "Tea"));
+            }
+            dbManager.addMedicalRecords(records, 2);
+            dbManager.addPrescriptions(List.of(new Prescription("bob", "Aspirin", 3),
+                new Prescription("carol", "Aspirin", 4)));
+            dbManager.restockMedicine("Aspirin", 50);
+            dbManager.applyInventoryDeltas(Map.of("Aspirin", -10), 0);
+
+            List<String> events = new ArrayList<>();
+            List<MedicalRecord> logged = new ArrayList<>();
+            log.tail(0).read(event -> {
+                events.add(event.getType() + " " + event.getKey() + " " + event.getQuantity());
+                if (event.getType() == ChangeEvent.Type.MEDICAL_RECORD) {
+                    logged.add(event.toMedicalRecord());
+                }
+            }, 1_000);
+            assertEquals(List.of("USER alice 0", "STOCK Aspirin 100", "APPOINTMENT alice 2",
+                "MEDICAL_RECORD alice 0", "PRESCRIPTION alice 5", "STOCK Aspirin 95", "PRESCRIPTION alice 1",
+                "MEDICAL_RECORD bob 0", "MEDICAL_RECORD bob 0", "MEDICAL_RECORD bob 0", "MEDICAL_RECORD bob 0",
+                "MEDICAL_RECORD bob 0", "PRESCRIPTION bob 3", "PRESCRIPTION carol 4", "STOCK Aspirin 88",
+                "STOCK Aspirin 138", "STOCK Aspirin 128"), events);
+
+            List<MedicalRecord> stored = dbManager.getAllMedicalRecords();
+            assertEquals(stored.size(), logged.size());
+            for (int i = 0; i < stored.size(); i++) {
+                assertEquals(stored.get(i).getId(), logged.get(i).getId());
+                assertEquals(stored.get(i).getDiagnosis(), logged.get(i).getDiagnosis());
+            }
+            List<Long> prescriptionIds = new ArrayList<>();
+            log.tail(0).read(event -> {
+                if (event.getType() == ChangeEvent.Type.PRESCRIPTION) {
+                    prescriptionIds.add(event.getRowId());
+                }
+            }, 1_000);
+            assertEquals(dbManager.getAllPrescriptions().stream().map(Prescription::getId).toList(), prescriptionIds);
+            assertEquals(0, log.getFailedAppendCount());
+        } finally {
+            dbManager.closeConnection();
+        }
+    }
+}
@@ -0,0 +1,131 @@
+import org.junit.jupiter.api.*;
+import static org.junit.jupiter.api.Assertions.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Test class for compact bulk loads and name interning using JUnit 5
+ */
+public class CompactLoadTest {
+    private Path dbFile;
+    private DatabaseManager dbManager;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        dbFile = Files.createTempFile("healthcare-compact", ".db");
+        dbManager = new DatabaseManager("jdbc:sqlite:" + dbFile, 2);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        dbManager.closeConnection();
+        Files.deleteIfExists(dbFile);
+        Files.deleteIfExists(Path.of(dbFile + "-wal"));
+        Files.deleteIfExists(Path.of(dbFile + "-shm"));
+    }
+
+    @Test
+    void testCompactLoadsMatchTheFullObjects() throws Exception {
+        dbManager.addAppointment(new Appointment("john", "Dr. Smith", "2025-03-03", 2));
+        dbManager.addAppointment(new Appointment("jane", "Dr. Smith", "2025-03-04"));
+        try (Statement stmt = dbManager.getConnection().createStatement()) {
+            stmt.execute("INSERT INTO appointments (patient_username, doctor_name) VALUES ('legacy', NULL)");
+        }
+        dbManager.addMedicalRecord("john", "Flu", "Rest");
+        dbManager.insertPrescription("jane", "Aspirin", 3);
+
+        NamePool names = dbManager.getNamePool();
+        List<CompactAppointment> appointments = dbManager.loadAppointments();
+        assertEquals(3, appointments.size());
+        CompactAppointment first = appointments.get(0);
+        assertEquals(LocalDate.of(2025, 3, 3), first.date());
+        assertEquals(2, first.slot());
+        assertEquals(first.doctor(), appointments.get(1).doctor(), "Repeated names share one id");
+        assertFalse(appointments.get(1).hasSlot());
+        assertNull(appointments.get(2).date());
+        assertEquals(NamePool.NONE, appointments.get(2).doctor());
+
+        List<Appointment> full = dbManager.getAllAppointments();
+        for (int i = 0; i < full.size(); i++) {
+            Appointment expected = full.get(i);
+            Appointment converted = appointments.get(i).toAppointment(names);
+            assertEquals(expected.getId(), converted.getId());
+            assertEquals(expected.getPatientUsername(), converted.getPatientUsername());
+            assertEquals(expected.getDoctorName(), converted.getDoctorName());
+            assertEquals(expected.getDate(), converted.getDate());
+            assertEquals(expected.getSlot(), converted.getSlot());
+        }
+
+        CompactMedicalRecord record = dbManager.loadMedicalRecords().get(0);
+        assertEquals("john", names.name(record.patient()));
+        assertEquals("Flu", record.toMedicalRecord(names).getDiagnosis());
+        CompactPrescription prescription = dbManager.loadPrescriptions().get(0);
+        assertEquals(new CompactPrescription(prescription.id(), names.id("jane"), names.id("Aspirin"), 3), prescription);
+        assertEquals("Aspirin", prescription.toPrescription(names).getMedicine());
+    }
+
+    @Test
+    void testLoadedObjectsShareNameAndDateInstances() throws Exception {
+        List<Appointment> appointments = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            appointments.add(new Appointment("john", "Dr. Smith", "2025-03-03", i));
+        }
+        dbManager.addAppointments(appointments);
+        dbManager.addMedicalRecord("john", "Flu", "Rest");
+
+        List<Appointment> loaded = dbManager.getAllAppointments();
+        for (Appointment appointment : loaded) {
+            assertSame(loaded.get(0).getPatientUsername(), appointment.getPatientUsername());
+            assertSame(loaded.get(0).getDoctorName(), appointment.getDoctorName());
+            assertSame(loaded.get(0).getDate(), appointment.getDate());
+        }
+        assertSame(loaded.get(0).getPatientUsername(),
+            dbManager.getPatientView("john").getMedicalRecords().get(0).getPatientUsername());
+    }
+
+    @Test
+    void testNamePoolHandsOutOneIdPerNameAcrossThreads() throws Exception {
+        NamePool pool = new NamePool();
+        assertEquals(NamePool.NONE, pool.id(null));
+        assertNull(pool.name(NamePool.NONE));
+        assertEquals(NamePool.NONE, pool.find("unknown"));
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<int[]>> results = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                results.add(executor.submit(() -> {
+                    int[] ids = new int[1_000];
+                    for (int i = 0; i < ids.length; i++) {
+                        ids[i] = pool.id("name" + i);
+                    }
+                    return ids;
+                }));
+            }
+            int[] expected = results.get(0).get();
+            Set<Integer> distinct = ConcurrentHashMap.newKeySet();
+            for (Future<int[]> result : results) {
+                assertArrayEquals(expected, result.get());
+            }
+            for (int i = 0; i < expected.length; i++) {
+                distinct.add(expected[i]);
+                assertEquals("name" + i, pool.name(expected[i]));
+            }
+            assertEquals(1_000, distinct.size());
+            assertEquals(1_000, pool.size());
+        } finally {
+            executor.shutdownNow();
+        }
+        String copy = new String("name7");
+        assertSame(pool.intern("name7"), pool.intern(copy));
+    }
+}
@@ -0,0 +1,91 @@
+import org.junit.jupiter.api.*;
+import static org.junit.jupiter.api.Assertions.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Test class for the pooled connection layer using JUnit 5
+ */
+public class ConnectionPoolTest {
+    private Path dbFile;
+    private DatabaseManager dbManager;
+    
+    @BeforeEach
+    void setUp() throws Exception {
+        dbFile = Files.createTempFile("healthcare-pool", ".db");
+        dbManager = new DatabaseManager("jdbc:sqlite:" + dbFile, 4);
+    }
+    
+    @AfterEach
+    void tearDown() throws Exception {
+        dbManager.closeConnection();
+        Files.deleteIfExists(dbFile);
+        Files.deleteIfExists(Path.of(dbFile + "-wal"));
+        Files.deleteIfExists(Path.of(dbFile + "-shm"));
+    }
+    
+    @Test
+    void testDatabaseRunsInWalMode() throws SQLException {
+        try (Statement stmt = dbManager.getConnection().createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA journal_mode")) {
+            assertTrue(rs.next());
+            assertEquals("wal", rs.getString(1).toLowerCase());
+        }
+    }
+    
+    @Test
+    void testConcurrentPrescriptionsKeepInventoryConsistent() throws Exception {
+        dbManager.addMedicine("Paracetamol", 10_000);
+        int threads = 8;
+        int perThread = 50;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    dbManager.addPrescription("patient", "Paracetamol", 1);
+                    assertTrue(dbManager.validateUser("admin", "admin123"));
+                    dbManager.getAllPrescriptions();
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get(60, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+        
+        assertEquals(10_000 - threads * perThread, dbManager.getMedicineInventory().get("Paracetamol"));
+        assertEquals(threads * perThread, dbManager.getAllPrescriptions().size());
+        
+        ConnectionPool.Stats stats = dbManager.getPoolStats();
+        assertEquals(5, stats.getTotalConnections());
+        assertEquals(0, stats.getReadersInUse());
+        assertEquals(0, stats.getTimeouts());
+        assertTrue(stats.getReadAcquisitions() >= threads * perThread * 2L);
+    }
+    
+    @Test
+    void testReaderConnectionsAreReadOnly() {
+        ConnectionPool pool = null;
+        try {
+            pool = new ConnectionPool("jdbc:sqlite:" + dbFile, 1);
+            ConnectionPool readOnly = pool;
+            assertThrows(SQLException.class, () -> readOnly.read(connection -> {
+                try (Statement stmt = connection.getConnection().createStatement()) {
+                    return stmt.executeUpdate("DELETE FROM users");
+                }
+            }));
+        } catch (SQLException e) {
+            fail(e);
+        } finally {
+            if (pool != null) {
+                pool.close();
+            }
+        }
+    }
+}
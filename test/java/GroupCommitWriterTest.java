@@ -0,0 +1,179 @@
+import org.junit.jupiter.api.*;
+import static org.junit.jupiter.api.Assertions.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.sqlite.SQLiteConfig;
+
+/**
+ * Test class for the group-commit write pipeline using JUnit 5
+ */
+public class GroupCommitWriterTest {
+    private Path dbFile;
+    private DatabaseManager dbManager;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        dbFile = Files.createTempFile("healthcare-group", ".db");
+        dbManager = new DatabaseManager("jdbc:sqlite:" + dbFile, 2);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        dbManager.closeConnection();
+        Files.deleteIfExists(dbFile);
+        Files.deleteIfExists(Path.of(dbFile + "-wal"));
+        Files.deleteIfExists(Path.of(dbFile + "-shm"));
+    }
+
+    @Test
+    void testConcurrentInsertsShareCommits() throws Exception {
+        dbManager.enableGroupCommit(5_000, 64);
+        ExecutorService executor = Executors.newFixedThreadPool(32);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 32; t++) {
+                int thread = t;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 25; i++) {
+                        dbManager.addMedicalRecord("patient" + thread, "Diagnosis " + i, "Treatment");
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        GroupCommitWriter writer = dbManager.getGroupCommitWriter();
+        assertEquals(800, dbManager.getAllMedicalRecords().size());
+        assertEquals(800, (long) (writer.getWritesPerCommit().getMean() * writer.getCommitCount() + 0.5));
+        assertEquals(writer.getCommitCount(), writer.getCommitLatencyNanos().getCount());
+        assertTrue(writer.getCommitCount() < 800, "writes should have been grouped");
+        assertTrue(writer.getWritesPerCommit().getMax() <= 64);
+    }
+
+    @Test
+    void testFailingWriteDoesNotSinkItsBatch() throws Exception {
+        ConnectionPool pool = new ConnectionPool("jdbc:sqlite:" + dbFile, 1);
+        try (GroupCommitWriter writer = new GroupCommitWriter(pool, 200_000, 3, 16)) {
+            CompletableFuture<Integer> first = writer.submit(insert("alice"));
+            CompletableFuture<Integer> broken = writer.submit(connection ->
+                connection.prepare("INSERT INTO no_such_table VALUES (1)").executeUpdate());
+            CompletableFuture<Integer> third = writer.submit(insert("bob"));
+
+            assertEquals(1, first.get(10, TimeUnit.SECONDS));
+            assertEquals(1, third.get(10, TimeUnit.SECONDS));
+            ExecutionException e = assertThrows(ExecutionException.class, () -> broken.get(10, TimeUnit.SECONDS));
+            assertInstanceOf(SQLException.class, e.getCause());
+            assertEquals(1, writer.getCommitCount());
+            assertEquals(3, writer.getWritesPerCommit().getMax());
+            assertEquals(1, writer.getFailedWriteCount());
+        } finally {
+            pool.close();
+        }
+        assertEquals(2, dbManager.getAllMedicalRecords().size());
+    }
+
+    @Test
+    void testWriteFailingOnlyBeforeARetriedCommitSucceeds() throws Exception {
+        Path rollbackJournalFile = Files.createTempFile("healthcare-group-retry", ".db");
+        StorageConfig config = StorageConfig.url("jdbc:sqlite:" + rollbackJournalFile).readers(1)
+            .journalMode(SQLiteConfig.JournalMode.DELETE).build();
+        ConnectionPool pool = new ConnectionPool(config, new Metrics());
+        Connection reader = DriverManager.getConnection("jdbc:sqlite:" + rollbackJournalFile);
+        try (GroupCommitWriter writer = new GroupCommitWriter(pool, 200_000, 2, 16)) {
+            pool.write(connection -> connection.prepare(
+                "CREATE TABLE medical_records (patient_username TEXT, diagnosis TEXT, treatment TEXT)").executeUpdate());
+            AtomicInteger attempts = new AtomicInteger();
+
+            // The first attempt fails and leaves a reader holding the lock the commit needs;
+            // the retry finds the lock free and succeeds
+            CompletableFuture<Integer> flaky = writer.submit(connection -> {
+                if (attempts.incrementAndGet() == 1) {
+                    try (Statement stmt = reader.createStatement()) {
+                        stmt.execute("BEGIN");
+                        stmt.executeQuery("SELECT COUNT(*) FROM medical_records").close();
+                    }
+                    throw new SQLException("Failed on the first attempt");
+                }
+                try (Statement stmt = reader.createStatement()) {
+                    stmt.execute("ROLLBACK");
+                }
+                return insert("alice").execute(connection);
+            });
+            CompletableFuture<Integer> steady = writer.submit(insert("bob"));
+
+            assertEquals(1, flaky.get(10, TimeUnit.SECONDS));
+            assertEquals(1, steady.get(10, TimeUnit.SECONDS));
+            assertEquals(2, attempts.get());
+            assertTrue(pool.getMetrics().getBusyRetries() > 0);
+            assertEquals(0, writer.getFailedWriteCount());
+            int rows = pool.read(connection -> {
+                ResultSet rs = connection.prepare("SELECT COUNT(*) FROM medical_records").executeQuery();
+                rs.next();
+                return rs.getInt(1);
+            });
+            assertEquals(2, rows);
+        } finally {
+            reader.close();
+            pool.close();
+            Files.deleteIfExists(rollbackJournalFile);
+            Files.deleteIfExists(Path.of(rollbackJournalFile + "-journal"));
+        }
+    }
+
+    @Test
+    void testClosedWriterRejectsWrites() throws Exception {
+        dbManager.enableGroupCommit(0, 16);
+        dbManager.addMedicalRecord("alice", "Flu", "Rest");
+        GroupCommitWriter writer = dbManager.getGroupCommitWriter();
+        dbManager.disableGroupCommit();
+
+        assertThrows(SQLException.class, () -> writer.execute(insert("bob")));
+        dbManager.addMedicalRecord("carol", "Cold", "Tea");
+        assertEquals(2, dbManager.getAllMedicalRecords().size());
+    }
+
+    @Test
+    void testHistogramPercentilesAreWithinBucketPrecision() {
+        Histogram histogram = new Histogram();
+        for (int i = 1; i <= 100_000; i++) {
+            histogram.record(i);
+        }
+        assertEquals(100_000, histogram.getCount());
+        assertEquals(100_000, histogram.getMax());
+        assertEquals(50_000.5, histogram.getMean(), 1e-9);
+        assertEquals(50_000, histogram.getPercentile(50), 50_000 * 0.04);
+        assertEquals(99_000, histogram.getPercentile(99), 99_000 * 0.04);
+        assertEquals(100_000, histogram.getPercentile(100));
+    }
+
+    private static ConnectionPool.SqlWork<Integer> insert(String patient) {
+        return connection -> {
+            PreparedStatement ps = connection.prepare(
+                "INSERT INTO medical_records (patient_username, diagnosis, treatment) VALUES (?, ?, ?)");
+            ps.setString(1, patient);
+            ps.setString(2, "Diagnosis");
+            ps.setString(3, "Treatment");
+            return ps.executeUpdate();
+        };
+    }
+}
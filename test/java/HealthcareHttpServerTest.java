@@ -0,0 +1,253 @@
+import org.junit.jupiter.api.*;
+import static org.junit.jupiter.api.Assertions.*;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+/**
+ * Test class for the embedded HTTP API using JUnit 5
+ */
+public class HealthcareHttpServerTest {
+    private Path journalDir;
+    private HealthcareSystem system;
+    private HealthcareHttpServer server;
+    private HttpClient client;
+    private String token;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        journalDir = Files.createTempDirectory("healthcare-http");
+        system = new HealthcareSystem(new DatabaseManager(StorageConfig.inMemory().build()), journalDir);
+        server = new HealthcareHttpServer(system, new InetSocketAddress("127.0.0.1", 0), 4, 2, 4, 500);
+        server.start();
+        client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        token = login("admin", "admin123");
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        server.close();
+        system.shutdown();
+        try (Stream<Path> files = Files.walk(journalDir)) {
+            for (Path path : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    @Test
+    void testRegisterLoginAndBook() throws Exception {
+        assertEquals(201, post("/patients", "{\"username\": \"alice\", \"password\": \"se\\\"cret\"}").statusCode());
+        assertEquals(409, post("/patients", "{\"username\":\"alice\",\"password\":\"x\"}").statusCode());
+        HttpResponse<String> signedIn = post("/login", "{\"username\":\"alice\",\"password\":\"se\\\"cret\"}");
+        assertEquals(200, signedIn.statusCode());
+        assertTrue(signedIn.body().contains("\"token\":") && signedIn.body().contains("\"role\":\"PATIENT\""),
+            signedIn.body());
+        HttpResponse<String> rejected = post("/login", "{\"username\":\"alice\",\"password\":\"wrong\"}");
+        assertEquals(401, rejected.statusCode());
+        assertFalse(rejected.body().contains("token"));
+
+        HttpResponse<String> booked = post("/appointments",
+            "{\"patient\":\"alice\",\"doctor\":\"Dr. Smith\",\"date\":\"2030-01-02\",\"slot\":3}");
+        assertEquals(201, booked.statusCode());
+        assertTrue(booked.body().contains("\"slot\":3"), booked.body());
+        HttpResponse<String> taken = post("/appointments",
+            "{\"patient\":\"bob\",\"doctor\":\"Dr. Smith\",\"date\":\"2030-01-02\",\"slot\":3}");
+        assertEquals(409, taken.statusCode());
+        assertTrue(taken.body().contains("SLOT_UNAVAILABLE"));
+        assertEquals(201, post("/appointments", "patient=bob&doctor=Dr.+Smith&date=2030-01-02",
+            "application/x-www-form-urlencoded").statusCode());
+        assertEquals(400, post("/appointments",
+            "{\"patient\":\"bob\",\"doctor\":\"Dr. Smith\",\"date\":\"tomorrow\"}").statusCode());
+
+        HttpResponse<String> forAlice = get("/appointments?patient=alice");
+        assertEquals(200, forAlice.statusCode());
+        assertTrue(forAlice.body().startsWith("[{\"id\":") && forAlice.body().endsWith("}]"), forAlice.body());
+        String all = get("/appointments").body();
+        assertEquals(2, all.split("\"id\":").length - 1, all);
+        assertEquals(2, get("/appointments?doctor=Dr.%20Smith&from=2030-01-01&to=2030-01-31").body()
+            .split("\"id\":").length - 1);
+    }
+
+    @Test
+    void testRecordsPrescriptionsAndInventory() throws Exception {
+        assertEquals(201, post("/records", "{\"patient\":\"alice\",\"diagnosis\":\"Flu\",\"treatment\":\"Rest\"}")
+            .statusCode());
+        assertEquals(201, post("/records", "{\"patient\":\"bob\",\"diagnosis\":\"Cold\",\"treatment\":null}")
+            .statusCode());
+        assertTrue(get("/records?q=flu").body().contains("\"patient_username\":\"alice\""));
+        assertEquals("[]", get("/records?patient=carol").body());
+        assertEquals(2, get("/records").body().split("\"id\":").length - 1);
+
+        assertEquals(409, post("/prescriptions", "{\"patient\":\"alice\",\"medicine\":\"Aspirin\",\"quantity\":1}")
+            .statusCode());
+        HttpResponse<String> restocked = post("/inventory", "{\"medicine\":\"Aspirin\",\"quantity\":10}");
+        assertEquals(200, restocked.statusCode());
+        assertEquals("{\"medicine\":\"Aspirin\",\"quantity\":10}", restocked.body());
+        assertEquals(201, post("/prescriptions", "{\"patient\":\"alice\",\"medicine\":\"Aspirin\",\"quantity\":4}")
+            .statusCode());
+        assertEquals("{\"Aspirin\":6}", get("/inventory").body());
+        assertTrue(get("/prescriptions?patient=alice").body().contains("\"quantity\":4"));
+        assertEquals(400, get("/prescriptions?patient=alice&limit=0").statusCode());
+    }
+
+    @Test
+    void testUnfilteredListingSpansSeveralPages() throws Exception {
+        List<MedicalRecord> records = new ArrayList<>();
+        for (int i = 0; i < HealthcareHttpServer.MAX_PAGE_SIZE + 50; i++) {
+            records.add(new MedicalRecord("patient" + i % 7, "Diagnosis " + i, "Treatment"));
+        }
+        assertTrue(system.addMedicalRecords(records).isAllSuccessful());
+
+        HttpResponse<String> all = get("/records");
+        assertEquals(200, all.statusCode());
+        assertTrue(all.body().startsWith("[{") && all.body().endsWith("}]"));
+        assertEquals(records.size(), all.body().split("\"id\":").length - 1);
+        assertTrue(all.body().contains("\"Diagnosis " + (records.size() - 1) + "\""));
+    }
+
+    @Test
+    void testUnknownRoutesAndStats() throws Exception {
+        assertEquals(404, get("/nothing").statusCode());
+        HttpResponse<String> wrongMethod = post("/stats", "{}");
+        assertEquals(405, wrongMethod.statusCode());
+        assertEquals("GET", wrongMethod.headers().firstValue("Allow").orElse(""));
+        assertEquals(400, post("/records", "{\"patient\":").statusCode());
+
+        get("/inventory");
+        get("/inventory");
+        // The latency is recorded once the response has gone out, so the client may see it first
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (server.getLatencyNanos("GET /inventory").getCount() < 2 && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(2, server.getLatencyNanos("GET /inventory").getCount());
+        String stats = get("/stats").body();
+        assertTrue(stats.contains("{\"endpoint\":\"GET /inventory\",\"requests\":2,"), stats);
+        assertTrue(stats.contains("\"client_errors\":1"), stats);
+    }
+
+    @Test
+    void testEveryEndpointButLoginWantsAToken() throws Exception {
+        String admin = token;
+        token = null;
+        HttpResponse<String> anonymous = get("/appointments");
+        assertEquals(401, anonymous.statusCode());
+        assertEquals("Bearer", anonymous.headers().firstValue("WWW-Authenticate").orElse(""));
+        assertEquals(401, post("/patients", "{\"username\":\"mallory\",\"password\":\"x\"}").statusCode());
+        assertEquals(401, get("/stats").statusCode());
+        token = "not-a-token";
+        assertEquals(401, get("/inventory").statusCode());
+
+        token = admin;
+        assertEquals(201, post("/patients", "{\"username\":\"alice\",\"password\":\"secret\"}").statusCode());
+        token = login("alice", "secret");
+        assertEquals(201, post("/appointments", "{\"patient\":\"alice\",\"doctor\":\"Dr. Smith\",\"date\":\"2030-01-02\"}")
+            .statusCode());
+        assertEquals(403, post("/appointments", "{\"patient\":\"bob\",\"doctor\":\"Dr. Smith\",\"date\":\"2030-01-02\"}")
+            .statusCode());
+        assertEquals(200, get("/appointments?patient=alice").statusCode());
+        assertEquals(403, get("/appointments?patient=bob").statusCode());
+        assertEquals(403, get("/appointments").statusCode(), "Patients cannot list everybody's appointments");
+        assertEquals(403, get("/records?q=flu").statusCode());
+        assertEquals(200, get("/records?q=flu&patient=alice").statusCode());
+        assertEquals(403, post("/records", "{\"patient\":\"alice\",\"diagnosis\":\"Fine\"}").statusCode());
+        assertEquals(403, get("/stats").statusCode());
+        assertEquals(200, get("/inventory").statusCode());
+
+        HealthcareHttpServer.Sessions expiring = new HealthcareHttpServer.Sessions(0);
+        String stale = expiring.issue("alice", "PATIENT");
+        assertNull(expiring.find(stale), "A token is not accepted after its TTL");
+        assertEquals(0, expiring.size());
+        HealthcareHttpServer.Sessions sessions = new HealthcareHttpServer.Sessions(60_000);
+        String fresh = sessions.issue("admin", "ADMIN");
+        assertNotEquals(fresh, sessions.issue("admin", "ADMIN"));
+        assertTrue(sessions.find(fresh).isAdmin());
+        assertNull(sessions.find(null));
+    }
+
+    @Test
+    void testAdmissionShedsWhenRunningAndWaitingAreFull() throws Exception {
+        HealthcareHttpServer.Admission lane = new HealthcareHttpServer.Admission(1, 1, 5_000);
+        assertTrue(lane.enter());
+        CountDownLatch waiting = new CountDownLatch(1);
+        AtomicBoolean admitted = new AtomicBoolean();
+        Thread waiter = new Thread(() -> {
+            waiting.countDown();
+            try {
+                admitted.set(lane.enter());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        waiter.start();
+        waiting.await();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (lane.getWaiting() == 0 && System.nanoTime() < deadline) {
+            Thread.onSpinWait();
+        }
+        assertEquals(1, lane.getWaiting());
+        assertFalse(lane.enter(), "The only waiting place is taken");
+        assertEquals(1, lane.getShedCount());
+        lane.exit();
+        waiter.join();
+        assertTrue(admitted.get(), "The waiting request gets the freed place");
+        assertEquals(1, lane.getRunning());
+
+        HealthcareHttpServer.Admission impatient = new HealthcareHttpServer.Admission(1, 4, 10);
+        assertTrue(impatient.enter());
+        assertFalse(impatient.enter(), "Gives up after its timeout");
+        assertEquals(0, impatient.getWaiting());
+    }
+
+    @Test
+    void testParsesFlatJsonObjects() {
+        Map<String, String> values = HealthcareHttpServer.parseJsonObject(
+            " { \"a\" : \"x\\ny\\u0041\", \"n\": -12.5, \"b\":true, \"z\": null } ");
+        assertEquals("x\nyA", values.get("a"));
+        assertEquals("-12.5", values.get("n"));
+        assertEquals("true", values.get("b"));
+        assertTrue(values.containsKey("z"));
+        assertNull(values.get("z"));
+        assertTrue(HealthcareHttpServer.parseJsonObject("{}").isEmpty());
+        assertThrows(IllegalArgumentException.class, () -> HealthcareHttpServer.parseJsonObject("{\"a\":{\"b\":1}}"));
+        assertThrows(IllegalArgumentException.class, () -> HealthcareHttpServer.parseJsonObject("{\"a\" 1}"));
+    }
+
+    private String login(String username, String password) throws Exception {
+        HttpResponse<String> response = post("/login",
+            "{\"username\":\"" + username + "\",\"password\":\"" + password + "\"}");
+        assertEquals(200, response.statusCode(), response.body());
+        return HealthcareHttpServer.parseJsonObject(response.body()).get("token");
+    }
+
+    private HttpResponse<String> get(String path) throws Exception {
+        return client.send(request(path).GET().build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpResponse<String> post(String path, String body) throws Exception {
+        return post(path, body, "application/json");
+    }
+
+    private HttpResponse<String> post(String path, String body, String contentType) throws Exception {
+        return client.send(request(path).header("Content-Type", contentType)
+            .POST(HttpRequest.BodyPublishers.ofString(body)).build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpRequest.Builder request(String path) {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + server.getPort() + path));
+        return token == null ? request : request.header("Authorization", "Bearer " + token);
+    }
+}
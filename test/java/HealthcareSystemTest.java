@@ -1,6 +1,5 @@
 import org.junit.jupiter.api.*;
 import static org.junit.jupiter.api.Assertions.*;
-import java.sql.SQLException;
 
 /**
  * Test class for Healthcare System using JUnit 5
@@ -85,13 +84,27 @@ public class HealthcareSystemTest {
             "Medicine inventory should be reduced after prescription");
     }
     
+    @Test
+    @Order(6)
+    void testInvalidBatchPrescriptionsFailAlone() {
+        String medicine = "BatchMed";
+        system.addMedicine(medicine, 10);
+        
+        BatchResult result = system.addPrescriptions(java.util.List.of(
+            new Prescription("testpatient", medicine, 4),
+            new Prescription("testpatient", medicine, 0),
+            new Prescription("testpatient", medicine, 3)));
+        
+        assertTrue(result.isSuccess(0));
+        assertFalse(result.isSuccess(1), "A quantity below 1 fails its own row");
+        assertTrue(result.isSuccess(2));
+        assertEquals(3, system.getMedicineInventory().get(medicine),
+            "Only the valid rows take stock");
+    }
+    
     @AfterAll
     static void tearDown() {
-        // Clean up test data if needed
-        try {
-            DatabaseManager.getInstance().getConnection().close();
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
+        // Flushes the inventory before the database is closed
+        system.shutdown();
     }
 } 
\ No newline at end of file
@@ -0,0 +1,180 @@
+import org.junit.jupiter.api.*;
+import static org.junit.jupiter.api.Assertions.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Test class for the in-memory inventory engine and its write-behind journal using JUnit 5
+ */
+public class InventoryEngineTest {
+    private Path dbFile;
+    private Path journalDir;
+    private DatabaseManager dbManager;
+    
+    @BeforeEach
+    void setUp() throws Exception {
+        dbFile = Files.createTempFile("healthcare-inventory", ".db");
+        journalDir = Files.createTempDirectory("healthcare-journal");
+        dbManager = new DatabaseManager("jdbc:sqlite:" + dbFile, 2);
+    }
+    
+    @AfterEach
+    void tearDown() throws Exception {
+        dbManager.closeConnection();
+        try (Stream<Path> files = Files.walk(journalDir)) {
+            for (Path path : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+        Files.deleteIfExists(dbFile);
+        Files.deleteIfExists(Path.of(dbFile + "-wal"));
+        Files.deleteIfExists(Path.of(dbFile + "-shm"));
+    }
+    
+    @Test
+    void testConcurrentDispensesNeverOverdraw() throws Exception {
+        InventoryEngine engine = new InventoryEngine(dbManager, journalDir, 5, false);
+        engine.setStock("Paracetamol", 1_000);
+        AtomicInteger granted = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < 16; t++) {
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < 100; i++) {
+                    if (engine.tryDispense("Paracetamol", 1)) {
+                        granted.incrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+        engine.close();
+        
+        assertEquals(1_000, granted.get());
+        assertEquals(600, engine.getRejectedCount());
+        assertEquals(0, engine.getStock("Paracetamol"));
+        assertEquals(0, dbManager.getMedicineInventory().get("Paracetamol"));
+    }
+    
+    @Test
+    void testUnknownMedicineIsRejected() throws Exception {
+        try (InventoryEngine engine = new InventoryEngine(dbManager, journalDir, 0, false)) {
+            assertFalse(engine.tryDispense("Unobtainium", 1));
+            assertNull(engine.getStock("Unobtainium"));
+        }
+    }
+    
+    @Test
+    void testWritesAreCoalescedIntoOneFlush() throws Exception {
+        InventoryEngine engine = new InventoryEngine(dbManager, journalDir, 0, true);
+        engine.setStock("Aspirin", 100);
+        engine.setStock("Ibuprofen", 100);
+        for (int i = 0; i < 10; i++) {
+            assertTrue(engine.tryDispense("Aspirin", 2));
+            assertTrue(engine.tryDispense("Ibuprofen", 1));
+        }
+        assertEquals(100, dbManager.getMedicineInventory().get("Aspirin"), "Nothing is written before a flush");
+        
+        long updatesBefore = engine.getFlushedUpdateCount();
+        engine.flush();
+        
+        assertEquals(2, engine.getFlushedUpdateCount() - updatesBefore, "One UPDATE per medicine");
+        assertEquals(80, dbManager.getMedicineInventory().get("Aspirin"));
+        assertEquals(90, dbManager.getMedicineInventory().get("Ibuprofen"));
+        engine.close();
+    }
+    
+    @Test
+    void testJournalIsReplayedAfterCrash() throws Exception {
+        InventoryEngine engine = new InventoryEngine(dbManager, journalDir, 0, true);
+        engine.setStock("Aspirin", 50);
+        assertTrue(engine.tryDispense("Aspirin", 5));
+        assertTrue(engine.tryDispense("Aspirin", 7));
+        engine.flush();
+        assertTrue(engine.tryDispense("Aspirin", 3));
+        engine.abandon();
+        assertEquals(38, dbManager.getMedicineInventory().get("Aspirin"), "Last dispense was never flushed");
+        
+        InventoryEngine recovered = new InventoryEngine(dbManager, journalDir, 0, true);
+        
+        assertEquals(35, dbManager.getMedicineInventory().get("Aspirin"));
+        assertEquals(35, recovered.getStock("Aspirin"));
+        recovered.close();
+        
+        // Replayed segments are checkpointed and not applied twice
+        new InventoryEngine(dbManager, journalDir, 0, true).close();
+        assertEquals(35, dbManager.getMedicineInventory().get("Aspirin"));
+    }
+    
+    @Test
+    void testFailedFlushIsRetriedWithoutNewSegments() throws Exception {
+        InventoryEngine engine = new InventoryEngine(dbManager, journalDir, 0, true);
+        engine.setStock("Aspirin", 50);
+        assertTrue(engine.tryDispense("Aspirin", 5));
+        dbManager.closeConnection();
+        long segments = countSegments();
+        for (int i = 0; i < 5; i++) {
+            assertTrue(engine.tryDispense("Aspirin", 1));
+            assertThrows(java.sql.SQLException.class, engine::flush);
+        }
+        assertEquals(5, engine.getFlushFailureCount());
+        assertTrue(countSegments() <= segments + 1, "Failed flushes do not keep rotating the journal");
+        engine.abandon();
+        
+        dbManager = new DatabaseManager("jdbc:sqlite:" + dbFile, 2);
+        InventoryEngine recovered = new InventoryEngine(dbManager, journalDir, 0, true);
+        assertEquals(40, recovered.getStock("Aspirin"), "Nothing recorded during the outage is lost");
+        recovered.close();
+    }
+    
+    @Test
+    void testBackgroundFlusherStopsOnceTheDatabaseIsClosed() throws Exception {
+        InventoryEngine engine = new InventoryEngine(dbManager, journalDir, 5, true);
+        engine.setStock("Aspirin", 50);
+        dbManager.closeConnection();
+        assertTrue(engine.tryDispense("Aspirin", 5));
+        Thread.sleep(300);
+        
+        assertEquals(1, engine.getFlushFailureCount(), "The flusher gives up instead of retrying a closed database");
+        engine.abandon();
+        
+        dbManager = new DatabaseManager("jdbc:sqlite:" + dbFile, 2);
+        InventoryEngine recovered = new InventoryEngine(dbManager, journalDir, 0, true);
+        assertEquals(45, recovered.getStock("Aspirin"), "The journal keeps what was not flushed");
+        recovered.close();
+    }
+    
+    @Test
+    void testJournalLivesNextToTheDatabaseFile() throws Exception {
+        assertEquals(Path.of("data", "clinic-journal"),
+            HealthcareSystem.journalDirOf(StorageConfig.file(Path.of("data", "clinic.db")).build()));
+        assertNull(HealthcareSystem.journalDirOf(StorageConfig.inMemory().build()));
+        
+        DatabaseManager memory = new DatabaseManager(StorageConfig.inMemory().build());
+        try {
+            InventoryEngine engine = new InventoryEngine(memory, null, 0, true);
+            engine.setStock("Aspirin", 10);
+            assertTrue(engine.tryDispense("Aspirin", 4));
+            engine.close();
+            assertEquals(6, memory.getMedicineInventory().get("Aspirin"), "Write-behind works without a journal");
+        } finally {
+            memory.closeConnection();
+        }
+    }
+    
+    private long countSegments() throws Exception {
+        try (Stream<Path> files = Files.list(journalDir)) {
+            return files.count();
+        }
+    }
+}
@@ -0,0 +1,233 @@
+import org.junit.jupiter.api.*;
+import static org.junit.jupiter.api.Assertions.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Stream;
+
+/**
+ * Test class for low-stock events, the reorder planner and additive restocks using JUnit 5
+ */
+public class InventoryEventsTest {
+    private Path journalDir;
+    private DatabaseManager dbManager;
+    private HealthcareSystem system;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        journalDir = Files.createTempDirectory("healthcare-journal");
+        dbManager = new DatabaseManager(StorageConfig.inMemory().build());
+        system = new HealthcareSystem(dbManager, journalDir);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        system.shutdown();
+        try (Stream<Path> files = Files.walk(journalDir)) {
+            for (Path path : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    @Test
+    void testDispensesRaiseLowStockOnceAndRestockClearsIt() throws Exception {
+        InventoryEvents events = system.getInventoryEvents();
+        events.setThreshold("Aspirin", 5);
+        system.addMedicine("Aspirin", 8);
+        RingBuffer<InventoryEvent> queue = events.subscribe(16);
+
+        assertTrue(system.addPrescription("john", "Aspirin", 2));
+        assertNull(queue.poll(), "6 is still above the threshold");
+        assertTrue(system.addPrescription("john", "Aspirin", 2));
+        assertTrue(system.addPrescription("john", "Aspirin", 3));
+        InventoryEvent low = queue.poll();
+        assertEquals(InventoryEvent.Type.LOW_STOCK, low.getType());
+        assertEquals("Aspirin", low.getMedicine());
+        assertEquals(4, low.getQuantity());
+        assertEquals(5, low.getThreshold());
+        assertNull(queue.poll(), "Only the crossing raises an event");
+        assertFalse(system.addPrescription("john", "Aspirin", 2), "The engine never goes negative");
+
+        system.restockMedicine("Aspirin", 10);
+        assertEquals(11, system.getInventory().getStock("Aspirin"));
+        assertEquals(InventoryEvent.Type.RESTOCKED, queue.poll().getType());
+        system.getInventory().flush();
+        assertEquals(11, dbManager.getMedicineInventory().get("Aspirin"));
+    }
+
+    @Test
+    void testUncheckedDecrementRaisesNegativeStockAndRestockAdds() throws Exception {
+        InventoryEvents events = dbManager.getInventoryEvents();
+        RingBuffer<InventoryEvent> queue = events.subscribe(16);
+        dbManager.addMedicine("Ibuprofen", 12);
+
+        dbManager.addPrescription("john", "Ibuprofen", 15);
+        assertEquals(InventoryEvent.Type.LOW_STOCK, queue.poll().getType());
+        InventoryEvent negative = queue.poll();
+        assertEquals(InventoryEvent.Type.NEGATIVE_STOCK, negative.getType());
+        assertEquals(-3, negative.getQuantity());
+        dbManager.addPrescription("john", "Unstocked", 1);
+        assertNull(queue.poll());
+
+        assertEquals(2, dbManager.restockMedicine("Ibuprofen", 5));
+        assertEquals(22, dbManager.restockMedicine("Ibuprofen", 20));
+        assertEquals(InventoryEvent.Type.RESTOCKED, queue.poll().getType());
+        assertEquals(7, dbManager.restockMedicine("Paracetamol", 7), "A new medicine is registered");
+        assertEquals(22, dbManager.getMedicineInventory().get("Ibuprofen"));
+        dbManager.addMedicine("Ibuprofen", 1);
+        assertEquals(1, dbManager.getMedicineInventory().get("Ibuprofen"), "addMedicine still sets the level");
+        assertThrows(IllegalArgumentException.class, () -> dbManager.restockMedicine("Ibuprofen", 0));
+    }
+
+    @Test
+    void testBatchDecrementRaisesOneEventPerMedicine() throws Exception {
+        RingBuffer<InventoryEvent> queue = dbManager.getInventoryEvents().subscribe(16);
+        dbManager.addMedicine("Ibuprofen", 12);
+        dbManager.addMedicine("Aspirin", 50);
+        List<Prescription> batch = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            batch.add(new Prescription("john", "Ibuprofen", 5));
+            batch.add(new Prescription("john", "Aspirin", 1));
+        }
+        assertEquals(6, dbManager.addPrescriptions(batch, 2).getSuccessCount());
+        InventoryEvent low = queue.poll();
+        assertEquals(InventoryEvent.Type.LOW_STOCK, low.getType());
+        assertEquals("Ibuprofen", low.getMedicine());
+        assertEquals(-3, low.getQuantity(), "Raised once for the whole batch, from the level after it");
+        assertEquals(InventoryEvent.Type.NEGATIVE_STOCK, queue.poll().getType());
+        assertNull(queue.poll(), "Aspirin stays above its threshold");
+
+        DatabaseManager sharded = new DatabaseManager(StorageConfig.inMemory().shards(2).build());
+        try {
+            RingBuffer<InventoryEvent> shardedQueue = sharded.getInventoryEvents().subscribe(16);
+            sharded.addMedicine("Ibuprofen", 12);
+            List<Prescription> patients = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                patients.add(new Prescription("patient" + i, "Ibuprofen", 1));
+            }
+            assertEquals(4, sharded.addPrescriptions(patients, 1).getSuccessCount());
+            InventoryEvent shardedLow = shardedQueue.poll();
+            assertEquals(InventoryEvent.Type.LOW_STOCK, shardedLow.getType());
+            assertEquals(8, shardedLow.getQuantity());
+            assertNull(shardedQueue.poll());
+        } finally {
+            sharded.closeConnection();
+        }
+    }
+
+    @Test
+    void testPlannerOpensOneReorderPerMedicineAndRestockClosesIt() throws Exception {
+        InventoryEvents events = system.getInventoryEvents();
+        events.setThreshold("Aspirin", 10);
+        ReorderPlanner planner = new ReorderPlanner(events, 64, false);
+        try {
+            planner.setParLevel("Aspirin", 50);
+            system.addMedicine("Aspirin", 20);
+            system.addMedicine("Insulin", 30);
+            assertEquals(2, planner.drain(), "Stocking a new medicine raises RESTOCKED");
+            system.addPrescription("john", "Aspirin", 12);
+            system.addPrescription("john", "Insulin", 25);
+            assertEquals(2, planner.drain());
+
+            ReorderPlanner.Reorder aspirin = planner.getOpenReorder("Aspirin");
+            assertEquals(42, aspirin.getQuantity(), "Refills to the par level");
+            assertEquals(InventoryEvent.Type.LOW_STOCK, aspirin.getTrigger().getType());
+            assertEquals(InventoryEvents.DEFAULT_THRESHOLD * ReorderPlanner.DEFAULT_PAR_MULTIPLE - 5,
+                planner.getOpenReorder("Insulin").getQuantity());
+            assertEquals(2, planner.getOpenReorders().size());
+
+            system.restockMedicine("Aspirin", aspirin.getQuantity());
+            planner.drain();
+            assertNull(planner.getOpenReorder("Aspirin"));
+            assertEquals(50, system.getInventory().getStock("Aspirin"));
+        } finally {
+            planner.close();
+        }
+
+        // The system's own planner runs on its thread
+        ReorderPlanner running = system.getReorderPlanner();
+        await(() -> running.getOpenReorder("Aspirin") == null && running.getOpenReorder("Insulin") != null);
+        assertEquals(1, system.fulfilReorders());
+        await(() -> running.getOpenReorders().isEmpty());
+        assertEquals(30, system.getInventory().getStock("Insulin"));
+    }
+
+    @Test
+    void testFullQueueDropsEventsWithoutBlockingWriters() throws Exception {
+        InventoryEvents events = new InventoryEvents();
+        RingBuffer<InventoryEvent> queue = events.subscribe(2);
+        for (int i = 0; i < 5; i++) {
+            events.onChange("Medicine " + i, 20, 0);
+        }
+        assertEquals(2, queue.size());
+        assertEquals(2, events.getPublishedCount());
+        assertEquals(3, events.getDroppedCount());
+        assertEquals("Medicine 0", queue.poll().getMedicine());
+        events.unsubscribe(queue);
+        events.onChange("Medicine 9", 20, 0);
+        assertEquals(1, queue.size());
+    }
+
+    @Test
+    void testRingBufferDeliversEveryItemOnceAcrossProducers() throws Exception {
+        RingBuffer<Integer> buffer = new RingBuffer<>(100);
+        assertEquals(128, buffer.capacity());
+        int producers = 4;
+        int perProducer = 50_000;
+        ExecutorService executor = Executors.newFixedThreadPool(producers);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            for (int p = 0; p < producers; p++) {
+                int base = p * perProducer;
+                executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < perProducer; i++) {
+                        while (!buffer.offer(base + i)) {
+                            Thread.onSpinWait();
+                        }
+                    }
+                    return null;
+                });
+            }
+            start.countDown();
+            boolean[] seen = new boolean[producers * perProducer];
+            int[] last = new int[producers];
+            Arrays.fill(last, -1);
+            List<String> errors = new ArrayList<>();
+            int received = 0;
+            while (received < seen.length) {
+                Integer item = buffer.poll();
+                if (item == null) {
+                    Thread.onSpinWait();
+                    continue;
+                }
+                if (seen[item] || item % perProducer <= last[item / perProducer]) {
+                    errors.add("out of order or duplicate: " + item);
+                }
+                seen[item] = true;
+                last[item / perProducer] = item % perProducer;
+                received++;
+            }
+            assertTrue(errors.isEmpty(), errors.toString());
+            assertNull(buffer.poll());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "Timed out");
+            Thread.sleep(5);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+import org.junit.jupiter.api.*;
+import static org.junit.jupiter.api.Assertions.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Statement;
+import java.util.List;
+
+/**
+ * Test class for full-text search over medical records using JUnit 5
+ */
+public class MedicalRecordSearchTest {
+    private Path dbFile;
+    private DatabaseManager dbManager;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        dbFile = Files.createTempFile("healthcare-search", ".db");
+        dbManager = new DatabaseManager("jdbc:sqlite:" + dbFile, 2);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        dbManager.closeConnection();
+        Files.deleteIfExists(dbFile);
+        Files.deleteIfExists(Path.of(dbFile + "-wal"));
+        Files.deleteIfExists(Path.of(dbFile + "-shm"));
+    }
+
+    @Test
+    void testSearchStaysInSyncWithInserts() throws Exception {
+        assertTrue(dbManager.searchMedicalRecords("migraine", null, 0, 10).isEmpty());
+        dbManager.addMedicalRecord("john", "Migraine", "Dark room and rest");
+        dbManager.addMedicalRecords(List.of(new MedicalRecord("jane", "Chronic migraine", "Triptans"),
+            new MedicalRecord("jane", "Sprained ankle", "Ice")));
+
+        assertEquals(2, dbManager.searchMedicalRecords("migraine", null, 0, 10).size());
+        assertEquals(List.of("Ice"), treatments(dbManager.searchMedicalRecords("ankle", null, 0, 10)));
+        assertEquals(List.of("Dark room and rest"),
+            treatments(dbManager.searchMedicalRecords("REST", null, 0, 10)), "Matching is case-insensitive");
+        assertEquals(List.of("Ice"), treatments(dbManager.searchMedicalRecords("sprains", null, 0, 10)),
+            "Words are matched on their stem");
+    }
+
+    @Test
+    void testRankingPrefixAndPatientFilter() throws Exception {
+        dbManager.addMedicalRecord("john", "Sprained wrist", "Brace, follow up if headaches persist");
+        dbManager.addMedicalRecord("john", "Tension headache", "Ibuprofen");
+        dbManager.addMedicalRecord("jane", "Headache", "Hydration");
+        dbManager.addMedicalRecord("jane", "Head lice", "Permethrin");
+
+        List<MedicalRecord> ranked = dbManager.searchMedicalRecords("headache", null, 0, 10);
+        assertEquals(3, ranked.size());
+        assertEquals("Sprained wrist", ranked.get(2).getDiagnosis(),
+            "A match in the diagnosis ranks above one in the treatment");
+
+        assertEquals(4, dbManager.searchMedicalRecords("head*", null, 0, 10).size());
+        assertEquals(1, dbManager.searchMedicalRecords("head", null, 0, 10).size());
+        assertEquals(List.of("Tension headache", "Sprained wrist"),
+            diagnoses(dbManager.searchMedicalRecords("headache", "john", 0, 10)));
+        assertEquals(List.of("Tension headache"),
+            diagnoses(dbManager.searchMedicalRecords("headache tension", "john", 0, 10)),
+            "Every word has to match");
+        assertTrue(dbManager.searchMedicalRecords("headache", "nobody", 0, 10).isEmpty());
+    }
+
+    @Test
+    void testPaginationAndQuerySyntax() throws Exception {
+        for (int i = 0; i < 25; i++) {
+            dbManager.addMedicalRecord("john", "Follow-up visit " + i, "Rest");
+        }
+        List<Long> all = ids(dbManager.searchMedicalRecords("visit", "john", 0, 100));
+        assertEquals(25, all.size());
+        assertEquals(all.subList(0, 10), ids(dbManager.searchMedicalRecords("visit", "john", 0, 10)));
+        assertEquals(all.subList(20, 25), ids(dbManager.searchMedicalRecords("visit", "john", 20, 10)));
+
+        assertEquals("\"follow\" \"up\"*", DatabaseManager.toMatchQuery("follow-up*"));
+        assertEquals("\"visit\" \"OR\" \"rest\"", DatabaseManager.toMatchQuery("visit\" OR (rest"));
+        assertNull(DatabaseManager.toMatchQuery(" *-\"() "));
+        assertTrue(dbManager.searchMedicalRecords(" * ", null, 0, 10).isEmpty());
+        assertEquals(25, dbManager.searchMedicalRecords("\"visit (rest:", null, 0, 100).size(),
+            "Quotes and brackets in the input are not parsed as FTS5 syntax");
+        assertTrue(dbManager.searchMedicalRecords("visit OR nothing", null, 0, 100).isEmpty(),
+            "OR is searched as a plain word");
+    }
+
+    @Test
+    void testMigrationIndexesExistingRecords() throws Exception {
+        dbManager.addMedicalRecord("john", "Asthma", "Inhaler");
+        try (Statement stmt = dbManager.getConnection().createStatement()) {
+            // Back to schema version 7, then a record written without the index
+            for (String trigger : new String[] {"insert", "delete", "update"}) {
+                stmt.execute("DROP TRIGGER medical_records_fts_" + trigger);
+            }
+            stmt.execute("DROP TABLE medical_records_fts");
+            stmt.execute("DELETE FROM schema_version WHERE version >= 8");
+            stmt.execute("INSERT INTO medical_records (patient_username, diagnosis, treatment) "
+                + "VALUES ('jane', 'Asthma attack', 'Nebulizer')");
+        }
+        dbManager.closeConnection();
+
+        dbManager = new DatabaseManager("jdbc:sqlite:" + dbFile, 2);
+        assertEquals(List.of("Inhaler", "Nebulizer"),
+            treatments(dbManager.searchMedicalRecords("asthma", null, 0, 10)).stream().sorted().toList());
+    }
+
+    private static List<Long> ids(List<MedicalRecord> records) {
+        return records.stream().map(MedicalRecord::getId).toList();
+    }
+
+    private static List<String> diagnoses(List<MedicalRecord> records) {
+        return records.stream().map(MedicalRecord::getDiagnosis).toList();
+    }
+
+    private static List<String> treatments(List<MedicalRecord> records) {
+        return records.stream().map(MedicalRecord::getTreatment).toList();
+    }
+}
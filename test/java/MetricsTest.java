@@ -0,0 +1,154 @@
+import org.junit.jupiter.api.*;
+import static org.junit.jupiter.api.Assertions.*;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+
+/**
+ * Test class for the database metrics and their JMX view using JUnit 5
+ */
+public class MetricsTest {
+    private Path dbFile;
+    private DatabaseManager dbManager;
+    private Metrics metrics;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        dbFile = Files.createTempFile("healthcare-metrics", ".db");
+        dbManager = new DatabaseManager("jdbc:sqlite:" + dbFile, 2);
+        metrics = dbManager.getMetrics();
+        metrics.reset();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        dbManager.closeConnection();
+        Files.deleteIfExists(dbFile);
+        Files.deleteIfExists(Path.of(dbFile + "-wal"));
+        Files.deleteIfExists(Path.of(dbFile + "-shm"));
+    }
+
+    @Test
+    void testOperationsAreTimedAndRowsCounted() throws Exception {
+        dbManager.addMedicine("Aspirin", 100);
+        dbManager.addAppointment(new Appointment("john", "Dr. Smith", "2024-03-15", 0));
+        dbManager.addAppointment(new Appointment("john", "Dr. Smith", "2024-03-15", 1));
+        dbManager.addPrescription("john", "Aspirin", 2);
+        assertEquals(2, dbManager.getAllAppointments().size());
+        assertEquals(2, dbManager.getPatientView("john").getAppointments().size());
+        assertTrue(dbManager.validateUser("admin", "admin123"));
+
+        assertEquals(2, metrics.getLatencyNanos(Metrics.Operation.ADD_APPOINTMENT).getCount());
+        assertEquals(1, metrics.getLatencyNanos(Metrics.Operation.ADD_PRESCRIPTION).getCount());
+        assertEquals(1, metrics.getLatencyNanos(Metrics.Operation.VALIDATE_USER).getCount());
+        assertTrue(metrics.getLatencyNanos(Metrics.Operation.VALIDATE_USER).getMax() > 0);
+        // medicine + 2 appointments + prescription row and its stock update
+        assertEquals(5, metrics.getRowsWritten());
+        // 2 appointments, then a view of 2 appointments and 1 prescription, then the password hash
+        assertEquals(6, metrics.getRowsRead());
+        assertEquals(0, metrics.getRollbacks());
+
+        String dump = metrics.dump();
+        assertTrue(dump.contains("addPrescription"), dump);
+        assertTrue(dump.contains("validateUser"), dump);
+        assertFalse(dump.contains("getAllMedicalRecords"), dump);
+    }
+
+    @Test
+    void testFailuresAndRollbacksAreCounted() throws Exception {
+        dbManager.addAppointment(new Appointment("john", "Dr. Smith", "2024-03-15", 0));
+        assertThrows(SQLException.class, () ->
+            dbManager.addAppointment(new Appointment("jane", "Dr. Smith", "2024-03-15", 0)));
+        BatchResult result = dbManager.addAppointments(List.of(
+            new Appointment("jane", "Dr. Smith", "2024-03-16", 0),
+            new Appointment("mary", "Dr. Smith", "2024-03-16", 0)));
+
+        assertEquals(2, result.getFailureCount());
+        assertEquals(1, metrics.getErrors(Metrics.Operation.ADD_APPOINTMENT));
+        assertEquals(1, metrics.getErrors(Metrics.Operation.ADD_APPOINTMENTS));
+        assertEquals(1, metrics.getRollbacks());
+        assertEquals(1, metrics.getRowsWritten());
+        assertTrue(metrics.dump().contains("last error in addAppointment"));
+    }
+
+    @Test
+    void testLockedDatabaseIsRetried() throws Exception {
+        try (Connection other = DriverManager.getConnection("jdbc:sqlite:" + dbFile);
+             Statement stmt = other.createStatement()) {
+            stmt.execute("BEGIN EXCLUSIVE");
+            CompletableFuture<Void> write = CompletableFuture.runAsync(() -> {
+                try {
+                    dbManager.addMedicalRecord("john", "Flu", "Rest");
+                } catch (SQLException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            Thread.sleep(700);
+            stmt.execute("COMMIT");
+            write.get(10, TimeUnit.SECONDS);
+        }
+        assertTrue(metrics.getBusyRetries() >= 1, "busy retries: " + metrics.getBusyRetries());
+        assertTrue(metrics.getBusyWaitMillis() > 0);
+        assertEquals(0, metrics.getErrors(Metrics.Operation.ADD_MEDICAL_RECORD));
+        assertEquals(1, dbManager.getAllMedicalRecords().size());
+    }
+
+    @Test
+    void testMetricsAreExposedOverJmx() throws Exception {
+        String name = Metrics.OBJECT_NAME + ",name=test";
+        metrics.register(name);
+        try {
+            dbManager.addMedicalRecord("john", "Flu", "Rest");
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName(name);
+
+            assertEquals(1L, server.getAttribute(objectName, "RowsWritten"));
+            CompositeData[] operations = (CompositeData[]) server.getAttribute(objectName, "Operations");
+            assertEquals(1, operations.length);
+            assertEquals("addMedicalRecord", operations[0].get("name"));
+            assertEquals(1L, operations[0].get("calls"));
+            String dump = (String) server.invoke(objectName, "dump", null, null);
+            assertTrue(dump.contains("addMedicalRecord"), dump);
+        } finally {
+            metrics.unregister();
+        }
+        assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(new ObjectName(name)));
+    }
+
+    @Test
+    void testRecordingDoesNotAllocate() {
+        com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assumptions.assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+        Metrics fresh = new Metrics();
+        fresh.setSlowThresholdMillis(Long.MAX_VALUE / 1_000_000);
+        record(fresh, 50_000);
+
+        long thread = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(thread);
+        record(fresh, 100_000);
+        long allocated = threads.getThreadAllocatedBytes(thread) - before;
+
+        assertEquals(150_000, fresh.getLatencyNanos(Metrics.Operation.GET_PATIENT_VIEW).getCount());
+        assertTrue(allocated < 16_384, "allocated " + allocated + " bytes");
+    }
+
+    private static void record(Metrics metrics, int calls) {
+        for (int i = 0; i < calls; i++) {
+            long start = metrics.start();
+            metrics.addRowsRead(3);
+            metrics.record(Metrics.Operation.GET_PATIENT_VIEW, start);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+import org.junit.jupiter.api.*;
+import static org.junit.jupiter.api.Assertions.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Test class for the paged and filtered query API using JUnit 5
+ */
+public class PagedQueryTest {
+    private Path dbFile;
+    private DatabaseManager dbManager;
+    
+    @BeforeEach
+    void setUp() throws Exception {
+        dbFile = Files.createTempFile("healthcare-paging", ".db");
+        dbManager = new DatabaseManager("jdbc:sqlite:" + dbFile, 2);
+        
+        List<Appointment> appointments = new ArrayList<>();
+        List<MedicalRecord> records = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            String patient = i % 2 == 0 ? "alice" : "bob";
+            String doctor = i % 5 == 0 ? "Dr. Smith" : "Dr. Jones";
+            appointments.add(new Appointment(patient, doctor, LocalDate.of(2024, 3, 1).plusDays(i).toString()));
+            records.add(new MedicalRecord(patient, "Diagnosis " + i, "Treatment " + i));
+        }
+        dbManager.addAppointments(appointments);
+        dbManager.addMedicalRecords(records);
+    }
+    
+    @AfterEach
+    void tearDown() throws Exception {
+        dbManager.closeConnection();
+        Files.deleteIfExists(dbFile);
+        Files.deleteIfExists(Path.of(dbFile + "-wal"));
+        Files.deleteIfExists(Path.of(dbFile + "-shm"));
+    }
+    
+    @Test
+    void testPatientAppointmentsArePagedByKeyset() throws SQLException {
+        List<Appointment> seen = new ArrayList<>();
+        long afterId = 0;
+        List<Appointment> page;
+        do {
+            page = dbManager.getAppointmentsForPatient("alice", afterId, 5);
+            assertTrue(page.size() <= 5);
+            seen.addAll(page);
+            if (!page.isEmpty()) {
+                afterId = page.get(page.size() - 1).getId();
+            }
+        } while (page.size() == 5);
+        
+        assertEquals(13, seen.size());
+        assertTrue(seen.stream().allMatch(app -> app.getPatientUsername().equals("alice")));
+        for (int i = 1; i < seen.size(); i++) {
+            assertTrue(seen.get(i).getId() > seen.get(i - 1).getId(), "Pages should be in id order");
+        }
+    }
+    
+    @Test
+    void testDoctorAppointmentsAreFilteredByDateRange() throws SQLException {
+        List<Appointment> march = dbManager.getAppointmentsForDoctor(
+            "Dr. Smith", LocalDate.of(2024, 3, 1), LocalDate.of(2024, 3, 16));
+        
+        assertEquals(List.of("2024-03-01", "2024-03-06", "2024-03-11", "2024-03-16"),
+            march.stream().map(Appointment::getDate).toList());
+    }
+    
+    @Test
+    void testPatientMedicalRecordsArePaged() throws SQLException {
+        List<MedicalRecord> first = dbManager.getMedicalRecordsForPatient("bob", 0, 10);
+        List<MedicalRecord> second = dbManager.getMedicalRecordsForPatient("bob", first.get(9).getId(), 10);
+        
+        assertEquals(10, first.size());
+        assertEquals(2, second.size());
+        assertTrue(second.stream().allMatch(record -> record.getPatientUsername().equals("bob")));
+    }
+    
+    @Test
+    void testWholeTableIsPagedAcrossShards() throws SQLException {
+        DatabaseManager sharded = new DatabaseManager(StorageConfig.inMemory().shards(3).build());
+        try {
+            List<MedicalRecord> records = new ArrayList<>();
+            for (int i = 0; i < 25; i++) {
+                records.add(new MedicalRecord("patient" + i, "Diagnosis " + i, "Treatment " + i));
+            }
+            sharded.addMedicalRecords(records);
+            
+            List<MedicalRecord> seen = new ArrayList<>();
+            long afterId = 0;
+            List<MedicalRecord> page;
+            do {
+                page = sharded.getMedicalRecords(afterId, 4);
+                assertTrue(page.size() <= 4);
+                seen.addAll(page);
+                if (!page.isEmpty()) {
+                    afterId = page.get(page.size() - 1).getId();
+                }
+            } while (page.size() == 4);
+            
+            assertEquals(25, seen.size());
+            for (int i = 1; i < seen.size(); i++) {
+                assertTrue(seen.get(i).getId() > seen.get(i - 1).getId(), "Pages should be in id order");
+            }
+        } finally {
+            sharded.closeConnection();
+        }
+    }
+}
@@ -0,0 +1,139 @@
+import org.junit.jupiter.api.*;
+import static org.junit.jupiter.api.Assertions.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Test class for the read-through patient view cache using JUnit 5
+ */
+public class PatientViewCacheTest {
+    private Path dbFile;
+    private DatabaseManager dbManager;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        dbFile = Files.createTempFile("healthcare-views", ".db");
+        dbManager = new DatabaseManager("jdbc:sqlite:" + dbFile, 2);
+        dbManager.addAppointment(new Appointment("alice", "Dr. Smith", "2024-03-20", 0));
+        dbManager.addAppointment(new Appointment("bob", "Dr. Smith", "2024-03-20", 1));
+        dbManager.addMedicalRecord("alice", "Flu", "Rest");
+        dbManager.insertPrescription("alice", "Paracetamol", 10);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        dbManager.closeConnection();
+        Files.deleteIfExists(dbFile);
+        Files.deleteIfExists(Path.of(dbFile + "-wal"));
+        Files.deleteIfExists(Path.of(dbFile + "-shm"));
+    }
+
+    @Test
+    void testViewIsLoadedOnceAndInvalidatedByWrites() throws SQLException {
+        PatientViewCache cache = new PatientViewCache(dbManager::getPatientView);
+
+        PatientView first = cache.get("alice");
+        PatientView second = cache.get("alice");
+        assertSame(first, second);
+        assertEquals(1, first.getAppointments().size());
+        assertEquals(1, first.getMedicalRecords().size());
+        assertEquals(1, first.getPrescriptions().size());
+
+        dbManager.addMedicalRecord("alice", "Cough", "Syrup");
+        cache.invalidate("alice");
+
+        assertEquals(2, cache.get("alice").getMedicalRecords().size());
+        PatientViewCache.Stats stats = cache.getStats();
+        assertEquals(1, stats.getHits());
+        assertEquals(2, stats.getMisses());
+        assertEquals(1, stats.getInvalidations());
+        assertEquals(2, stats.getLoads());
+        assertEquals(1.0 / 3, stats.getHitRatio(), 1e-9);
+    }
+
+    @Test
+    void testLeastRecentlyUsedEntryIsEvicted() throws SQLException {
+        PatientViewCache cache = new PatientViewCache(PatientView::empty, 2, 60_000);
+        cache.get("alice");
+        cache.get("bob");
+        cache.get("alice");
+        cache.get("carol");
+
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getStats().getEvictions());
+        cache.get("alice");
+        assertEquals(2, cache.getStats().getHits());
+    }
+
+    @Test
+    void testExpiredEntryIsReloaded() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        PatientViewCache cache = new PatientViewCache(username -> {
+            loads.incrementAndGet();
+            return PatientView.empty(username);
+        }, 10, 20);
+
+        cache.get("alice");
+        Thread.sleep(50);
+        cache.get("alice");
+
+        assertEquals(2, loads.get());
+        assertEquals(1, cache.getStats().getExpirations());
+    }
+
+    @Test
+    void testLoadRacingAnInvalidationIsNotCached() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch proceed = new CountDownLatch(1);
+        AtomicInteger loads = new AtomicInteger();
+        PatientViewCache cache = new PatientViewCache(username -> {
+            if (loads.incrementAndGet() == 1) {
+                loading.countDown();
+                try {
+                    proceed.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return dbManager.getPatientView(username);
+        });
+
+        CompletableFuture<PatientView> stale = CompletableFuture.supplyAsync(() -> {
+            try {
+                return cache.get("alice");
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        assertTrue(loading.await(5, TimeUnit.SECONDS));
+        dbManager.insertPrescription("alice", "Aspirin", 5);
+        cache.invalidate("alice");
+        proceed.countDown();
+        stale.get(5, TimeUnit.SECONDS);
+
+        List<Prescription> prescriptions = cache.get("alice").getPrescriptions();
+        assertEquals(2, prescriptions.size());
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void testFailedLoadIsNotCached() {
+        AtomicInteger loads = new AtomicInteger();
+        PatientViewCache cache = new PatientViewCache(username -> {
+            loads.incrementAndGet();
+            throw new SQLException("database unavailable");
+        });
+
+        assertThrows(SQLException.class, () -> cache.get("alice"));
+        assertThrows(SQLException.class, () -> cache.get("alice"));
+        assertEquals(2, loads.get());
+        assertEquals(2, cache.getStats().getLoadFailures());
+        assertEquals(0, cache.size());
+    }
+}
@@ -0,0 +1,72 @@
+import org.junit.jupiter.api.*;
+import static org.junit.jupiter.api.Assertions.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Test class for streaming cursors and the CSV/NDJSON exporter using JUnit 5
+ */
+public class RecordExporterTest {
+    private Path dbFile;
+    private Path exportFile;
+    private DatabaseManager dbManager;
+    
+    @BeforeEach
+    void setUp() throws Exception {
+        dbFile = Files.createTempFile("healthcare-export", ".db");
+        exportFile = Files.createTempFile("healthcare-export", ".out");
+        dbManager = new DatabaseManager("jdbc:sqlite:" + dbFile, 2);
+        dbManager.addMedicalRecord("alice", "Fever, mild", "Rest \"and\" fluids");
+        dbManager.addMedicalRecord("bob", "Headache", "Line one\nline two");
+        dbManager.addMedicine("Aspirin", 100);
+        dbManager.addPrescription("alice", "Aspirin", 5);
+    }
+    
+    @AfterEach
+    void tearDown() throws Exception {
+        dbManager.closeConnection();
+        Files.deleteIfExists(exportFile);
+        Files.deleteIfExists(dbFile);
+        Files.deleteIfExists(Path.of(dbFile + "-wal"));
+        Files.deleteIfExists(Path.of(dbFile + "-shm"));
+    }
+    
+    @Test
+    void testStreamingVisitsEveryRowInOrder() throws Exception {
+        List<String> patients = new ArrayList<>();
+        long rows = dbManager.streamMedicalRecords(1, record -> patients.add(record.getPatientUsername()));
+        
+        assertEquals(2, rows);
+        assertEquals(List.of("alice", "bob"), patients);
+    }
+    
+    @Test
+    void testCsvExportEscapesFields() throws Exception {
+        long rows = new RecordExporter(dbManager).exportMedicalRecords(exportFile, RecordExporter.Format.CSV);
+        
+        assertEquals(2, rows);
+        assertEquals("""
+            id,patient_username,diagnosis,treatment
+            1,alice,"Fever, mild","Rest ""and"" fluids"
+            2,bob,Headache,"Line one
+            line two"
+            """, Files.readString(exportFile));
+    }
+    
+    @Test
+    void testNdjsonExportWritesOneObjectPerLine() throws Exception {
+        RecordExporter exporter = new RecordExporter(dbManager);
+        exporter.exportMedicalRecords(exportFile, RecordExporter.Format.NDJSON);
+        List<String> lines = Files.readAllLines(exportFile);
+        
+        assertEquals(2, lines.size());
+        assertEquals("{\"id\":2,\"patient_username\":\"bob\",\"diagnosis\":\"Headache\","
+            + "\"treatment\":\"Line one\\nline two\"}", lines.get(1));
+        
+        exporter.exportPrescriptions(exportFile, RecordExporter.Format.NDJSON);
+        assertEquals(List.of("{\"id\":1,\"patient_username\":\"alice\",\"medicine\":\"Aspirin\",\"quantity\":5}"),
+            Files.readAllLines(exportFile));
+    }
+}
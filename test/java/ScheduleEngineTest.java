@@ -0,0 +1,162 @@
+import org.junit.jupiter.api.*;
+import static org.junit.jupiter.api.Assertions.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Test class for the doctor schedule engine using JUnit 5
+ */
+public class ScheduleEngineTest {
+    private static final LocalDate START = LocalDate.of(2025, 1, 6);
+    private static final int THREADS = 32;
+
+    @Test
+    void testConcurrentBookingsNeverShareASlot() throws Exception {
+        ScheduleEngine engine = new ScheduleEngine();
+        int perThread = 50;
+        Set<String> taken = ConcurrentHashMap.newKeySet();
+        AtomicInteger duplicates = new AtomicInteger();
+
+        race(THREADS, () -> {
+            for (int i = 0; i < perThread; i++) {
+                ScheduleEngine.Slot slot = engine.reserveNextFree("Dr. Busy", START);
+                if (!taken.add(slot.getDate() + "#" + slot.getIndex())) {
+                    duplicates.incrementAndGet();
+                }
+            }
+        });
+
+        int days = THREADS * perThread / engine.getSlotsPerDay();
+        assertEquals(0, duplicates.get());
+        assertEquals(THREADS * perThread, taken.size());
+        for (int d = 0; d < days; d++) {
+            assertEquals(0, engine.getFreeSlots("Dr. Busy", START.plusDays(d)));
+        }
+        ScheduleEngine.Slot next = engine.findNextFree("Dr. Busy", START);
+        assertEquals(START.plusDays(days), next.getDate());
+        assertEquals(0, next.getIndex());
+    }
+
+    @Test
+    void testOnlyOneThreadWinsTheSameSlot() throws Exception {
+        ScheduleEngine engine = new ScheduleEngine();
+        AtomicInteger winners = new AtomicInteger();
+
+        race(THREADS, () -> {
+            if (engine.reserve("Dr. Busy", START, 3)) {
+                winners.incrementAndGet();
+            }
+        });
+
+        assertEquals(1, winners.get());
+        assertTrue(engine.isReserved("Dr. Busy", START, 3));
+        assertEquals(engine.getSlotsPerDay() - 1, engine.getFreeSlots("Dr. Busy", START));
+    }
+
+    @Test
+    void testReleasedSlotReopensAFullDay() {
+        ScheduleEngine engine = new ScheduleEngine();
+        for (int i = 0; i < engine.getSlotsPerDay() * 3; i++) {
+            engine.reserveNextFree("Dr. Busy", START);
+        }
+        assertEquals(START.plusDays(3), engine.findNextFree("Dr. Busy", START).getDate());
+
+        engine.release("Dr. Busy", START.plusDays(1), 5);
+
+        ScheduleEngine.Slot next = engine.findNextFree("Dr. Busy", START);
+        assertEquals(START.plusDays(1), next.getDate());
+        assertEquals(5, next.getIndex());
+        assertEquals(START.plusDays(1), engine.reserveNextFree("Dr. Busy", START).getDate());
+        assertEquals(START.plusDays(3), engine.findNextFree("Dr. Busy", START).getDate());
+    }
+
+    @Test
+    void testReleaseRacingTheLastBookingLeavesTheDayOpen() throws Exception {
+        ScheduleEngine engine = new ScheduleEngine();
+        for (int round = 0; round < 200; round++) {
+            LocalDate day = START.plusDays(round);
+            for (int slot = 1; slot < engine.getSlotsPerDay(); slot++) {
+                assertTrue(engine.reserve("Dr. Busy", day, slot));
+            }
+            AtomicInteger role = new AtomicInteger();
+
+            // One thread fills the day while the other frees a slot in it
+            race(2, () -> {
+                if (role.getAndIncrement() == 0) {
+                    assertTrue(engine.reserve("Dr. Busy", day, 0));
+                } else {
+                    engine.release("Dr. Busy", day, 1);
+                }
+            });
+
+            assertEquals(1, engine.getFreeSlots("Dr. Busy", day));
+            ScheduleEngine.Slot next = engine.findNextFree("Dr. Busy", day);
+            assertEquals(day, next.getDate());
+            assertEquals(1, next.getIndex());
+            assertEquals(next.getDate(), engine.reserveNextFree("Dr. Busy", START).getDate());
+        }
+    }
+
+    @Test
+    void testScheduleIsRebuiltFromAppointments() throws Exception {
+        Path dbFile = Files.createTempFile("healthcare-schedule", ".db");
+        DatabaseManager dbManager = new DatabaseManager("jdbc:sqlite:" + dbFile, 2);
+        try {
+            List<Appointment> appointments = new ArrayList<>();
+            appointments.add(new Appointment("alice", "Dr. Smith", START.toString(), 0));
+            appointments.add(new Appointment("bob", "Dr. Smith", START.toString(), 7));
+            // Booked before slots existed
+            appointments.add(new Appointment("carol", "Dr. Smith", START.toString()));
+            assertTrue(dbManager.addAppointments(appointments).isAllSuccessful());
+
+            ScheduleEngine engine = ScheduleEngine.rebuild(dbManager);
+
+            assertTrue(engine.isReserved("Dr. Smith", START, 0));
+            assertTrue(engine.isReserved("Dr. Smith", START, 1));
+            assertTrue(engine.isReserved("Dr. Smith", START, 7));
+            assertEquals(engine.getSlotsPerDay() - 3, engine.getFreeSlots("Dr. Smith", START));
+            assertEquals(2, engine.reserveFirstFree("Dr. Smith", START));
+
+            // The unique index backs the in-memory check
+            assertThrows(SQLException.class,
+                () -> dbManager.addAppointment(new Appointment("dave", "Dr. Smith", START.toString(), 7)));
+        } finally {
+            dbManager.closeConnection();
+            Files.deleteIfExists(dbFile);
+            Files.deleteIfExists(Path.of(dbFile + "-wal"));
+            Files.deleteIfExists(Path.of(dbFile + "-shm"));
+        }
+    }
+
+    private static void race(int threads, Runnable task) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    task.run();
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
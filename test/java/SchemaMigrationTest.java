@@ -0,0 +1,128 @@
+import org.junit.jupiter.api.*;
+import static org.junit.jupiter.api.Assertions.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.*;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Test class for schema migrations and index usage using JUnit 5
+ */
+public class SchemaMigrationTest {
+    private Path dbFile;
+    private DatabaseManager dbManager;
+    
+    @BeforeEach
+    void setUp() throws Exception {
+        dbFile = Files.createTempFile("healthcare-migration", ".db");
+    }
+    
+    @AfterEach
+    void tearDown() throws Exception {
+        if (dbManager != null) {
+            dbManager.closeConnection();
+        }
+        Files.deleteIfExists(dbFile);
+        Files.deleteIfExists(Path.of(dbFile + "-wal"));
+        Files.deleteIfExists(Path.of(dbFile + "-shm"));
+    }
+    
+    @Test
+    void testFreshDatabaseIsAtLatestVersion() throws SQLException {
+        dbManager = new DatabaseManager("jdbc:sqlite:" + dbFile, 1);
+        
+        assertEquals(DatabaseManager.schemaMigrations().getLatestVersion(),
+            SchemaMigrator.currentVersion(dbManager.getConnection()));
+        assertEquals(0, DatabaseManager.schemaMigrations().migrate(dbManager.getConnection()),
+            "Migrations should not be re-applied");
+    }
+    
+    @Test
+    void testLegacyTextDatesAreConvertedToEpochValues() throws SQLException {
+        try (Connection legacy = DriverManager.getConnection("jdbc:sqlite:" + dbFile);
+             Statement stmt = legacy.createStatement()) {
+            stmt.execute("""
+                CREATE TABLE appointments (
+                    id INTEGER PRIMARY KEY AUTOINCREMENT,
+                    patient_username TEXT,
+                    doctor_name TEXT,
+                    appointment_date TEXT
+                )
+                """);
+            stmt.execute("""
+                CREATE TABLE medical_records (
+                    id INTEGER PRIMARY KEY AUTOINCREMENT,
+                    patient_username TEXT,
+                    diagnosis TEXT,
+                    treatment TEXT,
+                    record_date TEXT DEFAULT CURRENT_TIMESTAMP
+                )
+                """);
+            stmt.execute("INSERT INTO appointments (patient_username, doctor_name, appointment_date) "
+                + "VALUES ('john', 'Dr. Smith', '2024-03-20'), ('john', 'Dr. Smith', 'next tuesday')");
+            stmt.execute("INSERT INTO medical_records (patient_username, diagnosis, treatment, record_date) "
+                + "VALUES ('john', 'Fever', 'Rest', '2024-12-30 06:13:02')");
+        }
+        
+        dbManager = new DatabaseManager("jdbc:sqlite:" + dbFile, 1);
+        
+        List<Appointment> appointments = dbManager.getAllAppointments();
+        assertEquals("2024-03-20", appointments.get(0).getDate());
+        assertNull(appointments.get(1).getDate(), "Unparseable legacy dates become NULL");
+        try (Statement stmt = dbManager.getConnection().createStatement();
+             ResultSet rs = stmt.executeQuery(
+                 "SELECT typeof(appointment_date), appointment_date FROM appointments WHERE id = 1")) {
+            assertTrue(rs.next());
+            assertEquals("integer", rs.getString(1));
+            assertEquals(LocalDate.of(2024, 3, 20).toEpochDay(), rs.getLong(2));
+        }
+        try (Statement stmt = dbManager.getConnection().createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT record_date FROM medical_records")) {
+            assertTrue(rs.next());
+            assertEquals(1735539182L, rs.getLong(1));
+        }
+        
+        // New rows keep their ids after the table rebuild
+        dbManager.addAppointment(new Appointment("john", "Dr. Smith", "2024-04-01"));
+        assertEquals(3, dbManager.getAppointmentsForPatient("john", 2, 10).get(0).getId());
+    }
+    
+    @Test
+    void testPatientAndDoctorQueriesUseIndexes() throws SQLException {
+        dbManager = new DatabaseManager("jdbc:sqlite:" + dbFile, 1);
+        
+        assertTrue(queryPlan("SELECT * FROM appointments WHERE patient_username = ? AND id > ? ORDER BY id LIMIT ?")
+            .contains("USING INDEX idx_appointments_patient"));
+        assertTrue(queryPlan("SELECT * FROM appointments WHERE doctor_name = ? AND appointment_date BETWEEN ? AND ? "
+            + "ORDER BY appointment_date, id").contains("USING INDEX idx_appointments_doctor_date"));
+        assertTrue(queryPlan("SELECT * FROM medical_records WHERE patient_username = ? AND id > ? ORDER BY id LIMIT ?")
+            .contains("USING INDEX idx_medical_records_patient"));
+        assertTrue(queryPlan("SELECT * FROM prescriptions WHERE patient_username = ? AND id > ? ORDER BY id LIMIT ?")
+            .contains("USING INDEX idx_prescriptions_patient"));
+    }
+    
+    @Test
+    void testInvalidAppointmentDateIsRejected() {
+        dbManager = new DatabaseManager("jdbc:sqlite:" + dbFile, 1);
+        
+        assertThrows(SQLException.class,
+            () -> dbManager.addAppointment(new Appointment("john", "Dr. Smith", "sometime soon")));
+    }
+    
+    private String queryPlan(String sql) throws SQLException {
+        List<String> details = new ArrayList<>();
+        try (PreparedStatement ps = dbManager.getConnection().prepareStatement("EXPLAIN QUERY PLAN " + sql)) {
+            for (int i = 1; i <= ps.getParameterMetaData().getParameterCount(); i++) {
+                ps.setString(i, "x");
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    details.add(rs.getString("detail"));
+                }
+            }
+        }
+        return String.join("\n", details);
+    }
+}
@@ -0,0 +1,249 @@
+import org.junit.jupiter.api.*;
+import static org.junit.jupiter.api.Assertions.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Test class for sharding patient data over several databases using JUnit 5
+ */
+public class ShardingTest {
+    private static final int PATIENTS = 40;
+
+    private Path directory;
+    private Path database;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        directory = Files.createTempDirectory("healthcare-shards");
+        database = directory.resolve("healthcare.db");
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path path : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    @Test
+    void testShardOfIsStableAndMovesFewPatientsWhenAShardIsAdded() {
+        int[] perShard = new int[4];
+        int moved = 0;
+        for (int i = 0; i < 10_000; i++) {
+            String username = "patient" + i;
+            int shard = DatabaseManager.shardOf(username, 4);
+            assertEquals(shard, DatabaseManager.shardOf(username, 4));
+            perShard[shard]++;
+            int grown = DatabaseManager.shardOf(username, 5);
+            if (grown != shard) {
+                assertEquals(4, grown, "Patients only move to the new shard");
+                moved++;
+            }
+        }
+        for (int count : perShard) {
+            assertTrue(count > 2_200 && count < 2_800, "Uneven spread: " + count);
+        }
+        assertTrue(moved > 1_600 && moved < 2_400, "About a fifth should move, not " + moved);
+        assertEquals(0, DatabaseManager.shardOf(null, 4));
+    }
+
+    @Test
+    void testRoutesByPatientAndMergesQueriesAcrossShards() throws Exception {
+        DatabaseManager dbManager = open(3);
+        try {
+            seed(dbManager);
+            assertEquals(3, dbManager.getShardCount());
+            for (int i = 0; i < PATIENTS; i++) {
+                String patient = "patient" + i;
+                int shard = dbManager.getShard(patient);
+                assertEquals(1, countOn(dbManager, shard, "users", "username", patient));
+                assertEquals(2, countOn(dbManager, shard, "appointments", "patient_username", patient));
+                assertTrue(dbManager.validateUser(patient, "secret"));
+                PatientView view = dbManager.getPatientView(patient);
+                assertEquals(2, view.getAppointments().size());
+                assertEquals(1, view.getMedicalRecords().size());
+                for (MedicalRecord record : view.getMedicalRecords()) {
+                    assertTrue(record.getId() >= (long) shard << DatabaseManager.SHARD_ID_BITS,
+                        "Ids come from the shard's own range");
+                }
+            }
+
+            List<Appointment> all = dbManager.getAllAppointments();
+            assertEquals(2 * PATIENTS, all.size());
+            for (int i = 1; i < all.size(); i++) {
+                assertTrue(all.get(i - 1).getId() < all.get(i).getId(), "Merged in id order");
+            }
+            assertEquals(all.get(all.size() - 1).getId(), dbManager.getMaxId("appointments"));
+            assertEquals(PATIENTS, dbManager.getAllMedicalRecords().size());
+            assertEquals(PATIENTS, dbManager.loadPrescriptions().size());
+
+            List<Appointment> smith = dbManager.getAppointmentsForDoctor("Dr. Smith",
+                LocalDate.of(2030, 1, 1), LocalDate.of(2030, 12, 31));
+            assertEquals(PATIENTS, smith.size());
+            for (int i = 1; i < smith.size(); i++) {
+                assertTrue(smith.get(i - 1).getDate().compareTo(smith.get(i).getDate()) <= 0, "Merged in date order");
+            }
+
+            List<Long> streamed = new ArrayList<>();
+            dbManager.streamAppointments(appointment -> streamed.add(appointment.getId()));
+            assertEquals(all.stream().map(Appointment::getId).toList(), streamed);
+
+            List<MedicalRecord> matches = dbManager.searchMedicalRecords("flu", null, 0, 100);
+            assertEquals(PATIENTS / 2, matches.size());
+            List<MedicalRecord> secondPage = dbManager.searchMedicalRecords("flu", null, 5, 5);
+            assertEquals(matches.subList(5, 10).stream().map(MedicalRecord::getId).toList(),
+                secondPage.stream().map(MedicalRecord::getId).toList());
+            assertEquals(1, dbManager.searchMedicalRecords("flu", "patient0", 0, 10).size());
+        } finally {
+            dbManager.closeConnection();
+        }
+    }
+
+    @Test
+    void testBatchesKeepInputOrderAndStockStaysOnTheHomeShard() throws Exception {
+        DatabaseManager dbManager = open(3);
+        try {
+            dbManager.addMedicine("Aspirin", 1_000);
+            List<Appointment> appointments = new ArrayList<>();
+            List<Prescription> prescriptions = new ArrayList<>();
+            for (int i = 0; i < PATIENTS; i++) {
+                appointments.add(new Appointment("patient" + i, "Dr. Jones", "2030-02-0" + (1 + i % 9), i / 9));
+                prescriptions.add(new Prescription("patient" + i, "Aspirin", 2));
+            }
+            // Same doctor, day and slot as the first row, so its chunk on that shard fails
+            appointments.add(new Appointment("patient" + (PATIENTS + 7), "Dr. Jones", "2030-02-01", 0));
+            String clash = "patient" + (PATIENTS + 7);
+            BatchResult result = dbManager.addAppointments(appointments, 1);
+            if (dbManager.getShard(clash) == dbManager.getShard("patient0")) {
+                assertFalse(result.isSuccess(PATIENTS));
+                assertEquals(1, result.getFailureCount());
+            } else {
+                assertTrue(result.isAllSuccessful(), "The unique slot index is per shard");
+            }
+            for (int i = 0; i < PATIENTS; i++) {
+                assertTrue(result.isSuccess(i));
+            }
+
+            assertTrue(dbManager.addPrescriptions(prescriptions).isAllSuccessful());
+            dbManager.addPrescription("patient1", "Aspirin", 5);
+            assertEquals(1_000 - 2 * PATIENTS - 5, dbManager.getMedicineInventory().get("Aspirin"));
+            assertEquals(PATIENTS + 1, dbManager.getAllPrescriptions().size());
+        } finally {
+            dbManager.closeConnection();
+        }
+    }
+
+    @Test
+    void testOpeningWithAnotherShardCountFails() throws Exception {
+        open(2).closeConnection();
+        assertThrows(IllegalStateException.class, () -> open(3));
+        DatabaseManager again = open(2);
+        try {
+            assertTrue(again.validateUser("admin", "admin123"));
+        } finally {
+            again.closeConnection();
+        }
+    }
+
+    @Test
+    void testRebalanceMovesRowsAndKeepsEveryPatient() throws Exception {
+        DatabaseManager dbManager = open(2);
+        seed(dbManager);
+        dbManager.closeConnection();
+
+        long moved = ShardRebalancer.rebalance(database, 3);
+        assertTrue(moved > 0 && moved < 5 * PATIENTS, "Only patients of the new shard move: " + moved);
+        dbManager = open(3);
+        try {
+            assertEquals(2 * PATIENTS, dbManager.getAllAppointments().size());
+            for (int i = 0; i < PATIENTS; i++) {
+                String patient = "patient" + i;
+                assertEquals(2, countOn(dbManager, dbManager.getShard(patient), "appointments", "patient_username", patient));
+                assertTrue(dbManager.validateUser(patient, "secret"));
+                PatientView view = dbManager.getPatientView(patient);
+                assertEquals(i % 2 == 0 ? "Flu" : "Cold", view.getMedicalRecords().get(0).getDiagnosis());
+                assertEquals(1, view.getPrescriptions().size());
+            }
+            assertEquals(PATIENTS / 2, dbManager.searchMedicalRecords("flu", null, 0, 100).size(),
+                "The full-text index follows the moved rows");
+            assertTrue(dbManager.validateUser("admin", "admin123"));
+            dbManager.addMedicalRecord("patient3", "Flu", "Rest");
+        } finally {
+            dbManager.closeConnection();
+        }
+
+        ShardRebalancer.rebalance(database, 1);
+        assertFalse(Files.exists(StorageConfig.shardPath(database, 1)));
+        assertFalse(Files.exists(StorageConfig.shardPath(database, 2)));
+        dbManager = open(1);
+        try {
+            assertEquals(PATIENTS + 1, dbManager.getAllMedicalRecords().size());
+            assertEquals(2 * PATIENTS, dbManager.getAllAppointments().size());
+            assertEquals(PATIENTS, countOn(dbManager, 0, "users", "role", "PATIENT"));
+            assertTrue(dbManager.validateUser("Dr. Smith", "secret"));
+        } finally {
+            dbManager.closeConnection();
+        }
+    }
+
+    @Test
+    void testHealthcareSystemRunsOnShardedMemoryDatabases() throws Exception {
+        DatabaseManager dbManager = new DatabaseManager(StorageConfig.inMemory().shards(2).build());
+        HealthcareSystem system = new HealthcareSystem(dbManager, directory.resolve("journal"));
+        try {
+            system.addMedicine("Aspirin", 10);
+            for (int i = 0; i < 6; i++) {
+                system.registerPatient("patient" + i, "secret");
+                assertTrue(system.bookAppointment("patient" + i, "Dr. Smith", LocalDate.of(2030, 3, 1), i));
+                assertTrue(system.addPrescription("patient" + i, "Aspirin", 1));
+            }
+            assertFalse(system.bookAppointment("patient5", "Dr. Smith", LocalDate.of(2030, 3, 1), 0),
+                "The schedule guards slots across shards");
+            assertTrue(system.login("patient4", "secret"));
+            assertEquals(1, system.getPatientView("patient4").getAppointments().size());
+            assertEquals(6, system.getAppointments().size());
+            assertEquals(4, system.getInventory().getStock("Aspirin"));
+            assertEquals(6, system.getAnalytics().getAppointmentCount("Dr. Smith"));
+        } finally {
+            system.shutdown();
+        }
+    }
+
+    private DatabaseManager open(int shards) {
+        return new DatabaseManager(StorageConfig.file(database).shards(shards).readers(2).build());
+    }
+
+    private static void seed(DatabaseManager dbManager) throws SQLException {
+        dbManager.addUser(new User("Dr. Smith", "secret", "DOCTOR"));
+        for (int i = 0; i < PATIENTS; i++) {
+            String patient = "patient" + i;
+            dbManager.addUser(new User(patient, "secret", "PATIENT"));
+            dbManager.addAppointment(new Appointment(patient, "Dr. Smith", "2030-01-" + (10 + i % 20), i / 20));
+            dbManager.addAppointment(new Appointment(patient, "Dr. Jones", "2031-01-01", i));
+            dbManager.addMedicalRecord(patient, i % 2 == 0 ? "Flu" : "Cold", "Rest");
+            dbManager.insertPrescription(patient, "Aspirin", 1);
+        }
+    }
+
+    private static long countOn(DatabaseManager dbManager, int shard, String table, String column, String value)
+            throws SQLException {
+        try (PreparedStatement ps = dbManager.getConnection(shard).prepareStatement(
+                "SELECT COUNT(*) FROM " + table + " WHERE " + column + " = ?")) {
+            ps.setString(1, value);
+            try (ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                return rs.getLong(1);
+            }
+        }
+    }
+}
@@ -0,0 +1,182 @@
+import org.junit.jupiter.api.*;
+import static org.junit.jupiter.api.Assertions.*;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * Test class for online snapshots and the hot state bootstrap using JUnit 5
+ */
+public class SnapshotBootstrapTest {
+    private static final LocalDate TODAY = LocalDate.now(ZoneOffset.UTC);
+
+    private Path directory;
+    private DatabaseManager dbManager;
+    private HealthcareSystem system;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        directory = Files.createTempDirectory("healthcare-snapshot");
+        dbManager = new DatabaseManager(StorageConfig.file(directory.resolve("live.db")).readers(2).build());
+        system = new HealthcareSystem(dbManager, directory.resolve("journal"));
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        system.shutdown();
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path path : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    @Test
+    void testSnapshotIsConsistentWhileWritesContinue() throws Exception {
+        for (int i = 0; i < 200; i++) {
+            dbManager.addMedicalRecord("patient" + (i % 7), "Flu", "Rest");
+        }
+        AtomicBoolean writing = new AtomicBoolean(true);
+        AtomicInteger written = new AtomicInteger();
+        Thread writer = new Thread(() -> {
+            try {
+                while (writing.get()) {
+                    dbManager.addMedicalRecord("patient1", "Cold", "Tea");
+                    written.incrementAndGet();
+                }
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        writer.start();
+        Path target = directory.resolve("copy").resolve("healthcare.db");
+        long size;
+        try {
+            while (written.get() < 10) {
+                Thread.sleep(1);
+            }
+            size = dbManager.snapshot(target);
+            int duringSnapshot = written.get();
+            while (written.get() < duringSnapshot + 10) {
+                Thread.sleep(1);
+            }
+        } finally {
+            writing.set(false);
+            writer.join();
+        }
+        assertEquals(Files.size(target), size);
+        assertFalse(Files.exists(target.resolveSibling("healthcare.db.tmp")));
+
+        DatabaseManager copy = new DatabaseManager(StorageConfig.file(target).readers(1).build());
+        try {
+            long rows = copy.getMaxId("medical_records");
+            assertTrue(rows >= 210 && rows < 200 + written.get(), "Copy has " + rows + " rows");
+            assertEquals(rows, copy.getAllMedicalRecords().size());
+            assertEquals(200, copy.searchMedicalRecords("flu", null, 0, 10_000).size(),
+                "The full-text index is copied along with the rows");
+            assertEquals(rows - 200, copy.searchMedicalRecords("cold", null, 0, 10_000).size());
+        } finally {
+            copy.closeConnection();
+        }
+    }
+
+    @Test
+    void testImageRoundTripsAndRejectsCorruption() throws Exception {
+        system.registerPatient("alice", "secret");
+        system.addMedicine("Aspirin", 40);
+        system.getInventory().flush();
+        assertTrue(system.bookAppointment("alice", "Dr. Smith", TODAY.minusDays(3), 1));
+        assertTrue(system.bookAppointment("alice", "Dr. Smith", TODAY, 2));
+        assertTrue(system.bookAppointment("alice", "Dr. Jones", TODAY.plusDays(5), 0));
+
+        HotStateImage image = dbManager.readHotState(TODAY);
+        Path file = directory.resolve(HotStateImage.FILE_NAME);
+        image.write(file);
+        HotStateImage read = HotStateImage.read(file);
+
+        assertEquals(TODAY, read.getFrom());
+        assertEquals(dbManager.getMaxId("appointments"), read.getMaxAppointmentId());
+        assertEquals(40, read.getInventory().get("Aspirin"));
+        assertEquals(2, read.getUserCount(), "admin and alice");
+        assertEquals("PATIENT", read.getRole("alice"));
+        assertTrue(dbManager.verifyPassword("secret", read.getPasswordHash("alice")));
+        List<CompactAppointment> appointments = read.getAppointments();
+        assertEquals(2, appointments.size(), "Only today and later");
+        Appointment first = appointments.get(0).toAppointment(read.getNames());
+        assertEquals("Dr. Smith", first.getDoctorName());
+        assertEquals(TODAY.toString(), first.getDate());
+        assertEquals(2, first.getSlot());
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[] {42}), 40);
+        }
+        assertThrows(IOException.class, () -> HotStateImage.read(file));
+    }
+
+    @Test
+    void testBootstrapFromSnapshotServesTheSameState() throws Exception {
+        system.registerPatient("alice", "secret");
+        system.addMedicine("Aspirin", 40);
+        assertTrue(system.bookAppointment("alice", "Dr. Smith", TODAY.minusDays(10), 0));
+        assertTrue(system.bookAppointment("alice", "Dr. Smith", TODAY.plusDays(1), 3));
+        for (int slot = 0; slot < ScheduleEngine.DEFAULT_SLOTS_PER_DAY; slot++) {
+            assertTrue(system.bookAppointment("alice", "Dr. Jones", TODAY.plusDays(2), slot));
+        }
+        system.addMedicalRecord("alice", "Flu", "Rest");
+        assertTrue(system.addPrescription("alice", "Aspirin", 4));
+        Path snapshot = directory.resolve("snapshot");
+        assertTrue(system.snapshot(snapshot));
+        assertTrue(Files.exists(snapshot.resolve(HotStateImage.FILE_NAME)));
+
+        // Written to the copy after the image was taken, so it must be caught up
+        DatabaseManager copy = new DatabaseManager(StorageConfig.file(snapshot.resolve("healthcare.db")).build());
+        copy.addAppointment(new Appointment("alice", "Dr. Smith", TODAY.plusDays(1).toString(), 4));
+        HealthcareSystem restored = new HealthcareSystem(copy, directory.resolve("restored-journal"),
+            HotStateImage.read(snapshot.resolve(HotStateImage.FILE_NAME)));
+        try {
+            assertFalse(restored.bookAppointment("alice", "Dr. Smith", TODAY.plusDays(1), 3));
+            assertFalse(restored.bookAppointment("alice", "Dr. Smith", TODAY.plusDays(1), 4));
+            assertEquals(TODAY.plusDays(3).toString(),
+                restored.bookNextAvailable("alice", "Dr. Jones", TODAY.plusDays(2)).getDate());
+            assertFalse(restored.bookAppointment("alice", "Dr. Smith", TODAY.minusDays(10), 0),
+                "Days before the image wait for the background load");
+            assertTrue(restored.login("alice", "secret"));
+            assertFalse(restored.login("alice", "wrong"));
+            assertEquals(36, restored.getInventory().getStock("Aspirin"));
+
+            restored.getWarmup().get();
+            AnalyticsEngine analytics = restored.getAnalytics();
+            assertEquals(3, analytics.getAppointmentCount("Dr. Smith"));
+            assertEquals(ScheduleEngine.DEFAULT_SLOTS_PER_DAY + 1, analytics.getAppointmentCount("Dr. Jones"),
+                "Rows loaded in the background plus the booking made meanwhile");
+            assertEquals(1, analytics.getPatientMedicalRecordCount("alice"));
+            assertEquals(4, analytics.getUnitsPrescribed("Aspirin"));
+        } finally {
+            restored.shutdown();
+        }
+    }
+
+    @Test
+    void testImageNewerThanTheDatabaseIsIgnored() throws Exception {
+        assertTrue(system.bookAppointment("admin", "Dr. Smith", TODAY, 0));
+        HotStateImage image = dbManager.readHotState(TODAY);
+        DatabaseManager empty = new DatabaseManager(StorageConfig.inMemory().build());
+        HealthcareSystem restored = new HealthcareSystem(empty, directory.resolve("empty-journal"), image);
+        try {
+            assertTrue(restored.getWarmup().isDone(), "Started by scanning the database instead");
+            assertTrue(restored.bookAppointment("admin", "Dr. Smith", TODAY, 0));
+        } finally {
+            restored.shutdown();
+        }
+    }
+}
@@ -0,0 +1,49 @@
+import org.junit.jupiter.api.*;
+import static org.junit.jupiter.api.Assertions.*;
+import java.sql.*;
+
+/**
+ * Test class for the prepared-statement cache using JUnit 5
+ */
+public class StatementCacheTest {
+    private Connection connection;
+    
+    @BeforeEach
+    void setUp() throws SQLException {
+        connection = DriverManager.getConnection("jdbc:sqlite::memory:");
+    }
+    
+    @AfterEach
+    void tearDown() throws SQLException {
+        connection.close();
+    }
+    
+    @Test
+    void testRepeatedSqlHitsCache() throws SQLException {
+        StatementCache cache = new StatementCache(connection, 4);
+        PreparedStatement first = cache.prepare("SELECT ?");
+        PreparedStatement second = cache.prepare("SELECT ?");
+        
+        assertSame(first, second, "Same SQL text should reuse the prepared statement");
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+    
+    @Test
+    void testLeastRecentlyUsedStatementIsEvictedAndClosed() throws SQLException {
+        StatementCache cache = new StatementCache(connection, 2);
+        PreparedStatement one = cache.prepare("SELECT 1");
+        PreparedStatement two = cache.prepare("SELECT 2");
+        cache.prepare("SELECT 1");
+        cache.prepare("SELECT 3");
+        
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictions());
+        assertTrue(two.isClosed(), "Evicted statement should be closed");
+        assertFalse(one.isClosed(), "Recently used statement should stay cached");
+        
+        cache.close();
+        assertTrue(one.isClosed());
+        assertEquals(0, cache.size());
+    }
+}
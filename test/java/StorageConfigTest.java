@@ -0,0 +1,108 @@
+import org.junit.jupiter.api.*;
+import static org.junit.jupiter.api.Assertions.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import org.sqlite.SQLiteConfig;
+
+/**
+ * Test class for storage configuration (file, in-memory and pragmas) using JUnit 5
+ */
+public class StorageConfigTest {
+
+    @Test
+    void testInMemoryDatabaseIsSharedByNameAndDroppedOnClose() throws Exception {
+        StorageConfig config = StorageConfig.inMemory("storage-config-test").build();
+        assertTrue(config.isInMemory());
+        DatabaseManager dbManager = new DatabaseManager(config);
+        try {
+            dbManager.addAppointment(new Appointment("john", "Dr. Smith", "2024-03-15", 0));
+            dbManager.addMedicalRecord("john", "Flu", "Rest");
+            assertEquals(1, dbManager.getPatientView("john").getMedicalRecords().size());
+            assertEquals(1, dbManager.getPoolStats().getTotalConnections());
+
+            try (Connection other = DriverManager.getConnection(config.getUrl());
+                 Statement stmt = other.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM appointments")) {
+                assertEquals(1, rs.getInt(1));
+            }
+        } finally {
+            dbManager.closeConnection();
+        }
+
+        DatabaseManager reopened = new DatabaseManager(config);
+        try {
+            assertTrue(reopened.getAllAppointments().isEmpty());
+            assertTrue(reopened.validateUser("admin", "admin123"));
+        } finally {
+            reopened.closeConnection();
+        }
+    }
+
+    @Test
+    void testTunedPragmasAreApplied() throws Exception {
+        Path dbFile = Files.createTempFile("healthcare-storage", ".db");
+        DatabaseManager dbManager = new DatabaseManager(StorageConfig.file(dbFile).readers(2).tuned().build());
+        try {
+            Connection writer = dbManager.getConnection();
+            assertEquals("wal", pragma(writer, "journal_mode"));
+            assertEquals("1", pragma(writer, "synchronous"));
+            assertEquals("-65536", pragma(writer, "cache_size"));
+            assertEquals(String.valueOf(256L << 20), pragma(writer, "mmap_size"));
+            assertEquals("2", pragma(writer, "temp_store"));
+            assertEquals(3, dbManager.getPoolStats().getTotalConnections());
+        } finally {
+            dbManager.closeConnection();
+            Files.deleteIfExists(dbFile);
+            Files.deleteIfExists(Path.of(dbFile + "-wal"));
+            Files.deleteIfExists(Path.of(dbFile + "-shm"));
+        }
+    }
+
+    @Test
+    void testConfigFromSystemProperties() {
+        // The build points the singleton at an in-memory database through the same property
+        String buildMemory = System.clearProperty("healthcare.db.memory");
+        try {
+            System.setProperty("healthcare.db.path", "target/props.db");
+            System.setProperty("healthcare.db.readers", "3");
+            System.setProperty("healthcare.db.synchronous", "off");
+            System.setProperty("healthcare.db.mmap-size", "1048576");
+            StorageConfig config = StorageConfig.fromSystemProperties();
+            assertEquals("jdbc:sqlite:target/props.db", config.getUrl());
+            assertFalse(config.isInMemory());
+            assertEquals(3, config.getReaders());
+            assertTrue(config.toString().contains("synchronous=OFF"), config.toString());
+            assertTrue(config.toString().contains("mmap_size=1048576"), config.toString());
+            assertTrue(config.toString().contains("journal_mode=WAL"), config.toString());
+
+            System.setProperty("healthcare.db.memory", "props");
+            assertTrue(StorageConfig.fromSystemProperties().isInMemory());
+        } finally {
+            for (String name : new String[] {"path", "readers", "synchronous", "mmap-size", "memory"}) {
+                System.clearProperty("healthcare.db." + name);
+            }
+            if (buildMemory != null) {
+                System.setProperty("healthcare.db.memory", buildMemory);
+            }
+        }
+    }
+
+    @Test
+    void testSingletonCannotBeReconfiguredOnceOpen() {
+        DatabaseManager.getInstance();
+        assertThrows(IllegalStateException.class, () ->
+            DatabaseManager.configure(StorageConfig.inMemory().synchronous(SQLiteConfig.SynchronousMode.OFF).build()));
+    }
+
+    private static String pragma(Connection connection, String name) throws SQLException {
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA " + name)) {
+            return rs.getString(1);
+        }
+    }
+}